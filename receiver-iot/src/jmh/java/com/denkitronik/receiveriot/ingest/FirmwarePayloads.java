@@ -0,0 +1,51 @@
+package com.denkitronik.receiveriot.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Payloads con la forma que publica el firmware iot-mqtt-tls (sendSensorData en libiot.cpp):
+ * un objeto JSON plano con "variable": valor y un decimal, p. ej. {"temperatura": 24.5, "humedad": 61.0}.
+ * Para 4 y 32 variables se agregan sensores con el mismo formato. El mismo payload en CBOR usa como clave el
+ * id de cada variable (1, 2, ...) y valores float32.
+ */
+final class FirmwarePayloads {
+
+    /** Tópico de publicación del firmware (MQTT_TOPIC_PUB) */
+    static final String TOPIC = "colombia/valle/tulua/ESP32-CC50E3B65DD/device1/out";
+
+    private static final String[] NAMES = {"temperatura", "humedad", "presion", "luminosidad"};
+
+    private FirmwarePayloads() {
+    }
+
+    /**
+     * Nombre de la variable i: las del firmware y luego sensor4, sensor5, ...
+     */
+    static String variable(int index) {
+        return index < NAMES.length ? NAMES[index] : "sensor" + index;
+    }
+
+    static byte[] json(int variables) {
+        StringBuilder data = new StringBuilder("{");
+        for (int i = 0; i < variables; i++) {
+            if (i > 0) {
+                data.append(", ");
+            }
+            data.append('"').append(variable(i)).append("\": ").append(String.format(Locale.ROOT, "%.1f", value(i)));
+        }
+        return data.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] cbor(int variables) {
+        CborTestWriter data = new CborTestWriter().map(variables);
+        for (int i = 0; i < variables; i++) {
+            data.uint(i + 1).float32(value(i));
+        }
+        return data.bytes();
+    }
+
+    private static float value(int index) {
+        return 20 + (index * 7919 % 600) / 10f;
+    }
+}
@@ -0,0 +1,112 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Location;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.entities.User;
+import com.denkitronik.receiveriot.repositories.DeviceRepository;
+import com.denkitronik.receiveriot.repositories.LocationRepository;
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import com.denkitronik.receiveriot.repositories.UserRepository;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Repositorios en memoria para los benchmarks: implementan solo los métodos que usan los servicios de
+ * dimensiones (save, findById y las búsquedas por nombre), sin Spring Data ni base de datos.
+ */
+final class InMemoryRepositories {
+
+    private InMemoryRepositories() {
+    }
+
+    static UserRepository users() {
+        return repository(UserRepository.class, User::getId, User::setId,
+                (method, args) -> method.equals("findByUsername") ? user -> user.getUsername().equals(args[0]) : null);
+    }
+
+    static LocationRepository locations() {
+        return repository(LocationRepository.class, Location::getId, Location::setId,
+                (method, args) -> method.equals("findByCityAndStateAndCountry")
+                        ? location -> location.getCity().equals(args[0]) && location.getState().equals(args[1])
+                        && location.getCountry().equals(args[2]) : null);
+    }
+
+    static DeviceRepository devices() {
+        return repository(DeviceRepository.class, Device::getId, Device::setId,
+                (method, args) -> switch (method) {
+                    case "findByClientIdAndLocation" -> device -> device.getClientId().equals(args[0])
+                            && Objects.equals(device.getLocation().getId(), ((Location) args[1]).getId());
+                    case "findByClientId" -> device -> device.getClientId().equals(args[0]);
+                    default -> null;
+                });
+    }
+
+    static MeasurementRepository measurements() {
+        return repository(MeasurementRepository.class, Measurement::getId, Measurement::setId,
+                (method, args) -> method.equals("findByName") ? measurement -> measurement.getName().equals(args[0]) : null);
+    }
+
+    /**
+     * Crea el repositorio con un proxy dinámico
+     *
+     * @param finders Filtro de cada método de búsqueda (findByX) según sus argumentos; null si no lo implementa
+     */
+    @SuppressWarnings("unchecked")
+    private static <R, T> R repository(Class<R> type, Function<T, Long> getId, IdSetter<T> setId,
+                                       BiFunction<String, Object[], Predicate<T>> finders) {
+        List<T> rows = new CopyOnWriteArrayList<>();
+        AtomicLong ids = new AtomicLong();
+        return (R) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            String name = method.getName();
+            switch (name) {
+                case "save" -> {
+                    T row = (T) args[0];
+                    if (getId.apply(row) == null) {
+                        setId.set(row, ids.incrementAndGet());
+                        rows.add(row);
+                    }
+                    return row;
+                }
+                case "findById" -> {
+                    return rows.stream().filter(row -> getId.apply(row).equals(args[0])).findFirst();
+                }
+                case "toString" -> {
+                    return "InMemory" + type.getSimpleName();
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                default -> {
+                    Predicate<T> filter = finders.apply(name, args);
+                    if (filter == null) {
+                        throw new UnsupportedOperationException(type.getSimpleName() + "." + name);
+                    }
+                    return isOptional(method) ? rows.stream().filter(filter).findFirst()
+                            : rows.stream().filter(filter).toList();
+                }
+            }
+        });
+    }
+
+    private static boolean isOptional(Method method) {
+        return method.getReturnType() == Optional.class;
+    }
+
+    @FunctionalInterface
+    private interface IdSetter<T> {
+        void set(T row, Long id);
+    }
+}
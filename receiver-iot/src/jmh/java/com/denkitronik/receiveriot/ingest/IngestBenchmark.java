@@ -0,0 +1,162 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.cache.DimensionCaches;
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Location;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.entities.User;
+import com.denkitronik.receiveriot.live.LiveFeed;
+import com.denkitronik.receiveriot.repositories.LocationRepository;
+import com.denkitronik.receiveriot.services.DataService;
+import com.denkitronik.receiveriot.services.DeviceService;
+import com.denkitronik.receiveriot.services.LocationService;
+import com.denkitronik.receiveriot.services.MeasurementService;
+import com.denkitronik.receiveriot.services.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Benchmarks del camino que recorre cada mensaje MQTT, por etapa y de extremo a extremo (la interpretación
+ * del tópico está en {@link TopicRouterBenchmark}):
+ * <ul>
+ *     <li>decodePayload: decodificación del payload JSON del firmware</li>
+ *     <li>decodeCborPayload: el mismo payload en CBOR con ids de variables, para comparar con el JSON</li>
+ *     <li>resolveDimensions: usuario, ubicación, dispositivo y variables contra repositorios en memoria</li>
+ *     <li>buildEntities: construcción de las entidades DataEntity de un mensaje</li>
+ *     <li>processMessage: tópico + payload + dimensiones + entidades, como la etapa de decodificación</li>
+ * </ul>
+ * Ejecutar con {@code mvn -Pjmh test-compile exec:exec}; por defecto se agrega el profiler de GC, que
+ * reporta las asignaciones por operación (gc.alloc.rate.norm) y las recolecciones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@State(Scope.Thread)
+public class IngestBenchmark {
+
+    /** Variables por mensaje con el formato del firmware (que publica 2: temperatura y humedad) */
+    @Param({"1", "4", "32"})
+    int variables;
+
+    private TopicRouter router;
+    private PayloadDecoder decoder;
+    private UserService userService;
+    private LocationService locationService;
+    private DeviceService deviceService;
+    private MeasurementService measurementService;
+    private MessageProcessor processor;
+    private DataService dataService;
+    private LiveFeed liveFeed;
+
+    private byte[] payload;
+    private byte[] cborPayload;
+    private SampleBuffer buffer;
+    private TopicRoute route;
+    private Device device;
+    private String[] names;
+    private Measurement[] measurements;
+    private float[] values;
+    private ZonedDateTime time;
+    private Consumer<Sample> sink;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        ObjectProvider<MeterRegistry> noRegistry = new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        DimensionCaches caches = new DimensionCaches(10000, 600000, noRegistry);
+        router = new TopicRouter("{country}/{state}/{city}/{device}/{user}/{channel}", 100000, noRegistry);
+        route = router.parse(FirmwarePayloads.TOPIC);
+
+        // La ubicación ya existe, así no se encola en el resolvedor de geocodificación
+        LocationRepository locations = InMemoryRepositories.locations();
+        Location location = new Location();
+        location.setCity(route.getCity());
+        location.setState(route.getState());
+        location.setCountry(route.getCountry());
+        locations.save(location);
+
+        userService = new UserService(InMemoryRepositories.users(), caches);
+        locationService = new LocationService(locations, null, caches);
+        deviceService = new DeviceService(InMemoryRepositories.devices(), caches);
+        measurementService = new MeasurementService(InMemoryRepositories.measurements(), caches);
+        decoder = new PayloadDecoder(false, "ts", 300000, 604800000L, true, 604800000L, noRegistry);
+        liveFeed = new LiveFeed(1, 16, 100, 1, 3600000, 15000, noRegistry);
+        processor = new MessageProcessor(userService, locationService, measurementService, deviceService, decoder,
+                router, liveFeed, IngestInstrumentation.detached());
+        dataService = new DataService(null);
+
+        payload = FirmwarePayloads.json(variables);
+        cborPayload = FirmwarePayloads.cbor(variables);
+        buffer = new SampleBuffer(8);
+        User user = userService.getUser(route.getUser());
+        device = deviceService.getOrCreateDevice(route.getDevice(), user, locationService.getOrCreateLocation(
+                route.getCity(), route.getState(), route.getCountry()));
+        decoder.decode(payload, buffer);
+        names = new String[variables];
+        measurements = new Measurement[variables];
+        values = new float[variables];
+        for (int i = 0; i < variables; i++) {
+            names[i] = buffer.name(i);
+            measurements[i] = measurementService.getOrCreateMeasurement(names[i]);
+            values[i] = buffer.value(i);
+        }
+        time = ZonedDateTime.now();
+        sink = sample -> blackhole.consume(dataService.buildData(sample.value(), sample.device(), sample.variable(), sample.time()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        liveFeed.stop();
+    }
+
+    @Benchmark
+    public int decodePayload() throws IOException {
+        return decoder.decode(payload, buffer);
+    }
+
+    @Benchmark
+    public int decodeCborPayload() throws IOException {
+        return decoder.decode(cborPayload, buffer);
+    }
+
+    @Benchmark
+    public void resolveDimensions(Blackhole blackhole) {
+        User user = userService.getUser(route.getUser());
+        Location location = locationService.getOrCreateLocation(route.getCity(), route.getState(), route.getCountry());
+        blackhole.consume(deviceService.getOrCreateDevice(route.getDevice(), user, location));
+        for (int i = 0; i < variables; i++) {
+            blackhole.consume(measurementService.getOrCreateMeasurement(names[i]));
+        }
+    }
+
+    @Benchmark
+    public void buildEntities(Blackhole blackhole) {
+        for (int i = 0; i < variables; i++) {
+            blackhole.consume(dataService.buildData(values[i], device, measurements[i], time));
+        }
+    }
+
+    @Benchmark
+    public void processMessage() {
+        processor.process(new RawMessage(FirmwarePayloads.TOPIC, payload, System.currentTimeMillis()), sink);
+    }
+}
@@ -0,0 +1,48 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interpretación del tópico del firmware: parseTopic recorre el esquema compilado (primer mensaje de un
+ * tópico) y routeTopic devuelve la ruta ya guardada (resto de los mensajes).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@State(Scope.Thread)
+public class TopicRouterBenchmark {
+
+    private TopicRouter router;
+
+    @Setup
+    public void setUp() {
+        router = new TopicRouter("{country}/{state}/{city}/{device}/{user}/{channel}", 100000,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        router.route(FirmwarePayloads.TOPIC);
+    }
+
+    @Benchmark
+    public TopicRoute parseTopic() {
+        return router.parse(FirmwarePayloads.TOPIC);
+    }
+
+    @Benchmark
+    public TopicRoute routeTopic() {
+        return router.route(FirmwarePayloads.TOPIC);
+    }
+}
@@ -1,17 +1,18 @@
 package com.denkitronik.receiveriot;
 
 
-import com.denkitronik.receiveriot.entities.Location;
-import com.denkitronik.receiveriot.entities.Measurement;
-import com.denkitronik.receiveriot.entities.Device;
-import com.denkitronik.receiveriot.entities.User;
-import com.denkitronik.receiveriot.services.*;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.denkitronik.receiveriot.ingest.DeliveryAck;
+import com.denkitronik.receiveriot.ingest.IngestPipeline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
@@ -24,6 +25,13 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.SSLContext;
 import java.security.KeyStoreException;
@@ -31,21 +39,26 @@ import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
-import java.time.ZonedDateTime;
-import java.util.Map;
 
 /**
  * Clase que se encarga de recibir y procesar los mensajes MQTT
  */
 @Component
+@Profile("!export")
 public class MqttController {
 
     private MqttAsyncClient client;                         // Cliente MQTT de Eclipse Paho
-    private final UserService userService;                  // Servicio de usuario
-    private final LocationService locationService;          // Servicio de ubicación (ciudad, estado, país)
-    private final MeasurementService measurementService;    // Servicio de medición (variable)
-    private final DeviceService deviceService;              // Servicio de sensor
-    private final DataService dataService;                  // Servicio de datos (mediciones)
+    private final IngestPipeline ingestPipeline;            // Pipeline de ingesta (decodificación y escritura)
+    private final MqttSubscriptions subscriptions;          // Filtros de suscripción de esta instancia
+    private MqttConnectOptions options;                     // Opciones de conexión, también para las reconexiones
+    private final AtomicInteger connection = new AtomicInteger();   // Generación de la conexión actual
+    private final AtomicBoolean redeliveryScheduled = new AtomicBoolean();
+    private final AtomicLong lastRedelivery = new AtomicLong();
+    private final ScheduledExecutorService redeliveryScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "mqtt-redelivery");
+        thread.setDaemon(true);
+        return thread;
+    });
     private static final Logger logger = LoggerFactory.getLogger(MqttController.class);
 
     @Value("${mqtt.broker.url}")    // Lee de application.properties el valor de mqtt.broker.url
@@ -58,19 +71,32 @@ public class MqttController {
     private String password;
     @Value("${mqtt.qos}")           // Lee de application.properties el valor de mqtt.qos
     private int qos;
-    @Value("${mqtt.topic}")         // Lee de application.properties el valor de mqtt.topic
-    private String topic;
+    @Value("${mqtt.manual-acks:true}")          // Confirmar los mensajes QoS 1/2 solo cuando su lote queda guardado
+    private boolean manualAcks;
+    @Value("${mqtt.max-inflight:1000}")         // Publicaciones salientes QoS 1/2 en vuelo (no limita lo recibido)
+    private int maxInflight;
+    @Value("${mqtt.receive-window:20}")         // Mensajes sin confirmar que el broker entrega a este cliente
+    private int receiveWindow;
+    @Value("${mqtt.redelivery.min-interval-ms:5000}") // Tiempo minimo entre reconexiones para forzar reentregas
+    private long redeliveryIntervalMs;
+    @Value("${mqtt.persistence.path:}")         // Directorio de persistencia del cliente (vacio = en memoria)
+    private String persistencePath;
+    @Value("${mqtt.client.unique-suffix:false}") // Agregar una marca de tiempo al ID del cliente en cada arranque
+    private boolean uniqueSuffix;
 
 
     /**
-     * Constructor de la clase MqttController que inyecta los servicios necesarios
+     * Constructor de la clase MqttController que inyecta el pipeline de ingesta y los filtros de suscripción
      */
-    public MqttController(UserService userService, LocationService locationService, MeasurementService measurementService, DeviceService deviceService, DataService dataService) {
-        this.userService = userService;
-        this.locationService = locationService;
-        this.measurementService = measurementService;
-        this.deviceService = deviceService;
-        this.dataService = dataService;
+    public MqttController(IngestPipeline ingestPipeline, MqttSubscriptions subscriptions,
+                          ObjectProvider<MeterRegistry> meterRegistry) {
+        this.ingestPipeline = ingestPipeline;
+        this.subscriptions = subscriptions;
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("mqtt.inflight", ingestPipeline, IngestPipeline::pendingAckCount)
+                    .description("Mensajes QoS 1/2 recibidos cuya confirmacion espera a que se guarden").register(registry);
+        }
     }
 
     /**
@@ -79,47 +105,102 @@ public class MqttController {
     @PostConstruct
     public void init() throws CertificateException, KeyStoreException, MqttException, NoSuchAlgorithmException, IOException, KeyManagementException {
 
-        // Cargar el certificado de Let's Encrypt para TLS
-        SSLSocketFactory socketFactory = getSocketFactoryWithLetsEncrypt();
-
-        MqttConnectOptions options = new MqttConnectOptions();
+        options = new MqttConnectOptions();
         options.setUserName(this.username);
         options.setPassword(this.password.toCharArray());
         options.setAutomaticReconnect(true);
         options.setKeepAliveInterval(60);
         options.setConnectionTimeout(30);
         options.setCleanSession(false);
-        options.setSocketFactory(socketFactory);  // Configuración de TLS
-
-        // Crear el cliente MQTT con el ID, el broker URL y con persistencia en memoria
-        client = new MqttAsyncClient(this.brokerUrl, this.generateClientId(), new MemoryPersistence());
+        if (this.brokerUrl.startsWith("ssl://")) {
+            // Cargar el certificado de Let's Encrypt para TLS; con tcp:// (p. ej. un broker local de pruebas) no aplica
+            options.setSocketFactory(getSocketFactoryWithLetsEncrypt());
+        }
+        options.setMaxInflight(this.maxInflight);  // Solo limita las publicaciones de este cliente
+
+        // Crear el cliente MQTT con el ID, el broker URL y con persistencia en archivos o en memoria
+        MqttClientPersistence persistence = this.persistencePath == null || this.persistencePath.isBlank()
+                ? new MemoryPersistence() : new MqttDefaultFilePersistence(this.persistencePath);
+        client = new MqttAsyncClient(this.brokerUrl, this.generateClientId(), persistence);
+        // Con QoS 1/2 el ack al broker se envia cuando el lote que contiene el mensaje queda guardado
+        boolean acknowledgeAfterCommit = this.manualAcks && this.qos > 0;
+        client.setManualAcks(acknowledgeAfterCommit);
+        if (acknowledgeAfterCommit) {
+            // El broker deja de entregar al llegar a la ventana: los lotes no esperan a llenarse. Los mensajes
+            // abandonados solo se reentregan al reconectar (MQTT 3.1.1), por eso se fuerza una reconexion
+            ingestPipeline.setReceiveWindow(this.receiveWindow);
+            ingestPipeline.setRedeliveryHandler(this::requestRedelivery);
+        }
         MqttCallback callback = new MqttCallback() {
 
             // Metodo que se ejecuta cuando se pierde la conexión
             @Override
             public void connectionLost(Throwable cause) {
+                connection.incrementAndGet();
                 logger.error("Conexión perdida: {}", cause.getMessage());
                 logger.info("Intento de reconexion al broker MQTT...");
                 connect(options, true); // Intentar reconectar
                 logger.info("Reconectado al broker MQTT");
             }
 
-            // Metodo que se ejecuta cuando se recibe un mensaje
+            // Metodo que se ejecuta cuando se recibe un mensaje: solo se encola, el procesamiento ocurre en el pipeline
             @Override
             public void messageArrived(String topic, MqttMessage message) throws Exception {
-                processMessage(topic, message); // Procesar el mensaje recibido
+                if (acknowledgeAfterCommit && message.getQos() > 0) {
+                    // Si no se acepta, el pipeline lo abandona y pide su reentrega
+                    int generation = connection.get();
+                    ingestPipeline.offer(topic, message.getPayload(), new DeliveryAck(() -> acknowledge(message, generation)));
+                } else {
+                    ingestPipeline.offer(topic, message.getPayload());
+                }
             }
 
             // Metodo que se ejecuta cuando se completa la entrega de un mensaje
             @Override
             public void deliveryComplete(IMqttDeliveryToken token) {
-                logger.info("Entrega completa");
+                logger.debug("Entrega completa");
             }
         };
         client.setCallback(callback);  // Establecer el callback
         this.connect(options, false); // Conectar al broker MQTT
     }
 
+    /**
+     * Envía al broker la confirmación de un mensaje recibido con QoS 1/2. Si el mensaje llegó por una conexión
+     * anterior no se confirma: el broker ya lo reentregó por la conexión actual y su identificador podría
+     * corresponder ahora a otro mensaje.
+     */
+    private void acknowledge(MqttMessage message, int generation) {
+        if (generation != connection.get()) {
+            logger.debug("Confirmacion del mensaje {} de una conexion anterior omitida", message.getId());
+            return;
+        }
+        try {
+            client.messageArrivedComplete(message.getId(), message.getQos());
+        } catch (MqttException e) {
+            logger.error("Error al confirmar el mensaje {}: {}", message.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Programa una reconexión para que el broker vuelva a entregar los mensajes abandonados, como mucho una
+     * vez por intervalo; los abandonos mientras hay una programada se atienden con esa misma reconexión
+     */
+    private void requestRedelivery() {
+        if (redeliveryScheduled.compareAndSet(false, true)) {
+            long delay = Math.max(0, lastRedelivery.get() + redeliveryIntervalMs - System.currentTimeMillis());
+            redeliveryScheduler.schedule(this::redeliver, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void redeliver() {
+        redeliveryScheduled.set(false);
+        lastRedelivery.set(System.currentTimeMillis());
+        logger.warn("Reconectando al broker para que reentregue los mensajes sin confirmar");
+        connection.incrementAndGet();
+        connect(options, true);
+    }
+
     /**
      * Metodo que se encarga de conectar el cliente MQTT
      */
@@ -129,7 +210,7 @@ public class MqttController {
                 logger.info("Reconectando al broker MQTT: {}", this.brokerUrl);
                 if (client.isConnected()) {
                     logger.info("El cliente aun esta en estado conectado");
-                    IMqttToken disconnectToken = this.client.disconnect();
+                    IMqttToken disconnectToken = this.client.disconnect(1000);
                     disconnectToken.waitForCompletion(10000);
                     logger.info("Desconexion exitosa");
                 }
@@ -137,62 +218,16 @@ public class MqttController {
             logger.info("Conectando al broker MQTT: {}", this.brokerUrl);
             client.connect(options).waitForCompletion();
             logger.info("Conexión exitosa");
-            client.subscribe(this.topic, this.qos);
-            logger.info("Suscrito al tópico: {}", this.topic);
+            String[] filters = subscriptions.filters().toArray(new String[0]);
+            int[] qosLevels = new int[filters.length];
+            Arrays.fill(qosLevels, this.qos);
+            client.subscribe(filters, qosLevels);
+            logger.info("Suscrito a los tópicos: {}", subscriptions.filters());
         } catch (MqttException e) {
             logger.error("Error al conectar: {}", e.getMessage());
         }
     }
 
-    /**
-     * Metodo que se encarga de procesar los mensajes recibidos
-     *
-     * @param topic   Tópico del mensaje
-     * @param message Mensaje MQTT
-     */
-    private void processMessage(String topic, MqttMessage message) {
-        String payload = new String(message.getPayload());
-        logger.info("Mensaje recibido!!: {}", payload);
-
-        // Extraer datos del tópico
-        String[] topicData = topic.split("/");        
-        String country = topicData[0];
-        String state = topicData[1];
-        String city = topicData[2];
-        String deviceId = topicData[3];
-        String user = topicData[4];
-
-        // Obtener o crear el usuario y la ubicación
-        User userObj = userService.getUser(user);
-        Location locationObj = locationService.getOrCreateLocation(city, state, country);
-
-        // Crear un ObjectMapper para procesar el payload JSON
-        ObjectMapper objectMapper = new ObjectMapper();
-
-        try {
-            // Convertir el payload JSON a un Map
-            Map<String, Object> jsonPayload = objectMapper.readValue(payload, Map.class);
-
-            // Iterar sobre las variables del JSON para registrar las mediciones
-            for (Map.Entry<String, Object> entry : jsonPayload.entrySet()) {
-                String variable = entry.getKey();
-                float value = ((Number) entry.getValue()).floatValue();
-
-                // Obtener o crear la variable de medición
-                Measurement variableObj = measurementService.getOrCreateMeasurement(variable);
-
-                // Obtener o crear el dispositivo asociado al usuario y la ubicación
-                Device deviceObj = deviceService.getOrCreateDevice(deviceId, userObj, locationObj);
-
-                // Registrar la medición en la base de datos
-                dataService.createData(value, deviceObj, variableObj, ZonedDateTime.now());
-            }
-        } catch (Exception e) {
-            // Manejo de excepciones en caso de error al procesar el JSON o almacenar datos
-            logger.error("Error al procesar el payload JSON: {}", e.getMessage());
-        }
-    }
-
     /**
      * Metodo que se encarga de configurar el contexto SSL con el certificado público de Let's Encrypt
      *
@@ -238,6 +273,10 @@ public class MqttController {
         } catch (UnknownHostException e) {
             logger.error("Error al obtener el nombre del host: {}", e.getMessage());
         }
+        if (!this.uniqueSuffix) {
+            // ID estable: la sesion persistente del broker (cleanSession=false) sobrevive a los reinicios
+            return this.clientId + "-" + hostname;
+        }
         long timestamp = System.currentTimeMillis();
         return this.clientId + "-" + hostname + "-" + timestamp;
     }
@@ -0,0 +1,59 @@
+package com.denkitronik.receiveriot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Filtros de suscripción de esta instancia para poder ejecutar varias réplicas de receiver-iot:
+ * <ul>
+ *     <li>Particiones estáticas: cada instancia se suscribe solo a sus filtros (p. ej. colombia/valle/+/+/+/+),
+ *     así todos los mensajes de un dispositivo llegan siempre a la misma instancia y sus cachés.</li>
+ *     <li>Suscripciones compartidas: con {@code $share/<grupo>/} el broker reparte cada mensaje a una sola
+ *     de las instancias del grupo. El reparto no es por dispositivo, por eso combinado con particiones
+ *     sirve para tener varias réplicas por partición.</li>
+ * </ul>
+ * Sin particiones ni grupo se usa el tópico configurado en mqtt.topic, como una sola instancia.
+ */
+@Component
+public class MqttSubscriptions {
+
+    private static final String SHARE_PREFIX = "$share/";
+
+    private final List<String> filters;
+
+    public MqttSubscriptions(@Value("${mqtt.topic}") String topic,
+                             @Value("${mqtt.cluster.shared:false}") boolean shared,
+                             @Value("${mqtt.cluster.group:receiver-iot}") String group,
+                             @Value("${mqtt.cluster.partitions:}") String partitions) {
+        List<String> base = new ArrayList<>();
+        if (partitions != null) {
+            // Lista de filtros separados por comas
+            for (String partition : partitions.split(",")) {
+                if (!partition.isBlank()) {
+                    base.add(partition.trim());
+                }
+            }
+        }
+        if (base.isEmpty()) {
+            base.add(topic);
+        }
+        if (shared) {
+            if (group == null || group.isBlank() || group.contains("/") || group.contains("+") || group.contains("#")) {
+                throw new IllegalArgumentException("Nombre de grupo de suscripcion compartida invalido: '" + group + "'");
+            }
+            base.replaceAll(filter -> SHARE_PREFIX + group + "/" + filter);
+        }
+        this.filters = Collections.unmodifiableList(base);
+    }
+
+    /**
+     * @return Filtros de tópico a los que se suscribe esta instancia
+     */
+    public List<String> filters() {
+        return filters;
+    }
+}
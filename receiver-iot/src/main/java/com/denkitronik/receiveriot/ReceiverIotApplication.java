@@ -1,13 +1,23 @@
 package com.denkitronik.receiveriot;
 
+import com.denkitronik.receiveriot.export.ExportCommand;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.util.Arrays;
+
 @SpringBootApplication
 public class ReceiverIotApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(ReceiverIotApplication.class, args);
+        SpringApplication application = new SpringApplication(ReceiverIotApplication.class);
+        if (Arrays.asList(args).contains("--" + ExportCommand.PROFILE)) {
+            // Exportacion por linea de comandos: sin web, MQTT, ingesta ni cambios de esquema (application-export.properties)
+            application.setWebApplicationType(WebApplicationType.NONE);
+            application.setAdditionalProfiles(ExportCommand.PROFILE);
+        }
+        application.run(args);
     }
 
 }
@@ -0,0 +1,84 @@
+package com.denkitronik.receiveriot.api;
+
+import com.denkitronik.receiveriot.export.ExportCompression;
+import com.denkitronik.receiveriot.export.ExportQuery;
+import com.denkitronik.receiveriot.export.ExportService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * API REST de exportación masiva de mediciones en CSV (opcionalmente gzip o zstd).
+ * <p>
+ * GET /api/export?from=2024-10-01T00:00:00Z&to=2024-11-01T00:00:00Z&device=esp32-01&compression=gzip
+ */
+@RestController
+@RequestMapping("/api/export")
+public class ExportController {
+
+    private static final MediaType CSV = MediaType.parseMediaType("text/csv");
+
+    private final ExportService exportService;
+
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    /**
+     * Exporta las mediciones del rango
+     *
+     * @param from        Inicio del rango (ISO-8601, incluido)
+     * @param to          Fin del rango (ISO-8601, excluido)
+     * @param device      client-id del dispositivo (opcional)
+     * @param variable    Nombre de la variable (opcional)
+     * @param compression none, gzip o zstd
+     * @return Archivo CSV escrito en streaming (503 si ya hay demasiadas exportaciones en curso)
+     */
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam String from, @RequestParam String to,
+                                                        @RequestParam(required = false) String device,
+                                                        @RequestParam(required = false) String variable,
+                                                        @RequestParam(defaultValue = "gzip") String compression) {
+        ExportQuery query;
+        ExportCompression codec;
+        try {
+            codec = ExportCompression.parse(compression);
+            query = exportService.query(parseInstant(from), parseInstant(to), device, variable);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        ExportService.Permit permit;
+        try {
+            permit = exportService.acquire();
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+        String fileName = "data-" + from.replace(":", "") + "-" + to.replace(":", "") + ".csv" + codec.getExtension();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        MediaType type = codec == ExportCompression.NONE ? CSV : MediaType.APPLICATION_OCTET_STREAM;
+        return response.contentType(type).body(out -> {
+            try (permit) {
+                exportService.export(query, codec, out);
+            }
+        });
+    }
+
+    private static long parseInstant(String value) {
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha invalida: " + value);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.denkitronik.receiveriot.api;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.ingest.LatestValueStore;
+import com.denkitronik.receiveriot.repositories.DeviceRepository;
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * API REST del último valor de cada sensor. Las lecturas salen del {@link LatestValueStore} que mantiene
+ * la ingesta, sin consultar la hypertable: una serie es una búsqueda O(1) y una instantánea por usuario o
+ * por ubicación es una búsqueda por cada dispositivo y variable.
+ * <p>
+ * GET /api/latest?device=esp32-01&variable=temperatura<br>
+ * GET /api/latest/all?user=admin<br>
+ * GET /api/latest/all?city=tulua&state=valle&country=colombia
+ */
+@RestController
+@RequestMapping("/api/latest")
+public class LatestValueController {
+
+    private final LatestValueStore latestValues;
+    private final DeviceRepository deviceRepository;
+    private final MeasurementRepository measurementRepository;
+
+    public LatestValueController(LatestValueStore latestValues, DeviceRepository deviceRepository, MeasurementRepository measurementRepository) {
+        this.latestValues = latestValues;
+        this.deviceRepository = deviceRepository;
+        this.measurementRepository = measurementRepository;
+    }
+
+    /**
+     * Último valor de una variable de un dispositivo
+     *
+     * @param device   client-id del dispositivo
+     * @param variable Nombre de la variable
+     * @return La lectura más reciente
+     */
+    @GetMapping
+    public Reading latest(@RequestParam String device, @RequestParam String variable) {
+        Device deviceObj = deviceRepository.findByClientId(device)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Dispositivo no encontrado: " + device));
+        Measurement variableObj = measurementRepository.findByName(variable)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Variable no encontrada: " + variable));
+        LatestValueStore.LatestValue value = latestValues.get(deviceObj.getId(), variableObj.getId());
+        if (value == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Sin mediciones para " + device + "/" + variable);
+        }
+        return new Reading(device, variable, value.time(), value.value());
+    }
+
+    /**
+     * Instantánea de los últimos valores de todos los dispositivos de un usuario o de una ubicación
+     *
+     * @param user    Usuario dueño de los dispositivos
+     * @param city    Ciudad de la ubicación (junto con state y country)
+     * @param state   Estado o departamento de la ubicación
+     * @param country País de la ubicación
+     * @return Las lecturas de todas las series con valor
+     */
+    @GetMapping("/all")
+    public List<Reading> snapshot(@RequestParam(required = false) String user, @RequestParam(required = false) String city,
+                                  @RequestParam(required = false) String state, @RequestParam(required = false) String country) {
+        List<Device> devices;
+        if (user != null) {
+            devices = deviceRepository.findByUserUsername(user);
+        } else if (city != null && state != null && country != null) {
+            devices = deviceRepository.findByLocationCityAndLocationStateAndLocationCountry(city, state, country);
+        } else {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Indique 'user' o 'city', 'state' y 'country'");
+        }
+        List<Measurement> variables = measurementRepository.findAll();
+        List<Reading> readings = new ArrayList<>();
+        for (Device device : devices) {
+            for (Measurement variable : variables) {
+                LatestValueStore.LatestValue value = latestValues.get(device.getId(), variable.getId());
+                if (value != null) {
+                    readings.add(new Reading(device.getClientId(), variable.getName(), value.time(), value.value()));
+                }
+            }
+        }
+        return readings;
+    }
+
+    /**
+     * Lectura más reciente de una serie
+     *
+     * @param device   client-id del dispositivo
+     * @param variable Nombre de la variable
+     * @param t        Marca de tiempo en milisegundos desde epoch
+     * @param v        Valor medido
+     */
+    public record Reading(String device, String variable, long t, float v) {
+    }
+}
@@ -0,0 +1,53 @@
+package com.denkitronik.receiveriot.api;
+
+import com.denkitronik.receiveriot.live.LiveFeed;
+import com.denkitronik.receiveriot.live.LivePolicy;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Canal en vivo (Server-Sent Events) con las mediciones a medida que se decodifican. Cada evento
+ * "samples" lleva un arreglo JSON con las mediciones acumuladas desde el envío anterior.
+ * <p>
+ * GET /api/live?pattern=colombia/valle/+/+/temperatura&pattern=colombia/antioquia/#&policy=conflate
+ */
+@RestController
+@RequestMapping("/api/live")
+public class LiveController {
+
+    private final LiveFeed liveFeed;
+
+    public LiveController(LiveFeed liveFeed) {
+        this.liveFeed = liveFeed;
+    }
+
+    /**
+     * Abre una suscripción en vivo
+     *
+     * @param pattern Uno o más patrones país/estado/ciudad/dispositivo/variable ('+' y '#' como comodines)
+     * @param policy  conflate (último valor por serie) o drop_oldest
+     * @param buffer  Capacidad del buffer del suscriptor (limitada por live.buffer.capacity)
+     * @return Conexión SSE
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter live(@RequestParam List<String> pattern, @RequestParam(defaultValue = "conflate") String policy,
+                           @RequestParam(required = false) Integer buffer) {
+        try {
+            LivePolicy livePolicy = LivePolicy.valueOf(policy.trim().toUpperCase(Locale.ROOT));
+            return liveFeed.subscribe(pattern, livePolicy, buffer).getEmitter();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+}
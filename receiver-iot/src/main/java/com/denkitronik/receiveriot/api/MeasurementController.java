@@ -0,0 +1,46 @@
+package com.denkitronik.receiveriot.api;
+
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import org.springframework.data.domain.Sort;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * API REST del catálogo de variables. Los dispositivos que publican en CBOR consultan aquí el id de cada
+ * variable para usarlo como clave en lugar del nombre.
+ * <p>
+ * GET /api/measurements
+ */
+@RestController
+@RequestMapping("/api/measurements")
+public class MeasurementController {
+
+    private final MeasurementRepository measurementRepository;
+
+    public MeasurementController(MeasurementRepository measurementRepository) {
+        this.measurementRepository = measurementRepository;
+    }
+
+    /**
+     * Variables registradas, ordenadas por id
+     */
+    @GetMapping
+    public List<Variable> measurements() {
+        return measurementRepository.findAll(Sort.by("id")).stream()
+                .map(measurement -> new Variable(measurement.getId(), measurement.getName(), measurement.getUnit()))
+                .toList();
+    }
+
+    /**
+     * Variable del catálogo
+     *
+     * @param id   Id a usar como clave en los payloads CBOR
+     * @param name Nombre de la variable
+     * @param unit Unidad de medida
+     */
+    public record Variable(long id, String name, String unit) {
+    }
+}
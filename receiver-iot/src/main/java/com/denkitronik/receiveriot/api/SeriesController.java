@@ -0,0 +1,196 @@
+package com.denkitronik.receiveriot.api;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.repositories.DeviceRepository;
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import com.denkitronik.receiveriot.services.SeriesQueryService;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API REST de consulta de series de tiempo. La respuesta JSON se escribe mientras se recorre el cursor
+ * de la base de datos, por lo que el tamaño del rango consultado no se refleja en el heap.
+ * <p>
+ * GET /api/series?device=esp32-01&variable=temperatura&from=2024-10-01T00:00:00Z&to=2024-11-01T00:00:00Z&bucket=1h
+ */
+@RestController
+@RequestMapping("/api/series")
+public class SeriesController {
+
+    private static final Logger logger = LoggerFactory.getLogger(SeriesController.class);
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int FLUSH_ROWS = 1000;  // Filas escritas entre cada envío parcial al cliente
+
+    private final SeriesQueryService seriesQueryService;
+    private final DeviceRepository deviceRepository;
+    private final MeasurementRepository measurementRepository;
+    private final long maxBuckets;         // Máximo de intervalos por consulta agregada
+    private final long maxRawRangeMs;      // Rango máximo de una consulta sin agregar
+    private final long p99TargetMs;        // Objetivo de latencia p99 de las consultas del tablero
+    private final Timer bucketLatency;
+    private final Timer rawLatency;
+
+    public SeriesController(SeriesQueryService seriesQueryService, DeviceRepository deviceRepository,
+                            MeasurementRepository measurementRepository,
+                            @Value("${api.series.max-buckets:100000}") long maxBuckets,
+                            @Value("${api.series.max-raw-range-ms:86400000}") long maxRawRangeMs,
+                            @Value("${api.series.p99-target-ms:500}") long p99TargetMs,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.seriesQueryService = seriesQueryService;
+        this.deviceRepository = deviceRepository;
+        this.measurementRepository = measurementRepository;
+        this.maxBuckets = maxBuckets;
+        this.maxRawRangeMs = maxRawRangeMs;
+        this.p99TargetMs = p99TargetMs;
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        this.bucketLatency = registry == null ? null : latencyTimer(registry, "bucket");
+        this.rawLatency = registry == null ? null : latencyTimer(registry, "raw");
+    }
+
+    /**
+     * Consulta la serie de una variable de un dispositivo
+     *
+     * @param device   client-id del dispositivo
+     * @param variable Nombre de la variable (p. ej. temperatura)
+     * @param from     Inicio del rango (ISO-8601, incluido)
+     * @param to       Fin del rango (ISO-8601, excluido); por defecto el instante actual
+     * @param bucket   Ancho de los intervalos (p. ej. 1m, 1h, PT15M); sin él se devuelven las mediciones sin agregar
+     * @return Cuerpo JSON escrito en streaming
+     */
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> series(@RequestParam String device, @RequestParam String variable,
+                                                        @RequestParam String from, @RequestParam(required = false) String to,
+                                                        @RequestParam(required = false) String bucket) {
+        long fromMillis = parseInstant("from", from);
+        long toMillis = to == null || to.isBlank() ? System.currentTimeMillis() : parseInstant("to", to);
+        if (toMillis <= fromMillis) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El parametro 'to' debe ser posterior a 'from'");
+        }
+        long bucketMs = bucket == null || bucket.isBlank() ? 0 : parseBucket(bucket);
+        if (bucketMs > 0 && (toMillis - fromMillis) / bucketMs > maxBuckets) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El rango produce mas de " + maxBuckets + " intervalos; use un 'bucket' mayor");
+        }
+        if (bucketMs == 0 && toMillis - fromMillis > maxRawRangeMs) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El rango sin agregar supera " + maxRawRangeMs + " ms; indique un 'bucket'");
+        }
+
+        Device deviceObj = deviceRepository.findByClientId(device)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Dispositivo no encontrado: " + device));
+        Measurement variableObj = measurementRepository.findByName(variable)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Variable no encontrada: " + variable));
+        long deviceId = deviceObj.getId();
+        long variableId = variableObj.getId();
+
+        StreamingResponseBody body = out -> {
+            long start = System.nanoTime();
+            try (JsonGenerator json = JSON.createGenerator(out, JsonEncoding.UTF8)) {
+                json.writeStartObject();
+                json.writeStringField("device", device);
+                json.writeStringField("variable", variable);
+                json.writeNumberField("from", fromMillis);
+                json.writeNumberField("to", toMillis);
+                if (bucketMs > 0) {
+                    json.writeNumberField("bucket", bucketMs);
+                }
+                json.writeArrayFieldStart("points");
+                long[] rows = {0};
+                if (bucketMs > 0) {
+                    seriesQueryService.streamBuckets(deviceId, variableId, fromMillis, toMillis, bucketMs, (time, avg, min, max, count) -> {
+                        json.writeStartObject();
+                        json.writeNumberField("t", time);
+                        json.writeNumberField("avg", avg);
+                        json.writeNumberField("min", min);
+                        json.writeNumberField("max", max);
+                        json.writeNumberField("count", count);
+                        json.writeEndObject();
+                        flushEvery(json, ++rows[0]);
+                    });
+                } else {
+                    seriesQueryService.streamRaw(deviceId, variableId, fromMillis, toMillis, (time, value) -> {
+                        json.writeStartObject();
+                        json.writeNumberField("t", time);
+                        json.writeNumberField("v", value);
+                        json.writeEndObject();
+                        flushEvery(json, ++rows[0]);
+                    });
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            } finally {
+                record(bucketMs > 0 ? bucketLatency : rawLatency, System.nanoTime() - start, device, variable);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private static void flushEvery(JsonGenerator json, long rows) throws IOException {
+        if (rows % FLUSH_ROWS == 0) {
+            json.flush();
+        }
+    }
+
+    private void record(Timer timer, long elapsedNanos, String device, String variable) {
+        if (timer != null) {
+            timer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (elapsedMs > p99TargetMs) {
+            logger.warn("Consulta de serie lenta ({} ms, objetivo p99 {} ms): {}/{}", elapsedMs, p99TargetMs, device, variable);
+        }
+    }
+
+    private Timer latencyTimer(MeterRegistry registry, String mode) {
+        return Timer.builder("api.series.latency")
+                .description("Tiempo de respuesta de /api/series (objetivo p99 en api.series.p99-target-ms)")
+                .tag("mode", mode)
+                .publishPercentiles(0.99)
+                .serviceLevelObjectives(Duration.ofMillis(p99TargetMs))
+                .register(registry);
+    }
+
+    private static long parseInstant(String name, String value) {
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Parametro '" + name + "' invalido: " + value);
+        }
+    }
+
+    private static long parseBucket(String value) {
+        try {
+            long bucketMs = DurationStyle.detectAndParse(value).toMillis();
+            if (bucketMs > 0) {
+                return bucketMs;
+            }
+        } catch (IllegalArgumentException e) {
+            // Se informa abajo como parametro invalido
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Parametro 'bucket' invalido: " + value);
+    }
+}
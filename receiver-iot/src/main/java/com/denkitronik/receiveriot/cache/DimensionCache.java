@@ -0,0 +1,197 @@
+package com.denkitronik.receiveriot.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Caché acotada y concurrente para las dimensiones (usuario, ubicación, variable, dispositivo)
+ * que se resuelven en cada mensaje.
+ * <ul>
+ *     <li>Expira las entradas después del TTL configurado.</li>
+ *     <li>Cuando supera el tamaño máximo desaloja las entradas usadas hace más tiempo.</li>
+ *     <li>Creación de un solo vuelo (single-flight): si varios hilos piden la misma clave ausente
+ *     solo uno ejecuta la carga y el resto espera su resultado, evitando inserciones duplicadas.</li>
+ * </ul>
+ *
+ * @param <K> Tipo de la clave
+ * @param <V> Tipo del valor
+ */
+public class DimensionCache<K, V> {
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+
+    /**
+     * @param name       Nombre de la caché (para estadísticas)
+     * @param maxSize    Número máximo de entradas
+     * @param ttlMillis  Tiempo de vida de cada entrada en milisegundos (0 = sin expiración)
+     */
+    public DimensionCache(String name, int maxSize, long ttlMillis) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis <= 0 ? Long.MAX_VALUE : ttlMillis * 1_000_000L;
+    }
+
+    /**
+     * Obtiene el valor asociado a la clave, cargándolo una sola vez si no está en la caché
+     *
+     * @param key    Clave a buscar
+     * @param loader Función que carga (o crea) el valor cuando no está en la caché
+     * @return Valor asociado a la clave
+     */
+    public V get(K key, Function<K, V> loader) {
+        long now = System.nanoTime();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && !entry.isExpired(now)) {
+            hits.incrementAndGet();
+            entry.lastAccess = now;
+            return await(entry);
+        }
+
+        Entry<V> created = new Entry<>(now, ttlNanos);
+        Entry<V> current = entry == null
+                ? entries.putIfAbsent(key, created)
+                : (entries.replace(key, entry, created) ? null : entries.get(key));
+        if (current != null && current != created) {
+            // Otro hilo ya esta cargando (o cargo) la clave: se espera su resultado
+            hits.incrementAndGet();
+            return await(current);
+        }
+
+        misses.incrementAndGet();
+        try {
+            V value = loader.apply(key);
+            created.future.complete(value);
+        } catch (RuntimeException e) {
+            loadFailures.incrementAndGet();
+            entries.remove(key, created);
+            created.future.completeExceptionally(e);
+            throw e;
+        }
+        if (entries.size() > maxSize) {
+            evict();
+        }
+        return created.future.join();
+    }
+
+    /**
+     * Elimina una entrada de la caché
+     */
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Elimina todas las entradas de la caché
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Desaloja las entradas expiradas y, si aún sobra espacio ocupado, el 10% usado hace más tiempo
+     */
+    private synchronized void evict() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<Long> accesses = new ArrayList<>(entries.size());
+        entries.forEach((key, entry) -> {
+            if (entry.isExpired(now) && entries.remove(key, entry)) {
+                evictions.incrementAndGet();
+            } else {
+                accesses.add(entry.lastAccess);
+            }
+        });
+        int target = maxSize - maxSize / 10;
+        if (entries.size() <= target) {
+            return;
+        }
+        accesses.sort(null);
+        long threshold = accesses.get(Math.min(accesses.size() - 1, accesses.size() - target));
+        entries.forEach((key, entry) -> {
+            if (entry.lastAccess < threshold && entry.future.isDone() && entries.remove(key, entry)) {
+                evictions.incrementAndGet();
+            }
+        });
+    }
+
+    private V await(Entry<V> entry) {
+        try {
+            return entry.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    public long loadFailureCount() {
+        return loadFailures.get();
+    }
+
+    /**
+     * @return Proporción de aciertos sobre el total de consultas
+     */
+    public double hitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    /**
+     * Entrada de la caché: el futuro permite que varios hilos esperen una misma carga
+     */
+    private static final class Entry<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final long expiresAt;
+        private volatile long lastAccess;
+
+        private Entry(long now, long ttlNanos) {
+            this.expiresAt = ttlNanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + ttlNanos;
+            this.lastAccess = now;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt != Long.MAX_VALUE && now - expiresAt > 0;
+        }
+    }
+}
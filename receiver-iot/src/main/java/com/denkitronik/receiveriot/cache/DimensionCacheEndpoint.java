@@ -0,0 +1,58 @@
+package com.denkitronik.receiveriot.cache;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Endpoint de actuator (/actuator/dimensioncaches) con las estadísticas de aciertos y fallos
+ * de las cachés de dimensiones. Permite además vaciar una caché con DELETE.
+ */
+@Component
+@Endpoint(id = "dimensioncaches")
+public class DimensionCacheEndpoint {
+
+    private final DimensionCaches dimensionCaches;
+
+    public DimensionCacheEndpoint(DimensionCaches dimensionCaches) {
+        this.dimensionCaches = dimensionCaches;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> caches() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        dimensionCaches.all().forEach(cache -> result.put(cache.getName(), stats(cache)));
+        return result;
+    }
+
+    @ReadOperation
+    public Map<String, Object> cache(@Selector String name) {
+        DimensionCache<?, ?> cache = dimensionCaches.get(name);
+        return cache == null ? null : stats(cache);
+    }
+
+    @DeleteOperation
+    public void clear(@Selector String name) {
+        DimensionCache<?, ?> cache = dimensionCaches.get(name);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    private static Map<String, Object> stats(DimensionCache<?, ?> cache) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("maxSize", cache.getMaxSize());
+        stats.put("hits", cache.hitCount());
+        stats.put("misses", cache.missCount());
+        stats.put("hitRatio", cache.hitRatio());
+        stats.put("evictions", cache.evictionCount());
+        stats.put("loadFailures", cache.loadFailureCount());
+        return stats;
+    }
+}
@@ -0,0 +1,62 @@
+package com.denkitronik.receiveriot.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registro de las cachés de dimensiones. Crea cada caché con el tamaño y TTL configurados
+ * y publica sus estadísticas como métricas de Micrometer.
+ */
+@Component
+public class DimensionCaches {
+
+    private final Map<String, DimensionCache<?, ?>> caches = new ConcurrentSkipListMap<>();
+    private final int maxSize;
+    private final long ttlMillis;
+    private final MeterRegistry meterRegistry;
+
+    public DimensionCaches(@Value("${cache.dimensions.max-size:10000}") int maxSize,
+                           @Value("${cache.dimensions.ttl-ms:600000}") long ttlMillis,
+                           ObjectProvider<MeterRegistry> meterRegistry) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.meterRegistry = meterRegistry.getIfAvailable();
+    }
+
+    /**
+     * Crea y registra una caché con la configuración común
+     *
+     * @param name Nombre de la caché
+     */
+    public <K, V> DimensionCache<K, V> create(String name) {
+        DimensionCache<K, V> cache = new DimensionCache<>(name, maxSize, ttlMillis);
+        caches.put(name, cache);
+        if (meterRegistry != null) {
+            FunctionCounter.builder("dimension.cache.requests", cache, DimensionCache::hitCount)
+                    .tag("cache", name).tag("result", "hit").register(meterRegistry);
+            FunctionCounter.builder("dimension.cache.requests", cache, DimensionCache::missCount)
+                    .tag("cache", name).tag("result", "miss").register(meterRegistry);
+            FunctionCounter.builder("dimension.cache.evictions", cache, DimensionCache::evictionCount)
+                    .tag("cache", name).register(meterRegistry);
+            Gauge.builder("dimension.cache.size", cache, DimensionCache::size)
+                    .tag("cache", name).register(meterRegistry);
+        }
+        return cache;
+    }
+
+    public Collection<DimensionCache<?, ?>> all() {
+        return caches.values();
+    }
+
+    public DimensionCache<?, ?> get(String name) {
+        return caches.get(name);
+    }
+}
@@ -4,41 +4,75 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 
 /**
- * DataEntity que representa los datos de las mediciones de los dispositivos
+ * DataEntity que representa los datos de las mediciones de los dispositivos.
+ * La clave primaria es compuesta (unix_time, device_id, variable_id) para que varios escritores en paralelo
+ * puedan insertar muestras del mismo milisegundo sin colisionar; incluye unix_time porque la hypertable
+ * exige que la columna de particion forme parte de toda restriccion unica.
  */
 @Getter
 @Setter
 @Entity
+@IdClass(DataEntityId.class)
 @Table(name = "data")
-public class DataEntity {
+public class DataEntity implements Persistable<DataEntityId> {
+
+    private static final ZoneId BASE_TIME_ZONE = ZoneId.of("America/Bogota");
 
     @Id
     @Column(name = "unix_time", nullable = false)
-    private Long unixTime;
+    private Long unixTime;      // Tiempo de la medición: el del dispositivo si lo envió, si no el de recepción
     private float variableValue;
 
     @NotNull(message = "Base time cannot be null")
-    private ZonedDateTime baseTime;
+    private ZonedDateTime baseTime;     // Tiempo de ingesta en el servidor
 
+    @Id
     @NotNull(message = "Measurement cannot be null")
     @ManyToOne
     @JoinColumn(name = "variable_id")
     private Measurement variable;
 
+    @Id
     @NotNull(message = "Device cannot be null")
     @ManyToOne
     @JoinColumn(name = "device_id")
     private Device device;
 
+    // Las mediciones solo se insertan: evita que save() haga merge por tener parte de la clave asignada
+    @Transient
+    private boolean newEntity = true;
+
+    @Override
+    public DataEntityId getId() {
+        return new DataEntityId(unixTime,
+                device == null ? null : device.getId(),
+                variable == null ? null : variable.getId());
+    }
+
+    @Override
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.newEntity = false;
+    }
+
     @PrePersist
     public void prePersist() {
-        this.unixTime = System.currentTimeMillis();
-        ZoneId zoneId = ZoneId.of("America/Bogota");
-        this.setBaseTime(ZonedDateTime.now(zoneId));
+        // Respeta la marca de tiempo si ya fue asignada (por ejemplo por el escritor por lotes)
+        if (this.unixTime == null) {
+            this.unixTime = System.currentTimeMillis();
+        }
+        this.setBaseTime(ZonedDateTime.now(BASE_TIME_ZONE));
     }
 }
 
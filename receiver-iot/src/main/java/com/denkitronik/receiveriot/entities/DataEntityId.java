@@ -0,0 +1,24 @@
+package com.denkitronik.receiveriot.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Clave compuesta de DataEntity: (unix_time, device_id, variable_id).
+ * Dos muestras en el mismo milisegundo solo colisionan si son del mismo dispositivo y la misma variable.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class DataEntityId implements Serializable {
+    private Long unixTime;
+    private Long device;    // Id del dispositivo
+    private Long variable;  // Id de la variable
+}
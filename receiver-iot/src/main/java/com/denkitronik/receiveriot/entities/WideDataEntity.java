@@ -0,0 +1,45 @@
+package com.denkitronik.receiveriot.entities;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Mediciones de un mensaje en una sola fila (modo de almacenamiento WIDE): en lugar de repetir el dispositivo
+ * y las marcas de tiempo por cada variable, los ids de las variables y sus valores van en dos arreglos
+ * paralelos. La vista 'data_all' los desempaqueta con unnest para que las consultas vean filas de 'data'.
+ * Se escribe solo con el escritor por lotes; la entidad existe para que el esquema siga el ciclo de vida de JPA.
+ */
+@Getter
+@Setter
+@Entity
+@IdClass(WideDataEntityId.class)
+@Table(name = "data_wide")
+public class WideDataEntity {
+
+    @Id
+    @Column(name = "unix_time", nullable = false)
+    private Long unixTime;
+
+    @NotNull(message = "Base time cannot be null")
+    private ZonedDateTime baseTime;
+
+    @Id
+    @NotNull(message = "Device cannot be null")
+    @ManyToOne
+    @JoinColumn(name = "device_id")
+    private Device device;
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "variable_ids", nullable = false)
+    private long[] variableIds;
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "variable_values", nullable = false)
+    private float[] variableValues;
+}
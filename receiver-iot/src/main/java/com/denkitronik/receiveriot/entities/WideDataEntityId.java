@@ -0,0 +1,22 @@
+package com.denkitronik.receiveriot.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Clave compuesta de WideDataEntity: (unix_time, device_id). Cada mensaje de un dispositivo es una fila.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class WideDataEntityId implements Serializable {
+    private Long unixTime;
+    private Long device;    // Id del dispositivo
+}
@@ -0,0 +1,76 @@
+package com.denkitronik.receiveriot.export;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Modo de línea de comandos de la exportación: con --export la aplicación escribe el archivo y termina.
+ * Arranca con el perfil export, que deja fuera el cliente MQTT, el pipeline de ingesta, la geocodificación
+ * y la administración del esquema, así no compite con la instancia en servicio por su sesión MQTT ni toca sus tablas.
+ * <pre>
+ * java -jar receiver-iot.jar --export --from=2024-10-01T00:00:00Z --to=2024-11-01T00:00:00Z \
+ *      [--device=esp32-01] [--variable=temperatura] [--compression=zstd] --out=octubre.csv.zst
+ * </pre>
+ */
+@Component
+@Profile(ExportCommand.PROFILE)
+public class ExportCommand implements ApplicationRunner {
+
+    public static final String PROFILE = "export";
+    private static final Logger logger = LoggerFactory.getLogger(ExportCommand.class);
+
+    private final ExportService exportService;
+    private final ApplicationContext context;
+
+    public ExportCommand(ExportService exportService, ApplicationContext context) {
+        this.exportService = exportService;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        int exitCode = 0;
+        try {
+            ExportQuery query = exportService.query(Instant.parse(required(args, "from")).toEpochMilli(),
+                    Instant.parse(required(args, "to")).toEpochMilli(), option(args, "device"), option(args, "variable"));
+            ExportCompression compression = ExportCompression.parse(option(args, "compression"));
+            Path path = Path.of(required(args, "out"));
+            try (ExportService.Permit permit = exportService.acquire();
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+                long rows = exportService.export(query, compression, out);
+                logger.info("Exportadas {} filas a {}", rows, path.toAbsolutePath());
+            }
+        } catch (Exception e) {
+            logger.error("Error en la exportacion: {}", e.getMessage());
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+
+    private static String option(ApplicationArguments args, String name) {
+        List<String> values = args.getOptionValues(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static String required(ApplicationArguments args, String name) {
+        String value = option(args, name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Falta el parametro --" + name);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,56 @@
+package com.denkitronik.receiveriot.export;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresión de la salida de una exportación. Cada partición se comprime por separado y los
+ * fragmentos se concatenan: tanto gzip como zstd admiten varios miembros/frames seguidos.
+ */
+public enum ExportCompression {
+    NONE(""),
+    GZIP(".gz"),
+    ZSTD(".zst");
+
+    private final String extension;
+
+    ExportCompression(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Extensión que se agrega al nombre del archivo exportado
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Envuelve el flujo de salida con el compresor; al cerrarlo se completa el miembro comprimido
+     */
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return switch (this) {
+            case NONE -> out;
+            case GZIP -> new GZIPOutputStream(out, 64 * 1024);
+            case ZSTD -> new ZstdOutputStream(out, 3);
+        };
+    }
+
+    /**
+     * Interpreta el nombre de la compresión (none, gzip, zstd)
+     */
+    public static ExportCompression parse(String value) {
+        if (value == null || value.isBlank()) {
+            return NONE;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Compresion no soportada: " + value);
+        }
+    }
+}
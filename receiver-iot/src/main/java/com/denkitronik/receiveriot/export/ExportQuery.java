@@ -0,0 +1,18 @@
+package com.denkitronik.receiveriot.export;
+
+/**
+ * Rango y filtros de una exportación
+ *
+ * @param fromMillis Inicio del rango (incluido) en milisegundos desde epoch
+ * @param toMillis   Fin del rango (excluido) en milisegundos desde epoch
+ * @param deviceId   Id del dispositivo o null para todos
+ * @param variableId Id de la variable o null para todas
+ */
+public record ExportQuery(long fromMillis, long toMillis, Long deviceId, Long variableId) {
+
+    public ExportQuery {
+        if (toMillis <= fromMillis) {
+            throw new IllegalArgumentException("El fin del rango debe ser posterior al inicio");
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.denkitronik.receiveriot.export;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.repositories.DeviceRepository;
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import com.denkitronik.receiveriot.services.HyperTableService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exportación masiva de las mediciones (ver {@link HyperTableService#readSource()}) en CSV, opcionalmente comprimido con gzip o zstd.
+ * <p>
+ * El rango se divide por los chunks de las hypertables (los de 'data' y 'data_wide' que se solapan se unen) y varias particiones se leen en paralelo, cada una
+ * con su propio cursor del servidor. Cada partición codifica y comprime sus filas en bloques de tamaño
+ * fijo que deja en una cola acotada; el hilo que escribe la respuesta copia los bloques en orden de
+ * partición. Así la memoria usada depende del número de particiones en vuelo y del tamaño de los
+ * bloques, no del rango exportado.
+ * <p>
+ * Cada partición en vuelo ocupa una conexión del pool durante toda su lectura, así que solo se permiten
+ * export.max-concurrent exportaciones a la vez ({@link #acquire()}) y sus particiones no pueden ocupar más de
+ * la mitad del pool: el resto queda para la ingesta y la API.
+ */
+@Service
+public class ExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+    static final String HEADER = "unix_time,device,variable,value\n";
+    private static final String SELECT_SQL = "SELECT d.unix_time, dev.\"client-id\", m.name, d.variable_value FROM %s d"
+            + " JOIN device dev ON dev.id = d.device_id JOIN measurement m ON m.id = d.variable_id"
+            + " WHERE d.unix_time >= ? AND d.unix_time < ?";
+    private static final String CHUNKS_SQL = "SELECT range_start_integer, range_end_integer FROM timescaledb_information.chunks"
+            + " WHERE hypertable_name IN ('data', 'data_wide') AND range_end_integer > ? AND range_start_integer < ? ORDER BY range_start_integer";
+    private static final byte[] END = new byte[0];
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final String selectSql;
+    private final DeviceRepository deviceRepository;
+    private final MeasurementRepository measurementRepository;
+    private final int parallelism;       // Particiones leídas a la vez por exportación
+    private final int fetchSize;
+    private final int blockBytes;        // Tamaño de cada bloque de salida
+    private final int queueBlocks;       // Bloques en cola por partición
+    private final Semaphore exports;     // Exportaciones que pueden correr a la vez
+    private final ExecutorService executor;
+
+    public ExportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, HyperTableService hyperTableService,
+                         DeviceRepository deviceRepository, MeasurementRepository measurementRepository,
+                         @Value("${export.parallelism:4}") int parallelism,
+                         @Value("${export.fetch-size:10000}") int fetchSize,
+                         @Value("${export.block-bytes:1048576}") int blockBytes,
+                         @Value("${export.queue-blocks:4}") int queueBlocks,
+                         @Value("${export.max-concurrent:1}") int maxConcurrent,
+                         @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        if (Math.max(1, parallelism) * Math.max(1, maxConcurrent) > poolSize / 2) {
+            throw new IllegalArgumentException("export.parallelism x export.max-concurrent (" + parallelism + " x " + maxConcurrent
+                    + ") no puede superar la mitad del pool de conexiones (" + poolSize + ")");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.selectSql = SELECT_SQL.formatted(hyperTableService.readSource());
+        this.deviceRepository = deviceRepository;
+        this.measurementRepository = measurementRepository;
+        this.parallelism = Math.max(1, parallelism);
+        this.fetchSize = fetchSize;
+        this.blockBytes = blockBytes;
+        this.queueBlocks = Math.max(1, queueBlocks);
+        this.exports = new Semaphore(Math.max(1, maxConcurrent));
+        AtomicInteger threads = new AtomicInteger();
+        // Un hilo por partición en vuelo de cada exportación permitida
+        this.executor = Executors.newFixedThreadPool(this.parallelism * Math.max(1, maxConcurrent), task -> {
+            Thread thread = new Thread(task, "export-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reserva el turno de una exportación; se libera al cerrar el permiso
+     *
+     * @throws IllegalStateException si ya hay export.max-concurrent exportaciones en curso
+     */
+    public Permit acquire() {
+        if (!exports.tryAcquire()) {
+            throw new IllegalStateException("Demasiadas exportaciones en curso, intente mas tarde");
+        }
+        return new Permit();
+    }
+
+    /**
+     * Construye la consulta resolviendo el dispositivo y la variable por nombre
+     *
+     * @param device   client-id del dispositivo o null para todos
+     * @param variable Nombre de la variable o null para todas
+     * @throws IllegalArgumentException si el dispositivo o la variable no existen
+     */
+    public ExportQuery query(long fromMillis, long toMillis, String device, String variable) {
+        Long deviceId = null;
+        Long variableId = null;
+        if (device != null && !device.isBlank()) {
+            deviceId = deviceRepository.findByClientId(device).map(Device::getId)
+                    .orElseThrow(() -> new IllegalArgumentException("Dispositivo no encontrado: " + device));
+        }
+        if (variable != null && !variable.isBlank()) {
+            variableId = measurementRepository.findByName(variable).map(Measurement::getId)
+                    .orElseThrow(() -> new IllegalArgumentException("Variable no encontrada: " + variable));
+        }
+        return new ExportQuery(fromMillis, toMillis, deviceId, variableId);
+    }
+
+    /**
+     * Escribe la exportación en el flujo dado. El llamador debe tener un permiso ({@link #acquire()}).
+     *
+     * @param query       Rango y filtros
+     * @param compression Compresión de la salida
+     * @param out         Flujo de salida (no se cierra)
+     * @return Filas exportadas
+     */
+    public long export(ExportQuery query, ExportCompression compression, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        try (OutputStream header = compression.wrap(new NonClosingOutputStream(out))) {
+            header.write(HEADER.getBytes(StandardCharsets.US_ASCII));
+        }
+        List<long[]> partitions = partitions(query);
+        AtomicLong rows = new AtomicLong();
+        List<Partition> inFlight = new ArrayList<>();
+        int next = 0;
+        try {
+            while (next < partitions.size() || !inFlight.isEmpty()) {
+                while (next < partitions.size() && inFlight.size() < parallelism) {
+                    inFlight.add(submit(query, partitions.get(next++), compression, rows));
+                }
+                Partition current = inFlight.remove(0);
+                current.copyTo(out);
+            }
+        } finally {
+            // Si el cliente se desconectó o una partición falló, se detienen las lecturas pendientes
+            inFlight.forEach(partition -> partition.future.cancel(true));
+        }
+        out.flush();
+        logger.info("Exportacion de {} filas en {} particiones ({} ms)", rows.get(), partitions.size(), System.currentTimeMillis() - start);
+        return rows.get();
+    }
+
+    /**
+     * Particiones del rango alineadas con los chunks de la hypertable (una sola si no hay información de chunks)
+     */
+    List<long[]> partitions(ExportQuery query) {
+        List<long[]> partitions = new ArrayList<>();
+        try {
+            jdbcTemplate.query(CHUNKS_SQL, rs -> {
+                long start = Math.max(query.fromMillis(), rs.getLong(1));
+                long end = Math.min(query.toMillis(), rs.getLong(2));
+                long[] last = partitions.isEmpty() ? null : partitions.get(partitions.size() - 1);
+                if (last != null && start < last[1]) {
+                    // Chunks de las dos hypertables que se solapan: una sola partición para no repetir filas
+                    last[1] = Math.max(last[1], end);
+                } else {
+                    partitions.add(new long[]{start, end});
+                }
+            }, query.fromMillis(), query.toMillis());
+        } catch (Exception e) {
+            logger.warn("No se pudieron leer los chunks de la hypertable, se exporta en una sola particion: {}", e.getMessage());
+            partitions.clear();
+        }
+        if (partitions.isEmpty()) {
+            partitions.add(new long[]{query.fromMillis(), query.toMillis()});
+        }
+        return partitions;
+    }
+
+    private Partition submit(ExportQuery query, long[] range, ExportCompression compression, AtomicLong rows) {
+        BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(queueBlocks);
+        Partition partition = new Partition(blocks);
+        partition.future = executor.submit(() -> {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    compression.wrap(new BlockOutputStream(blocks, blockBytes)), StandardCharsets.UTF_8), 64 * 1024)) {
+                readPartition(query, range, writer, rows);
+            } catch (Exception e) {
+                partition.failure = e;
+            } finally {
+                putQuietly(blocks, END);
+            }
+        });
+        return partition;
+    }
+
+    private void readPartition(ExportQuery query, long[] range, BufferedWriter writer, AtomicLong rows) {
+        StringBuilder sql = new StringBuilder(selectSql);
+        List<Long> parameters = new ArrayList<>(List.of(range[0], range[1]));
+        if (query.deviceId() != null) {
+            sql.append(" AND d.device_id = ?");
+            parameters.add(query.deviceId());
+        }
+        if (query.variableId() != null) {
+            sql.append(" AND d.variable_id = ?");
+            parameters.add(query.variableId());
+        }
+        sql.append(" ORDER BY d.unix_time");
+        PreparedStatementCreator statement = connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql.toString());
+            // Con autocommit desactivado el driver de PostgreSQL trae las filas por bloques con un cursor
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < parameters.size(); i++) {
+                ps.setLong(i + 1, parameters.get(i));
+            }
+            return ps;
+        };
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(statement, rs -> {
+            try {
+                writeCsv(writer, rs.getLong(1), rs.getString(2), rs.getString(3), rs.getFloat(4));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows.incrementAndGet();
+        }));
+    }
+
+    static void writeCsv(BufferedWriter writer, long time, String device, String variable, float value) throws IOException {
+        writer.write(Long.toString(time));
+        writer.write(',');
+        writeField(writer, device);
+        writer.write(',');
+        writeField(writer, variable);
+        writer.write(',');
+        writer.write(Float.toString(value));
+        writer.write('\n');
+    }
+
+    private static void writeField(BufferedWriter writer, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static void putQuietly(BlockingQueue<byte[]> queue, byte[] block) {
+        try {
+            queue.put(block);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Turno de una exportación en curso
+     */
+    public final class Permit implements AutoCloseable {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                exports.release();
+            }
+        }
+    }
+
+    /**
+     * Partición en vuelo: sus bloques se copian a la salida en orden
+     */
+    private static final class Partition {
+        private final BlockingQueue<byte[]> blocks;
+        private volatile Future<?> future;
+        private volatile Exception failure;
+
+        private Partition(BlockingQueue<byte[]> blocks) {
+            this.blocks = blocks;
+        }
+
+        private void copyTo(OutputStream out) throws IOException {
+            try {
+                for (byte[] block = blocks.take(); block != END; block = blocks.take()) {
+                    out.write(block);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Exportacion interrumpida", e);
+            }
+            if (failure != null) {
+                throw new IOException("Error al exportar una particion: " + failure.getMessage(), failure);
+            }
+        }
+    }
+
+    /**
+     * Flujo que acumula bytes en bloques de tamaño fijo y los entrega a la cola de la partición
+     */
+    private static final class BlockOutputStream extends OutputStream {
+        private final BlockingQueue<byte[]> blocks;
+        private final byte[] buffer;
+        private int position;
+
+        private BlockOutputStream(BlockingQueue<byte[]> blocks, int blockBytes) {
+            this.blocks = blocks;
+            this.buffer = new byte[blockBytes];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (position == buffer.length) {
+                emit();
+            }
+            buffer[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (position == buffer.length) {
+                    emit();
+                }
+                int n = Math.min(len, buffer.length - position);
+                System.arraycopy(b, off, buffer, position, n);
+                position += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            emit();
+        }
+
+        private void emit() throws IOException {
+            if (position == 0) {
+                return;
+            }
+            byte[] block = new byte[position];
+            System.arraycopy(buffer, 0, block, 0, position);
+            position = 0;
+            try {
+                blocks.put(block);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Exportacion cancelada", e);
+            }
+        }
+    }
+
+    /**
+     * Evita que el compresor de la cabecera cierre la salida
+     */
+    private static final class NonClosingOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        private NonClosingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
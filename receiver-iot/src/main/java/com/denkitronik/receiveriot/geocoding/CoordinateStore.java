@@ -0,0 +1,107 @@
+package com.denkitronik.receiveriot.geocoding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tabla de coordenadas por ubicación respaldada por un archivo de texto separado por tabuladores:
+ * ciudad, estado, país, latitud y longitud, una ubicación por línea (las líneas con # son comentarios).
+ * Se usa tanto para el gazetteer local (solo lectura) como para la caché persistente de coordenadas
+ * ya resueltas, a la que se añade una línea por cada ubicación nueva.
+ */
+public class CoordinateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoordinateStore.class);
+
+    private final Path path;
+    private final boolean writable;
+    private final Map<String, Coordinates> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param path     Archivo de coordenadas (puede no existir)
+     * @param writable Si las coordenadas nuevas se añaden al archivo
+     */
+    public CoordinateStore(Path path, boolean writable) {
+        this.path = path;
+        this.writable = writable;
+    }
+
+    /**
+     * Carga el archivo en memoria; las líneas mal formadas se ignoran
+     *
+     * @return Número de ubicaciones cargadas
+     */
+    public synchronized int load() {
+        if (path == null || !Files.isRegularFile(path)) {
+            return 0;
+        }
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 5) {
+                    logger.debug("Linea ignorada en {}: {}", path, line);
+                    continue;
+                }
+                try {
+                    Coordinates coordinates = new Coordinates(Double.parseDouble(fields[3].trim()), Double.parseDouble(fields[4].trim()));
+                    entries.put(key(fields[0], fields[1], fields[2]), coordinates);
+                    loaded++;
+                } catch (NumberFormatException e) {
+                    logger.debug("Coordenadas invalidas en {}: {}", path, line);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("No se pudo leer el archivo de coordenadas {}: {}", path, e.getMessage());
+        }
+        return loaded;
+    }
+
+    /**
+     * @return Las coordenadas de la ubicación o null si no están en la tabla
+     */
+    public Coordinates get(String city, String state, String country) {
+        return entries.get(key(city, state, country));
+    }
+
+    /**
+     * Registra las coordenadas de una ubicación y, si la tabla es persistente, las añade al archivo
+     */
+    public synchronized void put(String city, String state, String country, Coordinates coordinates) {
+        if (entries.put(key(city, state, country), coordinates) != null || !writable || path == null) {
+            return;
+        }
+        String line = city + "\t" + state + "\t" + country + "\t" + coordinates.latitude() + "\t" + coordinates.longitude() + "\n";
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(path, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("No se pudo guardar en {} las coordenadas de {}: {}", path, city, e.getMessage());
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static String key(String city, String state, String country) {
+        return (country.trim() + "/" + state.trim() + "/" + city.trim()).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,10 @@
+package com.denkitronik.receiveriot.geocoding;
+
+/**
+ * Coordenadas geográficas de una ubicación
+ *
+ * @param latitude  Latitud en grados
+ * @param longitude Longitud en grados
+ */
+public record Coordinates(double latitude, double longitude) {
+}
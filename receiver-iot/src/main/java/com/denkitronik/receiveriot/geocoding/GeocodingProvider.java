@@ -0,0 +1,20 @@
+package com.denkitronik.receiveriot.geocoding;
+
+import java.util.Optional;
+
+/**
+ * Proveedor externo de geocodificación, consultado solo cuando la ubicación no está
+ * en el gazetteer local ni en la caché persistente de coordenadas
+ */
+public interface GeocodingProvider {
+
+    /**
+     * Busca las coordenadas de una ubicación
+     *
+     * @param city    Ciudad
+     * @param state   Estado o departamento
+     * @param country País
+     * @return Las coordenadas, o vacío si el proveedor no las conoce o no responde por ahora (p. ej. throttling)
+     */
+    Optional<Coordinates> lookup(String city, String state, String country);
+}
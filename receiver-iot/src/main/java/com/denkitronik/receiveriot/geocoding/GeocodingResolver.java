@@ -0,0 +1,294 @@
+package com.denkitronik.receiveriot.geocoding;
+
+import com.denkitronik.receiveriot.entities.Location;
+import com.denkitronik.receiveriot.repositories.LocationRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Resuelve en segundo plano las coordenadas de las ubicaciones creadas sin ellas, para que la ingesta
+ * nunca espere a la API de geocodificación.
+ * <ul>
+ *     <li>Busca primero en el gazetteer local y en la caché persistente de coordenadas.</li>
+ *     <li>Solo como último recurso consulta el {@link GeocodingProvider}, respetando un intervalo mínimo entre llamadas.</li>
+ *     <li>Las ubicaciones que no se pudieron resolver se reintentan con espera exponencial.</li>
+ *     <li>Las coordenadas se escriben en la base de datos por lotes.</li>
+ * </ul>
+ * Al arrancar se encolan las ubicaciones que quedaron pendientes en ejecuciones anteriores.
+ */
+@Component
+@Profile("!export")
+public class GeocodingResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeocodingResolver.class);
+    private static final String UPDATE_SQL = "UPDATE location SET latitude = ?, longitude = ? WHERE id = ?";
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+    private final LocationRepository locationRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final GeocodingProvider provider;
+    private final CoordinateStore gazetteer;        // Gazetteer local (solo lectura)
+    private final CoordinateStore coordinateCache;  // Coordenadas ya resueltas por el proveedor
+    private final long providerIntervalNanos;
+    private final int batchSize;
+    private final long batchLingerMs;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+
+    private final DelayQueue<PendingLocation> queue = new DelayQueue<>();
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private Thread worker;
+    private volatile boolean running;
+    private long nextProviderCall;
+
+    private final AtomicLong gazetteerHits = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong providerHits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public GeocodingResolver(LocationRepository locationRepository, JdbcTemplate jdbcTemplate, GeocodingProvider provider,
+                             @Value("${geocoding.gazetteer.path:geocoding/gazetteer.tsv}") String gazetteerPath,
+                             @Value("${geocoding.cache.path:geocoding/coordinates.tsv}") String cachePath,
+                             @Value("${geocoding.provider.min-interval-ms:1500}") long providerIntervalMs,
+                             @Value("${geocoding.batch.size:50}") int batchSize,
+                             @Value("${geocoding.batch.linger-ms:1000}") long batchLingerMs,
+                             @Value("${geocoding.max-attempts:5}") int maxAttempts,
+                             @Value("${geocoding.retry-delay-ms:60000}") long retryDelayMs,
+                             ObjectProvider<MeterRegistry> meterRegistry) {
+        this.locationRepository = locationRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.provider = provider;
+        this.gazetteer = new CoordinateStore(Path.of(gazetteerPath), false);
+        this.coordinateCache = new CoordinateStore(Path.of(cachePath), true);
+        this.providerIntervalNanos = TimeUnit.MILLISECONDS.toNanos(providerIntervalMs);
+        this.batchSize = batchSize;
+        this.batchLingerMs = batchLingerMs;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMs = retryDelayMs;
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            FunctionCounter.builder("geocoding.resolutions", gazetteerHits, AtomicLong::get).tag("source", "gazetteer").register(registry);
+            FunctionCounter.builder("geocoding.resolutions", cacheHits, AtomicLong::get).tag("source", "cache").register(registry);
+            FunctionCounter.builder("geocoding.resolutions", providerHits, AtomicLong::get).tag("source", "provider").register(registry);
+            FunctionCounter.builder("geocoding.failures", failures, AtomicLong::get)
+                    .description("Ubicaciones que agotaron los reintentos sin coordenadas").register(registry);
+            Gauge.builder("geocoding.pending", pending, Set::size).register(registry);
+        }
+    }
+
+    /**
+     * Carga el gazetteer y la caché de coordenadas, encola las ubicaciones pendientes y arranca el hilo de resolución
+     */
+    @PostConstruct
+    public void start() {
+        int places = gazetteer.load();
+        int cached = coordinateCache.load();
+        logger.info("Geocodificacion: {} ubicaciones en el gazetteer, {} en la cache de coordenadas", places, cached);
+        try {
+            locationRepository.findByLatitudeIsNullOrLongitudeIsNull().forEach(this::enqueue);
+        } catch (DataAccessException e) {
+            logger.warn("No se pudieron consultar las ubicaciones sin coordenadas: {}", e.getMessage());
+        }
+        running = true;
+        worker = new Thread(this::run, "geocoding-resolver");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Detiene el hilo de resolución escribiendo las coordenadas ya resueltas
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(SHUTDOWN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Encola una ubicación sin coordenadas para resolverlas en segundo plano. No bloquea.
+     *
+     * @param location Ubicación ya guardada
+     */
+    public void enqueue(Location location) {
+        if (location.getId() == null || (location.getLatitude() != null && location.getLongitude() != null)) {
+            return;
+        }
+        if (pending.add(location.getId())) {
+            queue.add(new PendingLocation(location, 0, 0));
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public long failureCount() {
+        return failures.get();
+    }
+
+    private void run() {
+        List<Resolved> batch = new ArrayList<>(batchSize);
+        while (running) {
+            PendingLocation next;
+            try {
+                next = queue.poll(batchLingerMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (next != null) {
+                Coordinates coordinates = resolve(next);
+                if (coordinates != null) {
+                    batch.add(new Resolved(next, coordinates));
+                }
+            }
+            if (batch.size() >= batchSize || (next == null && !batch.isEmpty())) {
+                flush(batch);
+            }
+        }
+        flush(batch);
+    }
+
+    /**
+     * Busca las coordenadas de la ubicación; si no las encuentra la reprograma o la da por fallida
+     */
+    Coordinates resolve(PendingLocation next) {
+        Location location = next.location;
+        String city = location.getCity();
+        String state = location.getState();
+        String country = location.getCountry();
+
+        Coordinates coordinates = gazetteer.get(city, state, country);
+        if (coordinates != null) {
+            gazetteerHits.incrementAndGet();
+            return coordinates;
+        }
+        coordinates = coordinateCache.get(city, state, country);
+        if (coordinates != null) {
+            cacheHits.incrementAndGet();
+            return coordinates;
+        }
+
+        awaitProviderSlot();
+        try {
+            Optional<Coordinates> found = provider.lookup(city, state, country);
+            if (found.isPresent()) {
+                providerHits.incrementAndGet();
+                coordinateCache.put(city, state, country, found.get());
+                return found.get();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Error al consultar las coordenadas de {}, {}, {}: {}", city, state, country, e.getMessage());
+        }
+        retry(next);
+        return null;
+    }
+
+    private void retry(PendingLocation next) {
+        int attempts = next.attempts + 1;
+        if (attempts >= maxAttempts) {
+            failures.incrementAndGet();
+            pending.remove(next.location.getId());
+            logger.warn("No se pudieron obtener las coordenadas de la ciudad {} tras {} intentos", next.location.getCity(), attempts);
+            return;
+        }
+        long delayMs = retryDelayMs << Math.min(attempts - 1, 10);
+        queue.add(new PendingLocation(next.location, attempts, delayMs));
+    }
+
+    /**
+     * Espera hasta que se cumpla el intervalo mínimo entre llamadas al proveedor
+     */
+    private void awaitProviderSlot() {
+        long wait;
+        while (running && (wait = nextProviderCall - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        nextProviderCall = System.nanoTime() + providerIntervalNanos;
+    }
+
+    /**
+     * Escribe las coordenadas resueltas en una sola ida y vuelta a la base de datos
+     */
+    void flush(List<Resolved> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(), (ps, resolved) -> {
+                ps.setDouble(1, resolved.coordinates.latitude());
+                ps.setDouble(2, resolved.coordinates.longitude());
+                ps.setLong(3, resolved.pending.location.getId());
+            });
+            for (Resolved resolved : batch) {
+                // Actualizar también la instancia que conservan las caches en memoria
+                Location location = resolved.pending.location;
+                location.setLatitude(resolved.coordinates.latitude());
+                location.setLongitude(resolved.coordinates.longitude());
+                pending.remove(location.getId());
+            }
+            logger.debug("Coordenadas actualizadas para {} ubicaciones", batch.size());
+        } catch (DataAccessException e) {
+            logger.error("Error al guardar las coordenadas de {} ubicaciones: {}", batch.size(), e.getMessage());
+            batch.forEach(resolved -> retry(resolved.pending));
+        }
+        batch.clear();
+    }
+
+    /**
+     * Ubicación en espera de coordenadas, con el número de intentos y el instante del próximo intento
+     */
+    static final class PendingLocation implements Delayed {
+        private final Location location;
+        private final int attempts;
+        private final long readyAt;
+
+        PendingLocation(Location location, int attempts, long delayMs) {
+            this.location = location;
+            this.attempts = attempts;
+            this.readyAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    record Resolved(PendingLocation pending, Coordinates coordinates) {
+    }
+}
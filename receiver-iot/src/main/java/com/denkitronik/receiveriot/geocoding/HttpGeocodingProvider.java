@@ -0,0 +1,57 @@
+package com.denkitronik.receiveriot.geocoding;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Proveedor de geocodificación por HTTP con la API de geocode.xyz. La URL base es configurable
+ * para apuntar a un servicio local de pruebas; si está vacía el proveedor queda desactivado.
+ */
+@Component
+public class HttpGeocodingProvider implements GeocodingProvider {
+
+    private final String baseUrl;
+    private final RestTemplate restTemplate;
+
+    public HttpGeocodingProvider(@Value("${geocoding.provider.url:https://geocode.xyz}") String baseUrl,
+                                 @Value("${geocoding.provider.timeout-ms:5000}") int timeoutMs) {
+        this.baseUrl = baseUrl;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMs);
+        requestFactory.setReadTimeout(timeoutMs);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public Optional<Coordinates> lookup(String city, String state, String country) {
+        if (baseUrl == null || baseUrl.isBlank()) {
+            return Optional.empty();
+        }
+        // Construir la URL para la API de geocode.xyz
+        String url = UriComponentsBuilder.fromHttpUrl(baseUrl)
+                .pathSegment(city, state, country)
+                .queryParam("json", "1")
+                .toUriString();
+
+        // Realizar la solicitud GET a la API y obtener la respuesta en un Map
+        Map<?, ?> response = restTemplate.getForObject(url, Map.class);
+        if (response == null || !(response.get("latt") instanceof String latt) || !(response.get("longt") instanceof String longt)) {
+            return Optional.empty();
+        }
+        // Si la respuesta contiene el mensaje "Throttled! See geocode.xyz/pricing" se reintentará más tarde
+        if (latt.contains("Throttled") || longt.contains("Throttled")) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new Coordinates(Double.parseDouble(latt), Double.parseDouble(longt)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
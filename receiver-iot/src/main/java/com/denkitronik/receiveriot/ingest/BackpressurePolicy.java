@@ -0,0 +1,13 @@
+package com.denkitronik.receiveriot.ingest;
+
+/**
+ * Política a aplicar cuando la cola de recepción está llena
+ */
+public enum BackpressurePolicy {
+    /** Espera a que haya espacio en la cola (frena el hilo de callback de Paho) */
+    BLOCK,
+    /** Descarta el mensaje más antiguo de la cola para hacer espacio al nuevo */
+    DROP_OLDEST,
+    /** Desborda los mensajes a un archivo local y los reinyecta cuando la cola se libera */
+    SPILL
+}
@@ -0,0 +1,228 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controlador adaptativo de la etapa de escritura: ajusta el tamaño de lote, el tiempo máximo de espera
+ * (linger) y el número de escritores que escriben a la vez en la base de datos para mantener el tiempo de
+ * commit cerca del objetivo. Los hilos de escritura reportan cada commit y cada error; una vez por intervalo
+ * el hilo que reporta aplica una regla AIMD con el promedio de la ventana y la profundidad de las colas:
+ * <ul>
+ *     <li>Congestión (errores o commit sobre el objetivo): el lote se reduce a la mitad y el linger se duplica;
+ *     con errores o commits de más del doble del objetivo también se reduce a la mitad la concurrencia.</li>
+ *     <li>Atraso (más de un lote por escritor esperando en las colas): el lote crece un paso y, si ya está en
+ *     el máximo, se agrega un escritor.</li>
+ *     <li>Poca carga (sin atraso): el linger baja un paso para no retener mediciones innecesariamente.</li>
+ * </ul>
+ * Los valores actuales se publican como métricas (ingest.batch.setpoint) y quedan dentro de los límites
+ * configurados. Deshabilitado, se usan los valores fijos de ingest.batch.size, ingest.batch.linger-ms e
+ * ingest.write.workers.
+ */
+@Component
+public class BatchController {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchController.class);
+    // Pasos aditivos: una vigésima parte del rango configurado
+    private static final int STEPS = 20;
+
+    private final boolean enabled;
+    private final long targetCommitNanos;
+    private final long intervalMs;
+    private final int minBatch;
+    private final int maxBatch;
+    private final long minLingerMs;
+    private final long maxLingerMs;
+    private final int minWriters;
+    private final int maxWriters;
+
+    private volatile int batchSize;
+    private volatile long lingerMs;
+    private volatile int writers;
+    private volatile double commitMs;     // Tiempo promedio de commit de la última ventana
+
+    private final AtomicInteger activeWriters = new AtomicInteger();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLong nextAdjust;
+    private final LongAdder increases = new LongAdder();
+    private final LongAdder decreases = new LongAdder();
+
+    public BatchController(@Value("${ingest.adaptive.enabled:true}") boolean enabled,
+                           @Value("${ingest.adaptive.target-commit-ms:100}") long targetCommitMs,
+                           @Value("${ingest.adaptive.interval-ms:1000}") long intervalMs,
+                           @Value("${ingest.batch.size:500}") int batchSize,
+                           @Value("${ingest.adaptive.batch.min:50}") int minBatch,
+                           @Value("${ingest.adaptive.batch.max:5000}") int maxBatch,
+                           @Value("${ingest.batch.linger-ms:200}") long lingerMs,
+                           @Value("${ingest.adaptive.linger-ms.min:10}") long minLingerMs,
+                           @Value("${ingest.adaptive.linger-ms.max:1000}") long maxLingerMs,
+                           @Value("${ingest.write.workers:2}") int writeWorkers,
+                           @Value("${ingest.adaptive.writers.min:1}") int minWriters,
+                           ObjectProvider<MeterRegistry> meterRegistry) {
+        this.enabled = enabled;
+        this.targetCommitNanos = targetCommitMs * 1_000_000;
+        this.intervalMs = intervalMs;
+        this.minBatch = Math.max(1, Math.min(minBatch, batchSize));
+        this.maxBatch = Math.max(maxBatch, batchSize);
+        this.minLingerMs = Math.max(0, Math.min(minLingerMs, lingerMs));
+        this.maxLingerMs = Math.max(maxLingerMs, lingerMs);
+        // Los escritores concurrentes no pueden superar los hilos de escritura del pipeline
+        this.maxWriters = Math.max(1, writeWorkers);
+        this.minWriters = Math.max(1, Math.min(minWriters, this.maxWriters));
+        this.batchSize = batchSize;
+        this.lingerMs = lingerMs;
+        this.writers = this.maxWriters;
+        this.nextAdjust = new AtomicLong(System.currentTimeMillis() + intervalMs);
+        MeterRegistry registry = meterRegistry == null ? null : meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("ingest.batch.setpoint", this, BatchController::batchSize).tag("parameter", "size")
+                    .description("Tamano de lote actual de la escritura").register(registry);
+            Gauge.builder("ingest.batch.setpoint", this, BatchController::lingerMs).tag("parameter", "linger")
+                    .baseUnit("milliseconds").register(registry);
+            Gauge.builder("ingest.batch.setpoint", this, BatchController::writers).tag("parameter", "writers")
+                    .description("Escritores que pueden escribir a la vez en la base de datos").register(registry);
+            Gauge.builder("ingest.batch.commit.observed", this, BatchController::commitMs).baseUnit("milliseconds")
+                    .description("Tiempo promedio de commit de la ultima ventana del controlador").register(registry);
+            FunctionCounter.builder("ingest.batch.adjustments", increases, LongAdder::sum).tag("direction", "increase").register(registry);
+            FunctionCounter.builder("ingest.batch.adjustments", decreases, LongAdder::sum).tag("direction", "decrease").register(registry);
+        }
+    }
+
+    /**
+     * Valores fijos, para usar el pipeline sin el controlador
+     */
+    static BatchController fixed(int batchSize, long lingerMs, int writeWorkers) {
+        return new BatchController(false, 0, 0, batchSize, batchSize, batchSize, lingerMs, lingerMs, lingerMs,
+                writeWorkers, writeWorkers, null);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public long lingerMs() {
+        return lingerMs;
+    }
+
+    public int writers() {
+        return writers;
+    }
+
+    public double commitMs() {
+        return commitMs;
+    }
+
+    /**
+     * Toma un turno de escritura si hay menos escritores activos que los permitidos
+     */
+    boolean tryAcquireWriter() {
+        if (!enabled) {
+            return true;
+        }
+        int active = activeWriters.get();
+        return active < writers && activeWriters.compareAndSet(active, active + 1);
+    }
+
+    void releaseWriter() {
+        if (enabled) {
+            activeWriters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reporta un commit y, si terminó el intervalo, ajusta los valores
+     *
+     * @param nanos      Duración del commit
+     * @param queueDepth Mediciones esperando en las colas de escritura
+     */
+    void committed(long nanos, int queueDepth) {
+        if (enabled) {
+            commits.increment();
+            commitNanos.add(nanos);
+            maybeAdjust(queueDepth);
+        }
+    }
+
+    /**
+     * Reporta un lote que la base de datos no aceptó
+     */
+    void failed(int queueDepth) {
+        if (enabled) {
+            errors.increment();
+            maybeAdjust(queueDepth);
+        }
+    }
+
+    private void maybeAdjust(int queueDepth) {
+        long now = System.currentTimeMillis();
+        long next = nextAdjust.get();
+        if (now < next || !nextAdjust.compareAndSet(next, now + intervalMs)) {
+            return;
+        }
+        long windowCommits = commits.sumThenReset();
+        long windowNanos = commitNanos.sumThenReset();
+        adjust(windowCommits, windowCommits == 0 ? 0 : windowNanos / windowCommits, errors.sumThenReset(), queueDepth);
+    }
+
+    /**
+     * Regla AIMD sobre las observaciones de una ventana
+     *
+     * @param windowCommits    Commits de la ventana
+     * @param meanCommitNanos  Tiempo promedio de commit
+     * @param windowErrors     Lotes rechazados por la base de datos
+     * @param queueDepth       Mediciones esperando en las colas de escritura
+     */
+    void adjust(long windowCommits, long meanCommitNanos, long windowErrors, int queueDepth) {
+        commitMs = meanCommitNanos / 1e6;
+        int previousBatch = batchSize;
+        long previousLinger = lingerMs;
+        int previousWriters = writers;
+        if (windowErrors > 0 || (windowCommits > 0 && meanCommitNanos > targetCommitNanos)) {
+            batchSize = Math.max(minBatch, batchSize / 2);
+            lingerMs = Math.min(maxLingerMs, Math.max(1, lingerMs) * 2);
+            if (windowErrors > 0 || meanCommitNanos > 2 * targetCommitNanos) {
+                writers = Math.max(minWriters, writers / 2);
+            }
+        } else if (queueDepth > (long) batchSize * writers) {
+            if (batchSize < maxBatch) {
+                batchSize = Math.min(maxBatch, batchSize + step(minBatch, maxBatch));
+            } else {
+                writers = Math.min(maxWriters, writers + 1);
+            }
+        } else if (windowCommits > 0) {
+            lingerMs = Math.max(minLingerMs, lingerMs - step(minLingerMs, maxLingerMs));
+        }
+        boolean decreased = batchSize < previousBatch || writers < previousWriters || lingerMs > previousLinger;
+        boolean increased = batchSize > previousBatch || writers > previousWriters || lingerMs < previousLinger;
+        if (decreased) {
+            decreases.increment();
+        } else if (increased) {
+            increases.increment();
+        }
+        if (decreased || writers != previousWriters) {
+            logger.info("Escritura ajustada: commit {} ms (objetivo {} ms), errores {}, en cola {} -> lote {}, linger {} ms, escritores {}",
+                    Math.round(commitMs), targetCommitNanos / 1_000_000, windowErrors, queueDepth,
+                    batchSize, lingerMs, writers);
+        }
+    }
+
+    private static int step(long min, long max) {
+        return (int) Math.max(1, (max - min) / STEPS);
+    }
+}
@@ -0,0 +1,261 @@
+package com.denkitronik.receiveriot.ingest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lector mínimo de CBOR (RFC 8949) sobre los bytes del payload, sin crear objetos intermedios: recorre los
+ * ítems uno a uno dejando en campos la cabecera del actual (tipo mayor y argumento). Cubre lo que usan los
+ * payloads de los sensores: enteros, flotantes de 16/32/64 bits, textos, arreglos y mapas (de longitud
+ * definida o indefinida). Las etiquetas se saltan de forma transparente y el resto de ítems solo se sabe saltar.
+ */
+final class CborReader {
+
+    static final int UNSIGNED = 0;
+    static final int NEGATIVE = 1;
+    static final int BYTES = 2;
+    static final int TEXT = 3;
+    static final int ARRAY = 4;
+    static final int MAP = 5;
+    static final int TAG = 6;
+    static final int SIMPLE = 7;
+
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xFF;
+    // Etiqueta 55799 (self-describe CBOR): prefijo opcional que identifica el payload como CBOR
+    private static final int SELF_DESCRIBE_0 = 0xD9;
+    private static final int SELF_DESCRIBE_1 = 0xD9;
+    private static final int SELF_DESCRIBE_2 = 0xF7;
+    // Anidamiento máximo al saltar ítems: un payload de arreglos anidados no debe desbordar la pila del hilo
+    static final int MAX_DEPTH = 64;
+
+    private final byte[] data;
+    private int position;
+    private int major;          // Tipo mayor del ítem actual
+    private int info;           // Información adicional del ítem actual
+    private long argument;      // Argumento (longitud, valor o bits del flotante); -1 si la longitud es indefinida
+
+    CborReader(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Indica si el payload es CBOR mirando su primer byte: un JSON empieza con '{', '[' o espacios, que en
+     * CBOR son textos o bytes; un payload CBOR de sensores empieza con un mapa, un arreglo o la etiqueta
+     * self-describe. No hace falta configurar el formato por tópico.
+     */
+    static boolean isCbor(byte[] payload) {
+        if (payload.length == 0) {
+            return false;
+        }
+        int first = payload[0] & 0xFF;
+        int type = first >>> 5;
+        return type == MAP || type == ARRAY || first == SELF_DESCRIBE_0
+                && payload.length > 2 && (payload[1] & 0xFF) == SELF_DESCRIBE_1 && (payload[2] & 0xFF) == SELF_DESCRIBE_2;
+    }
+
+    /**
+     * Lee la cabecera del siguiente ítem, saltando las etiquetas que lo preceden
+     */
+    void next() throws IOException {
+        do {
+            int initial = readByte();
+            major = initial >>> 5;
+            info = initial & 0x1F;
+            argument = readArgument();
+        } while (major == TAG);
+    }
+
+    int major() {
+        return major;
+    }
+
+    /**
+     * Argumento del ítem actual: el valor de un entero sin signo o la longitud de un texto, arreglo o mapa
+     * (-1 si es indefinida)
+     */
+    long argument() {
+        return argument;
+    }
+
+    boolean isNumber() {
+        return major == UNSIGNED || major == NEGATIVE || major == SIMPLE && info >= 25 && info <= 27;
+    }
+
+    /**
+     * Valor numérico del ítem actual
+     */
+    double number() {
+        switch (major) {
+            case UNSIGNED:
+                return argument >= 0 ? argument : unsigned(argument);
+            case NEGATIVE:
+                return argument >= 0 ? -1.0 - argument : -1.0 - unsigned(argument);
+            default:
+                if (info == 25) {
+                    return halfToFloat((int) argument);
+                }
+                return info == 26 ? Float.intBitsToFloat((int) argument) : Double.longBitsToDouble(argument);
+        }
+    }
+
+    /**
+     * Texto del ítem actual (solo de longitud definida)
+     */
+    String text() throws IOException {
+        if (argument < 0) {
+            throw new IOException("Texto CBOR de longitud indefinida no soportado");
+        }
+        int length = checkLength(argument);
+        String text = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return text;
+    }
+
+    /**
+     * Compara el texto del ítem actual con un texto ASCII sin crear un String; consume el texto si coincide
+     */
+    boolean textEquals(String ascii) throws IOException {
+        if (argument != ascii.length()) {
+            return false;
+        }
+        int length = checkLength(argument);
+        for (int i = 0; i < length; i++) {
+            if (data[position + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        position += length;
+        return true;
+    }
+
+    /**
+     * En un arreglo o mapa de longitud indefinida, indica si sigue el marcador de fin (y lo consume)
+     */
+    boolean atBreak() throws IOException {
+        if (position >= data.length) {
+            throw new EOFException("Payload CBOR incompleto");
+        }
+        if ((data[position] & 0xFF) == BREAK) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Salta el contenido del ítem actual (cuya cabecera ya se leyó). Falla con IOException si los ítems
+     * anidados superan {@link #MAX_DEPTH} niveles.
+     */
+    void skip() throws IOException {
+        skip(0);
+    }
+
+    private void skip(int depth) throws IOException {
+        switch (major) {
+            case BYTES, TEXT -> {
+                if (argument < 0) {
+                    while (!atBreak()) {
+                        next();
+                        skip(depth + 1);
+                    }
+                } else {
+                    position += checkLength(argument);
+                }
+            }
+            case ARRAY, MAP -> {
+                if (depth >= MAX_DEPTH) {
+                    throw new IOException("Payload CBOR con mas de " + MAX_DEPTH + " niveles de anidamiento");
+                }
+                long items = major == MAP && argument >= 0 ? argument * 2 : argument;
+                if (items < 0) {
+                    while (!atBreak()) {
+                        next();
+                        skip(depth + 1);
+                    }
+                } else {
+                    for (long i = 0; i < items; i++) {
+                        next();
+                        skip(depth + 1);
+                    }
+                }
+            }
+            default -> {
+                // Enteros y simples no tienen contenido después de la cabecera
+            }
+        }
+    }
+
+    /**
+     * Salta el prefijo self-describe si está presente
+     */
+    void skipSelfDescribe() {
+        if (data.length > 2 && (data[0] & 0xFF) == SELF_DESCRIBE_0 && (data[1] & 0xFF) == SELF_DESCRIBE_1
+                && (data[2] & 0xFF) == SELF_DESCRIBE_2) {
+            position = 3;
+        }
+    }
+
+    private long readArgument() throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        return switch (info) {
+            case 24 -> readByte();
+            case 25 -> (long) readByte() << 8 | readByte();
+            case 26 -> (long) readByte() << 24 | (long) readByte() << 16 | (long) readByte() << 8 | readByte();
+            case 27 -> {
+                long value = 0;
+                for (int i = 0; i < 8; i++) {
+                    value = value << 8 | readByte();
+                }
+                yield value;
+            }
+            case INDEFINITE -> {
+                if (major == UNSIGNED || major == NEGATIVE || major == TAG) {
+                    throw new IOException("Cabecera CBOR invalida");
+                }
+                yield -1;
+            }
+            default -> throw new IOException("Cabecera CBOR invalida");
+        };
+    }
+
+    private int readByte() throws IOException {
+        if (position >= data.length) {
+            throw new EOFException("Payload CBOR incompleto");
+        }
+        return data[position++] & 0xFF;
+    }
+
+    private int checkLength(long length) throws IOException {
+        if (length > data.length - position) {
+            throw new EOFException("Payload CBOR incompleto");
+        }
+        return (int) length;
+    }
+
+    private static double unsigned(long value) {
+        // Enteros de 64 bits por encima de Long.MAX_VALUE
+        return (double) (value >>> 1) * 2.0 + (value & 1);
+    }
+
+    /**
+     * Convierte un flotante de 16 bits (IEEE 754 half) a float
+     */
+    static float halfToFloat(int bits) {
+        int sign = bits >>> 15 & 1;
+        int exponent = bits >>> 10 & 0x1F;
+        int mantissa = bits & 0x3FF;
+        float value;
+        if (exponent == 0) {
+            value = mantissa * 0x1p-24f;
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            value = Float.intBitsToFloat((exponent + 112) << 23 | mantissa << 13);
+        }
+        return sign == 0 ? value : -value;
+    }
+}
@@ -0,0 +1,86 @@
+package com.denkitronik.receiveriot.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Confirmación (ack) pendiente de un mensaje MQTT con QoS 1/2. Cada medición del mensaje retiene
+ * la confirmación y la libera cuando el lote que la contiene queda guardado (en la base de datos
+ * o en el spool); la confirmación se envía al broker cuando se liberan todas.
+ * La etapa de decodificación mantiene su propia retención mientras procesa el mensaje, así un
+ * mensaje sin mediciones se confirma al terminar de decodificarlo.
+ * Si el mensaje no se pudo procesar o guardar se abandona: no se confirma nunca y el broker lo vuelve a
+ * entregar cuando el cliente se reconecta (ver {@link IngestPipeline#setRedeliveryHandler}).
+ */
+public final class DeliveryAck {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryAck.class);
+    private static final int PENDING = 0;
+    private static final int ACKNOWLEDGED = 1;
+    private static final int ABANDONED = 2;
+
+    private final Runnable acknowledge;
+    private final AtomicInteger holds = new AtomicInteger(1);
+    private final AtomicInteger state = new AtomicInteger(PENDING);  // Pendiente, confirmado o abandonado
+    private AtomicInteger pending;      // Mensajes del pipeline sin confirmar (puede ser null)
+
+    /**
+     * @param acknowledge Acción que envía la confirmación al broker
+     */
+    public DeliveryAck(Runnable acknowledge) {
+        this.acknowledge = acknowledge;
+    }
+
+    /**
+     * Cuenta el mensaje entre los pendientes de confirmar del pipeline hasta que se confirme o se abandone
+     */
+    void track(AtomicInteger pendingAcks) {
+        this.pending = pendingAcks;
+        pendingAcks.incrementAndGet();
+    }
+
+    /**
+     * Agrega una retención (una medición más pendiente de guardar)
+     */
+    void retain() {
+        holds.incrementAndGet();
+    }
+
+    /**
+     * Libera una retención y confirma el mensaje si era la última
+     */
+    void release() {
+        if (holds.decrementAndGet() == 0 && finish(ACKNOWLEDGED)) {
+            try {
+                acknowledge.run();
+            } catch (RuntimeException e) {
+                logger.error("Error al confirmar el mensaje MQTT: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Abandona la confirmación: las retenciones que se liberen después ya no confirman el mensaje
+     *
+     * @return false si ya estaba confirmado o abandonado
+     */
+    boolean abandon() {
+        return finish(ABANDONED);
+    }
+
+    private boolean finish(int outcome) {
+        if (!state.compareAndSet(PENDING, outcome)) {
+            return false;
+        }
+        if (pending != null) {
+            pending.decrementAndGet();
+        }
+        return true;
+    }
+
+    boolean isAcknowledged() {
+        return state.get() == ACKNOWLEDGED;
+    }
+}
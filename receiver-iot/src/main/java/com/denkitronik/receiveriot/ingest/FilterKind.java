@@ -0,0 +1,13 @@
+package com.denkitronik.receiveriot.ingest;
+
+/**
+ * Tipo de filtro de compresión de una serie en la ingesta
+ */
+public enum FilterKind {
+    /** Banda muerta absoluta: se escribe cuando el valor se aleja más de la tolerancia del último escrito */
+    DEADBAND,
+    /** Banda muerta relativa: la tolerancia es un porcentaje del último valor escrito */
+    PERCENT,
+    /** Swinging door: se escriben los vértices mínimos para que la interpolación lineal quede dentro de la tolerancia */
+    SWINGING_DOOR
+}
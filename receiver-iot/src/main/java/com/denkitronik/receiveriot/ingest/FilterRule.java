@@ -0,0 +1,81 @@
+package com.denkitronik.receiveriot.ingest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Filtro configurado para las series de una variable
+ *
+ * @param measurement   Nombre de la variable (Measurement) o "*" para las variables sin regla propia
+ * @param kind          Tipo de filtro
+ * @param tolerance     Tolerancia: en unidades de la variable o, para PERCENT, en porcentaje
+ * @param maxIntervalMs Tiempo máximo sin escribir un punto (latido); 0 = sin latido
+ */
+public record FilterRule(String measurement, FilterKind kind, double tolerance, long maxIntervalMs) {
+
+    public static final String DEFAULT = "*";
+
+    /**
+     * Interpreta las reglas configuradas, p. ej. "temperatura=sdt:0.2,humedad=percent:1:10m,*=deadband:0".
+     * Cada regla es variable=tipo:tolerancia[:latido], con tipo deadband, percent o sdt y el latido como
+     * duración (10m, 1h, PT30S) o milisegundos.
+     *
+     * @param spec                 Reglas separadas por comas (vacío = sin filtros)
+     * @param defaultMaxIntervalMs Latido de las reglas que no lo indican
+     * @return Reglas por nombre de variable, en el orden configurado
+     */
+    public static Map<String, FilterRule> parse(String spec, long defaultMaxIntervalMs) {
+        Map<String, FilterRule> rules = new LinkedHashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return rules;
+        }
+        for (String part : spec.split(",")) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int equals = trimmed.indexOf('=');
+            String[] fields = equals < 0 ? new String[0] : trimmed.substring(equals + 1).split(":");
+            if (equals <= 0 || fields.length < 2 || fields.length > 3) {
+                throw new IllegalArgumentException("Regla de filtro invalida (variable=tipo:tolerancia[:latido]): " + trimmed);
+            }
+            String measurement = trimmed.substring(0, equals).trim();
+            FilterKind kind = kind(fields[0].trim());
+            double tolerance;
+            try {
+                tolerance = Double.parseDouble(fields[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Tolerancia invalida en la regla de filtro: " + trimmed);
+            }
+            if (!(tolerance >= 0) || Double.isInfinite(tolerance)) {
+                throw new IllegalArgumentException("La tolerancia del filtro debe ser un numero no negativo: " + trimmed);
+            }
+            long maxIntervalMs = fields.length == 3 ? interval(fields[2].trim()) : defaultMaxIntervalMs;
+            if (rules.put(measurement, new FilterRule(measurement, kind, tolerance, Math.max(0, maxIntervalMs))) != null) {
+                throw new IllegalArgumentException("Regla de filtro repetida para " + measurement);
+            }
+        }
+        return Collections.unmodifiableMap(rules);
+    }
+
+    private static FilterKind kind(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "deadband" -> FilterKind.DEADBAND;
+            case "percent" -> FilterKind.PERCENT;
+            case "sdt", "swinging-door" -> FilterKind.SWINGING_DOOR;
+            default -> throw new IllegalArgumentException("Tipo de filtro desconocido: " + name);
+        };
+    }
+
+    private static long interval(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return DurationStyle.detectAndParse(value).toMillis();
+        }
+    }
+}
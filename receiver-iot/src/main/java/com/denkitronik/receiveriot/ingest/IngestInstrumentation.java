@@ -0,0 +1,216 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentación de las etapas del pipeline de ingesta: timers con histograma de la decodificación, de la
+ * resolución de dimensiones, de la escritura en la base de datos (ingest.stage.latency) y de la latencia de
+ * extremo a extremo desde la recepción del mensaje hasta que su lote queda guardado (ingest.latency), más los
+ * contadores de mediciones decodificadas y de payloads inválidos.
+ * <p>
+ * En lugar de un log por mensaje se escribe un resumen de actividad cada cierto intervalo, y los errores de
+ * decodificación se registran como mucho una vez por intervalo con el número de errores omitidos.
+ */
+@Component
+public class IngestInstrumentation {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestInstrumentation.class);
+
+    private final Timer decodeTimer;
+    private final Timer resolveTimer;
+    private final Timer writeTimer;
+    private final Timer latencyTimer;
+    private final long summaryIntervalMs;
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong nextSummary;
+    private final AtomicLong nextFailureLog = new AtomicLong();
+    // Valores de los contadores en el último resumen
+    private long summaryMessages;
+    private long summarySamples;
+    private long summaryFailures;
+    private long summaryAt;
+    private long loggedFailures;
+
+    public IngestInstrumentation(@Value("${ingest.metrics.histograms:true}") boolean histograms,
+                                 @Value("${ingest.log.summary-interval-ms:60000}") long summaryIntervalMs,
+                                 ObjectProvider<MeterRegistry> meterRegistry) {
+        this.summaryIntervalMs = summaryIntervalMs;
+        this.summaryAt = System.currentTimeMillis();
+        this.nextSummary = new AtomicLong(summaryAt + summaryIntervalMs);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            this.decodeTimer = timer(registry, "ingest.stage.latency", "decode", histograms);
+            this.resolveTimer = timer(registry, "ingest.stage.latency", "resolve", histograms);
+            this.writeTimer = timer(registry, "ingest.stage.latency", "write", histograms);
+            this.latencyTimer = Timer.builder("ingest.latency")
+                    .description("Tiempo desde la recepcion del mensaje hasta que su lote queda guardado")
+                    .publishPercentileHistogram(histograms)
+                    .minimumExpectedValue(Duration.ofMillis(1)).maximumExpectedValue(Duration.ofMinutes(5))
+                    .register(registry);
+            FunctionCounter.builder("ingest.samples", samples, LongAdder::sum).tag("result", "decoded").register(registry);
+            FunctionCounter.builder("ingest.decode.failures", failures, LongAdder::sum)
+                    .description("Mensajes con un payload que no se pudo decodificar").register(registry);
+        } else {
+            this.decodeTimer = null;
+            this.resolveTimer = null;
+            this.writeTimer = null;
+            this.latencyTimer = null;
+        }
+    }
+
+    private static Timer timer(MeterRegistry registry, String name, String stage, boolean histograms) {
+        return Timer.builder(name).tag("stage", stage)
+                .publishPercentileHistogram(histograms)
+                .minimumExpectedValue(Duration.ofNanos(1000)).maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    /**
+     * Instrumentación sin registro de métricas (solo contadores y logs)
+     */
+    public static IngestInstrumentation detached() {
+        return new IngestInstrumentation(false, 60000, new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    void recordDecode(long nanos) {
+        if (decodeTimer != null) {
+            decodeTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    void recordResolve(long nanos) {
+        if (resolveTimer != null) {
+            resolveTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    void recordWrite(long nanos) {
+        if (writeTimer != null) {
+            writeTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Registra un mensaje procesado y, si se cumplió el intervalo, escribe el resumen de actividad
+     *
+     * @param decodedSamples Mediciones decodificadas del mensaje
+     */
+    void messageProcessed(int decodedSamples) {
+        messages.increment();
+        samples.add(decodedSamples);
+        long now = System.currentTimeMillis();
+        long next = nextSummary.get();
+        if (now >= next && nextSummary.compareAndSet(next, now + summaryIntervalMs)) {
+            logSummary(now);
+        }
+    }
+
+    /**
+     * Registra un payload que no se pudo decodificar; el error se registra en el log como mucho una vez por intervalo
+     */
+    void decodeFailed(String topic, Exception e) {
+        failures.increment();
+        long now = System.currentTimeMillis();
+        long next = nextFailureLog.get();
+        if (now >= next && nextFailureLog.compareAndSet(next, now + summaryIntervalMs)) {
+            long total = failures.sum();
+            long omitted;
+            synchronized (this) {
+                omitted = total - loggedFailures - 1;
+                loggedFailures = total;
+            }
+            logger.warn("Error al decodificar el payload del topico {}: {} ({} errores omitidos desde el anterior)",
+                    topic, e.getMessage(), Math.max(0, omitted));
+        }
+    }
+
+    private synchronized void logSummary(long now) {
+        long totalMessages = messages.sum();
+        long totalSamples = samples.sum();
+        long totalFailures = failures.sum();
+        logger.info("Ingesta: {} mensajes, {} mediciones, {} payloads invalidos en los ultimos {} s",
+                totalMessages - summaryMessages, totalSamples - summarySamples, totalFailures - summaryFailures,
+                (now - summaryAt) / 1000);
+        summaryAt = now;
+        summaryMessages = totalMessages;
+        summarySamples = totalSamples;
+        summaryFailures = totalFailures;
+    }
+
+    /**
+     * Mediciones decodificadas
+     */
+    public long sampleCount() {
+        return samples.sum();
+    }
+
+    /**
+     * Payloads que no se pudieron decodificar
+     */
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Crea el registro de latencias de un hilo de escritura
+     */
+    Receipts newReceipts(int capacity) {
+        return new Receipts(capacity);
+    }
+
+    /**
+     * Instantes de recepción de las mediciones de un lote en formación; al guardarse el lote se registra
+     * la latencia de cada una. Lo usa un solo hilo de escritura.
+     */
+    final class Receipts {
+
+        private long[] times;
+        private int size;
+
+        Receipts(int capacity) {
+            times = new long[Math.max(16, capacity)];
+        }
+
+        void add(long receivedAt) {
+            if (receivedAt <= 0 || latencyTimer == null) {
+                return;
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+            }
+            times[size++] = receivedAt;
+        }
+
+        /**
+         * Registra la latencia de las mediciones del lote recién guardado
+         */
+        void committed() {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < size; i++) {
+                latencyTimer.record(Math.max(0, now - times[i]), TimeUnit.MILLISECONDS);
+            }
+            size = 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Métricas del pipeline de ingesta: profundidad de las colas, del archivo de desborde y del spool,
+ * y contadores de mensajes y mediciones. La tasa de drenado del spool es la derivada del contador
+ * ingest.spool.drained (p. ej. rate() en Prometheus).
+ */
+@Component
+@Profile("!export")
+public class IngestMetrics implements MeterBinder {
+
+    private final IngestPipeline pipeline;
+    private final LatestValueStore latestValues;
+
+    public IngestMetrics(IngestPipeline pipeline, LatestValueStore latestValues) {
+        this.pipeline = pipeline;
+        this.latestValues = latestValues;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ingest.queue.depth", pipeline, IngestPipeline::queueDepth).tag("stage", "decode").register(registry);
+        Gauge.builder("ingest.queue.depth", pipeline, IngestPipeline::writeQueueDepth).tag("stage", "write").register(registry);
+        Gauge.builder("ingest.spill.depth", pipeline, IngestPipeline::spillDepth).register(registry);
+        Gauge.builder("ingest.spool.depth", pipeline, IngestPipeline::spoolDepth)
+                .description("Mediciones en el spool pendientes de escribir").register(registry);
+        Gauge.builder("ingest.spool.used", pipeline, IngestPipeline::spoolBytes).baseUnit("bytes").register(registry);
+
+        FunctionCounter.builder("ingest.messages", pipeline, IngestPipeline::receivedCount).tag("result", "received").register(registry);
+        FunctionCounter.builder("ingest.messages", pipeline, IngestPipeline::droppedCount).tag("result", "dropped").register(registry);
+        FunctionCounter.builder("ingest.messages", pipeline, IngestPipeline::spilledCount).tag("result", "spilled").register(registry);
+        FunctionCounter.builder("ingest.messages", pipeline, IngestPipeline::abandonedCount).tag("result", "abandoned")
+                .description("Mensajes sin confirmar que se dejan para que el broker los vuelva a entregar").register(registry);
+        FunctionCounter.builder("ingest.messages", pipeline, IngestPipeline::rejectedCount).tag("result", "rejected")
+                .description("Mensajes descartados porque la base de datos rechaza sus dimensiones").register(registry);
+        FunctionCounter.builder("ingest.samples", pipeline, IngestPipeline::writtenCount).tag("result", "written").register(registry);
+        FunctionCounter.builder("ingest.samples", pipeline, IngestPipeline::writeFailureCount).tag("result", "failed").register(registry);
+        FunctionCounter.builder("ingest.samples", pipeline, IngestPipeline::deadLetterCount).tag("result", "dead_letter")
+                .description("Mediciones rechazadas por la base de datos y descartadas al archivo del spool").register(registry);
+        FunctionCounter.builder("ingest.batches", pipeline, IngestPipeline::batchCount).register(registry);
+        FunctionCounter.builder("ingest.spool.appended", pipeline, IngestPipeline::spooledCount).register(registry);
+        FunctionCounter.builder("ingest.spool.drained", pipeline, IngestPipeline::spoolDrainedCount).register(registry);
+        Gauge.builder("ingest.latest.series", latestValues, LatestValueStore::size)
+                .description("Series con ultimo valor en memoria").register(registry);
+        FunctionCounter.builder("ingest.latest.rejected", latestValues, LatestValueStore::rejectedCount).register(registry);
+    }
+}
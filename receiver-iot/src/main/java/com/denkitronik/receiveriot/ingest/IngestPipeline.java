@@ -0,0 +1,862 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.entities.DataEntity;
+import com.denkitronik.receiveriot.services.DataBatchWriter;
+import com.denkitronik.receiveriot.services.DataService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pipeline de ingesta por etapas que desacopla el hilo de callback de Paho de la persistencia.
+ * <ul>
+ *     <li>Recepción: el callback MQTT solo encola el tópico y los bytes del payload.</li>
+ *     <li>Decodificación/resolución: un pool de hilos interpreta el mensaje y resuelve sus dimensiones.
+ *     Cada hilo tiene su propia cola y los mensajes de un tópico van siempre al mismo hilo, así las mediciones
+ *     de un dispositivo llegan a la escritura en el orden de publicación (MQTT solo garantiza orden por tópico).</li>
+ *     <li>Escritura: un pool de hilos agrupa las mediciones en lotes y los escribe con {@link DataBatchWriter}.
+ *     Cada lote se vacía al alcanzar el tamaño de lote o al cumplirse el tiempo máximo de espera; ambos, y los
+ *     escritores que escriben a la vez, los ajusta el {@link BatchController} según el tiempo de commit.
+ *     Cada hilo tiene su propia cola y las mediciones de un dispositivo van siempre al mismo hilo,
+ *     así se escriben en orden y dos lotes concurrentes nunca compiten por las mismas filas.</li>
+ * </ul>
+ * Entre etapas se usan colas acotadas sin bloqueos. Cuando la cola de recepción se llena se aplica
+ * la {@link BackpressurePolicy} configurada; entre las etapas internas siempre se espera.
+ * Si la base de datos falla, los lotes se guardan en el {@link SampleSpool} y un hilo aparte los drena
+ * cuando se recupera; mientras el spool tenga pendientes los lotes nuevos van detrás de ellos. Los errores se
+ * clasifican por su SQLState ({@link WriteFailure}): si la base de datos rechaza el lote de forma permanente (o la
+ * cabeza del spool agota sus intentos) el lote se divide hasta separar las filas rechazadas, que van al archivo de
+ * descartes del spool, y el resto se escribe; así una fila inválida no bloquea la ingesta. Si se rechazan todas
+ * las filas el problema es del lote y no se descarta ninguna: el lote se guarda en el spool y se reintenta.
+ * Los mensajes con confirmación manual ({@link DeliveryAck}) se confirman al broker solo cuando todas
+ * sus mediciones quedaron guardadas en la base de datos o en el spool. El broker solo entrega una ventana
+ * de mensajes sin confirmar ({@link #setReceiveWindow}), así que al llenarse los lotes se escriben sin esperar.
+ * Un mensaje que no se pudo procesar ni guardar se abandona y se pide su reentrega ({@link #setRedeliveryHandler}):
+ * un broker MQTT 3.1.1 solo reenvía los mensajes sin confirmar cuando el cliente se reconecta.
+ * Si la base de datos rechaza de forma permanente las dimensiones de un mensaje no se pide su reentrega, que
+ * repetiría el error: el mensaje se cuenta como rechazado y se confirma.
+ * La etapa de escritura actualiza además el {@link LatestValueStore} con el último valor de cada serie y,
+ * si hay reglas configuradas, pasa cada medición por los {@link SeriesFilters} antes de agregarla al lote.
+ * El punto que retiene un filtro conserva la confirmación de su mensaje hasta escribirse; si esas confirmaciones
+ * llenan la ventana del broker los puntos retenidos se escriben de inmediato.
+ * Los hilos de las etapas los crea {@link PipelineThreads}, que puede usar hilos virtuales.
+ */
+@Component
+@Profile("!export")
+public class IngestPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestPipeline.class);
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+    // El spool se drena en lotes grandes para recuperar el atraso a velocidad de lote
+    private static final int SPOOL_DRAIN_ROWS = 5000;
+    private static final long SPOOL_MAX_BACKOFF_MS = 5000;
+    // Marca de los mensajes desbordados sin confirmacion manual
+    private static final DeliveryAck NO_ACK = new DeliveryAck(() -> { });
+
+    private final MessageProcessor messageProcessor;
+    private final DataService dataService;
+    private final DataBatchWriter dataBatchWriter;
+    private final SampleSpool sampleSpool;                   // Spool local para los lotes que la base de datos no aceptó
+    private final LatestValueStore latestValues;             // Último valor de cada serie (puede ser null)
+    private final SeriesFilters seriesFilters;               // Filtros de compresión por variable (puede ser null)
+    private final IngestInstrumentation instrumentation;     // Timers de escritura y de latencia de extremo a extremo
+    private final PipelineThreads pipelineThreads;           // Hilos de plataforma o virtuales
+    private final BatchController batchController;           // Tamaño de lote, espera y escritores concurrentes
+    private final MpmcArrayQueue<RawMessage>[] rawQueues;    // Recepción -> decodificación, una cola por hilo de decodificación
+    private final int rawCapacity;
+    private final MpmcArrayQueue<Sample>[] sampleQueues;     // Decodificación -> escritura, una cola por hilo de escritura
+    private final int decodeWorkers;
+    private final int writeWorkers;
+    private final BackpressurePolicy policy;
+    private final Path spillPath;
+
+    private final List<Thread> decodeThreads = new ArrayList<>();
+    private final List<Thread> writeThreads = new ArrayList<>();
+    private Thread spillDrainer;
+    private Thread spoolDrainer;
+    private SpillFile spillFile;
+    // Confirmaciones de los mensajes desbordados, en el mismo orden del archivo (el archivo no las guarda)
+    private final ArrayDeque<DeliveryAck> spillAcks = new ArrayDeque<>();
+
+    private volatile int receiveWindow = Integer.MAX_VALUE;     // Mensajes sin confirmar que entrega el broker
+    private volatile Runnable redeliveryHandler = () -> { };    // Fuerza la reentrega de los mensajes abandonados
+    private final AtomicInteger pendingAcks = new AtomicInteger();
+
+    private volatile boolean accepting;         // La etapa de recepción acepta mensajes
+    private volatile boolean decodeRunning;
+    private volatile boolean writeRunning;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong spoolDrained = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public IngestPipeline(MessageProcessor messageProcessor, DataService dataService, DataBatchWriter dataBatchWriter, SampleSpool sampleSpool,
+                          LatestValueStore latestValues, SeriesFilters seriesFilters, IngestInstrumentation instrumentation,
+                          PipelineThreads pipelineThreads, BatchController batchController,
+                          @Value("${ingest.queue.capacity:8192}") int queueCapacity,
+                          @Value("${ingest.write.queue.capacity:16384}") int writeQueueCapacity,
+                          @Value("${ingest.decode.workers:2}") int decodeWorkers,
+                          @Value("${ingest.write.workers:2}") int writeWorkers,
+                          @Value("${ingest.batch.size:500}") int batchSize,
+                          @Value("${ingest.batch.linger-ms:200}") long batchLingerMs,
+                          @Value("${ingest.backpressure:BLOCK}") BackpressurePolicy policy,
+                          @Value("${ingest.spill.path:spill/ingest.spill}") String spillPath) {
+        this.messageProcessor = messageProcessor;
+        this.dataService = dataService;
+        this.dataBatchWriter = dataBatchWriter;
+        this.sampleSpool = sampleSpool != null && sampleSpool.isEnabled() ? sampleSpool : null;
+        this.latestValues = latestValues;
+        this.seriesFilters = seriesFilters != null && seriesFilters.isEnabled() ? seriesFilters : null;
+        this.instrumentation = instrumentation != null ? instrumentation : IngestInstrumentation.detached();
+        this.pipelineThreads = pipelineThreads != null ? pipelineThreads : PipelineThreads.platform();
+        this.rawQueues = newLanes(Math.max(1, decodeWorkers), queueCapacity);
+        this.rawCapacity = capacity(rawQueues);
+        this.sampleQueues = newLanes(Math.max(1, writeWorkers), writeQueueCapacity);
+        this.decodeWorkers = rawQueues.length;
+        this.writeWorkers = sampleQueues.length;
+        this.batchController = batchController != null ? batchController
+                : BatchController.fixed(batchSize, batchLingerMs, this.writeWorkers);
+        this.policy = policy;
+        this.spillPath = Path.of(spillPath);
+    }
+
+    /**
+     * Arranca los pools de hilos de las etapas de decodificación y escritura
+     */
+    @PostConstruct
+    public void start() {
+        if (policy == BackpressurePolicy.SPILL) {
+            try {
+                spillFile = new SpillFile(spillPath);
+            } catch (IOException e) {
+                logger.error("No se pudo abrir el archivo de desborde {}, se descartaran los mensajes en exceso: {}", spillPath, e.getMessage());
+            }
+        }
+        writeRunning = true;
+        decodeRunning = true;
+        for (int i = 0; i < writeWorkers; i++) {
+            MpmcArrayQueue<Sample> lane = sampleQueues[i];
+            writeThreads.add(startThread("ingest-write-" + i, () -> runWriteWorker(lane)));
+        }
+        if (sampleSpool != null) {
+            spoolDrainer = startThread("ingest-spool", this::drainSpool);
+        }
+        for (int i = 0; i < decodeWorkers; i++) {
+            MpmcArrayQueue<RawMessage> lane = rawQueues[i];
+            decodeThreads.add(startThread("ingest-decode-" + i, () -> runDecodeWorker(lane)));
+        }
+        accepting = true;
+        if (spillFile != null) {
+            spillDrainer = startThread("ingest-spill", this::drainSpill);
+        }
+        logger.info("Pipeline de ingesta iniciado: {} hilos {} de decodificacion, {} de escritura, politica {}",
+                decodeWorkers, pipelineThreads.isVirtual() ? "virtuales" : "de plataforma", writeWorkers, policy);
+    }
+
+    /**
+     * Detiene el pipeline vaciando las colas etapa por etapa
+     */
+    @PreDestroy
+    public void stop() {
+        accepting = false;
+        if (spillDrainer != null) {
+            join(List.of(spillDrainer));
+        }
+        decodeRunning = false;
+        join(decodeThreads);
+        writeRunning = false;
+        join(writeThreads);
+        if (spoolDrainer != null) {
+            // Lo que quede en el spool se conserva en disco para la siguiente ejecucion
+            join(List.of(spoolDrainer));
+        }
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException e) {
+                logger.error("Error al cerrar el archivo de desborde: {}", e.getMessage());
+            }
+        }
+        logger.info("Pipeline de ingesta detenido. Recibidos: {}, escritos: {}, descartados: {}", received.get(), written.get(), dropped.get());
+    }
+
+    /**
+     * Mensajes QoS 1/2 sin confirmar que el broker entrega a este cliente (max_inflight_messages en mosquitto).
+     * Cuando los mensajes pendientes de confirmar la alcanzan, los lotes se escriben sin esperar a llenarse,
+     * porque el broker no entregará más mensajes hasta recibir confirmaciones.
+     */
+    public void setReceiveWindow(int receiveWindow) {
+        this.receiveWindow = receiveWindow > 0 ? receiveWindow : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Acción que hace que el broker vuelva a entregar los mensajes abandonados (p. ej. reconectar el cliente)
+     */
+    public void setRedeliveryHandler(Runnable redeliveryHandler) {
+        this.redeliveryHandler = redeliveryHandler;
+    }
+
+    /**
+     * Etapa de recepción: encola el mensaje crudo aplicando la política de contrapresión
+     *
+     * @param topic   Tópico del mensaje
+     * @param payload Bytes del payload
+     * @return true si el mensaje fue aceptado (en cola o en el archivo de desborde)
+     */
+    public boolean offer(String topic, byte[] payload) {
+        return offer(topic, payload, null);
+    }
+
+    /**
+     * Etapa de recepción para mensajes con confirmación manual. Un mensaje no aceptado se abandona y se pide
+     * su reentrega; los descartados a propósito por DROP_OLDEST sí se confirman.
+     *
+     * @param topic   Tópico del mensaje
+     * @param payload Bytes del payload
+     * @param ack     Confirmación a liberar cuando el mensaje quede guardado, o null
+     * @return true si el mensaje fue aceptado (en cola o en el archivo de desborde)
+     */
+    public boolean offer(String topic, byte[] payload, DeliveryAck ack) {
+        if (ack != null) {
+            ack.track(pendingAcks);
+        }
+        RawMessage message = new RawMessage(topic, payload, System.currentTimeMillis(), ack);
+        MpmcArrayQueue<RawMessage> rawQueue = rawQueues[lane(topic)];
+        received.incrementAndGet();
+        switch (policy) {
+            case DROP_OLDEST -> {
+                while (!rawQueue.offer(message)) {
+                    RawMessage oldest = rawQueue.poll();
+                    if (oldest != null) {
+                        dropped.incrementAndGet();
+                        if (oldest.ack() != null) {
+                            oldest.ack().release();
+                        }
+                    }
+                }
+                return true;
+            }
+            case SPILL -> {
+                // Mientras haya mensajes desbordados los nuevos van detras de ellos para conservar el orden
+                if (spillFile != null && spillFile.isEmpty() && rawQueue.offer(message)) {
+                    return true;
+                }
+                return spill(message);
+            }
+            default -> {
+                int round = 0;
+                while (!rawQueue.offer(message)) {
+                    if (!accepting) {
+                        return reject(message);
+                    }
+                    idle(round++);
+                }
+                return true;
+            }
+        }
+    }
+
+    private boolean spill(RawMessage message) {
+        if (spillFile == null) {
+            MpmcArrayQueue<RawMessage> rawQueue = rawQueues[lane(message.topic())];
+            return rawQueue.offer(message) || reject(message);
+        }
+        try {
+            synchronized (spillAcks) {
+                spillFile.append(message);
+                spillAcks.addLast(message.ack() == null ? NO_ACK : message.ack());
+            }
+            spilled.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            logger.error("Error al desbordar el mensaje a disco: {}", e.getMessage());
+            return reject(message);
+        }
+    }
+
+    /**
+     * Mensaje no aceptado: se descarta sin confirmarlo para que el broker lo vuelva a entregar
+     */
+    private boolean reject(RawMessage message) {
+        dropped.incrementAndGet();
+        if (message.ack() != null) {
+            abandon(List.of(message.ack()));
+        }
+        return false;
+    }
+
+    /**
+     * Abandona las confirmaciones de mensajes que no se pudieron procesar o guardar y pide su reentrega
+     */
+    private void abandon(List<DeliveryAck> acks) {
+        for (DeliveryAck ack : acks) {
+            // Las mediciones de un mensaje comparten la confirmación: cada mensaje se cuenta una vez
+            if (ack.abandon()) {
+                abandoned.incrementAndGet();
+            }
+        }
+        try {
+            redeliveryHandler.run();
+        } catch (RuntimeException e) {
+            logger.error("Error al pedir la reentrega de los mensajes: {}", e.getMessage());
+        }
+    }
+
+    private void drainSpill() {
+        int round = 0;
+        while (accepting) {
+            try {
+                // Solo se reinyecta cuando las colas tienen holgura para no competir con mensajes nuevos
+                RawMessage message = queueDepth() < rawCapacity / 2 ? pollSpill() : null;
+                if (message == null) {
+                    idle(round++);
+                    continue;
+                }
+                round = 0;
+                MpmcArrayQueue<RawMessage> rawQueue = rawQueues[lane(message.topic())];
+                while (!rawQueue.offer(message) && accepting) {
+                    idle(round++);
+                }
+            } catch (IOException e) {
+                logger.error("Error al leer el archivo de desborde: {}", e.getMessage());
+                idle(round++);
+            }
+        }
+    }
+
+    private RawMessage pollSpill() throws IOException {
+        synchronized (spillAcks) {
+            RawMessage message = spillFile.poll();
+            if (message == null) {
+                return null;
+            }
+            DeliveryAck ack = spillAcks.pollFirst();
+            return ack == null || ack == NO_ACK ? message
+                    : new RawMessage(message.topic(), message.payload(), message.receivedAt(), ack);
+        }
+    }
+
+    /**
+     * Cola de decodificación del tópico: los mensajes de un tópico se decodifican en orden en el mismo hilo
+     */
+    private int lane(String topic) {
+        return rawQueues.length == 1 ? 0 : Math.floorMod(topic.hashCode(), rawQueues.length);
+    }
+
+    private void runDecodeWorker(MpmcArrayQueue<RawMessage> rawQueue) {
+        int round = 0;
+        while (decodeRunning || !rawQueue.isEmpty()) {
+            RawMessage message = rawQueue.poll();
+            if (message == null) {
+                idle(round++);
+                continue;
+            }
+            round = 0;
+            try {
+                messageProcessor.process(message, this::enqueueSample);
+                // Se libera la retencion de la decodificacion: sin mediciones pendientes el mensaje queda confirmado
+                if (message.ack() != null) {
+                    message.ack().release();
+                }
+            } catch (Exception e) {
+                if (WriteFailure.classify(e) == WriteFailure.PERMANENT) {
+                    // La base de datos no aceptara nunca sus dimensiones (p. ej. una restriccion de unicidad al crear
+                    // el dispositivo): reentregarlo repetiria el error sin fin, se cuenta y se confirma
+                    rejected.incrementAndGet();
+                    logger.error("La base de datos rechaza las dimensiones del mensaje del topico {}, se descarta: {}",
+                            message.topic(), e.getMessage());
+                    if (message.ack() != null) {
+                        message.ack().release();
+                    }
+                    continue;
+                }
+                // No se confirma: el broker lo volvera a entregar (p. ej. si la base de datos no responde)
+                logger.error("Error al procesar el mensaje del topico {}: {}", message.topic(), e.getMessage());
+                if (message.ack() != null) {
+                    abandon(List.of(message.ack()));
+                }
+            } catch (StackOverflowError e) {
+                // Se repetiria en cada reentrega: el mensaje se descarta y el hilo sigue con el siguiente
+                logger.error("Desborde de pila al procesar el mensaje del topico {}, se descarta", message.topic());
+                if (message.ack() != null) {
+                    message.ack().release();
+                }
+            }
+        }
+    }
+
+    private void enqueueSample(Sample sample) {
+        if (sample.ack() != null) {
+            sample.ack().retain();
+        }
+        MpmcArrayQueue<Sample> lane = sampleQueues[lane(sample)];
+        int round = 0;
+        while (!lane.offer(sample)) {
+            idle(round++);
+        }
+    }
+
+    /**
+     * Cola de escritura del dispositivo de la medición: un mismo dispositivo siempre usa la misma
+     */
+    private int lane(Sample sample) {
+        if (sampleQueues.length == 1 || sample.device() == null || sample.device().getId() == null) {
+            return 0;
+        }
+        return Math.floorMod(Long.hashCode(sample.device().getId()), sampleQueues.length);
+    }
+
+    private void runWriteWorker(MpmcArrayQueue<Sample> sampleQueue) {
+        int batchSize = batchController.batchSize();
+        List<DataEntity> batch = new ArrayList<>(batchSize);
+        List<DeliveryAck> acks = new ArrayList<>(batchSize);   // Confirmaciones retenidas por las mediciones del lote
+        IngestInstrumentation.Receipts receipts = instrumentation.newReceipts(batchSize);
+        SeriesFilter filter = seriesFilters == null ? null : seriesFilters.newFilter();
+        long flushDeadline = 0;
+        long nextExpiry = 0;
+        int round = 0;
+        while (writeRunning || !sampleQueue.isEmpty() || !batch.isEmpty()) {
+            Sample sample = sampleQueue.poll();
+            if (filter != null && (sample == null || round == 0)) {
+                // Como mucho una vez por segundo: se escriben los puntos retenidos de las series inactivas
+                long now = System.currentTimeMillis();
+                if (now >= nextExpiry) {
+                    nextExpiry = now + 1000;
+                    expireFiltered(filter, now - seriesFilters.getIdleFlushMs(), batch, acks);
+                }
+            }
+            if (sample != null) {
+                round = 0;
+                if (batch.isEmpty()) {
+                    flushDeadline = System.currentTimeMillis() + batchController.lingerMs();
+                }
+                try {
+                    int decision = filter == null ? SeriesFilter.WRITE : filter.offer(sample);
+                    if ((decision & SeriesFilter.WRITE_PREVIOUS) != 0) {
+                        batch.add(dataService.buildData(filter.previousValue(), sample.device(), sample.variable(),
+                                atMillis(filter.previousTime())));
+                        if (filter.previousAck() != null) {
+                            acks.add(filter.previousAck());
+                        }
+                    }
+                    if ((decision & SeriesFilter.WRITE) != 0) {
+                        batch.add(dataService.buildData(sample.value(), sample.device(), sample.variable(), sample.time()));
+                        receipts.add(sample.receivedAt());
+                        if (sample.ack() != null) {
+                            acks.add(sample.ack());
+                        }
+                    }
+                    // Si no se escribe, el filtro la retiene con su confirmación hasta escribirla o reemplazarla
+                    recordLatest(sample);
+                } catch (IllegalArgumentException e) {
+                    writeFailures.incrementAndGet();
+                    logger.error("Medicion invalida descartada: {}", e.getMessage());
+                    if (sample.ack() != null) {
+                        sample.ack().release();
+                    }
+                }
+                if (batch.size() >= batchController.batchSize() || windowFull(acks)) {
+                    flush(batch, acks, receipts);
+                }
+            } else if (!batch.isEmpty() && (!writeRunning || System.currentTimeMillis() >= flushDeadline || windowFull(acks))) {
+                flush(batch, acks, receipts);
+            } else if (filter != null && filter.heldAcks() > 0 && pendingAcks.get() >= receiveWindow) {
+                // El broker espera confirmaciones que retiene el filtro: se escriben sus puntos retenidos
+                expireFiltered(filter, Long.MAX_VALUE, batch, acks);
+                flush(batch, acks, receipts);
+            } else {
+                idle(round++);
+            }
+        }
+        if (filter != null) {
+            // Al detenerse se escriben los puntos que los filtros aún retenían
+            expireFiltered(filter, Long.MAX_VALUE, batch, acks);
+            if (!batch.isEmpty()) {
+                flush(batch, acks, receipts);
+            }
+        }
+    }
+
+    /**
+     * El broker no entregará más mensajes hasta recibir confirmaciones y este lote retiene algunas
+     */
+    private boolean windowFull(List<DeliveryAck> acks) {
+        return !acks.isEmpty() && pendingAcks.get() >= receiveWindow;
+    }
+
+    private void expireFiltered(SeriesFilter filter, long olderThan, List<DataEntity> batch, List<DeliveryAck> acks) {
+        filter.expire(olderThan, (device, variable, time, value) ->
+                batch.add(dataService.buildData(value, device, variable, atMillis(time))), acks::add);
+    }
+
+    private static ZonedDateTime atMillis(long millis) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private void recordLatest(Sample sample) {
+        Long deviceId = sample.device().getId();
+        Long variableId = sample.variable().getId();
+        if (latestValues != null && deviceId != null && variableId != null) {
+            latestValues.update(deviceId, variableId, sample.time().toInstant().toEpochMilli(), sample.value());
+        }
+    }
+
+    /**
+     * Escribe el lote y, si quedó guardado (en la base de datos o en el spool), libera las confirmaciones
+     * de sus mensajes. Si se perdió, los mensajes se abandonan para que el broker los vuelva a entregar.
+     */
+    private void flush(List<DataEntity> batch, List<DeliveryAck> acks, IngestInstrumentation.Receipts receipts) {
+        if (store(batch)) {
+            acks.forEach(DeliveryAck::release);
+            receipts.committed();
+        } else if (!acks.isEmpty()) {
+            abandon(acks);
+        }
+        batch.clear();
+        acks.clear();
+        receipts.clear();
+    }
+
+    private boolean store(List<DataEntity> batch) {
+        // Mientras el spool tenga pendientes el lote va detras de ellos
+        if (sampleSpool != null && !sampleSpool.isEmpty() && spool(batch)) {
+            return true;
+        }
+        // Solo escriben a la vez los escritores que permite el controlador
+        int round = 0;
+        while (!batchController.tryAcquireWriter()) {
+            idle(round++);
+        }
+        try {
+            long start = System.nanoTime();
+            dataBatchWriter.write(batch);
+            long elapsed = System.nanoTime() - start;
+            instrumentation.recordWrite(elapsed);
+            batchController.committed(elapsed, writeQueueDepth());
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            if (WriteFailure.classify(e) == WriteFailure.PERMANENT) {
+                // No es la base de datos sino alguna fila: se escribe el resto y se descartan las rechazadas
+                logger.warn("La base de datos rechazo un lote de {} mediciones, se separan las filas invalidas: {}", batch.size(), e.getMessage());
+                try {
+                    written.addAndGet(batch.size() - writeSeparating(batch, false, false));
+                    batches.incrementAndGet();
+                    return true;
+                } catch (Exception retry) {
+                    e = retry;
+                }
+            }
+            batchController.failed(writeQueueDepth());
+            if (spool(batch)) {
+                logger.warn("Error al almacenar un lote de {} mediciones, se guarda en el spool: {}", batch.size(), e.getMessage());
+                return true;
+            }
+            writeFailures.addAndGet(batch.size());
+            logger.error("Error al almacenar un lote de {} mediciones: {}", batch.size(), e.getMessage());
+            return false;
+        } finally {
+            batchController.releaseWriter();
+        }
+    }
+
+    /**
+     * Escribe las filas separando las que la base de datos rechaza, que se descartan al archivo del spool. Si
+     * rechaza todas las filas de un lote de varias el problema no son las filas sino el lote: no se descarta
+     * ninguna y se lanza el error para que el lote se guarde en el spool o se reintente.
+     *
+     * @param rows      Filas a escribir (ya preparadas por el primer intento)
+     * @param giveUp    Tratar también como permanentes los errores transitorios (la cabeza del spool agotó sus intentos)
+     * @param rejectAll Descartar las filas aunque se rechacen todas
+     * @return Filas descartadas
+     * @throws RuntimeException si la base de datos no está disponible o rechaza todo el lote
+     */
+    private int writeSeparating(List<DataEntity> rows, boolean giveUp, boolean rejectAll) {
+        List<RejectedRow> rejected = new ArrayList<>();
+        writeIsolating(rows, giveUp, rejected);
+        if (!rejectAll && rows.size() > 1 && rejected.size() == rows.size()) {
+            throw rejected.get(0).error();
+        }
+        for (RejectedRow row : rejected) {
+            deadLetter(List.of(row.row()), row.error());
+        }
+        return rejected.size();
+    }
+
+    /**
+     * Escribe las filas dividiéndolas por la mitad cada vez que la base de datos las rechaza de forma permanente,
+     * hasta aislar las filas rechazadas. La escritura es idempotente, así que reescribir las mitades ya guardadas
+     * no duplica filas.
+     */
+    private void writeIsolating(List<DataEntity> rows, boolean giveUp, List<RejectedRow> rejected) {
+        try {
+            dataBatchWriter.writePrepared(rows);
+        } catch (RuntimeException e) {
+            WriteFailure failure = WriteFailure.classify(e);
+            if (failure == WriteFailure.UNAVAILABLE || (failure == WriteFailure.TRANSIENT && !giveUp)) {
+                throw e;
+            }
+            if (rows.size() > 1) {
+                int half = rows.size() / 2;
+                writeIsolating(rows.subList(0, half), giveUp, rejected);
+                writeIsolating(rows.subList(half, rows.size()), giveUp, rejected);
+            } else {
+                rejected.add(new RejectedRow(rows.get(0), e));
+            }
+        }
+    }
+
+    /**
+     * Fila aislada por {@link #writeIsolating} y el error con que la rechazó la base de datos
+     */
+    private record RejectedRow(DataEntity row, RuntimeException error) {
+    }
+
+    private void deadLetter(List<DataEntity> rows, Exception error) {
+        deadLettered.addAndGet(rows.size());
+        writeFailures.addAndGet(rows.size());
+        DataEntity row = rows.get(0);
+        logger.error("Medicion rechazada por la base de datos (unix_time {}, dispositivo {}, variable {}): {}", row.getUnixTime(),
+                row.getDevice() == null ? null : row.getDevice().getId(), row.getVariable() == null ? null : row.getVariable().getId(),
+                error.getMessage());
+        if (sampleSpool == null) {
+            return;
+        }
+        try {
+            sampleSpool.deadLetter(rows, error.getMessage());
+        } catch (IOException e) {
+            logger.error("Error al escribir el archivo de descartes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda el lote en el spool; la marca de tiempo de cada medición queda fijada al momento de aceptarla
+     */
+    private boolean spool(List<DataEntity> batch) {
+        if (sampleSpool == null) {
+            return false;
+        }
+        batch.forEach(DataEntity::prePersist);
+        try {
+            if (sampleSpool.append(batch)) {
+                spooled.addAndGet(batch.size());
+                return true;
+            }
+            logger.error("Spool de escritura lleno, no se pueden guardar {} mediciones", batch.size());
+        } catch (IOException e) {
+            logger.error("Error al escribir en el spool: {}", e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Reescribe en la base de datos las mediciones del spool, esperando cada vez más entre intentos fallidos
+     */
+    private void drainSpool() {
+        long backoffMs = 0;
+        int attempts = 0;      // Errores seguidos con la misma cabeza del spool (sin contar la base de datos caida)
+        int round = 0;
+        while (writeRunning) {
+            List<DataEntity> rows = sampleSpool.peek(SPOOL_DRAIN_ROWS);
+            if (rows.isEmpty()) {
+                idle(round++);
+                continue;
+            }
+            round = 0;
+            try {
+                int discarded = 0;
+                try {
+                    // Las filas del spool conservan el base_time del momento en que se aceptaron
+                    dataBatchWriter.writePrepared(rows);
+                } catch (RuntimeException e) {
+                    WriteFailure failure = WriteFailure.classify(e);
+                    boolean exhausted = attempts + 1 >= sampleSpool.getMaxAttempts();
+                    boolean giveUp = failure == WriteFailure.TRANSIENT && exhausted;
+                    if (failure != WriteFailure.PERMANENT && !giveUp) {
+                        throw e;
+                    }
+                    // Filas que la base de datos no aceptara nunca: se separan para no bloquear la cabeza del spool.
+                    // Si las rechaza todas solo se descartan cuando son errores de fila y se agotaron los intentos
+                    logger.warn("La base de datos rechaza la cabeza del spool ({} intentos), se separan las filas invalidas: {}",
+                            attempts + 1, e.getMessage());
+                    discarded = writeSeparating(rows, giveUp, failure == WriteFailure.PERMANENT && exhausted);
+                }
+                sampleSpool.commit(rows.size());
+                written.addAndGet(rows.size() - discarded);
+                spoolDrained.addAndGet(rows.size());
+                batches.incrementAndGet();
+                backoffMs = 0;
+                attempts = 0;
+            } catch (Exception e) {
+                if (WriteFailure.classify(e) != WriteFailure.UNAVAILABLE) {
+                    // Tras agotar los intentos sin poder separar filas se vuelve a contar: la cabeza no se descarta
+                    attempts = attempts + 1 >= sampleSpool.getMaxAttempts() ? 0 : attempts + 1;
+                }
+                backoffMs = Math.min(SPOOL_MAX_BACKOFF_MS, Math.max(100, backoffMs * 2));
+                logger.warn("La base de datos aun no acepta el spool ({} pendientes), reintento en {} ms: {}",
+                        sampleSpool.pending(), backoffMs, e.getMessage());
+                long until = System.currentTimeMillis() + backoffMs;
+                while (writeRunning && System.currentTimeMillis() < until) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                }
+            }
+        }
+    }
+
+    /**
+     * Estrategia de espera progresiva: primero espera activa, luego cede el procesador y finalmente se duerme
+     */
+    private static void idle(int round) {
+        if (round < 100) {
+            Thread.onSpinWait();
+        } else if (round < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> MpmcArrayQueue<T>[] newLanes(int lanes, int totalCapacity) {
+        MpmcArrayQueue<T>[] queues = new MpmcArrayQueue[lanes];
+        for (int i = 0; i < lanes; i++) {
+            queues[i] = new MpmcArrayQueue<>(Math.max(2, totalCapacity / lanes));
+        }
+        return queues;
+    }
+
+    private static int capacity(MpmcArrayQueue<?>[] queues) {
+        int capacity = 0;
+        for (MpmcArrayQueue<?> queue : queues) {
+            capacity += queue.capacity();
+        }
+        return capacity;
+    }
+
+    private Thread startThread(String name, Runnable task) {
+        return pipelineThreads.start(name, task);
+    }
+
+    private static void join(List<Thread> threads) {
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+        for (Thread thread : threads) {
+            try {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public int queueDepth() {
+        int depth = 0;
+        for (MpmcArrayQueue<RawMessage> lane : rawQueues) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    public int writeQueueDepth() {
+        int depth = 0;
+        for (MpmcArrayQueue<Sample> lane : sampleQueues) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    public long spillDepth() {
+        return spillFile == null ? 0 : spillFile.pending();
+    }
+
+    public long receivedCount() {
+        return received.get();
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    public long spilledCount() {
+        return spilled.get();
+    }
+
+    public long writtenCount() {
+        return written.get();
+    }
+
+    public long batchCount() {
+        return batches.get();
+    }
+
+    public long writeFailureCount() {
+        return writeFailures.get();
+    }
+
+    public long spoolDepth() {
+        return sampleSpool == null ? 0 : sampleSpool.pending();
+    }
+
+    public long spoolBytes() {
+        return sampleSpool == null ? 0 : sampleSpool.usedBytes();
+    }
+
+    public long spooledCount() {
+        return spooled.get();
+    }
+
+    public long spoolDrainedCount() {
+        return spoolDrained.get();
+    }
+
+    /**
+     * Mensajes con confirmación manual recibidos y aún sin confirmar ni abandonar
+     */
+    public int pendingAckCount() {
+        return pendingAcks.get();
+    }
+
+    public long abandonedCount() {
+        return abandoned.get();
+    }
+
+    /**
+     * Mensajes descartados porque la base de datos rechazó de forma permanente sus dimensiones
+     */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Mediciones que la base de datos rechazó de forma permanente y se descartaron al archivo del spool
+     */
+    public long deadLetterCount() {
+        return deadLettered.get();
+    }
+}
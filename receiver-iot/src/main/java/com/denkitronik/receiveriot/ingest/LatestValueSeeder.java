@@ -0,0 +1,72 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.services.HyperTableService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Carga al arrancar el último valor de cada serie en el {@link LatestValueStore}, que vive en memoria y se
+ * pierde con cada reinicio. Una sola consulta DISTINCT ON sobre una ventana reciente acotada: las series que
+ * no reportan desde antes de la ventana aparecen de nuevo con su próxima medición.
+ */
+@Component
+@Profile("!export")
+public class LatestValueSeeder {
+
+    private static final Logger logger = LoggerFactory.getLogger(LatestValueSeeder.class);
+
+    private static final String LATEST_SQL = "SELECT DISTINCT ON (device_id, variable_id) device_id, variable_id, unix_time, variable_value"
+            + " FROM %s WHERE unix_time >= ? ORDER BY device_id, variable_id, unix_time DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LatestValueStore latestValues;
+    private final String latestSql;
+    private final long windowMs;
+
+    public LatestValueSeeder(JdbcTemplate jdbcTemplate, LatestValueStore latestValues, HyperTableService hyperTableService,
+                             @Value("${ingest.latest.seed-window-ms:86400000}") long windowMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.latestValues = latestValues;
+        this.latestSql = LATEST_SQL.formatted(hyperTableService.readSource());
+        this.windowMs = windowMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        seed();
+    }
+
+    /**
+     * Carga los últimos valores de la ventana. Si la consulta falla el almacén se llena con la ingesta.
+     *
+     * @return Series cargadas
+     */
+    public long seed() {
+        if (windowMs <= 0) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        long[] seeded = new long[1];
+        try {
+            // update() conserva el valor más reciente si la ingesta ya registró la serie
+            jdbcTemplate.query(latestSql, rs -> {
+                if (latestValues.update(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getFloat(4))) {
+                    seeded[0]++;
+                }
+            }, start - windowMs);
+        } catch (DataAccessException e) {
+            logger.warn("No se pudieron cargar los ultimos valores: {}", e.getMessage());
+            return seeded[0];
+        }
+        logger.info("Ultimos valores cargados: {} series de los ultimos {} ms en {} ms",
+                seeded[0], windowMs, System.currentTimeMillis() - start);
+        return seeded[0];
+    }
+}
@@ -0,0 +1,192 @@
+package com.denkitronik.receiveriot.ingest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Último valor de cada serie (dispositivo, variable) fuera del heap: una tabla hash de direccionamiento
+ * abierto sobre un ByteBuffer directo, con claves primitivas, así millones de series no generan objetos
+ * ni presión sobre el GC. Las lecturas no se bloquean (cada ranura usa un seqlock) y la búsqueda es O(1).
+ * <p>
+ * Ranura de 24 bytes: [long clave = device << 32 | variable][long unix_time][int bits del valor][int versión].
+ * La tabla no crece: al llegar al factor de carga máximo las series nuevas se descartan y se cuentan.
+ */
+@Component
+public class LatestValueStore {
+
+    private static final int SLOT_BYTES = 24;
+    private static final int TIME_OFFSET = 8;
+    private static final int VALUE_OFFSET = 16;
+    private static final int VERSION_OFFSET = 20;
+    private static final long EMPTY = 0;
+    private static final long MAX_ID = 0xFFFFFFFFL;
+    private static final double MAX_LOAD = 0.75;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer table;
+    private final int mask;
+    private final long maxSeries;
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public LatestValueStore(@Value("${ingest.latest.capacity:1048576}") int capacity) {
+        if (capacity < 2 || capacity > Integer.MAX_VALUE / SLOT_BYTES) {
+            throw new IllegalArgumentException("Capacidad invalida para el almacen de ultimos valores: " + capacity);
+        }
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+        if ((long) slots * SLOT_BYTES > Integer.MAX_VALUE) {
+            slots >>>= 1;
+        }
+        this.table = ByteBuffer.allocateDirect(slots * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        this.mask = slots - 1;
+        this.maxSeries = (long) (slots * MAX_LOAD);
+    }
+
+    /**
+     * Registra una medición; si la serie ya tiene un valor más reciente, se ignora
+     *
+     * @param deviceId   Id del dispositivo
+     * @param variableId Id de la variable
+     * @param time       Marca de tiempo en milisegundos desde epoch
+     * @param value      Valor medido
+     * @return false si la serie no cabe en la tabla o sus ids están fuera de rango
+     */
+    public boolean update(long deviceId, long variableId, long time, float value) {
+        long key = key(deviceId, variableId);
+        if (key == EMPTY) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        int slot = find(key, true);
+        if (slot < 0) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        int base = slot * SLOT_BYTES;
+        // La versión impar marca la ranura en escritura; el CAS excluye a otros escritores de la misma serie
+        int version;
+        do {
+            version = (int) INTS.getVolatile(table, base + VERSION_OFFSET);
+        } while ((version & 1) != 0 || !INTS.compareAndSet(table, base + VERSION_OFFSET, version, version + 1));
+        long current = (long) LONGS.get(table, base + TIME_OFFSET);
+        if (version == 0 || time >= current) {
+            LONGS.set(table, base + TIME_OFFSET, time);
+            INTS.set(table, base + VALUE_OFFSET, Float.floatToRawIntBits(value));
+        }
+        // La versión 0 queda reservada para las ranuras sin valor
+        int next = version + 2 == 0 ? 2 : version + 2;
+        INTS.setRelease(table, base + VERSION_OFFSET, next);
+        return true;
+    }
+
+    /**
+     * Último valor de una serie
+     *
+     * @return El valor o null si la serie no tiene mediciones
+     */
+    public LatestValue get(long deviceId, long variableId) {
+        long key = key(deviceId, variableId);
+        int slot = key == EMPTY ? -1 : find(key, false);
+        if (slot < 0) {
+            return null;
+        }
+        int base = slot * SLOT_BYTES;
+        while (true) {
+            int version = (int) INTS.getAcquire(table, base + VERSION_OFFSET);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long time = (long) LONGS.getOpaque(table, base + TIME_OFFSET);
+            int bits = (int) INTS.getOpaque(table, base + VALUE_OFFSET);
+            VarHandle.loadLoadFence();
+            if ((int) INTS.getVolatile(table, base + VERSION_OFFSET) == version) {
+                return version == 0 ? null : new LatestValue(deviceId, variableId, time, Float.intBitsToFloat(bits));
+            }
+        }
+    }
+
+    /**
+     * Número de series registradas
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Mediciones descartadas por tabla llena o ids fuera de rango
+     */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Ranuras de la tabla (potencia de dos)
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Busca la ranura de la clave con sondeo lineal; si se pide, la reclama en la primera ranura vacía
+     */
+    private int find(long key, boolean claim) {
+        int slot = (int) mix(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int base = slot * SLOT_BYTES;
+            long current = (long) LONGS.getAcquire(table, base);
+            if (current == key) {
+                return slot;
+            }
+            if (current == EMPTY) {
+                if (!claim) {
+                    return -1;
+                }
+                if (size.get() >= maxSeries) {
+                    return -1;
+                }
+                if (LONGS.compareAndSet(table, base, EMPTY, key)) {
+                    size.incrementAndGet();
+                    return slot;
+                }
+                // Otro hilo reclamó la ranura: se vuelve a revisar por si fue la misma clave
+                if ((long) LONGS.getAcquire(table, base) == key) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static long key(long deviceId, long variableId) {
+        if (deviceId <= 0 || deviceId > MAX_ID || variableId <= 0 || variableId > MAX_ID) {
+            return EMPTY;
+        }
+        return deviceId << 32 | variableId;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Último valor de una serie
+     *
+     * @param deviceId   Id del dispositivo
+     * @param variableId Id de la variable
+     * @param time       Marca de tiempo en milisegundos desde epoch
+     * @param value      Valor medido
+     */
+    public record LatestValue(long deviceId, long variableId, long time, float value) {
+    }
+}
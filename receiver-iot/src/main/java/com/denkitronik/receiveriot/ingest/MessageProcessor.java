@@ -0,0 +1,138 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Location;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.entities.User;
+import com.denkitronik.receiveriot.live.LiveFeed;
+import com.denkitronik.receiveriot.services.DeviceService;
+import com.denkitronik.receiveriot.services.LocationService;
+import com.denkitronik.receiveriot.services.MeasurementService;
+import com.denkitronik.receiveriot.services.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Etapa de decodificación y resolución del pipeline de ingesta: interpreta el tópico y el payload
+ * JSON de un mensaje crudo y resuelve el usuario, la ubicación, el dispositivo y las variables.
+ */
+@Component
+@Profile("!export")
+public class MessageProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageProcessor.class);
+
+    private final UserService userService;                  // Servicio de usuario
+    private final LocationService locationService;          // Servicio de ubicación (ciudad, estado, país)
+    private final MeasurementService measurementService;    // Servicio de medición (variable)
+    private final DeviceService deviceService;              // Servicio de sensor
+    private final PayloadDecoder payloadDecoder;            // Decodificador en streaming del payload
+    private final TopicRouter topicRouter;                  // Enrutador de tópicos compilado
+    private final LiveFeed liveFeed;                        // Difusión en vivo a los suscriptores SSE
+    private final IngestInstrumentation instrumentation;    // Timers de las etapas y resumen de actividad
+    // Cada hilo de decodificacion reutiliza su propio buffer de mediciones
+    private final ThreadLocal<SampleBuffer> buffers = ThreadLocal.withInitial(() -> new SampleBuffer(8));
+
+    public MessageProcessor(UserService userService, LocationService locationService, MeasurementService measurementService, DeviceService deviceService, PayloadDecoder payloadDecoder, TopicRouter topicRouter, LiveFeed liveFeed,
+                            IngestInstrumentation instrumentation) {
+        this.userService = userService;
+        this.locationService = locationService;
+        this.measurementService = measurementService;
+        this.deviceService = deviceService;
+        this.payloadDecoder = payloadDecoder;
+        this.topicRouter = topicRouter;
+        this.liveFeed = liveFeed;
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Procesa un mensaje crudo y entrega cada medición resuelta al consumidor dado
+     *
+     * @param message Mensaje MQTT crudo
+     * @param sink    Consumidor de las mediciones resueltas (etapa de escritura)
+     * @throws RuntimeException si no se pudieron resolver las dimensiones; el mensaje no debe confirmarse
+     */
+    public void process(RawMessage message, Consumer<Sample> sink) {
+        // El payload puede ser binario (CBOR): por mensaje solo se registra su tamaño, y en DEBUG
+        if (logger.isDebugEnabled()) {
+            logger.debug("Mensaje recibido en {}: {} bytes", message.topic(), message.payload().length);
+        }
+        long start = System.nanoTime();
+
+        // Resolver el tópico a su ruta; los tópicos que no cumplen el esquema se descartan (el router los cuenta)
+        TopicRoute route = topicRouter.route(message.topic());
+        if (route == null) {
+            return;
+        }
+
+        // Obtener o crear el usuario y la ubicación (con los segmentos internados de la ruta, casi siempre en cache)
+        User userObj = userService.getUser(route.getUser());
+        Location locationObj = locationService.getOrCreateLocation(route.getCity(), route.getState(), route.getCountry());
+
+        long resolveNanos = System.nanoTime() - start;
+
+        SampleBuffer samples = buffers.get();
+        long decodeStart = System.nanoTime();
+        try {
+            // Decodificar el payload (JSON o CBOR) directamente desde los bytes
+            payloadDecoder.decode(message.payload(), samples);
+        } catch (IOException | RuntimeException e) {
+            // Los payloads invalidos se cuentan y se registran en el log como mucho una vez por intervalo
+            instrumentation.decodeFailed(message.topic(), e);
+            return;
+        }
+        long decoded = System.nanoTime();
+        instrumentation.recordDecode(decoded - decodeStart);
+
+        // Los errores de resolución (p. ej. base de datos caída) se propagan: el hilo de decodificación no
+        // confirma el mensaje y el broker lo vuelve a entregar; las mediciones ya entregadas se reescriben sin duplicarse.
+        // Si la base de datos rechaza las dimensiones de forma permanente el mensaje se descarta
+        // Obtener o crear el dispositivo asociado al usuario y la ubicación
+        Device deviceObj = samples.isEmpty() ? null : deviceService.getOrCreateDevice(route.getDevice(), userObj, locationObj);
+        resolveNanos += System.nanoTime() - decoded;
+
+        // Las mediciones sin tiempo del dispositivo comparten la hora de recepción del mensaje
+        // (en modo WIDE van en la misma fila)
+        ZonedDateTime received = ZonedDateTime.now();
+
+        // Registrar cada una de las variables del payload
+        for (int i = 0; i < samples.size(); i++) {
+            // Obtener o crear la variable de medición (o buscarla por id en los payloads binarios)
+            long resolveStart = System.nanoTime();
+            Measurement variableObj = resolveVariable(samples, i);
+            resolveNanos += System.nanoTime() - resolveStart;
+            if (variableObj == null) {
+                continue;
+            }
+
+            // Entregar la medición a la etapa de escritura y a los suscriptores en vivo
+            long deviceTime = samples.time(i);
+            ZonedDateTime time = deviceTime == SampleBuffer.NO_TIME ? received
+                    : ZonedDateTime.ofInstant(Instant.ofEpochMilli(deviceTime), received.getZone());
+            sink.accept(new Sample(samples.value(i), deviceObj, variableObj, time, message.ack(), message.receivedAt()));
+            liveFeed.publish(route, variableObj.getName(), time.toInstant().toEpochMilli(), samples.value(i));
+        }
+        instrumentation.recordResolve(resolveNanos);
+        instrumentation.messageProcessed(samples.size());
+    }
+
+    private Measurement resolveVariable(SampleBuffer samples, int index) {
+        String name = samples.name(index);
+        if (name != null) {
+            return measurementService.getOrCreateMeasurement(name);
+        }
+        try {
+            return measurementService.getMeasurement(samples.variableId(index));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Medicion descartada: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.denkitronik.receiveriot.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cola acotada sin bloqueos (lock-free) para multiples productores y multiples consumidores.
+ * Implementa el anillo con secuencias por celda propuesto por Dmitry Vyukov: cada celda guarda
+ * la posicion esperada, de modo que productores y consumidores solo compiten con un CAS sobre
+ * su propio indice (tail o head).
+ *
+ * @param <E> Tipo de los elementos de la cola
+ */
+public class MpmcArrayQueue<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();   // Siguiente posicion a consumir
+    private final AtomicLong tail = new AtomicLong();   // Siguiente posicion a producir
+
+    /**
+     * Crea la cola con la capacidad dada, redondeada a la siguiente potencia de dos
+     *
+     * @param requestedCapacity Capacidad minima de la cola
+     */
+    public MpmcArrayQueue(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("La capacidad de la cola debe ser al menos 2");
+        }
+        int capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Inserta un elemento si hay espacio
+     *
+     * @param element Elemento a insertar (no nulo)
+     * @return true si se inserto, false si la cola esta llena
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new IllegalArgumentException("La cola no admite elementos nulos");
+        }
+        long position = tail.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);  // Publica la celda al consumidor
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // La celda aun no ha sido consumida: cola llena
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Extrae el elemento mas antiguo de la cola
+     *
+     * @return El elemento o null si la cola esta vacia
+     */
+    public E poll() {
+        long position = head.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1); // Libera la celda para la siguiente vuelta
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null; // La celda aun no ha sido publicada: cola vacia
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * @return Numero aproximado de elementos en la cola
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
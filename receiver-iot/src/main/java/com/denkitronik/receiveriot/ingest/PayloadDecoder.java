@@ -0,0 +1,401 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodificador en streaming de los payloads JSON de los sensores, p. ej. {"temperatura": 24.5, "humedad": 61.0}.
+ * Además del objeto plano acepta mediciones con la marca de tiempo del dispositivo, que así puede acumular
+ * lecturas (p. ej. durante una caída del WiFi) y enviarlas en un solo mensaje:
+ * <ul>
+ *     <li>{"ts": 1717000000000, "temperatura": 24.5}: una lectura con su tiempo</li>
+ *     <li>[{"ts": ..., "temperatura": ...}, {"ts": ..., "humedad": ...}]: un lote de lecturas</li>
+ *     <li>{"samples": [...]} con el mismo lote; un "ts" junto a "samples" aplica a las lecturas que no traen el suyo</li>
+ * </ul>
+ * El tiempo puede ser un número en milisegundos o segundos desde epoch (se distinguen por magnitud) o un texto
+ * ISO-8601. Las lecturas con un tiempo inválido o fuera de la ventana aceptada se descartan y se cuentan.
+ * La antigüedad aceptada nunca supera la edad a la que TimescaleDB comprime los chunks (ver {@link #lateWindow}).
+ * <p>
+ * Los mismos payloads se aceptan codificados en CBOR, que se detecta por el primer byte (ver
+ * {@link CborReader#isCbor(byte[])}). En CBOR la clave puede ser, en lugar del nombre, el id de la variable en la
+ * tabla measurement (entero sin signo) y la clave 0 equivale a "ts": {0: 1717000000, 1: 24.5, 2: 61.0}.
+ * <p>
+ * Lee directamente los bytes del payload con un JsonParser creado desde una JsonFactory compartida y
+ * escribe los pares (variable, valor) en un {@link SampleBuffer} reutilizable, sin Map intermedio ni boxing.
+ * Los nombres de las variables salen canonicalizados de la tabla de símbolos de Jackson, así que no se
+ * crea un String nuevo por campo; los números se convierten desde los caracteres del parser.
+ * Opcionalmente mide los bytes asignados por mensaje en el hilo que decodifica.
+ */
+@Component
+public class PayloadDecoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadDecoder.class);
+
+    // Potencias de 10 representables exactamente como double
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // Un long de hasta 15 digitos es exacto como double
+    private static final int MAX_FAST_DIGITS = 15;
+    // Por debajo de este valor la marca de tiempo se interpreta en segundos (1e11 ms es marzo de 1973)
+    private static final double SECONDS_THRESHOLD = 1e11;
+    private static final long INVALID_TIME = Long.MAX_VALUE;
+    static final String BATCH_FIELD = "samples";
+    // Clave entera de la marca de tiempo en CBOR (los ids de las variables empiezan en 1)
+    static final long TIME_KEY = 0;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final String timeField;         // Campo con la marca de tiempo del dispositivo
+    private final long maxSkewMs;           // Máximo adelanto aceptado respecto al reloj del servidor
+    private final long maxAgeMs;            // Máxima antigüedad aceptada (0 = sin límite)
+
+    private final AtomicLong decodedMessages = new AtomicLong();
+    private final AtomicLong skippedFields = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong measuredMessages = new AtomicLong();
+    private final AtomicLong rejectedSamples = new AtomicLong();
+
+    public PayloadDecoder(@Value("${ingest.decode.allocation-tracking:true}") boolean allocationTracking,
+                          @Value("${ingest.decode.time-field:ts}") String timeField,
+                          @Value("${ingest.decode.max-skew-ms:300000}") long maxSkewMs,
+                          @Value("${ingest.decode.max-age-ms:604800000}") long maxAgeMs,
+                          @Value("${timescale.compression.enabled:true}") boolean compressionEnabled,
+                          @Value("${timescale.compression.after-ms:604800000}") long compressAfterMs,
+                          ObjectProvider<MeterRegistry> meterRegistry) {
+        if (timeField == null || timeField.isBlank() || BATCH_FIELD.equals(timeField)) {
+            throw new IllegalArgumentException("Campo de tiempo invalido para el decodificador: " + timeField);
+        }
+        this.threadBean = allocationTracking ? allocationBean() : null;
+        this.timeField = timeField;
+        this.maxSkewMs = maxSkewMs;
+        this.maxAgeMs = lateWindow(maxAgeMs, compressionEnabled, compressAfterMs);
+        if (this.maxAgeMs != maxAgeMs) {
+            logger.warn("ingest.decode.max-age-ms ({}) supera timescale.compression.after-ms: se aceptan lecturas de hasta {} ms de antiguedad",
+                    maxAgeMs, this.maxAgeMs);
+        }
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            FunctionCounter.builder("ingest.decode.messages", decodedMessages, AtomicLong::get).register(registry);
+            FunctionCounter.builder("ingest.decode.skipped.fields", skippedFields, AtomicLong::get)
+                    .description("Campos del payload ignorados por no ser numericos").register(registry);
+            FunctionCounter.builder("ingest.decode.rejected.samples", rejectedSamples, AtomicLong::get)
+                    .description("Mediciones descartadas por una marca de tiempo invalida o fuera de la ventana aceptada")
+                    .register(registry);
+            FunctionCounter.builder("ingest.decode.allocated.bytes", allocatedBytes, AtomicLong::get)
+                    .baseUnit("bytes").register(registry);
+            Gauge.builder("ingest.decode.allocated.bytes.per.message", this, PayloadDecoder::allocatedBytesPerMessage)
+                    .baseUnit("bytes").register(registry);
+        }
+    }
+
+    /**
+     * Antigüedad máxima efectiva de las lecturas con tiempo del dispositivo. Con compresión no supera la edad a
+     * la que se comprimen los chunks: una lectura más antigua caería en un chunk ya comprimido, donde cada
+     * inserción descomprime un segmento que luego hay que volver a comprimir.
+     *
+     * @param maxAgeMs         Antigüedad configurada (0 = sin límite)
+     * @param compressionEnabled Si TimescaleDB comprime los chunks
+     * @param compressAfterMs  Edad a partir de la cual se comprime un chunk
+     * @return Antigüedad máxima aceptada (0 = sin límite)
+     */
+    public static long lateWindow(long maxAgeMs, boolean compressionEnabled, long compressAfterMs) {
+        if (!compressionEnabled || compressAfterMs <= 0) {
+            return maxAgeMs;
+        }
+        return maxAgeMs <= 0 ? compressAfterMs : Math.min(maxAgeMs, compressAfterMs);
+    }
+
+    /**
+     * Decodifica un payload JSON (objeto plano o lote de lecturas) en el buffer dado. Los campos que no son
+     * numéricos se ignoran.
+     *
+     * @param payload Bytes del payload
+     * @param out     Buffer de salida; se limpia antes de decodificar. Las mediciones sin tiempo del
+     *                dispositivo quedan con {@link SampleBuffer#NO_TIME}
+     * @return Número de mediciones decodificadas
+     * @throws IOException Si el payload no es un objeto o arreglo JSON válido
+     */
+    public int decode(byte[] payload, SampleBuffer out) throws IOException {
+        out.clear();
+        long before = threadBean == null ? 0 : threadBean.getCurrentThreadAllocatedBytes();
+        long now = System.currentTimeMillis();
+        if (CborReader.isCbor(payload)) {
+            try {
+                decodeCbor(payload, out, now);
+            } finally {
+                countMessage(before);
+            }
+            return out.size();
+        }
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.START_OBJECT) {
+                readObject(parser, out, now, true);
+            } else if (first == JsonToken.START_ARRAY) {
+                readBatch(parser, out, now);
+            } else {
+                throw new JsonParseException(parser, "El payload debe ser un objeto o un arreglo JSON");
+            }
+        } finally {
+            countMessage(before);
+        }
+        return out.size();
+    }
+
+    private void countMessage(long allocatedBefore) {
+        decodedMessages.incrementAndGet();
+        if (threadBean != null) {
+            allocatedBytes.addAndGet(threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore);
+            measuredMessages.incrementAndGet();
+        }
+    }
+
+    private void decodeCbor(byte[] payload, SampleBuffer out, long now) throws IOException {
+        CborReader cbor = new CborReader(payload);
+        cbor.skipSelfDescribe();
+        cbor.next();
+        if (cbor.major() == CborReader.MAP) {
+            readCborObject(cbor, out, now, true);
+        } else if (cbor.major() == CborReader.ARRAY) {
+            readCborBatch(cbor, out, now);
+        } else {
+            throw new IOException("El payload CBOR debe ser un mapa o un arreglo");
+        }
+    }
+
+    /**
+     * Equivalente CBOR de {@link #readObject}: el lector está sobre la cabecera de un mapa
+     */
+    private void readCborObject(CborReader cbor, SampleBuffer out, long now, boolean topLevel) throws IOException {
+        int from = out.size();
+        long time = SampleBuffer.NO_TIME;
+        long entries = cbor.argument();
+        for (long i = 0; entries < 0 ? !cbor.atBreak() : i < entries; i++) {
+            cbor.next();
+            String name = null;
+            long id = -1;
+            boolean isTime = false;
+            boolean isBatch = false;
+            if (cbor.major() == CborReader.UNSIGNED) {
+                id = cbor.argument();
+                isTime = id == TIME_KEY;
+            } else if (cbor.major() == CborReader.TEXT) {
+                isTime = cbor.textEquals(timeField);
+                isBatch = !isTime && topLevel && cbor.textEquals(BATCH_FIELD);
+                if (!isTime && !isBatch) {
+                    name = cbor.text();
+                }
+            } else {
+                cbor.skip();
+            }
+            cbor.next();
+            if (isTime) {
+                time = readCborTime(cbor, now);
+            } else if (isBatch && cbor.major() == CborReader.ARRAY) {
+                readCborBatch(cbor, out, now);
+            } else if ((name != null || id > 0) && cbor.isNumber()) {
+                float value = (float) cbor.number();
+                if (name != null) {
+                    out.add(name, value);
+                } else {
+                    out.addById(id, value);
+                }
+            } else {
+                skippedFields.incrementAndGet();
+                cbor.skip();
+            }
+        }
+        if (time == INVALID_TIME) {
+            rejectedSamples.addAndGet(out.size() - from);
+            out.truncate(from);
+        } else if (time != SampleBuffer.NO_TIME) {
+            out.setTime(from, time);
+        }
+    }
+
+    private void readCborBatch(CborReader cbor, SampleBuffer out, long now) throws IOException {
+        long items = cbor.argument();
+        for (long i = 0; items < 0 ? !cbor.atBreak() : i < items; i++) {
+            cbor.next();
+            if (cbor.major() != CborReader.MAP) {
+                throw new IOException("Cada lectura del lote debe ser un mapa CBOR");
+            }
+            readCborObject(cbor, out, now, false);
+        }
+    }
+
+    private long readCborTime(CborReader cbor, long now) throws IOException {
+        long time;
+        if (cbor.isNumber()) {
+            time = toMillis(cbor.number());
+        } else if (cbor.major() == CborReader.TEXT) {
+            try {
+                time = OffsetDateTime.parse(cbor.text()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return INVALID_TIME;
+            }
+        } else {
+            cbor.skip();
+            return INVALID_TIME;
+        }
+        return inWindow(time, now) ? time : INVALID_TIME;
+    }
+
+    /**
+     * Lee los campos de un objeto (el parser está sobre START_OBJECT). Si el objeto trae un tiempo se asigna
+     * a sus mediciones; si el tiempo no es válido se descartan.
+     */
+    private void readObject(JsonParser parser, SampleBuffer out, long now, boolean topLevel) throws IOException {
+        int from = out.size();
+        long time = SampleBuffer.NO_TIME;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (timeField.equals(field)) {
+                time = readTime(parser, value, now);
+            } else if (topLevel && value == JsonToken.START_ARRAY && BATCH_FIELD.equals(field)) {
+                readBatch(parser, out, now);
+            } else if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+                out.add(field, readFloat(parser));
+            } else {
+                skippedFields.incrementAndGet();
+                parser.skipChildren();
+            }
+        }
+        if (time == INVALID_TIME) {
+            rejectedSamples.addAndGet(out.size() - from);
+            out.truncate(from);
+        } else if (time != SampleBuffer.NO_TIME) {
+            out.setTime(from, time);
+        }
+    }
+
+    /**
+     * Lee un lote de lecturas (el parser está sobre START_ARRAY); cada elemento es un objeto plano
+     */
+    private void readBatch(JsonParser parser, SampleBuffer out, long now) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Cada lectura del lote debe ser un objeto JSON");
+            }
+            readObject(parser, out, now, false);
+        }
+    }
+
+    /**
+     * Marca de tiempo del dispositivo en milisegundos, o INVALID_TIME si no se entiende o está fuera de la
+     * ventana [ahora - max-age, ahora + max-skew]
+     */
+    private long readTime(JsonParser parser, JsonToken value, long now) throws IOException {
+        long time;
+        if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+            time = toMillis(parser.getDoubleValue());
+        } else if (value == JsonToken.VALUE_STRING) {
+            try {
+                time = OffsetDateTime.parse(parser.getText()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return INVALID_TIME;
+            }
+        } else {
+            parser.skipChildren();
+            return INVALID_TIME;
+        }
+        return inWindow(time, now) ? time : INVALID_TIME;
+    }
+
+    private static long toMillis(double number) {
+        return (long) (Math.abs(number) < SECONDS_THRESHOLD ? number * 1000 : number);
+    }
+
+    private boolean inWindow(long time, long now) {
+        return time <= now + maxSkewMs && (maxAgeMs <= 0 || time >= now - maxAgeMs);
+    }
+
+    /**
+     * Convierte el número actual del parser a float leyendo sus caracteres, sin crear un String.
+     * Los números con exponente o más de 15 dígitos significativos se delegan a Jackson.
+     */
+    static float readFloat(JsonParser parser) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int end = offset + parser.getTextLength();
+        int i = offset;
+        boolean negative = chars[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0 && ++digits > MAX_FAST_DIGITS) {
+                    return parser.getFloatValue();
+                }
+                if (fraction) {
+                    scale++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                return parser.getFloatValue();  // Exponente u otro formato
+            }
+        }
+        if (scale >= POW10.length) {
+            return parser.getFloatValue();
+        }
+        double value = mantissa / POW10[scale];
+        return (float) (negative ? -value : value);
+    }
+
+    public long decodedCount() {
+        return decodedMessages.get();
+    }
+
+    public long skippedFieldCount() {
+        return skippedFields.get();
+    }
+
+    public long rejectedSampleCount() {
+        return rejectedSamples.get();
+    }
+
+    /**
+     * @return Promedio de bytes asignados por mensaje decodificado (0 si la medición está desactivada)
+     */
+    public double allocatedBytesPerMessage() {
+        long measured = measuredMessages.get();
+        return measured == 0 ? 0.0 : (double) allocatedBytes.get() / measured;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,124 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detecta los hilos virtuales del pipeline que quedan fijados a su hilo portador (p. ej. por un bloque
+ * synchronized del driver JDBC o del pool de conexiones mientras espera la base de datos). Escucha con JFR
+ * el evento jdk.VirtualThreadPinned: cada punto nuevo se reporta una vez en el log con su pila, se cuentan
+ * las ocurrencias por punto (ingest.virtual.pinned) y al detenerse se escribe el resumen.
+ * Solo se activa cuando el pipeline usa hilos virtuales.
+ */
+@Component
+@Profile("!export")
+public class PinningMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 12;
+
+    private final PipelineThreads pipelineThreads;
+    private final long thresholdMs;
+    private final Map<String, LongAdder> sites = new ConcurrentHashMap<>();  // Ocurrencias por punto de fijación
+    private final LongAdder pinned = new LongAdder();
+    private RecordingStream stream;
+
+    public PinningMonitor(PipelineThreads pipelineThreads,
+                          @Value("${ingest.threads.pinned-threshold-ms:20}") long thresholdMs,
+                          ObjectProvider<MeterRegistry> meterRegistry) {
+        this.pipelineThreads = pipelineThreads;
+        this.thresholdMs = thresholdMs;
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            FunctionCounter.builder("ingest.virtual.pinned", pinned, LongAdder::sum)
+                    .description("Veces que un hilo virtual quedo fijado a su portador mas del umbral").register(registry);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!pipelineThreads.isVirtual()) {
+            return;
+        }
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::record);
+        stream.startAsync();
+        logger.info("Deteccion de hilos virtuales fijados activa (umbral {} ms)", thresholdMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream == null) {
+            return;
+        }
+        stream.close();
+        if (!sites.isEmpty()) {
+            logger.warn("Puntos donde los hilos virtuales quedaron fijados a su portador: {}", pinnedSites());
+        }
+    }
+
+    private void record(RecordedEvent event) {
+        List<String> frames = event.getStackTrace() == null ? List.of()
+                : event.getStackTrace().getFrames().stream().map(PinningMonitor::frame).toList();
+        pinned(event.getDuration(), frames);
+    }
+
+    /**
+     * Registra una fijación. El punto es el primer marco fuera del JDK, el del código (driver, pool o
+     * aplicación) que tenía el monitor tomado.
+     *
+     * @param frames Pila del hilo virtual, del marco más reciente al más antiguo
+     */
+    void pinned(Duration duration, List<String> frames) {
+        pinned.increment();
+        String site = frames.stream().filter(frame -> !isJdkFrame(frame)).findFirst()
+                .orElse(frames.isEmpty() ? "desconocido" : frames.get(0));
+        LongAdder count = sites.computeIfAbsent(site, key -> new LongAdder());
+        count.increment();
+        if (count.sum() == 1) {
+            logger.warn("Hilo virtual fijado a su portador durante {} ms en {}:\n\t{}", duration.toMillis(), site,
+                    String.join("\n\t", frames.subList(0, Math.min(LOGGED_FRAMES, frames.size()))));
+        }
+    }
+
+    /**
+     * Ocurrencias por punto de fijación
+     */
+    public Map<String, Long> pinnedSites() {
+        Map<String, Long> result = new TreeMap<>();
+        sites.forEach((site, count) -> result.put(site, count.sum()));
+        return result;
+    }
+
+    public long pinnedCount() {
+        return pinned.sum();
+    }
+
+    private static String frame(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    private static boolean isJdkFrame(String frame) {
+        return frame.startsWith("java.") || frame.startsWith("jdk.") || frame.startsWith("sun.");
+    }
+}
@@ -0,0 +1,105 @@
+package com.denkitronik.receiveriot.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Fábrica de los hilos del pipeline de ingesta. Con ingest.threads.virtual=true y una JVM con hilos virtuales
+ * (Java 21 o superior) las etapas de decodificación y escritura corren en hilos virtuales: las llamadas
+ * bloqueantes de JPA/JDBC liberan el hilo portador y se pueden usar muchos más hilos de escritura que núcleos.
+ * El proyecto compila para Java 17, por eso los hilos virtuales se crean por reflexión; si la JVM no los
+ * soporta se usan hilos de plataforma.
+ */
+@Component
+public class PipelineThreads {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineThreads.class);
+    private static final long RESTART_DELAY_MS = 1000;     // Pausa antes de reiniciar un bucle que fallo
+
+    private final Method ofVirtual;     // Thread.ofVirtual(), null con hilos de plataforma
+    private final Method name;          // Thread.Builder.name(String)
+    private final Method unstarted;     // Thread.Builder.unstarted(Runnable)
+
+    public PipelineThreads(@Value("${ingest.threads.virtual:false}") boolean virtual) {
+        Method[] builder = virtual ? virtualThreadBuilder() : null;
+        if (virtual && builder == null) {
+            logger.warn("La JVM {} no soporta hilos virtuales (Java 21+), el pipeline usara hilos de plataforma",
+                    Runtime.version());
+        }
+        this.ofVirtual = builder == null ? null : builder[0];
+        this.name = builder == null ? null : builder[1];
+        this.unstarted = builder == null ? null : builder[2];
+    }
+
+    /**
+     * Hilos de plataforma, para usar el pipeline sin Spring
+     */
+    static PipelineThreads platform() {
+        return new PipelineThreads(false);
+    }
+
+    public boolean isVirtual() {
+        return ofVirtual != null;
+    }
+
+    /**
+     * Crea e inicia un hilo del pipeline (los hilos de plataforma son daemon, como lo son siempre los virtuales).
+     * Si el bucle del hilo termina con una excepción o un Error se registra y se vuelve a ejecutar: un hilo de
+     * decodificación o escritura muerto detendría la ingesta de sus tópicos sin que nada lo indique.
+     */
+    Thread start(String threadName, Runnable task) {
+        Runnable restarting = restarting(threadName, task);
+        Thread thread = isVirtual() ? newVirtualThread(threadName, restarting) : new Thread(restarting, threadName);
+        if (!isVirtual()) {
+            thread.setDaemon(true);
+        }
+        thread.start();
+        return thread;
+    }
+
+    private static Runnable restarting(String threadName, Runnable task) {
+        return () -> {
+            while (true) {
+                try {
+                    task.run();
+                    return;
+                } catch (RuntimeException | Error e) {
+                    logger.error("El hilo {} del pipeline fallo, se reinicia en {} ms", threadName, RESTART_DELAY_MS, e);
+                }
+                try {
+                    Thread.sleep(RESTART_DELAY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        };
+    }
+
+    private Thread newVirtualThread(String threadName, Runnable task) {
+        try {
+            Object builder = name.invoke(ofVirtual.invoke(null), threadName);
+            return (Thread) unstarted.invoke(builder, task);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("No se pudo crear el hilo virtual " + threadName, e);
+        }
+    }
+
+    /**
+     * Métodos del constructor de hilos virtuales, o null si la JVM no los tiene
+     */
+    private static Method[] virtualThreadBuilder() {
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            return new Method[]{Thread.class.getMethod("ofVirtual"), builder.getMethod("name", String.class),
+                    builder.getMethod("unstarted", Runnable.class)};
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
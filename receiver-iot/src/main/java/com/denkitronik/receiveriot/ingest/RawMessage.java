@@ -0,0 +1,17 @@
+package com.denkitronik.receiveriot.ingest;
+
+/**
+ * Mensaje MQTT tal como llega del broker: solo el tópico y los bytes del payload.
+ * La etapa de recepción no decodifica nada, únicamente encola este registro.
+ *
+ * @param topic      Tópico del mensaje
+ * @param payload    Bytes crudos del payload
+ * @param receivedAt Instante de recepción en milisegundos desde epoch
+ * @param ack        Confirmación pendiente del mensaje, o null si el broker no espera confirmación manual
+ */
+public record RawMessage(String topic, byte[] payload, long receivedAt, DeliveryAck ack) {
+
+    public RawMessage(String topic, byte[] payload, long receivedAt) {
+        this(topic, payload, receivedAt, null);
+    }
+}
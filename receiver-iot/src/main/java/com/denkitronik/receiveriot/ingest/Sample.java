@@ -0,0 +1,27 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Medición ya decodificada y con sus dimensiones resueltas, lista para la etapa de escritura
+ *
+ * @param value      Valor de la medición
+ * @param device     Dispositivo que reportó la medición
+ * @param variable   Variable medida
+ * @param time       Marca de tiempo de la medición
+ * @param ack        Confirmación del mensaje del que proviene, o null si no hay confirmación manual
+ * @param receivedAt Instante de recepción del mensaje en milisegundos desde epoch (0 = desconocido)
+ */
+public record Sample(float value, Device device, Measurement variable, ZonedDateTime time, DeliveryAck ack, long receivedAt) {
+
+    public Sample(float value, Device device, Measurement variable, ZonedDateTime time, DeliveryAck ack) {
+        this(value, device, variable, time, ack, 0);
+    }
+
+    public Sample(float value, Device device, Measurement variable, ZonedDateTime time) {
+        this(value, device, variable, time, null, 0);
+    }
+}
@@ -0,0 +1,114 @@
+package com.denkitronik.receiveriot.ingest;
+
+import java.util.Arrays;
+
+/**
+ * Buffer reutilizable de mediciones (variable, valor y marca de tiempo opcional) decodificadas de un payload.
+ * La variable llega por nombre o, en los payloads binarios, por el id de su Measurement.
+ * Guarda los valores en arreglos primitivos para evitar el boxing; cada hilo de decodificación
+ * usa su propio buffer y lo limpia antes de cada mensaje.
+ */
+public final class SampleBuffer {
+
+    /** Marca de una medición sin tiempo del dispositivo: se usa la hora de recepción */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    private String[] names;
+    private long[] variableIds;
+    private float[] values;
+    private long[] times;
+    private int size;
+
+    public SampleBuffer(int initialCapacity) {
+        this.names = new String[initialCapacity];
+        this.variableIds = new long[initialCapacity];
+        this.values = new float[initialCapacity];
+        this.times = new long[initialCapacity];
+    }
+
+    public void clear() {
+        // Las variables se canonicalizan en el decodificador: no hace falta limpiar las referencias
+        size = 0;
+    }
+
+    public void add(String name, float value) {
+        add(name, value, NO_TIME);
+    }
+
+    public void add(String name, float value, long time) {
+        append(name, 0, value, time);
+    }
+
+    /**
+     * Agrega una medición identificada por el id de la variable en lugar de su nombre
+     */
+    public void addById(long variableId, float value) {
+        append(null, variableId, value, NO_TIME);
+    }
+
+    private void append(String name, long variableId, float value, long time) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            variableIds = Arrays.copyOf(variableIds, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            times = Arrays.copyOf(times, size * 2);
+        }
+        names[size] = name;
+        variableIds[size] = variableId;
+        values[size] = value;
+        times[size] = time;
+        size++;
+    }
+
+    /**
+     * Asigna la marca de tiempo a las mediciones [from, size) que aún no tienen una, p. ej. cuando el campo
+     * de tiempo llega después de las variables dentro del mismo objeto
+     */
+    void setTime(int from, long time) {
+        for (int i = from; i < size; i++) {
+            if (times[i] == NO_TIME) {
+                times[i] = time;
+            }
+        }
+    }
+
+    /**
+     * Descarta las mediciones desde el índice dado
+     */
+    void truncate(int newSize) {
+        size = Math.min(size, newSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return Nombre de la variable o null si la medición llegó por id
+     */
+    public String name(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return Id de la variable si la medición llegó por id (0 si llegó por nombre)
+     */
+    public long variableId(int index) {
+        return variableIds[index];
+    }
+
+    public float value(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return Marca de tiempo del dispositivo en milisegundos desde epoch o {@link #NO_TIME}
+     */
+    public long time(int index) {
+        return times[index];
+    }
+}
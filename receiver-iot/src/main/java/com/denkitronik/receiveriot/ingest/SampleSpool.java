@@ -0,0 +1,405 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.entities.DataEntity;
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Spool local de escritura anticipada entre la etapa de decodificación y el escritor de la base de datos.
+ * Cuando TimescaleDB está lento o caído, los lotes que no se pudieron escribir se guardan aquí en vez de
+ * perderse, y se vuelven a escribir a velocidad de lote cuando la base de datos se recupera.
+ * <ul>
+ *     <li>Se compone de segmentos de tamaño fijo mapeados en memoria, en los que solo se agrega al final.</li>
+ *     <li>Cada lote agregado se sincroniza a disco con un solo force(), no fila por fila.</li>
+ *     <li>El uso de disco está acotado a max-segments x segment-bytes; si se llena, el lote se rechaza.</li>
+ *     <li>Los segmentos ya drenados se reciclan (renombrados y reutilizados con su mapeo) en vez de crear archivos nuevos.</li>
+ *     <li>Las mediciones que la base de datos rechaza de forma permanente no se quedan en la cabeza del spool:
+ *     se agregan al archivo de descartes (dead-letter.csv) del mismo directorio.</li>
+ * </ul>
+ * Formato del segmento: [long secuencia][registros...], y de cada registro:
+ * [int longitud][int crc][long unix_time][float valor][long base_time µs][long device_id][long variable_id].
+ * El CRC incluye la secuencia del segmento para que los restos de un segmento reciclado no se lean como válidos.
+ * Al arrancar se recuperan los registros de todos los segmentos que quedaron, aunque superen max-segments (no se
+ * aceptan lotes nuevos hasta drenarlos); como la escritura es idempotente
+ * sobre (unix_time, device_id, variable_id), reescribir registros ya drenados antes de una caída no duplica filas.
+ */
+@Component
+@Profile("!export")
+public class SampleSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(SampleSpool.class);
+
+    private static final int SEGMENT_HEADER_BYTES = Long.BYTES;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int PAYLOAD_BYTES = Long.BYTES + Float.BYTES + 3 * Long.BYTES;
+    static final int RECORD_BYTES = RECORD_HEADER_BYTES + PAYLOAD_BYTES;
+    private static final int MAX_FREE_SEGMENTS = 2;
+    private static final String SUFFIX = ".spool";
+    private static final String DEAD_LETTER_FILE = "dead-letter.csv";
+    private static final String DEAD_LETTER_HEADER = "unix_time,device_id,variable_id,value,base_time,error\n";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final int recordsPerSegment;
+    private final int maxAttempts;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();    // Desde el más antiguo (cabeza) al activo (cola)
+    private final Deque<Segment> free = new ArrayDeque<>();         // Segmentos drenados listos para reciclar
+    private final CRC32C crc = new CRC32C();
+    private long nextSequence;
+    private long pending;   // Registros escritos y aun no drenados
+    private boolean open;
+
+    public SampleSpool(@Value("${ingest.spool.enabled:true}") boolean enabled,
+                       @Value("${ingest.spool.path:spool}") String directory,
+                       @Value("${ingest.spool.segment-bytes:67108864}") int segmentBytes,
+                       @Value("${ingest.spool.max-segments:16}") int maxSegments,
+                       @Value("${ingest.spool.max-attempts:10}") int maxAttempts) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = Math.max(segmentBytes, SEGMENT_HEADER_BYTES + RECORD_BYTES + Integer.BYTES);
+        this.maxSegments = Math.max(2, maxSegments);
+        this.recordsPerSegment = (this.segmentBytes - SEGMENT_HEADER_BYTES - Integer.BYTES) / RECORD_BYTES;
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Abre el spool recuperando los segmentos que quedaron de una ejecución anterior
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!enabled || open) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            Segment segment = map(file);
+            segment.sequence = segment.buffer.getLong(0);
+            segment.recover();
+            if (segment.count == 0) {
+                recycle(segment);
+            } else {
+                segments.addLast(segment);
+                pending += segment.count;
+            }
+            nextSequence = Math.max(nextSequence, segment.sequence + 1);
+        }
+        open = true;
+        if (pending > 0) {
+            logger.info("Spool de escritura: {} mediciones recuperadas en {} segmentos", pending, segments.size());
+        }
+        if (segments.size() > maxSegments) {
+            logger.warn("El spool recuperado ocupa {} segmentos, mas que ingest.spool.max-segments ({}): no acepta lotes nuevos hasta drenarlos",
+                    segments.size(), maxSegments);
+        }
+    }
+
+    /**
+     * Agrega un lote al final del spool y lo sincroniza a disco
+     *
+     * @param rows Mediciones a guardar
+     * @return false si el spool está deshabilitado o no tiene espacio para todo el lote
+     */
+    public synchronized boolean append(List<DataEntity> rows) throws IOException {
+        if (!open || rows.isEmpty()) {
+            return false;
+        }
+        Segment tail = segments.peekLast();
+        long room = (tail == null ? 0 : recordsPerSegment - tail.count)
+                + (long) (maxSegments - segments.size()) * recordsPerSegment;
+        if (rows.size() > room) {
+            return false;
+        }
+        List<Segment> touched = new ArrayList<>(2);
+        for (DataEntity row : rows) {
+            if (tail == null || tail.count == recordsPerSegment) {
+                tail = nextSegment();
+                segments.addLast(tail);
+            }
+            tail.write(row);
+            if (touched.isEmpty() || touched.get(touched.size() - 1) != tail) {
+                touched.add(tail);
+            }
+        }
+        // Una sola sincronizacion por segmento tocado para todo el lote
+        for (Segment segment : touched) {
+            segment.buffer.force();
+        }
+        pending += rows.size();
+        return true;
+    }
+
+    /**
+     * Lee, sin consumirlas, las mediciones más antiguas del spool
+     *
+     * @param max Número máximo de mediciones
+     * @return Mediciones pendientes en orden de escritura
+     */
+    public synchronized List<DataEntity> peek(int max) {
+        List<DataEntity> rows = new ArrayList<>((int) Math.min(max, pending));
+        for (Segment segment : segments) {
+            for (int i = segment.readIndex; i < segment.count && rows.size() < max; i++) {
+                rows.add(segment.read(i));
+            }
+            if (rows.size() >= max) {
+                break;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Marca como drenadas las primeras mediciones del spool y recicla los segmentos que quedan vacíos
+     *
+     * @param count Número de mediciones escritas en la base de datos
+     */
+    public synchronized void commit(int count) throws IOException {
+        int remaining = (int) Math.min(count, pending);
+        pending -= remaining;
+        while (remaining > 0 && !segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            int consumed = Math.min(remaining, head.count - head.readIndex);
+            head.readIndex += consumed;
+            remaining -= consumed;
+            if (head.readIndex == head.count && (head.count == recordsPerSegment || segments.size() > 1 || pending == 0)) {
+                segments.removeFirst();
+                recycle(head);
+            }
+        }
+    }
+
+    /**
+     * Agrega al archivo de descartes las mediciones que la base de datos rechazó de forma permanente,
+     * para revisarlas o reinsertarlas a mano
+     *
+     * @param rows  Mediciones rechazadas
+     * @param error Mensaje del error de la base de datos
+     */
+    public synchronized void deadLetter(List<DataEntity> rows, String error) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(DEAD_LETTER_FILE);
+        boolean created = Files.notExists(file);
+        String reason = '"' + String.valueOf(error).replace("\"", "\"\"").replace('\n', ' ') + '"';
+        StringBuilder lines = new StringBuilder(created ? DEAD_LETTER_HEADER : "");
+        for (DataEntity row : rows) {
+            lines.append(row.getUnixTime()).append(',')
+                    .append(row.getDevice() == null ? null : row.getDevice().getId()).append(',')
+                    .append(row.getVariable() == null ? null : row.getVariable().getId()).append(',')
+                    .append(row.getVariableValue()).append(',')
+                    .append(row.getBaseTime() == null ? "" : row.getBaseTime().toInstant()).append(',')
+                    .append(reason).append('\n');
+        }
+        Files.writeString(file, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Cierra el spool; los registros pendientes se conservan en disco para la próxima ejecución
+     */
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+        for (Segment segment : free) {
+            segment.channel.close();
+        }
+        segments.clear();
+        free.clear();
+        open = false;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Intentos fallidos de drenar la cabeza del spool con errores transitorios antes de separar las filas rechazadas
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Path deadLetterPath() {
+        return directory.resolve(DEAD_LETTER_FILE);
+    }
+
+    public synchronized long pending() {
+        return pending;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending == 0;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return Bytes de disco ocupados por los segmentos en uso
+     */
+    public synchronized long usedBytes() {
+        return (long) segments.size() * segmentBytes;
+    }
+
+    private Segment nextSegment() throws IOException {
+        long sequence = nextSequence++;
+        Path path = directory.resolve(String.format("%016d%s", sequence, SUFFIX));
+        Segment segment = free.pollFirst();
+        if (segment != null) {
+            Files.move(segment.path, path, StandardCopyOption.ATOMIC_MOVE);
+            segment.path = path;
+        } else {
+            segment = map(path);
+        }
+        segment.reset(sequence);
+        return segment;
+    }
+
+    private void recycle(Segment segment) throws IOException {
+        if (free.size() < MAX_FREE_SEGMENTS) {
+            // La secuencia -1 invalida los registros restantes hasta que se reutilice
+            segment.reset(-1);
+            segment.buffer.force();
+            free.addLast(segment);
+        } else {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    private Segment map(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Segment(path, channel, buffer);
+    }
+
+    /**
+     * Segmento del spool mapeado en memoria
+     */
+    private final class Segment {
+        private Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private long sequence;
+        private int count;      // Registros escritos
+        private int readIndex;  // Registros ya drenados
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void reset(long sequence) {
+            this.sequence = sequence;
+            this.count = 0;
+            this.readIndex = 0;
+            buffer.putLong(0, sequence);
+            buffer.putInt(SEGMENT_HEADER_BYTES, 0);
+        }
+
+        private int offset(int index) {
+            return SEGMENT_HEADER_BYTES + index * RECORD_BYTES;
+        }
+
+        private void write(DataEntity row) {
+            int offset = offset(count);
+            int payload = offset + RECORD_HEADER_BYTES;
+            buffer.putLong(payload, row.getUnixTime());
+            buffer.putFloat(payload + 8, row.getVariableValue());
+            buffer.putLong(payload + 12, row.getBaseTime() == null ? 0 : toMicros(row.getBaseTime().toInstant()));
+            buffer.putLong(payload + 20, row.getDevice().getId());
+            buffer.putLong(payload + 28, row.getVariable().getId());
+            buffer.putInt(offset + Integer.BYTES, checksum(payload));
+            // Marca de fin despues del registro, y luego la longitud que lo hace visible
+            if (count + 1 < recordsPerSegment) {
+                buffer.putInt(offset(count + 1), 0);
+            }
+            buffer.putInt(offset, PAYLOAD_BYTES);
+            count++;
+        }
+
+        private DataEntity read(int index) {
+            int payload = offset(index) + RECORD_HEADER_BYTES;
+            Device device = new Device();
+            device.setId(buffer.getLong(payload + 20));
+            Measurement variable = new Measurement();
+            variable.setId(buffer.getLong(payload + 28));
+            DataEntity row = new DataEntity();
+            row.setUnixTime(buffer.getLong(payload));
+            row.setVariableValue(buffer.getFloat(payload + 8));
+            long baseTime = buffer.getLong(payload + 12);
+            row.setBaseTime(baseTime == 0 ? null : ZonedDateTime.ofInstant(fromMicros(baseTime), ZoneOffset.UTC));
+            row.setDevice(device);
+            row.setVariable(variable);
+            return row;
+        }
+
+        /**
+         * Cuenta los registros válidos: se detiene en la marca de fin o en el primer registro corrupto
+         */
+        private void recover() {
+            count = 0;
+            readIndex = 0;
+            while (count < recordsPerSegment) {
+                int offset = offset(count);
+                if (buffer.getInt(offset) != PAYLOAD_BYTES || buffer.getInt(offset + Integer.BYTES) != checksum(offset + RECORD_HEADER_BYTES)) {
+                    break;
+                }
+                count++;
+            }
+        }
+
+        private int checksum(int payload) {
+            crc.reset();
+            for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+                crc.update((int) (sequence >>> shift));
+            }
+            crc.update(buffer.slice(payload, PAYLOAD_BYTES));
+            return (int) crc.getValue();
+        }
+    }
+
+    private static long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    private static Instant fromMicros(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+    }
+}
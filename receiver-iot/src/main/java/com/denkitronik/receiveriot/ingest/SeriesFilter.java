@@ -0,0 +1,318 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Estado de los filtros de compresión de las series de una cola de escritura. Lo usa un solo hilo (cada
+ * dispositivo siempre cae en la misma cola), así que no necesita sincronización. El estado de cada serie
+ * vive en arreglos primitivos paralelos indexados por una tabla hash de direccionamiento abierto con clave
+ * device << 32 | variable; solo se guardan además las referencias al dispositivo y la variable para poder
+ * escribir más tarde el último punto retenido.
+ * <p>
+ * Por cada serie se guarda el último punto escrito (ancla), el último punto recibido y, para swinging door,
+ * las pendientes que acotan la "puerta" desde el ancla. Cuando un punto nuevo cierra la puerta se escribe el
+ * punto recibido antes que él (llevado al borde de la puerta si hace falta), que pasa a ser la nueva ancla;
+ * así la interpolación lineal entre los puntos escritos queda dentro de la tolerancia. Con banda muerta se escribe el punto que se sale de la banda.
+ * <p>
+ * El punto retenido de cada serie conserva la confirmación MQTT de su mensaje hasta que se escribe como
+ * vértice ({@link #previousAck()}) o con {@link #expire}; solo cuando otro punto lo reemplaza sin escribirlo
+ * queda suprimido del todo y su confirmación se libera.
+ */
+public final class SeriesFilter {
+
+    /** Escribir la medición recibida */
+    public static final int WRITE = 1;
+    /** Escribir el punto retenido anterior ({@link #previousTime()}, {@link #previousValue()}) */
+    public static final int WRITE_PREVIOUS = 2;
+
+    private static final long EMPTY = 0;
+    private static final long MAX_ID = 0xFFFFFFFFL;
+
+    private final SeriesFilters owner;
+    private long[] keys;
+    private long[] anchorTimes;
+    private float[] anchorValues;
+    private long[] lastTimes;
+    private float[] lastValues;
+    private double[] upperSlopes;   // Menor pendiente superior desde el ancla
+    private double[] lowerSlopes;   // Mayor pendiente inferior desde el ancla
+    private Device[] devices;
+    private Measurement[] variables;
+    private DeliveryAck[] acks;     // Confirmación del punto retenido de cada serie (null si no hay)
+    private int size;
+    private int held;               // Confirmaciones retenidas
+    private long previousTime;
+    private float previousValue;
+    private DeliveryAck previousAck;
+    private boolean dropped;        // Si la última llamada descartó definitivamente el punto retenido anterior
+
+    SeriesFilter(SeriesFilters owner, int initialCapacity) {
+        this.owner = owner;
+        allocate(Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1);
+    }
+
+    /**
+     * Decide qué escribir al recibir una medición
+     *
+     * @return Combinación de {@link #WRITE} y {@link #WRITE_PREVIOUS} (0 = se suprime)
+     */
+    public int offer(Sample sample) {
+        FilterRule rule = owner.ruleFor(sample.variable().getName());
+        Long deviceId = sample.device().getId();
+        Long variableId = sample.variable().getId();
+        if (rule == null || deviceId == null || variableId == null
+                || deviceId <= 0 || deviceId > MAX_ID || variableId <= 0 || variableId > MAX_ID) {
+            return WRITE;
+        }
+        int result = offer(rule, deviceId << 32 | variableId, sample.device(), sample.variable(),
+                sample.time().toInstant().toEpochMilli(), sample.value(), sample.ack());
+        // La medición recibida que no se escribe queda retenida: se cuenta como suprimida cuando otra la reemplaza
+        owner.count(rule, Integer.bitCount(result), dropped ? 1 : 0);
+        return result;
+    }
+
+    int offer(FilterRule rule, long key, Device device, Measurement variable, long time, float value, DeliveryAck ack) {
+        dropped = false;
+        previousAck = null;
+        int slot = find(key);
+        if (keys[slot] != key) {
+            // Serie nueva: su primer punto se escribe y es el ancla
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                slot = find(key);
+            }
+            keys[slot] = key;
+            devices[slot] = device;
+            variables[slot] = variable;
+            size++;
+            anchor(slot, time, value);
+            return WRITE;
+        }
+        if (time <= lastTimes[slot]) {
+            // Fuera de orden o repetida (p. ej. lecturas atrasadas del dispositivo): se escribe sin tocar el estado
+            return WRITE;
+        }
+        boolean pending = lastTimes[slot] > anchorTimes[slot];
+        int result = 0;
+        boolean heartbeat = rule.maxIntervalMs() > 0 && time - anchorTimes[slot] >= rule.maxIntervalMs();
+        if (rule.kind() == FilterKind.SWINGING_DOOR) {
+            double tolerance = rule.tolerance();
+            double dt = time - anchorTimes[slot];
+            double upper = Math.min(upperSlopes[slot], (value + tolerance - anchorValues[slot]) / dt);
+            double lower = Math.max(lowerSlopes[slot], (value - tolerance - anchorValues[slot]) / dt);
+            if (pending && (lower > upper || heartbeat)) {
+                // La puerta se cerró (o toca el latido): el punto anterior es un vértice y la puerta se abre
+                // de nuevo desde él
+                previousTime = lastTimes[slot];
+                previousValue = vertexValue(slot);
+                previousAck = takeAck(slot);
+                result |= WRITE_PREVIOUS;
+                anchor(slot, previousTime, previousValue);
+                dt = time - previousTime;
+                upper = (value + tolerance - previousValue) / dt;
+                lower = (value - tolerance - previousValue) / dt;
+            }
+            upperSlopes[slot] = upper;
+            lowerSlopes[slot] = lower;
+        } else {
+            double band = rule.kind() == FilterKind.PERCENT
+                    ? Math.abs(anchorValues[slot]) * rule.tolerance() / 100.0 : rule.tolerance();
+            if (Math.abs(value - anchorValues[slot]) > band || heartbeat) {
+                // Con latido se escribe aunque el valor no cambie
+                result |= WRITE;
+            }
+        }
+        dropped = pending && (result & WRITE_PREVIOUS) == 0;
+        if (dropped) {
+            // El punto retenido queda suprimido del todo: su mensaje ya se puede confirmar
+            DeliveryAck droppedAck = takeAck(slot);
+            if (droppedAck != null) {
+                droppedAck.release();
+            }
+        }
+        if ((result & WRITE) != 0) {
+            anchor(slot, time, value);
+        } else {
+            lastTimes[slot] = time;
+            lastValues[slot] = value;
+            acks[slot] = ack;
+            if (ack != null) {
+                held++;
+            }
+        }
+        return result;
+    }
+
+    private DeliveryAck takeAck(int slot) {
+        DeliveryAck ack = acks[slot];
+        if (ack != null) {
+            acks[slot] = null;
+            held--;
+        }
+        return ack;
+    }
+
+    /**
+     * Tiempo del punto retenido a escribir cuando {@link #offer} devolvió {@link #WRITE_PREVIOUS}
+     */
+    public long previousTime() {
+        return previousTime;
+    }
+
+    public float previousValue() {
+        return previousValue;
+    }
+
+    /**
+     * Confirmación del punto retenido a escribir cuando {@link #offer} devolvió {@link #WRITE_PREVIOUS}; se
+     * libera cuando se guarda el lote que lo contiene. Null si el mensaje no tenía confirmación.
+     */
+    public DeliveryAck previousAck() {
+        return previousAck;
+    }
+
+    /**
+     * Confirmaciones de mensajes que retienen los puntos pendientes de escribir
+     */
+    public int heldAcks() {
+        return held;
+    }
+
+    /**
+     * Escribe el último punto retenido de las series que no reciben mediciones desde hace un tiempo, para
+     * que el final de cada serie no quede sin guardar
+     *
+     * @param olderThan Solo las series cuyo último punto es anterior a este tiempo (Long.MAX_VALUE = todas)
+     * @param sink      Receptor de cada punto a escribir
+     * @return Número de puntos entregados
+     */
+    public int expire(long olderThan, PendingPoint sink) {
+        return expire(olderThan, sink, DeliveryAck::release);
+    }
+
+    /**
+     * Igual que {@link #expire(long, PendingPoint)}, entregando además la confirmación de cada punto para
+     * liberarla cuando se guarde
+     *
+     * @param ackSink Receptor de las confirmaciones de los puntos entregados
+     */
+    public int expire(long olderThan, PendingPoint sink, Consumer<DeliveryAck> ackSink) {
+        int emitted = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY && lastTimes[slot] > anchorTimes[slot] && lastTimes[slot] < olderThan) {
+                float value = vertexValue(slot);
+                sink.point(devices[slot], variables[slot], lastTimes[slot], value);
+                DeliveryAck ack = takeAck(slot);
+                if (ack != null) {
+                    ackSink.accept(ack);
+                }
+                anchor(slot, lastTimes[slot], value);
+                owner.count(owner.ruleFor(variables[slot].getName()), 1, 0);
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    /**
+     * Número de series con estado
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Valor a escribir para el último punto retenido: el medido si la recta desde el ancla cabe en la puerta o,
+     * si no, el punto de la puerta más cercano a él (dentro de la tolerancia del medido). Así la recta entre los
+     * puntos escritos pasa a menos de la tolerancia de todas las mediciones suprimidas. Con banda muerta la
+     * puerta queda abierta y el valor es siempre el medido.
+     */
+    private float vertexValue(int slot) {
+        double dt = lastTimes[slot] - anchorTimes[slot];
+        double slope = (lastValues[slot] - anchorValues[slot]) / dt;
+        if (slope >= lowerSlopes[slot] && slope <= upperSlopes[slot]) {
+            return lastValues[slot];
+        }
+        slope = Math.max(lowerSlopes[slot], Math.min(upperSlopes[slot], slope));
+        return (float) (anchorValues[slot] + slope * dt);
+    }
+
+    private void anchor(int slot, long time, float value) {
+        anchorTimes[slot] = time;
+        anchorValues[slot] = value;
+        lastTimes[slot] = time;
+        lastValues[slot] = value;
+        upperSlopes[slot] = Double.POSITIVE_INFINITY;
+        lowerSlopes[slot] = Double.NEGATIVE_INFINITY;
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldAnchorTimes = anchorTimes;
+        float[] oldAnchorValues = anchorValues;
+        long[] oldLastTimes = lastTimes;
+        float[] oldLastValues = lastValues;
+        double[] oldUpper = upperSlopes;
+        double[] oldLower = lowerSlopes;
+        Device[] oldDevices = devices;
+        Measurement[] oldVariables = variables;
+        DeliveryAck[] oldAcks = acks;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                anchorTimes[slot] = oldAnchorTimes[i];
+                anchorValues[slot] = oldAnchorValues[i];
+                lastTimes[slot] = oldLastTimes[i];
+                lastValues[slot] = oldLastValues[i];
+                upperSlopes[slot] = oldUpper[i];
+                lowerSlopes[slot] = oldLower[i];
+                devices[slot] = oldDevices[i];
+                variables[slot] = oldVariables[i];
+                acks[slot] = oldAcks[i];
+            }
+        }
+    }
+
+    private void allocate(int slots) {
+        keys = new long[slots];
+        anchorTimes = new long[slots];
+        anchorValues = new float[slots];
+        lastTimes = new long[slots];
+        lastValues = new float[slots];
+        upperSlopes = new double[slots];
+        lowerSlopes = new double[slots];
+        Arrays.fill(upperSlopes, Double.POSITIVE_INFINITY);
+        Arrays.fill(lowerSlopes, Double.NEGATIVE_INFINITY);
+        devices = new Device[slots];
+        variables = new Measurement[slots];
+        acks = new DeliveryAck[slots];
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Receptor de los puntos retenidos que hay que escribir
+     */
+    @FunctionalInterface
+    public interface PendingPoint {
+        void point(Device device, Measurement variable, long time, float value);
+    }
+}
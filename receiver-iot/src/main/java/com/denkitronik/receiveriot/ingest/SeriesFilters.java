@@ -0,0 +1,111 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Etapa opcional de compresión en la ingesta: filtros por variable (banda muerta absoluta o relativa,
+ * swinging door y latido de intervalo máximo) que solo dejan pasar los puntos necesarios para reconstruir
+ * cada serie dentro de su tolerancia. Las reglas se configuran por nombre de Measurement; cada cola de
+ * escritura crea su propio {@link SeriesFilter} con el estado de sus series.
+ * <p>
+ * Publica por variable configurada las filas escritas y las mediciones suprimidas (ingest.filter.samples).
+ */
+@Component
+public class SeriesFilters {
+
+    private final Map<String, FilterRule> rules;
+    private final FilterRule defaultRule;
+    private final long idleFlushMs;
+    private final int initialCapacity;
+    private final Map<FilterRule, LongAdder> written = new ConcurrentHashMap<>();
+    private final Map<FilterRule, LongAdder> suppressed = new ConcurrentHashMap<>();
+
+    public SeriesFilters(@Value("${ingest.filter.rules:}") String rules,
+                         @Value("${ingest.filter.max-interval-ms:600000}") long maxIntervalMs,
+                         @Value("${ingest.filter.idle-flush-ms:60000}") long idleFlushMs,
+                         @Value("${ingest.filter.initial-series:1024}") int initialCapacity,
+                         ObjectProvider<MeterRegistry> meterRegistry) {
+        this.rules = FilterRule.parse(rules, maxIntervalMs);
+        this.defaultRule = this.rules.get(FilterRule.DEFAULT);
+        this.idleFlushMs = idleFlushMs;
+        this.initialCapacity = initialCapacity;
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        for (FilterRule rule : this.rules.values()) {
+            LongAdder writtenRows = new LongAdder();
+            LongAdder suppressedSamples = new LongAdder();
+            written.put(rule, writtenRows);
+            suppressed.put(rule, suppressedSamples);
+            if (registry != null) {
+                FunctionCounter.builder("ingest.filter.samples", writtenRows, LongAdder::sum)
+                        .tag("variable", rule.measurement()).tag("result", "written").register(registry);
+                FunctionCounter.builder("ingest.filter.samples", suppressedSamples, LongAdder::sum)
+                        .tag("variable", rule.measurement()).tag("result", "suppressed").register(registry);
+            }
+        }
+    }
+
+    /**
+     * Indica si hay alguna regla configurada
+     */
+    public boolean isEnabled() {
+        return !rules.isEmpty();
+    }
+
+    /**
+     * Regla de una variable: la suya o la regla "*"
+     *
+     * @return La regla o null si la variable no se filtra
+     */
+    public FilterRule ruleFor(String measurement) {
+        FilterRule rule = measurement == null ? null : rules.get(measurement);
+        return rule != null ? rule : defaultRule;
+    }
+
+    /**
+     * Crea el estado de filtros de una cola de escritura (de uso exclusivo de su hilo)
+     */
+    public SeriesFilter newFilter() {
+        return new SeriesFilter(this, initialCapacity);
+    }
+
+    /**
+     * Tiempo sin mediciones tras el cual se escribe el último punto retenido de una serie
+     */
+    public long getIdleFlushMs() {
+        return idleFlushMs;
+    }
+
+    void count(FilterRule rule, int writtenRows, int suppressedSamples) {
+        if (rule == null) {
+            return;
+        }
+        if (writtenRows > 0) {
+            written.get(rule).add(writtenRows);
+        }
+        if (suppressedSamples > 0) {
+            suppressed.get(rule).add(suppressedSamples);
+        }
+    }
+
+    /**
+     * Filas escritas por los filtros (todas las variables)
+     */
+    public long writtenCount() {
+        return written.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Mediciones suprimidas por los filtros (todas las variables)
+     */
+    public long suppressedCount() {
+        return suppressed.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+}
@@ -0,0 +1,100 @@
+package com.denkitronik.receiveriot.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Archivo de desborde para la política {@link BackpressurePolicy#SPILL}.
+ * Guarda los mensajes crudos en orden de llegada y permite leerlos de nuevo en el mismo orden.
+ * Cuando se lee todo el contenido el archivo se trunca para no crecer indefinidamente.
+ * Formato de cada registro: [long receivedAt][int len tópico][tópico][int len payload][payload]
+ */
+public class SpillFile implements Closeable {
+
+    private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    private long readPosition;
+    private long writePosition;
+    private long pending;   // Registros escritos y aun no leidos
+
+    public SpillFile(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        // Los mensajes de una ejecucion anterior no se pueden distinguir de basura parcial: se descartan
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Agrega un mensaje al final del archivo
+     */
+    public synchronized void append(RawMessage message) throws IOException {
+        byte[] topic = message.topic().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = message.payload();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + topic.length + Integer.BYTES + payload.length);
+        buffer.putLong(message.receivedAt());
+        buffer.putInt(topic.length).put(topic);
+        buffer.putInt(payload.length).put(payload);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+        pending++;
+    }
+
+    /**
+     * Lee el siguiente mensaje pendiente
+     *
+     * @return El mensaje o null si no hay mensajes pendientes
+     */
+    public synchronized RawMessage poll() throws IOException {
+        if (pending == 0) {
+            return null;
+        }
+        ByteBuffer header = readFully(HEADER_BYTES);
+        long receivedAt = header.getLong();
+        byte[] topic = readFully(header.getInt()).array();
+        byte[] payload = readFully(readFully(Integer.BYTES).getInt()).array();
+        if (--pending == 0) {
+            // Todo fue leido: se reinicia el archivo
+            channel.truncate(0);
+            readPosition = 0;
+            writePosition = 0;
+        }
+        return new RawMessage(new String(topic, StandardCharsets.UTF_8), payload, receivedAt);
+    }
+
+    public synchronized long pending() {
+        return pending;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending == 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer readFully(int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                throw new IOException("Archivo de desborde truncado");
+            }
+            readPosition += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
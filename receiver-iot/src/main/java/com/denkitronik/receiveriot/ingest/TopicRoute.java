@@ -0,0 +1,29 @@
+package com.denkitronik.receiveriot.ingest;
+
+import lombok.Getter;
+
+/**
+ * Ruta resuelta de un tópico concreto: los segmentos del tópico, internados. Un mismo tópico siempre devuelve
+ * la misma instancia de ruta, así que los mensajes siguientes no vuelven a analizarlo. Las dimensiones no se
+ * guardan en la ruta: se resuelven con sus segmentos en las caches de dimensiones, que aplican su expiración
+ * e invalidación (un dispositivo borrado o reasignado se vuelve a resolver).
+ */
+@Getter
+public class TopicRoute {
+
+    private final String country;
+    private final String state;
+    private final String city;
+    private final String device;
+    private final String user;
+    private final String channel;
+
+    public TopicRoute(String country, String state, String city, String device, String user, String channel) {
+        this.country = country;
+        this.state = state;
+        this.city = city;
+        this.device = device;
+        this.user = user;
+        this.channel = channel;
+    }
+}
@@ -0,0 +1,202 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enrutador de tópicos compilado a partir de un esquema configurable,
+ * p. ej. {country}/{state}/{city}/{device}/{user}/{channel}.
+ * <ul>
+ *     <li>El esquema se compila una sola vez al arrancar; los segmentos sin llaves son literales.</li>
+ *     <li>Los tópicos se recorren con indexOf, sin expresiones regulares ni arreglos intermedios,
+ *     y sus segmentos se internan.</li>
+ *     <li>Un tópico ya visto se resuelve directamente a su {@link TopicRoute} sin volver a analizarlo.</li>
+ *     <li>Los tópicos que no cumplen el esquema se rechazan y se cuentan, sin lanzar excepciones.</li>
+ * </ul>
+ */
+@Component
+public class TopicRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopicRouter.class);
+
+    /**
+     * Campos que puede contener el esquema de tópicos
+     */
+    enum Field {
+        COUNTRY, STATE, CITY, DEVICE, USER, CHANNEL
+    }
+
+    private static final Set<Field> REQUIRED_FIELDS = EnumSet.of(Field.COUNTRY, Field.STATE, Field.CITY, Field.DEVICE, Field.USER);
+
+    private final String schema;
+    private final Field[] fields;       // Campo de cada segmento, null si el segmento es literal
+    private final String[] literals;    // Texto de los segmentos literales
+    private final int maxRoutes;
+    private final Map<String, TopicRoute> routes = new ConcurrentHashMap<>();
+
+    private final AtomicLong cachedRoutes = new AtomicLong();
+    private final AtomicLong parsedRoutes = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    public TopicRouter(@Value("${ingest.topic.schema:{country}/{state}/{city}/{device}/{user}/{channel}}") String schema,
+                       @Value("${ingest.topic.max-routes:100000}") int maxRoutes,
+                       ObjectProvider<MeterRegistry> meterRegistry) {
+        this.schema = schema;
+        this.maxRoutes = maxRoutes;
+        List<String> segments = splitSchema(schema);
+        this.fields = new Field[segments.size()];
+        this.literals = new String[segments.size()];
+        Set<Field> seen = EnumSet.noneOf(Field.class);
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                Field field = parseField(segment.substring(1, segment.length() - 1));
+                if (!seen.add(field)) {
+                    throw new IllegalArgumentException("Campo repetido en el esquema de topicos: " + segment);
+                }
+                fields[i] = field;
+            } else {
+                literals[i] = segment;
+            }
+        }
+        if (!seen.containsAll(REQUIRED_FIELDS)) {
+            throw new IllegalArgumentException("El esquema de topicos debe contener " + REQUIRED_FIELDS + ": " + schema);
+        }
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            FunctionCounter.builder("ingest.topic.routes", cachedRoutes, AtomicLong::get)
+                    .tag("result", "cached").register(registry);
+            FunctionCounter.builder("ingest.topic.routes", parsedRoutes, AtomicLong::get)
+                    .tag("result", "parsed").register(registry);
+            FunctionCounter.builder("ingest.topic.mismatches", mismatches, AtomicLong::get)
+                    .description("Topicos rechazados por no cumplir el esquema").register(registry);
+            Gauge.builder("ingest.topic.routes.size", routes, Map::size).register(registry);
+        }
+    }
+
+    /**
+     * Resuelve el tópico a su ruta
+     *
+     * @param topic Tópico del mensaje
+     * @return La ruta del tópico o null si no cumple el esquema
+     */
+    public TopicRoute route(String topic) {
+        TopicRoute route = routes.get(topic);
+        if (route != null) {
+            cachedRoutes.incrementAndGet();
+            return route;
+        }
+        route = parse(topic);
+        if (route == null) {
+            mismatches.incrementAndGet();
+            logger.debug("Topico rechazado, no cumple el esquema {}: {}", schema, topic);
+            return null;
+        }
+        parsedRoutes.incrementAndGet();
+        if (routes.size() < maxRoutes) {
+            TopicRoute existing = routes.putIfAbsent(topic, route);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Recorre el tópico segmento a segmento comparándolo con el esquema compilado
+     */
+    TopicRoute parse(String topic) {
+        String country = null;
+        String state = null;
+        String city = null;
+        String device = null;
+        String user = null;
+        String channel = null;
+        int start = 0;
+        int last = fields.length - 1;
+        for (int i = 0; i <= last; i++) {
+            int end = topic.indexOf('/', start);
+            if (i < last && end < 0) {
+                return null;    // Faltan segmentos
+            }
+            if (i == last) {
+                if (end >= 0) {
+                    return null;    // Sobran segmentos
+                }
+                end = topic.length();
+            }
+            int length = end - start;
+            if (length == 0) {
+                return null;    // Segmento vacio
+            }
+            if (fields[i] == null) {
+                if (length != literals[i].length() || !topic.regionMatches(start, literals[i], 0, length)) {
+                    return null;
+                }
+            } else {
+                String value = topic.substring(start, end).intern();
+                switch (fields[i]) {
+                    case COUNTRY -> country = value;
+                    case STATE -> state = value;
+                    case CITY -> city = value;
+                    case DEVICE -> device = value;
+                    case USER -> user = value;
+                    case CHANNEL -> channel = value;
+                }
+            }
+            start = end + 1;
+        }
+        return new TopicRoute(country, state, city, device, user, channel);
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public long mismatchCount() {
+        return mismatches.get();
+    }
+
+    public int routeCount() {
+        return routes.size();
+    }
+
+    private static List<String> splitSchema(String schema) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = schema.indexOf('/', start)) >= 0) {
+            segments.add(schema.substring(start, end));
+            start = end + 1;
+        }
+        segments.add(schema.substring(start));
+        for (String segment : segments) {
+            if (segment.isEmpty() || segment.equals("+") || segment.equals("#")) {
+                throw new IllegalArgumentException("Segmento invalido en el esquema de topicos: '" + segment + "'");
+            }
+        }
+        return segments;
+    }
+
+    private static Field parseField(String name) {
+        try {
+            return Field.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Campo desconocido en el esquema de topicos: {" + name + "}", e);
+        }
+    }
+}
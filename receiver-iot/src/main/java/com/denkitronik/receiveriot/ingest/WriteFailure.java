@@ -0,0 +1,54 @@
+package com.denkitronik.receiveriot.ingest;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+import java.util.Set;
+
+/**
+ * Clasificación de un error al escribir un lote, según el SQLState de PostgreSQL (o el tipo de excepción
+ * de Spring si no trae uno). Decide si el lote se reintenta o si sus filas se separan y se descartan.
+ */
+public enum WriteFailure {
+    /** La base de datos no está disponible (conexión, recursos, apagado): se reintenta sin límite */
+    UNAVAILABLE,
+    /**
+     * Error que puede pasar al reintentar (bloqueos, cancelaciones, esquema o permisos que se corrigen, errores no
+     * clasificados): se reintenta un número limitado de veces
+     */
+    TRANSIENT,
+    /** Alguna fila no se aceptará nunca (datos inválidos, restricciones): se separan las filas rechazadas */
+    PERMANENT;
+
+    // Clases de SQLState: 08 conexion, 53 recursos insuficientes, 58 error del sistema
+    private static final Set<String> UNAVAILABLE_CLASSES = Set.of("08", "53", "58");
+    // 57P01-57P03: apagado del servidor o no acepta conexiones todavia
+    private static final Set<String> UNAVAILABLE_STATES = Set.of("57P01", "57P02", "57P03");
+    // 22 datos, 23 restricciones: errores de una fila. Los de sintaxis o acceso (42), no soportado (0A) o
+    // dependencias (2B) afectan a todo el lote y se reintentan hasta que se corrija el esquema
+    private static final Set<String> PERMANENT_CLASSES = Set.of("22", "23");
+
+    /**
+     * Clasifica el error recorriendo sus causas hasta encontrar el SQLState
+     */
+    public static WriteFailure classify(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().length() == 5) {
+                return ofSqlState(sql.getSQLState());
+            }
+        }
+        if (error instanceof DataAccessResourceFailureException) {
+            return UNAVAILABLE;
+        }
+        return error instanceof DataIntegrityViolationException ? PERMANENT : TRANSIENT;
+    }
+
+    static WriteFailure ofSqlState(String sqlState) {
+        String sqlClass = sqlState.substring(0, 2);
+        if (UNAVAILABLE_CLASSES.contains(sqlClass) || UNAVAILABLE_STATES.contains(sqlState)) {
+            return UNAVAILABLE;
+        }
+        return PERMANENT_CLASSES.contains(sqlClass) ? PERMANENT : TRANSIENT;
+    }
+}
@@ -0,0 +1,237 @@
+package com.denkitronik.receiveriot.live;
+
+import com.denkitronik.receiveriot.ingest.TopicRoute;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Difusión en vivo de las mediciones decodificadas a los suscriptores SSE.
+ * <p>
+ * La etapa de decodificación llama a {@link #publish}: sin suscriptores es una lectura volátil; con
+ * suscriptores, la lista de los que aceptan cada serie se calcula una vez y queda en caché hasta que
+ * cambian las suscripciones, y la medición solo se agrega al buffer acotado de cada uno. Un hilo
+ * programado revisa los buffers cada {@code live.flush-ms} y un pool de envío escribe en las conexiones;
+ * un suscriptor con un envío aún en curso se salta y su buffer sigue aplicando su política.
+ */
+@Component
+public class LiveFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveFeed.class);
+    private static final int MAX_CACHED_SERIES = 100_000;
+
+    private final Map<Long, LiveSubscriber> subscribers = new ConcurrentHashMap<>();
+    // Suscriptores que aceptan cada serie (ruta, variable); se vacía al cambiar las suscripciones
+    private final Map<SeriesKey, LiveSubscriber[]> matches = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final int maxSubscribers;
+    private final int bufferCapacity;
+    private final long timeoutMs;
+    private final long heartbeatMs;
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService senders;
+    private volatile boolean active;     // Hay suscriptores; se actualiza junto con la invalidación de la caché
+    private volatile long generation;    // Cambia con cada alta o baja de suscriptor
+
+    public LiveFeed(@Value("${live.max-subscribers:5000}") int maxSubscribers,
+                    @Value("${live.buffer.capacity:256}") int bufferCapacity,
+                    @Value("${live.flush-ms:100}") long flushMs,
+                    @Value("${live.sender-threads:4}") int senderThreads,
+                    @Value("${live.timeout-ms:3600000}") long timeoutMs,
+                    @Value("${live.heartbeat-ms:15000}") long heartbeatMs,
+                    ObjectProvider<MeterRegistry> meterRegistry) {
+        this.maxSubscribers = maxSubscribers;
+        this.bufferCapacity = bufferCapacity;
+        this.timeoutMs = timeoutMs;
+        this.heartbeatMs = heartbeatMs;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(daemon("live-flush", new AtomicInteger()));
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), daemon("live-send-", new AtomicInteger()));
+        this.ticker.scheduleWithFixedDelay(this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("live.subscribers", subscribers, Map::size).register(registry);
+            FunctionCounter.builder("live.samples", published, AtomicLong::get).tag("result", "published").register(registry);
+            FunctionCounter.builder("live.samples", this, LiveFeed::droppedCount).tag("result", "dropped").register(registry);
+        }
+    }
+
+    /**
+     * Registra un suscriptor
+     *
+     * @param patterns Patrones país/estado/ciudad/dispositivo/variable
+     * @param policy   Política del buffer
+     * @param capacity Capacidad del buffer (null = la configurada)
+     * @return El suscriptor con su conexión SSE
+     * @throws IllegalArgumentException si algún patrón es inválido
+     * @throws IllegalStateException    si se alcanzó el máximo de suscriptores
+     */
+    public LiveSubscriber subscribe(List<String> patterns, LivePolicy policy, Integer capacity) {
+        if (patterns == null || patterns.isEmpty()) {
+            throw new IllegalArgumentException("Indique al menos un patron");
+        }
+        List<LivePattern> parsed = patterns.stream().map(LivePattern::parse).toList();
+        if (subscribers.size() >= maxSubscribers) {
+            throw new IllegalStateException("Se alcanzo el maximo de " + maxSubscribers + " suscriptores en vivo");
+        }
+        int size = capacity == null ? bufferCapacity : Math.min(capacity, bufferCapacity);
+        LiveSubscriber subscriber = new LiveSubscriber(ids.incrementAndGet(), parsed, new SseEmitter(timeoutMs), policy, size);
+        SseEmitter emitter = subscriber.getEmitter();
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        subscribers.put(subscriber.getId(), subscriber);
+        invalidateMatches();
+        logger.info("Suscriptor en vivo {} con patrones {}", subscriber.getId(), parsed);
+        return subscriber;
+    }
+
+    /**
+     * Entrega una medición decodificada a los suscriptores cuyo patrón la acepta; nunca bloquea
+     */
+    public void publish(TopicRoute route, String variable, long time, float value) {
+        if (!active) {
+            return;
+        }
+        SeriesKey key = new SeriesKey(route, variable);
+        LiveSubscriber[] targets = matches.get(key);
+        if (targets == null) {
+            if (matches.size() >= MAX_CACHED_SERIES) {
+                matches.clear();
+            }
+            long current = generation;
+            targets = match(route, variable);
+            matches.put(key, targets);
+            if (current != generation) {
+                // Las suscripciones cambiaron mientras se calculaba: no se deja en caché una lista vieja
+                matches.remove(key, targets);
+            }
+        }
+        if (targets.length == 0) {
+            return;
+        }
+        LiveSample sample = new LiveSample(route.getCountry(), route.getState(), route.getCity(), route.getDevice(), variable, time, value);
+        for (LiveSubscriber subscriber : targets) {
+            subscriber.offer(key, sample);
+        }
+        published.incrementAndGet();
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    public long publishedCount() {
+        return published.get();
+    }
+
+    public long droppedCount() {
+        long dropped = 0;
+        for (LiveSubscriber subscriber : subscribers.values()) {
+            dropped += subscriber.droppedCount();
+        }
+        return dropped;
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        senders.shutdownNow();
+        subscribers.values().forEach(subscriber -> subscriber.getEmitter().complete());
+        subscribers.clear();
+    }
+
+    /**
+     * Se llama después de cada alta o baja; al estar sincronizado la última llamada ve el mapa final, así que
+     * una baja concurrente con un alta no puede dejar el feed inactivo con suscriptores
+     */
+    private synchronized void invalidateMatches() {
+        generation++;
+        matches.clear();
+        active = !subscribers.isEmpty();
+    }
+
+    private LiveSubscriber[] match(TopicRoute route, String variable) {
+        List<LiveSubscriber> result = new ArrayList<>();
+        for (LiveSubscriber subscriber : subscribers.values()) {
+            if (subscriber.matches(route, variable)) {
+                result.add(subscriber);
+            }
+        }
+        return result.toArray(new LiveSubscriber[0]);
+    }
+
+    void remove(LiveSubscriber subscriber) {
+        subscriber.close();
+        if (subscribers.remove(subscriber.getId()) != null) {
+            invalidateMatches();
+            logger.info("Suscriptor en vivo {} desconectado ({} mediciones descartadas)", subscriber.getId(), subscriber.droppedCount());
+        }
+    }
+
+    /**
+     * Programa el envío de los buffers con pendientes y los latidos de las conexiones inactivas
+     */
+    void flush() {
+        long now = System.currentTimeMillis();
+        for (LiveSubscriber subscriber : subscribers.values()) {
+            boolean heartbeat = now - subscriber.lastSent() >= heartbeatMs;
+            if ((subscriber.hasPending() || heartbeat) && subscriber.startSending()) {
+                try {
+                    senders.execute(() -> send(subscriber));
+                } catch (RuntimeException e) {
+                    subscriber.endSending();
+                }
+            }
+        }
+    }
+
+    private void send(LiveSubscriber subscriber) {
+        try {
+            List<LiveSample> pending = subscriber.drain();
+            if (pending.isEmpty()) {
+                // Latido: detecta las conexiones cerradas aunque no lleguen mediciones
+                subscriber.getEmitter().send(SseEmitter.event().comment("ping"));
+            } else {
+                subscriber.getEmitter().send(SseEmitter.event().name("samples").data(pending, MediaType.APPLICATION_JSON));
+            }
+        } catch (Exception e) {
+            remove(subscriber);
+            subscriber.getEmitter().completeWithError(e);
+        } finally {
+            subscriber.endSending();
+        }
+    }
+
+    private static ThreadFactory daemon(String prefix, AtomicInteger counter) {
+        return task -> {
+            Thread thread = new Thread(task, prefix.endsWith("-") ? prefix + counter.incrementAndGet() : prefix);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record SeriesKey(TopicRoute route, String variable) {
+    }
+}
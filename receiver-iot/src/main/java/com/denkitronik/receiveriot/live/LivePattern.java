@@ -0,0 +1,74 @@
+package com.denkitronik.receiveriot.live;
+
+import com.denkitronik.receiveriot.ingest.TopicRoute;
+
+/**
+ * Patrón de suscripción en vivo: país/estado/ciudad/dispositivo/variable. Cada segmento puede ser
+ * '+' (cualquier valor) y el último puede ser '#' (cualquier valor en los segmentos restantes),
+ * como en los filtros MQTT. Ejemplo: colombia/valle/+/+/temperatura
+ */
+public final class LivePattern {
+
+    private static final int SEGMENTS = 5;
+    private static final String ANY = "+";
+    private static final String REST = "#";
+
+    private final String pattern;
+    private final String[] segments;    // null = comodín
+
+    private LivePattern(String pattern, String[] segments) {
+        this.pattern = pattern;
+        this.segments = segments;
+    }
+
+    /**
+     * Interpreta un patrón
+     *
+     * @throws IllegalArgumentException si tiene más de cinco segmentos, un segmento vacío o '#' fuera del final
+     */
+    public static LivePattern parse(String pattern) {
+        if (pattern == null || pattern.isBlank()) {
+            throw new IllegalArgumentException("Patron vacio");
+        }
+        String[] parts = pattern.trim().split("/", -1);
+        if (parts.length > SEGMENTS) {
+            throw new IllegalArgumentException("El patron tiene mas de " + SEGMENTS + " segmentos: " + pattern);
+        }
+        String[] segments = new String[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            if (i >= parts.length) {
+                if (!REST.equals(parts[parts.length - 1])) {
+                    throw new IllegalArgumentException("El patron debe tener " + SEGMENTS + " segmentos o terminar en '#': " + pattern);
+                }
+                break;
+            }
+            String part = parts[i];
+            if (part.isEmpty()) {
+                throw new IllegalArgumentException("Segmento vacio en el patron: " + pattern);
+            }
+            if (REST.equals(part) && i != parts.length - 1) {
+                throw new IllegalArgumentException("'#' solo puede ir al final del patron: " + pattern);
+            }
+            segments[i] = ANY.equals(part) || REST.equals(part) ? null : part;
+        }
+        return new LivePattern(pattern.trim(), segments);
+    }
+
+    /**
+     * Indica si la medición de una variable en la ruta dada cumple el patrón
+     */
+    public boolean matches(TopicRoute route, String variable) {
+        return matches(0, route.getCountry()) && matches(1, route.getState()) && matches(2, route.getCity())
+                && matches(3, route.getDevice()) && matches(4, variable);
+    }
+
+    private boolean matches(int index, String value) {
+        String expected = segments[index];
+        return expected == null || expected.equals(value);
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
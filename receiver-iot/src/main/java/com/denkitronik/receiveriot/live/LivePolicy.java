@@ -0,0 +1,11 @@
+package com.denkitronik.receiveriot.live;
+
+/**
+ * Política del buffer de un suscriptor en vivo cuando no alcanza a consumir lo que llega
+ */
+public enum LivePolicy {
+    /** Solo se conserva el valor más reciente de cada serie pendiente; si aun así se llena, se descarta la serie más antigua */
+    CONFLATE,
+    /** Se conservan todas las mediciones y al llenarse se descarta la más antigua */
+    DROP_OLDEST
+}
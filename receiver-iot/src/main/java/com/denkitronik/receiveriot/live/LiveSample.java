@@ -0,0 +1,15 @@
+package com.denkitronik.receiveriot.live;
+
+/**
+ * Medición enviada a los suscriptores en vivo
+ *
+ * @param country  País
+ * @param state    Estado o departamento
+ * @param city     Ciudad
+ * @param device   client-id del dispositivo
+ * @param variable Nombre de la variable
+ * @param t        Marca de tiempo en milisegundos desde epoch
+ * @param v        Valor medido
+ */
+public record LiveSample(String country, String state, String city, String device, String variable, long t, float v) {
+}
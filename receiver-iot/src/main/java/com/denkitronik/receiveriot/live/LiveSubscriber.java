@@ -0,0 +1,141 @@
+package com.denkitronik.receiveriot.live;
+
+import com.denkitronik.receiveriot.ingest.TopicRoute;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suscriptor en vivo: sus patrones, su conexión SSE y un buffer acotado con la política elegida.
+ * Los hilos de ingesta solo agregan al buffer (nunca escriben en la conexión), así un navegador lento
+ * no frena la ingesta: a lo sumo pierde mediciones intermedias.
+ */
+public class LiveSubscriber {
+
+    private final long id;
+    private final List<LivePattern> patterns;
+    private final SseEmitter emitter;
+    private final LivePolicy policy;
+    private final int capacity;
+    // CONFLATE: serie -> última medición pendiente, en orden de llegada de la serie
+    private final LinkedHashMap<Object, LiveSample> latest = new LinkedHashMap<>();
+    // DROP_OLDEST: mediciones pendientes en orden
+    private final ArrayDeque<LiveSample> queue = new ArrayDeque<>();
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+    private volatile long lastSent = System.currentTimeMillis();
+
+    public LiveSubscriber(long id, List<LivePattern> patterns, SseEmitter emitter, LivePolicy policy, int capacity) {
+        this.id = id;
+        this.patterns = List.copyOf(patterns);
+        this.emitter = emitter;
+        this.policy = policy;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * Indica si alguno de los patrones del suscriptor acepta la serie
+     */
+    boolean matches(TopicRoute route, String variable) {
+        for (LivePattern pattern : patterns) {
+            if (pattern.matches(route, variable)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Agrega una medición al buffer aplicando la política; nunca bloquea
+     *
+     * @param series Clave de la serie (para la conflación)
+     * @param sample Medición
+     */
+    synchronized void offer(Object series, LiveSample sample) {
+        if (closed) {
+            return;
+        }
+        if (policy == LivePolicy.CONFLATE) {
+            if (latest.put(series, sample) == null && latest.size() > capacity) {
+                Iterator<Object> eldest = latest.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                dropped.incrementAndGet();
+            }
+        } else {
+            if (queue.size() >= capacity) {
+                queue.pollFirst();
+                dropped.incrementAndGet();
+            }
+            queue.addLast(sample);
+        }
+    }
+
+    /**
+     * Retira todo lo pendiente del buffer
+     */
+    synchronized List<LiveSample> drain() {
+        List<LiveSample> pending;
+        if (policy == LivePolicy.CONFLATE) {
+            pending = new ArrayList<>(latest.values());
+            latest.clear();
+        } else {
+            pending = new ArrayList<>(queue);
+            queue.clear();
+        }
+        return pending;
+    }
+
+    synchronized boolean hasPending() {
+        return !latest.isEmpty() || !queue.isEmpty();
+    }
+
+    /**
+     * Marca el inicio de un envío; false si ya hay uno en curso (la conexión va lenta)
+     */
+    boolean startSending() {
+        return sending.compareAndSet(false, true);
+    }
+
+    void endSending() {
+        lastSent = System.currentTimeMillis();
+        sending.set(false);
+    }
+
+    /**
+     * Momento del último envío (datos o latido) en milisegundos desde epoch
+     */
+    long lastSent() {
+        return lastSent;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Mediciones descartadas por buffer lleno
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+}
@@ -1,11 +1,12 @@
 package com.denkitronik.receiveriot.repositories;
 
 import com.denkitronik.receiveriot.entities.DataEntity;
+import com.denkitronik.receiveriot.entities.DataEntityId;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 /**
  * Repositorio JPA para la entidad que representa los datos de las mediciones de los dispositivos
  */
-public interface DataRepository extends JpaRepository<DataEntity, Long> {
+public interface DataRepository extends JpaRepository<DataEntity, DataEntityId> {
 }
 
@@ -3,6 +3,7 @@ package com.denkitronik.receiveriot.repositories;
 import com.denkitronik.receiveriot.entities.Location;
 import com.denkitronik.receiveriot.entities.Device;
 import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -12,5 +13,14 @@ public interface DeviceRepository extends JpaRepository<Device, Long> {
 
     // Buscar un dispositivo por su client-id y ubicación
     Optional<Device> findByClientIdAndLocation(String clientId, Location location);
+
+    // Buscar un dispositivo solo por su client-id (es unico)
+    Optional<Device> findByClientId(String clientId);
+
+    // Buscar los dispositivos de un usuario
+    List<Device> findByUserUsername(String username);
+
+    // Buscar los dispositivos de una ubicación por ciudad, estado y país
+    List<Device> findByLocationCityAndLocationStateAndLocationCountry(String city, String state, String country);
 }
 
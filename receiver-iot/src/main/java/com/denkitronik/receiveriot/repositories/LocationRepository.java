@@ -2,6 +2,7 @@ package com.denkitronik.receiveriot.repositories;
 
 import com.denkitronik.receiveriot.entities.Location;
 import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -11,4 +12,7 @@ public interface LocationRepository extends JpaRepository<Location, Long> {
 
     // Buscar una ubicación por ciudad, estado y país
     Optional<Location> findByCityAndStateAndCountry(String city, String state, String country);
+
+    // Buscar las ubicaciones cuyas coordenadas aún no se han resuelto
+    List<Location> findByLatitudeIsNullOrLongitudeIsNull();
 }
@@ -0,0 +1,11 @@
+package com.denkitronik.receiveriot.services;
+
+/**
+ * Estrategia usada por {@link DataBatchWriter} para escribir un lote de mediciones
+ */
+public enum BatchMode {
+    /** Un único INSERT con múltiples filas en VALUES */
+    INSERT,
+    /** COPY ... FROM STDIN en formato binario de PostgreSQL */
+    COPY
+}
@@ -0,0 +1,35 @@
+package com.denkitronik.receiveriot.services;
+
+/**
+ * Cálculo del intervalo de los chunks de la hypertable a partir de la tasa de ingesta medida:
+ * se busca que cada chunk reciba alrededor de un número objetivo de filas.
+ */
+public final class ChunkSizing {
+
+    private static final long MINUTE = 60000;
+    private static final long HOUR = 60 * MINUTE;
+
+    private ChunkSizing() {
+    }
+
+    /**
+     * Intervalo de chunk para una tasa de ingesta
+     *
+     * @param rows       Filas escritas en la ventana de medición
+     * @param windowMs   Duración de la ventana de medición en milisegundos
+     * @param targetRows Filas objetivo por chunk
+     * @param minMs      Intervalo mínimo permitido
+     * @param maxMs      Intervalo máximo permitido
+     * @return Intervalo en milisegundos (redondeado a horas o minutos completos) o -1 si no hay datos para medir
+     */
+    public static long interval(long rows, long windowMs, long targetRows, long minMs, long maxMs) {
+        if (rows <= 0 || windowMs <= 0) {
+            return -1;
+        }
+        double rowsPerMs = (double) rows / windowMs;
+        long interval = (long) Math.min(targetRows / rowsPerMs, Long.MAX_VALUE / 2);
+        interval = Math.max(minMs, Math.min(maxMs, interval));
+        long unit = interval >= HOUR ? HOUR : MINUTE;
+        return Math.max(minMs, interval / unit * unit);
+    }
+}
@@ -0,0 +1,228 @@
+package com.denkitronik.receiveriot.services;
+
+import com.denkitronik.receiveriot.entities.DataEntity;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Escritor masivo de la hypertable 'data'. Reemplaza el save() por fila de JPA por una única
+ * sentencia por lote usando el JdbcTemplate existente: un INSERT multi-fila o un COPY binario.
+ * Ambos modos son idempotentes sobre la clave (unix_time, device_id, variable_id): reescribir un
+ * lote ya almacenado no duplica filas ni falla. COPY no admite ON CONFLICT, por eso copia a una tabla
+ * temporal de la sesión y desde ahí inserta con ON CONFLICT en la misma transacción.
+ * <p>
+ * En el modo de almacenamiento WIDE las mediciones de un mismo dispositivo y milisegundo se agrupan en una
+ * fila de 'data_wide' (clave (unix_time, device_id)); ese modo siempre escribe con INSERT multi-fila y, si la
+ * fila ya existe, le agrega las variables que no tenía.
+ */
+@Service
+public class DataBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataBatchWriter.class);
+
+    // PostgreSQL admite como maximo 32767 parametros por sentencia: 5 columnas x 1000 filas
+    private static final int ROWS_PER_STATEMENT = 1000;
+    private static final int COLUMNS = 5;
+    private static final String COLUMN_LIST = "(unix_time, variable_value, base_time, device_id, variable_id)";
+    private static final String ON_CONFLICT = " ON CONFLICT (unix_time, device_id, variable_id) DO NOTHING";
+    private static final String CREATE_STAGING_SQL =
+            "CREATE TEMP TABLE IF NOT EXISTS data_staging (LIKE data INCLUDING DEFAULTS) ON COMMIT DELETE ROWS";
+    private static final String COPY_SQL = "COPY data_staging " + COLUMN_LIST + " FROM STDIN (FORMAT binary)";
+    private static final String MERGE_STAGING_SQL = "INSERT INTO data " + COLUMN_LIST
+            + " SELECT unix_time, variable_value, base_time, device_id, variable_id FROM data_staging" + ON_CONFLICT;
+    private static final String WIDE_COLUMN_LIST = "(unix_time, base_time, device_id, variable_ids, variable_values)";
+    // Una fila ancha ya guardada (otro lote, otro topico del dispositivo en el mismo milisegundo) recibe las
+    // variables que aun no tenia; las que ya tenia conservan su valor, como DO NOTHING en el modo de una fila
+    // por variable. Si no aporta variables nuevas (p. ej. un lote reescrito) la fila no se actualiza.
+    private static final String WIDE_NEW_VARIABLES = " FROM unnest(EXCLUDED.variable_ids, EXCLUDED.variable_values)"
+            + " WITH ORDINALITY AS u(variable_id, variable_value, ord) WHERE u.variable_id <> ALL(data_wide.variable_ids) ORDER BY u.ord)";
+    private static final String WIDE_ON_CONFLICT = " ON CONFLICT (unix_time, device_id) DO UPDATE SET"
+            + " variable_ids = data_wide.variable_ids || ARRAY(SELECT u.variable_id" + WIDE_NEW_VARIABLES + ","
+            + " variable_values = data_wide.variable_values || ARRAY(SELECT u.variable_value" + WIDE_NEW_VARIABLES
+            + " WHERE NOT data_wide.variable_ids @> EXCLUDED.variable_ids";
+    // Cabecera del formato binario de COPY: firma, flags y longitud de la extension
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    // Microsegundos entre 1970-01-01 y 2000-01-01, epoch de los timestamptz de PostgreSQL
+    private static final long PG_EPOCH_OFFSET_MICROS = 946_684_800_000_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BatchMode mode;
+    private final StorageMode storageMode;
+    private final Map<Integer, String> insertSqlCache = new ConcurrentHashMap<>();
+    private final Map<Integer, String> wideInsertSqlCache = new ConcurrentHashMap<>();
+
+    public DataBatchWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           @Value("${ingest.batch.mode:INSERT}") BatchMode mode,
+                           @Value("${ingest.storage.mode:NARROW}") StorageMode storageMode) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = mode;
+        this.storageMode = storageMode;
+        if (storageMode == StorageMode.WIDE && mode == BatchMode.COPY) {
+            logger.info("El modo de almacenamiento WIDE escribe con INSERT multi-fila; se ignora ingest.batch.mode=COPY");
+        }
+    }
+
+    /**
+     * Escribe un lote de mediciones en una sola ida y vuelta a la base de datos (por cada 1000 filas en modo INSERT)
+     *
+     * @param rows Mediciones a escribir
+     * @return Numero de filas insertadas (las que ya existian no se cuentan); en modo WIDE, filas anchas
+     * insertadas o con variables nuevas
+     */
+    public int write(List<DataEntity> rows) {
+        // Los valores por defecto son los mismos que aplica JPA al persistir la entidad
+        rows.forEach(DataEntity::prePersist);
+        return writePrepared(rows);
+    }
+
+    /**
+     * Escribe mediciones ya preparadas por {@link #write} (p. ej. las recuperadas del spool) sin volver a asignar
+     * base_time, que conserva el momento en que se aceptaron
+     *
+     * @param rows Mediciones con unix_time y base_time asignados
+     * @return Numero de filas insertadas, como en {@link #write}
+     */
+    public int writePrepared(List<DataEntity> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        if (storageMode == StorageMode.WIDE) {
+            return insertWide(WideRow.group(rows));
+        }
+        return mode == BatchMode.COPY ? copy(rows) : insert(rows);
+    }
+
+    public BatchMode getMode() {
+        return mode;
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    private int insert(List<DataEntity> rows) {
+        int inserted = 0;
+        for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+            List<DataEntity> chunk = rows.subList(from, Math.min(rows.size(), from + ROWS_PER_STATEMENT));
+            inserted += jdbcTemplate.update(insertSql(chunk.size()), (PreparedStatement ps) -> {
+                int index = 1;
+                for (DataEntity row : chunk) {
+                    ps.setLong(index++, row.getUnixTime());
+                    ps.setFloat(index++, row.getVariableValue());
+                    ps.setTimestamp(index++, Timestamp.from(row.getBaseTime().toInstant()));
+                    ps.setLong(index++, row.getDevice().getId());
+                    ps.setLong(index++, row.getVariable().getId());
+                }
+            });
+        }
+        return inserted;
+    }
+
+    private String insertSql(int rowCount) {
+        return insertSqlCache.computeIfAbsent(rowCount, count -> {
+            StringBuilder sql = new StringBuilder("INSERT INTO data ").append(COLUMN_LIST).append(" VALUES ");
+            for (int i = 0; i < count; i++) {
+                sql.append(i == 0 ? "(?,?,?,?,?)" : ",(?,?,?,?,?)");
+            }
+            return sql.append(ON_CONFLICT).toString();
+        });
+    }
+
+    private int insertWide(List<WideRow> rows) {
+        int inserted = 0;
+        for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+            List<WideRow> chunk = rows.subList(from, Math.min(rows.size(), from + ROWS_PER_STATEMENT));
+            inserted += jdbcTemplate.update(wideInsertSql(chunk.size()), (PreparedStatement ps) -> {
+                PGConnection connection = ps.getConnection().unwrap(PGConnection.class);
+                int index = 1;
+                for (WideRow row : chunk) {
+                    ps.setLong(index++, row.unixTime());
+                    ps.setTimestamp(index++, Timestamp.from(row.baseTime().toInstant()));
+                    ps.setLong(index++, row.deviceId());
+                    ps.setArray(index++, connection.createArrayOf("int8", row.variableIds()));
+                    ps.setArray(index++, connection.createArrayOf("float4", row.variableValues()));
+                }
+            });
+        }
+        return inserted;
+    }
+
+    private String wideInsertSql(int rowCount) {
+        return wideInsertSqlCache.computeIfAbsent(rowCount, count -> {
+            StringBuilder sql = new StringBuilder("INSERT INTO data_wide ").append(WIDE_COLUMN_LIST).append(" VALUES ");
+            for (int i = 0; i < count; i++) {
+                sql.append(i == 0 ? "(?,?,?,?,?)" : ",(?,?,?,?,?)");
+            }
+            return sql.append(WIDE_ON_CONFLICT).toString();
+        });
+    }
+
+    private int copy(List<DataEntity> rows) {
+        byte[] data = encodeBinaryCopy(rows);
+        Integer inserted = transactionTemplate.execute(status -> jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_STAGING_SQL);
+                connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL, new ByteArrayInputStream(data));
+                return statement.executeUpdate(MERGE_STAGING_SQL);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+        return inserted == null ? 0 : inserted;
+    }
+
+    /**
+     * Codifica las filas en el formato binario de COPY: bigint, real, timestamptz, bigint, bigint
+     */
+    static byte[] encodeBinaryCopy(List<DataEntity> rows) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + rows.size() * 50);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(COPY_SIGNATURE);
+            out.writeInt(0);    // Flags
+            out.writeInt(0);    // Longitud de la extension de cabecera
+            for (DataEntity row : rows) {
+                out.writeShort(COLUMNS);
+                out.writeInt(Long.BYTES);
+                out.writeLong(row.getUnixTime());
+                out.writeInt(Float.BYTES);
+                out.writeFloat(row.getVariableValue());
+                out.writeInt(Long.BYTES);
+                out.writeLong(toPostgresMicros(row.getBaseTime().toInstant()));
+                out.writeInt(Long.BYTES);
+                out.writeLong(row.getDevice().getId());
+                out.writeInt(Long.BYTES);
+                out.writeLong(row.getVariable().getId());
+            }
+            out.writeShort(-1); // Fin de los datos
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long toPostgresMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000 - PG_EPOCH_OFFSET_MICROS;
+    }
+}
@@ -18,14 +18,23 @@ public class DataService {
     }
 
     public void createData(float value, Device device, Measurement variable, ZonedDateTime time) {
+        dataRepository.save(buildData(value, device, variable, time));
+    }
+
+    /**
+     * Construye la entidad de una medición sin persistirla, para escribirla luego en lote
+     */
+    public DataEntity buildData(float value, Device device, Measurement variable, ZonedDateTime time) {
         if (device == null || variable == null || time == null) {
             throw new IllegalArgumentException("Device, Measurement, and Timestamp cannot be null");
         }
         DataEntity data = new DataEntity();
+        // unix_time es el tiempo de la medición (del dispositivo o de recepción); base_time lo asigna la escritura
+        data.setUnixTime(time.toInstant().toEpochMilli());
         data.setVariableValue(value);
         data.setDevice(device);
         data.setVariable(variable);
         data.setBaseTime(time);
-        dataRepository.save(data);
+        return data;
     }
 }
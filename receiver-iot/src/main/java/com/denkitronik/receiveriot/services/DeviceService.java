@@ -1,5 +1,7 @@
 package com.denkitronik.receiveriot.services;
 
+import com.denkitronik.receiveriot.cache.DimensionCache;
+import com.denkitronik.receiveriot.cache.DimensionCaches;
 import com.denkitronik.receiveriot.entities.Location;
 import com.denkitronik.receiveriot.entities.Device;
 import com.denkitronik.receiveriot.repositories.DeviceRepository;
@@ -12,12 +14,18 @@ import java.util.Optional;
 public class DeviceService {
 
     private final DeviceRepository deviceRepository;
+    private final DimensionCache<DeviceKey, Device> cache;  // Cache de dispositivos por client-id y ubicacion
 
-    public DeviceService(DeviceRepository deviceRepository) {
+    public DeviceService(DeviceRepository deviceRepository, DimensionCaches dimensionCaches) {
         this.deviceRepository = deviceRepository;
+        this.cache = dimensionCaches.create("devices");
     }
 
     public Device getOrCreateDevice(String clientId, User user, Location location) {
+        return cache.get(new DeviceKey(clientId, location.getId()), key -> findOrCreateDevice(clientId, user, location));
+    }
+
+    private Device findOrCreateDevice(String clientId, User user, Location location) {
         // Busca si ya existe un dispositivo con el clientId y la ubicación dadas
         Optional<Device> existingDevice = deviceRepository.findByClientIdAndLocation(clientId, location);
 
@@ -30,4 +38,10 @@ public class DeviceService {
             return deviceRepository.save(newDevice);
         });
     }
+
+    /**
+     * Clave de la cache de dispositivos
+     */
+    private record DeviceKey(String clientId, Long locationId) {
+    }
 }
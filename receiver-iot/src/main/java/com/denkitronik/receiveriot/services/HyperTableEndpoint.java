@@ -0,0 +1,27 @@
+package com.denkitronik.receiveriot.services;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Endpoint de actuator (/actuator/hypertable) con el número de chunks, la relación de compresión,
+ * el tamaño en disco y las políticas aplicadas a la hypertable 'data'.
+ */
+@Component
+@Endpoint(id = "hypertable")
+public class HyperTableEndpoint {
+
+    private final HyperTableService hyperTableService;
+
+    public HyperTableEndpoint(HyperTableService hyperTableService) {
+        this.hyperTableService = hyperTableService;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hypertable() {
+        return hyperTableService.storageStats();
+    }
+}
@@ -1,38 +1,462 @@
 package com.denkitronik.receiveriot.services;
 
+import com.denkitronik.receiveriot.ingest.PayloadDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Clase que se encarga de crear la hypertable en la base de datos TimescaleDB
- * si no existe.
+ * si no existe, junto con sus políticas de almacenamiento (tamaño de chunk, compresión
+ * y retención) y la jerarquía de agregados continuos (rollups) con sus políticas de refresco.
+ * <p>
+ * En el modo de almacenamiento WIDE también convierte 'data_wide' en hypertable con las mismas políticas y
+ * crea la vista 'data_all', que une 'data' con las filas anchas desempaquetadas; las consultas leen de
+ * {@link #readSource()}. Los agregados continuos no admiten vistas ni unnest como origen, así que en ese
+ * modo no se crean y las series se agregan desde los datos crudos.
+ * <p>
+ * Al crear un agregado no se materializa el histórico en el arranque: la política de refresco cubre la ventana
+ * de datos tardíos y un hilo en segundo plano materializa lo anterior en ventanas acotadas.
  */
 @Service
 public class HyperTableService {
 
     private static final Logger logger = LoggerFactory.getLogger(HyperTableService.class);
 
+    private static final String SERIES_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS data_device_variable_time_idx ON data (device_id, variable_id, unix_time DESC)";
+    // La columna de tiempo es entera (ms desde epoch): TimescaleDB necesita saber cuál es el "ahora" en esa unidad
+    private static final String INTEGER_NOW_SQL = "CREATE OR REPLACE FUNCTION data_unix_now() RETURNS BIGINT"
+            + " LANGUAGE SQL STABLE AS $$ SELECT (extract(epoch FROM now()) * 1000)::bigint $$";
+    private static final String WIDE_TABLE = "data_wide";
+    private static final String UNPACKED_VIEW = "data_all";
+    private static final String UNPACKED_VIEW_SQL = "CREATE OR REPLACE VIEW " + UNPACKED_VIEW + " AS"
+            + " SELECT unix_time, variable_value, base_time, device_id, variable_id FROM data"
+            + " UNION ALL SELECT w.unix_time, u.variable_value, w.base_time, w.device_id, u.variable_id FROM data_wide w"
+            + " CROSS JOIN LATERAL unnest(w.variable_ids, w.variable_values) AS u(variable_id, variable_value)";
+    private static final long MIN_SCHEDULE_SECONDS = 60;
+    private static final long DEFAULT_CHUNK_INTERVAL_MS = 86400000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final List<Rollup> rollups;          // Jerarquía configurada, de menor a mayor
+    private final int refreshBuckets;            // Intervalos hacia atrás que vuelve a calcular cada refresco
+    private final long backfillWindowMs;         // Rango que materializa cada refresco del histórico (0 = no se materializa)
+    private volatile Thread backfill;
+    private volatile List<Rollup> available = List.of();  // Niveles creados y listos para consultar
+    private final long chunkIntervalMs;          // Intervalo fijo de chunk (0 = calculado con la tasa de ingesta)
+    private final long chunkTargetRows;          // Filas objetivo por chunk cuando el intervalo se calcula
+    private final long chunkSampleWindowMs;      // Ventana en la que se mide la tasa de ingesta
+    private final long chunkMinIntervalMs;
+    private final long chunkMaxIntervalMs;
+    private final boolean compressionEnabled;
+    private final long compressAfterMs;          // Edad a partir de la cual se comprime un chunk
+    private final long retentionMs;              // Edad a partir de la cual se elimina un chunk (0 = sin retención)
+    private final StorageMode storageMode;
+    private final long lateWindowMs;             // Antigüedad máxima de las mediciones con tiempo del dispositivo (0 = sin límite)
+    private final boolean manageSchema;          // Crear las hypertables, políticas y agregados al arrancar
 
-    public HyperTableService(JdbcTemplate jdbcTemplate) {
+    public HyperTableService(JdbcTemplate jdbcTemplate,
+                             @Value("${timescale.rollups:1m,1h,1d}") String rollups,
+                             @Value("${timescale.rollups.refresh-buckets:3}") int refreshBuckets,
+                             @Value("${timescale.rollups.backfill-window-ms:86400000}") long backfillWindowMs,
+                             @Value("${timescale.chunk.interval-ms:0}") long chunkIntervalMs,
+                             @Value("${timescale.chunk.target-rows:5000000}") long chunkTargetRows,
+                             @Value("${timescale.chunk.sample-window-ms:86400000}") long chunkSampleWindowMs,
+                             @Value("${timescale.chunk.min-interval-ms:3600000}") long chunkMinIntervalMs,
+                             @Value("${timescale.chunk.max-interval-ms:604800000}") long chunkMaxIntervalMs,
+                             @Value("${timescale.compression.enabled:true}") boolean compressionEnabled,
+                             @Value("${timescale.compression.after-ms:604800000}") long compressAfterMs,
+                             @Value("${timescale.retention.after-ms:0}") long retentionMs,
+                             @Value("${ingest.storage.mode:NARROW}") StorageMode storageMode,
+                             @Value("${ingest.decode.max-age-ms:604800000}") long lateWindowMs,
+                             @Value("${timescale.schema.manage:true}") boolean manageSchema) {
+        if (refreshBuckets < 3) {
+            // TimescaleDB exige que la ventana de refresco cubra al menos dos intervalos
+            throw new IllegalArgumentException("timescale.rollups.refresh-buckets debe ser al menos 3");
+        }
+        if (chunkMinIntervalMs <= 0 || chunkMaxIntervalMs < chunkMinIntervalMs) {
+            throw new IllegalArgumentException("Limites de intervalo de chunk invalidos: " + chunkMinIntervalMs + " - " + chunkMaxIntervalMs);
+        }
+        if (retentionMs > 0 && compressionEnabled && retentionMs <= compressAfterMs) {
+            throw new IllegalArgumentException("timescale.retention.after-ms debe ser mayor que timescale.compression.after-ms");
+        }
         this.jdbcTemplate = jdbcTemplate;
+        this.rollups = Rollup.parse(rollups);
+        this.refreshBuckets = refreshBuckets;
+        this.backfillWindowMs = backfillWindowMs;
+        this.chunkIntervalMs = chunkIntervalMs;
+        this.chunkTargetRows = chunkTargetRows;
+        this.chunkSampleWindowMs = chunkSampleWindowMs;
+        this.chunkMinIntervalMs = chunkMinIntervalMs;
+        this.chunkMaxIntervalMs = chunkMaxIntervalMs;
+        this.compressionEnabled = compressionEnabled;
+        this.compressAfterMs = compressAfterMs;
+        this.retentionMs = retentionMs;
+        this.storageMode = storageMode;
+        // La misma ventana que acepta el decodificador
+        this.lateWindowMs = PayloadDecoder.lateWindow(lateWindowMs, compressionEnabled, compressAfterMs);
+        this.manageSchema = manageSchema;
     }
 
     @PostConstruct
     public void createHypertableIfNotExists() {
+        if (!manageSchema) {
+            // P. ej. la exportacion por linea de comandos: solo lee, no modifica el esquema de la instancia en servicio
+            logger.info("Administracion del esquema deshabilitada: no se crean hypertables, politicas ni agregados");
+            return;
+        }
+        for (String table : tables()) {
+            try {
+                // Ejecutar la consulta SQL para crear la hypertable si no existe
+                long initialInterval = chunkIntervalMs > 0 ? chunkIntervalMs : DEFAULT_CHUNK_INTERVAL_MS;
+                String sql = "SELECT create_hypertable('" + table + "', 'unix_time', if_not_exists => TRUE, chunk_time_interval => " + initialInterval + ");";
+                jdbcTemplate.execute(sql);
+                logger.info("Hypertable '{}' creada.", table);
+            } catch (Exception e) {
+                // Manejar cualquier error durante la ejecución del SQL
+                logger.info("La hypertable '{}' ya existia: {}", table, e.getMessage());
+            }
+        }
+        try {
+            // Indice para las consultas de series por dispositivo y variable en un rango de tiempo
+            jdbcTemplate.execute(SERIES_INDEX_SQL);
+            if (storageMode == StorageMode.WIDE) {
+                jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS data_wide_device_time_idx ON data_wide (device_id, unix_time DESC)");
+                jdbcTemplate.execute(UNPACKED_VIEW_SQL);
+            }
+        } catch (Exception e) {
+            logger.warn("No se pudo crear el indice de series: {}", e.getMessage());
+        }
         try {
-            // Ejecutar la consulta SQL para crear la hypertable si no existe
-            String sql = "SELECT create_hypertable('data', 'unix_time', if_not_exists => TRUE, chunk_time_interval => 86400000);";
-            jdbcTemplate.execute(sql);
-            logger.info("Hypertable 'data_entity' creada.");
+            jdbcTemplate.execute(INTEGER_NOW_SQL);
+            for (String table : tables()) {
+                jdbcTemplate.execute("SELECT set_integer_now_func('" + table + "', 'data_unix_now', replace_if_exists => TRUE)");
+                applyStoragePolicies(table);
+            }
         } catch (Exception e) {
-            // Manejar cualquier error durante la ejecución del SQL
-            logger.info("La hypertable ya existia: {}", e.getMessage());
+            logger.warn("No se pudieron aplicar las politicas de almacenamiento: {}", e.getMessage());
+        }
+        if (storageMode == StorageMode.WIDE) {
+            available = List.of();
+            logger.info("Modo de almacenamiento WIDE: las series se agregan desde '{}' sin agregados continuos", UNPACKED_VIEW);
+        } else {
+            createRollups();
         }
     }
-}
 
+    /**
+     * Detiene la materialización del histórico; el refresco en curso termina en la base de datos
+     */
+    @PreDestroy
+    public void stopBackfill() {
+        Thread thread = backfill;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Hypertables que administra el servicio según el modo de almacenamiento
+     */
+    private List<String> tables() {
+        return storageMode == StorageMode.WIDE ? List.of("data", WIDE_TABLE) : List.of("data");
+    }
+
+    /**
+     * Tabla o vista desde la que se leen las mediciones: 'data' o, en modo WIDE, la vista que además
+     * desempaqueta 'data_wide'. Expone siempre las columnas de 'data'.
+     */
+    public String readSource() {
+        return storageMode == StorageMode.WIDE ? UNPACKED_VIEW : "data";
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Aplica el intervalo de chunk, la compresión y la retención configurados. Es idempotente: solo
+     * cambia lo que difiere de lo que ya tiene la base de datos.
+     */
+    public void applyStoragePolicies() {
+        tables().forEach(this::applyStoragePolicies);
+    }
+
+    private void applyStoragePolicies(String table) {
+        long interval = chunkIntervalMs > 0 ? chunkIntervalMs : measuredChunkInterval(table);
+        Long current = jdbcTemplate.queryForObject("SELECT integer_interval FROM timescaledb_information.dimensions"
+                + " WHERE hypertable_name = ? AND column_name = 'unix_time'", Long.class, table);
+        if (interval > 0 && (current == null || current != interval)) {
+            // Solo afecta a los chunks nuevos
+            jdbcTemplate.execute("SELECT set_chunk_time_interval('" + table + "', " + interval + "::bigint)");
+            logger.info("Intervalo de chunk de '{}': {} ms (antes {} ms)", table, interval, current);
+        }
+
+        if (compressionEnabled) {
+            Boolean enabled = jdbcTemplate.queryForObject(
+                    "SELECT compression_enabled FROM timescaledb_information.hypertables WHERE hypertable_name = ?", Boolean.class, table);
+            if (!Boolean.TRUE.equals(enabled)) {
+                // Segmentar por dispositivo y variable: cada serie se comprime por separado y en orden de tiempo.
+                // Las filas anchas ya reúnen las variables, así que solo se segmentan por dispositivo.
+                String segmentBy = WIDE_TABLE.equals(table) ? "device_id" : "device_id, variable_id";
+                jdbcTemplate.execute("ALTER TABLE " + table + " SET (timescaledb.compress,"
+                        + " timescaledb.compress_segmentby = '" + segmentBy + "', timescaledb.compress_orderby = 'unix_time DESC')");
+            }
+            ensurePolicy(table, "policy_compression", "compress_after", compressAfterMs,
+                    "SELECT add_compression_policy('" + table + "', compress_after => " + compressAfterMs + "::bigint)",
+                    "SELECT remove_compression_policy('" + table + "', if_exists => TRUE)");
+        } else {
+            jdbcTemplate.execute("SELECT remove_compression_policy('" + table + "', if_exists => TRUE)");
+        }
+
+        if (retentionMs > 0) {
+            ensurePolicy(table, "policy_retention", "drop_after", retentionMs,
+                    "SELECT add_retention_policy('" + table + "', drop_after => " + retentionMs + "::bigint)",
+                    "SELECT remove_retention_policy('" + table + "', if_exists => TRUE)");
+        } else {
+            jdbcTemplate.execute("SELECT remove_retention_policy('" + table + "', if_exists => TRUE)");
+        }
+    }
+
+    /**
+     * Intervalo de chunk calculado con las filas escritas en la ventana de medición
+     */
+    private long measuredChunkInterval(String table) {
+        Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM " + table + " WHERE unix_time >= data_unix_now() - ?",
+                Long.class, chunkSampleWindowMs);
+        return ChunkSizing.interval(rows == null ? 0 : rows, chunkSampleWindowMs, chunkTargetRows, chunkMinIntervalMs, chunkMaxIntervalMs);
+    }
+
+    /**
+     * Crea la política si no existe o la vuelve a crear si su configuración cambió
+     */
+    private void ensurePolicy(String table, String proc, String key, long value, String addSql, String removeSql) {
+        List<String> configured = jdbcTemplate.queryForList("SELECT config ->> '" + key + "' FROM timescaledb_information.jobs"
+                + " WHERE proc_name = ? AND hypertable_name = ?", String.class, proc, table);
+        if (configured.size() == 1 && String.valueOf(value).equals(configured.get(0))) {
+            return;
+        }
+        jdbcTemplate.execute(removeSql);
+        jdbcTemplate.execute(addSql);
+        logger.info("Politica {} de '{}': {} = {} ms", proc, table, key, value);
+    }
+
+    /**
+     * Estadísticas de almacenamiento de la hypertable: chunks, compresión y tamaño
+     *
+     * @return Mapa con las estadísticas (para el endpoint de actuator)
+     */
+    public Map<String, Object> storageStats() {
+        Map<String, Object> stats = tableStats("data");
+        stats.put("compressAfterMs", compressionEnabled ? compressAfterMs : null);
+        stats.put("retentionMs", retentionMs > 0 ? retentionMs : null);
+        stats.put("rollups", available.stream().map(Rollup::view).toList());
+        stats.put("storageMode", storageMode);
+        if (storageMode == StorageMode.WIDE) {
+            stats.put(WIDE_TABLE, tableStats(WIDE_TABLE));
+        }
+        return stats;
+    }
+
+    private Map<String, Object> tableStats(String table) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT count(*) AS total, count(*) FILTER (WHERE is_compressed) AS compressed"
+                + " FROM timescaledb_information.chunks WHERE hypertable_name = ?", rs -> {
+            stats.put("chunks", rs.getLong("total"));
+            stats.put("compressedChunks", rs.getLong("compressed"));
+        }, table);
+        stats.put("chunkIntervalMs", jdbcTemplate.queryForObject("SELECT integer_interval FROM timescaledb_information.dimensions"
+                + " WHERE hypertable_name = ? AND column_name = 'unix_time'", Long.class, table));
+        stats.put("totalBytes", jdbcTemplate.queryForObject("SELECT hypertable_size(?::regclass)", Long.class, table));
+        jdbcTemplate.query("SELECT before_compression_total_bytes AS before, after_compression_total_bytes AS after"
+                + " FROM hypertable_compression_stats(?::regclass)", rs -> {
+            long before = rs.getLong("before");
+            long after = rs.getLong("after");
+            stats.put("beforeCompressionBytes", before);
+            stats.put("afterCompressionBytes", after);
+            stats.put("compressionRatio", after > 0 ? (double) before / after : null);
+        }, table);
+        return stats;
+    }
+
+    /**
+     * Crea (si no existen) los agregados continuos configurados y sus políticas de refresco. Un nivel
+     * que no se puede crear deja fuera a los superiores, que dependen de él.
+     */
+    public void createRollups() {
+        List<Rollup> created = new ArrayList<>();
+        List<Rollup> added = new ArrayList<>();
+        if (!rollups.isEmpty()) {
+            try {
+                for (Rollup rollup : rollups) {
+                    if (createRollup(rollup)) {
+                        added.add(rollup);
+                    }
+                    created.add(rollup);
+                }
+            } catch (Exception e) {
+                logger.warn("No se pudieron crear los agregados continuos: {}", e.getMessage());
+            }
+        }
+        available = Collections.unmodifiableList(created);
+        logger.info("Agregados continuos disponibles: {}", created.stream().map(Rollup::view).toList());
+        startBackfill(added);
+    }
+
+    /**
+     * Inicio de la ventana que refresca la política de un nivel, en ms hacia atrás (0 = todo el histórico)
+     */
+    private long startOffsetMs(Rollup rollup) {
+        // Los dispositivos pueden enviar lecturas atrasadas: la ventana de refresco las cubre. Solo se vuelven
+        // a calcular los intervalos invalidados, así que una ventana amplia no cuesta si no hay datos tardíos.
+        return lateWindowMs <= 0 ? 0 : Math.max(rollup.bucketMs() * refreshBuckets, lateWindowMs + rollup.bucketMs());
+    }
+
+    /**
+     * Materializa en segundo plano el histórico de los niveles recién creados que queda fuera de la ventana de
+     * su política. Sin límite de antigüedad la propia política lo materializa en su primera ejecución.
+     */
+    private void startBackfill(List<Rollup> added) {
+        if (added.isEmpty() || backfillWindowMs <= 0 || lateWindowMs <= 0) {
+            return;
+        }
+        Thread thread = new Thread(() -> backfill(added), "rollup-backfill");
+        thread.setDaemon(true);
+        backfill = thread;
+        thread.start();
+    }
+
+    private void backfill(List<Rollup> added) {
+        Long oldest;
+        try {
+            oldest = jdbcTemplate.queryForObject("SELECT min(unix_time) FROM data", Long.class);
+        } catch (Exception e) {
+            logger.warn("No se pudo consultar el inicio del historico para los agregados continuos: {}", e.getMessage());
+            return;
+        }
+        if (oldest == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // De menor a mayor: cada nivel se calcula desde el anterior
+        for (Rollup rollup : added) {
+            long end = now - startOffsetMs(rollup);
+            long windows = 0;
+            try {
+                for (long[] window : backfillWindows(oldest, end, rollup.bucketMs(), backfillWindowMs)) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        logger.info("Materializacion del historico de '{}' interrumpida", rollup.view());
+                        return;
+                    }
+                    jdbcTemplate.execute("CALL refresh_continuous_aggregate('" + rollup.view() + "', "
+                            + window[0] + "::bigint, " + window[1] + "::bigint)");
+                    windows++;
+                }
+            } catch (Exception e) {
+                // Los niveles superiores se calculan desde este: sin su histórico no tiene sentido seguir
+                logger.warn("No se pudo materializar el historico de '{}': {}", rollup.view(), e.getMessage());
+                return;
+            }
+            if (windows > 0) {
+                logger.info("Historico de '{}' materializado en {} ventanas", rollup.view(), windows);
+            }
+        }
+    }
+
+    /**
+     * Ventanas [inicio, fin) alineadas a los intervalos del nivel que cubren el rango pedido, de la más antigua
+     * a la más reciente. Cada una abarca al menos dos intervalos, el mínimo que acepta TimescaleDB.
+     */
+    static List<long[]> backfillWindows(long from, long to, long bucketMs, long windowMs) {
+        long window = Math.max(2 * bucketMs, (windowMs + bucketMs - 1) / bucketMs * bucketMs);
+        long start = Math.floorDiv(from, bucketMs) * bucketMs;
+        long end = Math.floorDiv(to, bucketMs) * bucketMs;
+        List<long[]> windows = new ArrayList<>();
+        for (long windowStart = start; windowStart < end; windowStart += window) {
+            long windowEnd = Math.max(Math.min(windowStart + window, end), windowStart + 2 * bucketMs);
+            windows.add(new long[]{windowStart, windowEnd});
+        }
+        return windows;
+    }
+
+    /**
+     * Crea el nivel y su política de refresco si no existen
+     *
+     * @return true si el nivel no existía
+     */
+    private boolean createRollup(Rollup rollup) {
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM timescaledb_information.continuous_aggregates WHERE view_name = ?",
+                Integer.class, rollup.view());
+        jdbcTemplate.execute(createViewSql(rollup));
+
+        long scheduleSeconds = Math.max(MIN_SCHEDULE_SECONDS, rollup.bucketMs() / 2000);
+        long startOffsetMs = startOffsetMs(rollup);
+        String startOffset = startOffsetMs <= 0 ? "NULL" : startOffsetMs + "::bigint";
+        jdbcTemplate.execute("SELECT add_continuous_aggregate_policy('" + rollup.view() + "'"
+                + ", start_offset => " + startOffset
+                + ", end_offset => " + rollup.bucketMs() + "::bigint"
+                + ", schedule_interval => INTERVAL '" + scheduleSeconds + " seconds'"
+                + ", if_not_exists => TRUE)");
+
+        if (existing == null || existing == 0) {
+            // Los datos que ya existían los materializan la política y el hilo del histórico, sin bloquear el arranque
+            logger.info("Agregado continuo '{}' creado.", rollup.view());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sentencia de creación de un nivel. El primero se calcula desde 'data' y cada uno de los siguientes desde
+     * el nivel anterior, sumando sumas y conteos; con materialized_only = false los intervalos aún no
+     * materializados se completan en tiempo real desde el nivel inferior.
+     */
+    static String createViewSql(Rollup rollup) {
+        String bucket = rollup.bucketMs() + "::bigint";
+        String select;
+        if (rollup.source() == null) {
+            select = "SELECT device_id, variable_id, time_bucket(" + bucket + ", unix_time) AS bucket,"
+                    + " sum(variable_value::double precision) AS value_sum, count(*) AS value_count,"
+                    + " min(variable_value) AS value_min, max(variable_value) AS value_max"
+                    + " FROM data GROUP BY device_id, variable_id, time_bucket(" + bucket + ", unix_time)";
+        } else {
+            select = "SELECT device_id, variable_id, time_bucket(" + bucket + ", bucket) AS bucket,"
+                    + " sum(value_sum) AS value_sum, sum(value_count)::bigint AS value_count,"
+                    + " min(value_min) AS value_min, max(value_max) AS value_max"
+                    + " FROM " + rollup.source().view()
+                    + " GROUP BY device_id, variable_id, time_bucket(" + bucket + ", bucket)";
+        }
+        return "CREATE MATERIALIZED VIEW IF NOT EXISTS " + rollup.view()
+                + " WITH (timescaledb.continuous, timescaledb.materialized_only = false) AS "
+                + select + " WITH NO DATA";
+    }
+
+    /**
+     * Niveles de agregado creados en la base de datos, de menor a mayor
+     */
+    public List<Rollup> rollups() {
+        return available;
+    }
+
+    /**
+     * Nivel más grueso que resuelve exactamente un intervalo pedido
+     *
+     * @param bucketMs Intervalo pedido en milisegundos
+     * @return El nivel a consultar o null si hay que leer la hypertable
+     */
+    public Rollup rollupFor(long bucketMs) {
+        return Rollup.coarsestFor(available, bucketMs);
+    }
+}
@@ -1,5 +1,7 @@
 package com.denkitronik.receiveriot.services;
 
+import com.denkitronik.receiveriot.cache.DimensionCache;
+import com.denkitronik.receiveriot.cache.DimensionCaches;
 import com.denkitronik.receiveriot.entities.Measurement;
 import com.denkitronik.receiveriot.repositories.MeasurementRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,12 +11,30 @@ import org.springframework.stereotype.Service;
 public class MeasurementService {
 
     private final MeasurementRepository measurementRepository;
+    private final DimensionCache<String, Measurement> cache;  // Cache de variables por nombre
+    private final DimensionCache<Long, Measurement> byId;     // Cache de variables por id (payloads binarios)
 
-    public MeasurementService(MeasurementRepository measurementRepository) {
+    public MeasurementService(MeasurementRepository measurementRepository, DimensionCaches dimensionCaches) {
         this.measurementRepository = measurementRepository;
+        this.cache = dimensionCaches.create("measurements");
+        this.byId = dimensionCaches.create("measurement-ids");
+    }
+
+    /**
+     * Busca una variable por su id; los ids no se crean desde la ingesta
+     *
+     * @throws IllegalArgumentException si no existe una variable con ese id
+     */
+    public Measurement getMeasurement(long id) {
+        return byId.get(id, key -> measurementRepository.findById(key)
+                .orElseThrow(() -> new IllegalArgumentException("Variable desconocida con id " + key)));
     }
 
     public Measurement getOrCreateMeasurement(String variable) {
+        return cache.get(variable, this::findOrCreateMeasurement);
+    }
+
+    private Measurement findOrCreateMeasurement(String variable) {
         return measurementRepository.findByName(variable).orElseGet(() -> {
             Measurement newMeasurement = new Measurement();
             newMeasurement.setName(variable);
@@ -0,0 +1,85 @@
+package com.denkitronik.receiveriot.services;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Nivel de agregado continuo de la hypertable 'data' (p. ej. data_1m, data_1h, data_1d). Cada nivel guarda
+ * por dispositivo, variable e intervalo la suma, el conteo, el mínimo y el máximo; así un nivel superior se
+ * calcula exactamente a partir del inferior y el promedio es sum / count.
+ *
+ * @param view     Nombre de la vista materializada
+ * @param bucketMs Ancho del intervalo en milisegundos
+ * @param source   Nivel del que se calcula (null = la hypertable 'data')
+ */
+public record Rollup(String view, long bucketMs, Rollup source) {
+
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    /**
+     * Interpreta la jerarquía configurada, p. ej. "1m,1h,1d". Los niveles deben ir de menor a mayor y cada
+     * uno debe ser múltiplo del anterior, porque se construye sobre él.
+     *
+     * @param spec Anchos separados por comas (vacío = sin agregados)
+     * @return Niveles en orden de menor a mayor
+     */
+    public static List<Rollup> parse(String spec) {
+        List<Rollup> rollups = new ArrayList<>();
+        if (spec == null || spec.isBlank()) {
+            return rollups;
+        }
+        Rollup previous = null;
+        for (String part : spec.split(",")) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            long bucketMs = DurationStyle.detectAndParse(trimmed).toMillis();
+            if (bucketMs < SECOND || bucketMs % SECOND != 0) {
+                throw new IllegalArgumentException("Intervalo de agregado invalido: " + trimmed);
+            }
+            if (previous != null && (bucketMs <= previous.bucketMs || bucketMs % previous.bucketMs != 0)) {
+                throw new IllegalArgumentException("El agregado " + trimmed + " debe ser mayor y multiplo de " + previous.view);
+            }
+            previous = new Rollup("data_" + suffix(bucketMs), bucketMs, previous);
+            rollups.add(previous);
+        }
+        return Collections.unmodifiableList(rollups);
+    }
+
+    /**
+     * Nivel más grueso cuyo intervalo divide exactamente al intervalo pedido
+     *
+     * @param rollups  Niveles en orden de menor a mayor
+     * @param bucketMs Intervalo pedido en milisegundos
+     * @return El nivel a consultar o null si hay que leer la hypertable
+     */
+    public static Rollup coarsestFor(List<Rollup> rollups, long bucketMs) {
+        for (int i = rollups.size() - 1; i >= 0; i--) {
+            Rollup rollup = rollups.get(i);
+            if (bucketMs % rollup.bucketMs == 0) {
+                return rollup;
+            }
+        }
+        return null;
+    }
+
+    private static String suffix(long bucketMs) {
+        if (bucketMs % DAY == 0) {
+            return bucketMs / DAY + "d";
+        }
+        if (bucketMs % HOUR == 0) {
+            return bucketMs / HOUR + "h";
+        }
+        if (bucketMs % MINUTE == 0) {
+            return bucketMs / MINUTE + "m";
+        }
+        return bucketMs / SECOND + "s";
+    }
+}
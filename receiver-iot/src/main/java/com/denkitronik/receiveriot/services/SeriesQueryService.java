@@ -0,0 +1,123 @@
+package com.denkitronik.receiveriot.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+
+/**
+ * Consultas de series de tiempo sobre la hypertable 'data' (o la vista que además desempaqueta las filas
+ * anchas, ver {@link HyperTableService#readSource()}). Los resultados se recorren con un cursor
+ * del servidor (fetch size dentro de una transacción de solo lectura) y se entregan fila a fila al
+ * consumidor, así un rango largo nunca se materializa completo en el heap.
+ */
+@Service
+public class SeriesQueryService {
+
+    private static final String BUCKETS_SQL = "SELECT time_bucket(?, unix_time) AS bucket, avg(variable_value) AS avg,"
+            + " min(variable_value) AS min, max(variable_value) AS max, count(*) AS count FROM %s"
+            + " WHERE device_id = ? AND variable_id = ? AND unix_time >= ? AND unix_time < ?"
+            + " GROUP BY bucket ORDER BY bucket";
+    // Sobre un agregado continuo: los intervalos del nivel se reagrupan al ancho pedido
+    private static final String ROLLUP_BUCKETS_SQL = "SELECT time_bucket(?, bucket) AS b, sum(value_sum) / sum(value_count) AS avg,"
+            + " min(value_min) AS min, max(value_max) AS max, sum(value_count) AS count FROM %s"
+            + " WHERE device_id = ? AND variable_id = ? AND bucket >= ? AND bucket < ?"
+            + " GROUP BY b ORDER BY b";
+    private static final String RAW_SQL = "SELECT unix_time, variable_value FROM %s"
+            + " WHERE device_id = ? AND variable_id = ? AND unix_time >= ? AND unix_time < ? ORDER BY unix_time";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HyperTableService hyperTableService;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int fetchSize;
+    private final String bucketsSql;
+    private final String rawSql;
+
+    public SeriesQueryService(JdbcTemplate jdbcTemplate, HyperTableService hyperTableService, PlatformTransactionManager transactionManager,
+                              @Value("${api.series.fetch-size:5000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hyperTableService = hyperTableService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.fetchSize = fetchSize;
+        this.bucketsSql = BUCKETS_SQL.formatted(hyperTableService.readSource());
+        this.rawSql = RAW_SQL.formatted(hyperTableService.readSource());
+    }
+
+    /**
+     * Recorre los intervalos agregados con time_bucket (promedio, mínimo, máximo y conteo). El rango se
+     * amplía a intervalos completos y la consulta se dirige al agregado continuo más grueso cuyo ancho
+     * divide al pedido; solo se leen los datos crudos si ningún nivel sirve.
+     *
+     * @param deviceId   Id del dispositivo
+     * @param variableId Id de la variable
+     * @param fromMillis Inicio del rango (incluido) en milisegundos desde epoch
+     * @param toMillis   Fin del rango (excluido) en milisegundos desde epoch
+     * @param bucketMs   Ancho de cada intervalo en milisegundos
+     * @param handler    Consumidor de cada intervalo, en orden de tiempo
+     */
+    public void streamBuckets(long deviceId, long variableId, long fromMillis, long toMillis, long bucketMs, BucketHandler handler) {
+        long from = Math.floorDiv(fromMillis, bucketMs) * bucketMs;
+        long to = Math.floorDiv(toMillis + bucketMs - 1, bucketMs) * bucketMs;
+        Rollup rollup = hyperTableService.rollupFor(bucketMs);
+        String sql = rollup == null ? bucketsSql : ROLLUP_BUCKETS_SQL.formatted(rollup.view());
+        stream(sql, new long[]{bucketMs, deviceId, variableId, from, to}, rs -> {
+            try {
+                handler.bucket(rs.getLong(1), rs.getDouble(2), rs.getFloat(3), rs.getFloat(4), rs.getLong(5));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Recorre las mediciones sin agregar del rango
+     *
+     * @param handler Consumidor de cada medición, en orden de tiempo
+     */
+    public void streamRaw(long deviceId, long variableId, long fromMillis, long toMillis, PointHandler handler) {
+        stream(rawSql, new long[]{deviceId, variableId, fromMillis, toMillis}, rs -> {
+            try {
+                handler.point(rs.getLong(1), rs.getFloat(2));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void stream(String sql, long[] parameters, RowCallbackHandler rowHandler) {
+        PreparedStatementCreator statement = connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            // Con autocommit desactivado el driver de PostgreSQL trae las filas por bloques con un cursor
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setLong(i + 1, parameters[i]);
+            }
+            return ps;
+        };
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(statement, rowHandler));
+    }
+
+    /**
+     * Consumidor de intervalos agregados
+     */
+    @FunctionalInterface
+    public interface BucketHandler {
+        void bucket(long bucket, double avg, float min, float max, long count) throws IOException;
+    }
+
+    /**
+     * Consumidor de mediciones sin agregar
+     */
+    @FunctionalInterface
+    public interface PointHandler {
+        void point(long time, float value) throws IOException;
+    }
+}
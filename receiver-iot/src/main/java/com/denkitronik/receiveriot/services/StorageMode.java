@@ -0,0 +1,11 @@
+package com.denkitronik.receiveriot.services;
+
+/**
+ * Disposición de las mediciones en la base de datos
+ */
+public enum StorageMode {
+    /** Una fila por variable en la hypertable 'data' */
+    NARROW,
+    /** Una fila por mensaje en 'data_wide', con los ids y valores de sus variables en dos arreglos paralelos */
+    WIDE
+}
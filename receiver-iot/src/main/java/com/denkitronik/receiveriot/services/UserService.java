@@ -1,5 +1,7 @@
 package com.denkitronik.receiveriot.services;
 
+import com.denkitronik.receiveriot.cache.DimensionCache;
+import com.denkitronik.receiveriot.cache.DimensionCaches;
 import com.denkitronik.receiveriot.entities.User;
 import com.denkitronik.receiveriot.repositories.UserRepository;
 import org.springframework.stereotype.Service;
@@ -9,12 +11,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final DimensionCache<String, User> cache;  // Cache de usuarios por nombre
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, DimensionCaches dimensionCaches) {
         this.userRepository = userRepository;
+        this.cache = dimensionCaches.create("users");
     }
 
     public User getUser(String username) {
+        return cache.get(username, this::findOrCreateUser);
+    }
+
+    private User findOrCreateUser(String username) {
         return userRepository.findByUsername(username).orElseGet(() -> {
             User newUser = new User();
             newUser.setUsername(username);
@@ -0,0 +1,70 @@
+package com.denkitronik.receiveriot.services;
+
+import com.denkitronik.receiveriot.entities.DataEntity;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fila de 'data_wide': todas las variables de un dispositivo en un mismo milisegundo
+ *
+ * @param unixTime       Marca de tiempo en milisegundos desde epoch
+ * @param baseTime       Marca de tiempo de la escritura
+ * @param deviceId       Id del dispositivo
+ * @param variableIds    Ids de las variables, sin repetidos
+ * @param variableValues Valor de cada variable, en el mismo orden que los ids
+ */
+public record WideRow(long unixTime, ZonedDateTime baseTime, long deviceId, long[] variableIds, float[] variableValues) {
+
+    /**
+     * Agrupa mediciones ya preparadas (con unix_time asignado) por dispositivo y milisegundo, en el orden
+     * de llegada. Si una variable se repite en el grupo se conserva la primera, igual que ON CONFLICT DO NOTHING
+     * en el modo de una fila por variable. Las variables del mismo milisegundo que lleguen en otro lote se
+     * agregan a la fila ya guardada (ver {@link DataBatchWriter}).
+     *
+     * @param rows Mediciones a agrupar
+     * @return Filas anchas, una por dispositivo y milisegundo
+     */
+    public static List<WideRow> group(List<DataEntity> rows) {
+        Map<Key, List<DataEntity>> groups = new LinkedHashMap<>();
+        for (DataEntity row : rows) {
+            groups.computeIfAbsent(new Key(row.getUnixTime(), row.getDevice().getId()), key -> new ArrayList<>(4)).add(row);
+        }
+        List<WideRow> wide = new ArrayList<>(groups.size());
+        groups.forEach((key, members) -> {
+            long[] ids = new long[members.size()];
+            float[] values = new float[members.size()];
+            int count = 0;
+            for (DataEntity member : members) {
+                long id = member.getVariable().getId();
+                if (!contains(ids, count, id)) {
+                    ids[count] = id;
+                    values[count++] = member.getVariableValue();
+                }
+            }
+            if (count < ids.length) {
+                ids = Arrays.copyOf(ids, count);
+                values = Arrays.copyOf(values, count);
+            }
+            wide.add(new WideRow(key.unixTime(), members.get(0).getBaseTime(), key.deviceId(), ids, values));
+        });
+        return wide;
+    }
+
+    private static boolean contains(long[] ids, int count, long id) {
+        // Un mensaje trae pocas variables: una búsqueda lineal es más barata que un conjunto
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Key(long unixTime, long deviceId) {
+    }
+}
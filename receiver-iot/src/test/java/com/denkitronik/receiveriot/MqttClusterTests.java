@@ -0,0 +1,150 @@
+package com.denkitronik.receiveriot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pruebas de varias instancias de receiver-iot contra un broker mosquitto como el de mosquitto-project.
+ * Cada instancia se simula con un cliente Paho suscrito a los filtros que calcula {@link MqttSubscriptions},
+ * igual que lo hace {@link MqttController}.
+ */
+class MqttClusterTests {
+
+    private static final String TOPIC = "+/+/+/+/+/+";
+    private static final int MESSAGES = 200;
+
+    private static final GenericContainer<?> mosquitto = new GenericContainer<>(DockerImageName.parse("eclipse-mosquitto:2"))
+            .withCopyToContainer(Transferable.of("listener 1883 0.0.0.0\nallow_anonymous true\n"), "/mosquitto/config/mosquitto.conf")
+            .withExposedPorts(1883);
+
+    private final List<MqttAsyncClient> clients = new ArrayList<>();
+
+    @BeforeAll
+    static void startContainer() {
+        mosquitto.start();
+    }
+
+    @AfterAll
+    static void stopContainer() {
+        mosquitto.stop();
+    }
+
+    @AfterEach
+    void disconnect() throws MqttException {
+        for (MqttAsyncClient client : clients) {
+            client.disconnectForcibly(1000);
+            client.close();
+        }
+    }
+
+    @Test
+    void testSharedSubscriptionDeliversEachMessageOnce() throws Exception {
+        Set<String> first = ConcurrentHashMap.newKeySet();
+        Set<String> second = ConcurrentHashMap.newKeySet();
+        instance("receiver-a", new MqttSubscriptions(TOPIC, true, "receiver-iot", ""), first);
+        instance("receiver-b", new MqttSubscriptions(TOPIC, true, "receiver-iot", ""), second);
+
+        publish("colombia/valle/tulua", "colombia/antioquia/medellin");
+        awaitTotal(first, second);
+
+        // Cada mensaje llega a una sola instancia del grupo y la carga se reparte entre ambas
+        assertEquals(MESSAGES, first.size() + second.size());
+        assertTrue(first.stream().noneMatch(second::contains));
+        assertFalse(first.isEmpty());
+        assertFalse(second.isEmpty());
+    }
+
+    @Test
+    void testStaticPartitionsKeepDevicesOnOneInstance() throws Exception {
+        Set<String> valle = ConcurrentHashMap.newKeySet();
+        Set<String> antioquia = ConcurrentHashMap.newKeySet();
+        instance("receiver-valle", new MqttSubscriptions(TOPIC, false, "receiver-iot", "colombia/valle/+/+/+/+"), valle);
+        instance("receiver-antioquia", new MqttSubscriptions(TOPIC, false, "receiver-iot", "colombia/antioquia/+/+/+/+"), antioquia);
+
+        publish("colombia/valle/tulua", "colombia/antioquia/medellin");
+        awaitTotal(valle, antioquia);
+
+        assertEquals(MESSAGES / 2, valle.size());
+        assertEquals(MESSAGES / 2, antioquia.size());
+        assertTrue(valle.stream().allMatch(message -> message.startsWith("colombia/valle/")));
+        assertTrue(antioquia.stream().allMatch(message -> message.startsWith("colombia/antioquia/")));
+    }
+
+    /**
+     * Conecta una instancia simulada que registra "tópico#payload" de cada mensaje recibido
+     */
+    private void instance(String clientId, MqttSubscriptions subscriptions, Set<String> received) throws MqttException {
+        MqttAsyncClient client = connect(clientId);
+        client.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                received.add(topic + "#" + new String(message.getPayload(), StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        String[] filters = subscriptions.filters().toArray(new String[0]);
+        int[] qos = new int[filters.length];
+        Arrays.fill(qos, 1);
+        client.subscribe(filters, qos).waitForCompletion(5000);
+    }
+
+    /**
+     * Publica la mitad de los mensajes en cada ubicación, repartidos entre varios dispositivos
+     */
+    private void publish(String... locations) throws MqttException {
+        MqttAsyncClient publisher = connect("publisher");
+        for (int i = 0; i < MESSAGES; i++) {
+            String topic = locations[i % locations.length] + "/esp32-" + (i % 5) + "/admin/out";
+            String payload = "{\"temperatura\": " + i + "}";
+            publisher.publish(topic, payload.getBytes(StandardCharsets.UTF_8), 1, false).waitForCompletion(5000);
+        }
+    }
+
+    private MqttAsyncClient connect(String clientId) throws MqttException {
+        String url = "tcp://" + mosquitto.getHost() + ":" + mosquitto.getMappedPort(1883);
+        MqttAsyncClient client = new MqttAsyncClient(url, clientId, new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setMaxInflight(MESSAGES);
+        client.connect(options).waitForCompletion(5000);
+        clients.add(client);
+        return client;
+    }
+
+    private static void awaitTotal(Set<String> first, Set<String> second) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (first.size() + second.size() < MESSAGES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        // Margen para detectar entregas duplicadas tardías
+        Thread.sleep(200);
+    }
+}
@@ -0,0 +1,50 @@
+package com.denkitronik.receiveriot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Clase de pruebas para los filtros de suscripción de una instancia
+ */
+class MqttSubscriptionsTests {
+
+    private static final String TOPIC = "+/+/+/+/+/+";
+
+    @Test
+    void testSingleInstance() {
+        MqttSubscriptions subscriptions = new MqttSubscriptions(TOPIC, false, "receiver-iot", "");
+
+        assertEquals(List.of(TOPIC), subscriptions.filters());
+    }
+
+    @Test
+    void testSharedSubscription() {
+        MqttSubscriptions subscriptions = new MqttSubscriptions(TOPIC, true, "receiver-iot", "");
+
+        assertEquals(List.of("$share/receiver-iot/" + TOPIC), subscriptions.filters());
+    }
+
+    @Test
+    void testStaticPartitions() {
+        MqttSubscriptions subscriptions = new MqttSubscriptions(TOPIC, false, "receiver-iot",
+                " colombia/valle/+/+/+/+ , colombia/antioquia/+/+/+/+,");
+
+        assertEquals(List.of("colombia/valle/+/+/+/+", "colombia/antioquia/+/+/+/+"), subscriptions.filters());
+    }
+
+    @Test
+    void testSharedPartitions() {
+        MqttSubscriptions subscriptions = new MqttSubscriptions(TOPIC, true, "valle", "colombia/valle/+/+/+/+");
+
+        assertEquals(List.of("$share/valle/colombia/valle/+/+/+/+"), subscriptions.filters());
+    }
+
+    @Test
+    void testInvalidGroup() {
+        assertThrows(IllegalArgumentException.class, () -> new MqttSubscriptions(TOPIC, true, "a/b", ""));
+        assertThrows(IllegalArgumentException.class, () -> new MqttSubscriptions(TOPIC, true, " ", ""));
+    }
+}
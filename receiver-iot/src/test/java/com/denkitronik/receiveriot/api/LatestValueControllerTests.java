@@ -0,0 +1,86 @@
+package com.denkitronik.receiveriot.api;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.ingest.LatestValueStore;
+import com.denkitronik.receiveriot.repositories.DeviceRepository;
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class LatestValueControllerTests {
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        DeviceRepository deviceRepository = mock(DeviceRepository.class);
+        MeasurementRepository measurementRepository = mock(MeasurementRepository.class);
+        Device first = device(1L, "esp32-01");
+        Device second = device(2L, "esp32-02");
+        Measurement temperature = measurement(1L, "temperatura");
+        Measurement humidity = measurement(2L, "humedad");
+        when(deviceRepository.findByClientId("esp32-01")).thenReturn(Optional.of(first));
+        when(deviceRepository.findByUserUsername("admin")).thenReturn(List.of(first, second));
+        when(deviceRepository.findByLocationCityAndLocationStateAndLocationCountry("tulua", "valle", "colombia"))
+                .thenReturn(List.of(second));
+        when(measurementRepository.findByName("temperatura")).thenReturn(Optional.of(temperature));
+        when(measurementRepository.findByName("humedad")).thenReturn(Optional.of(humidity));
+        when(measurementRepository.findAll()).thenReturn(List.of(temperature, humidity));
+
+        LatestValueStore store = new LatestValueStore(64);
+        store.update(1, 1, 1000, 22.5f);
+        store.update(2, 1, 2000, 19f);
+        store.update(2, 2, 2000, 70f);
+        mockMvc = MockMvcBuilders.standaloneSetup(new LatestValueController(store, deviceRepository, measurementRepository)).build();
+    }
+
+    @Test
+    void testSingleSeries() throws Exception {
+        mockMvc.perform(get("/api/latest").param("device", "esp32-01").param("variable", "temperatura"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.t").value(1000))
+                .andExpect(jsonPath("$.v").value(22.5));
+        // El dispositivo existe pero la serie no tiene mediciones
+        mockMvc.perform(get("/api/latest").param("device", "esp32-01").param("variable", "humedad"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testSnapshotByUserAndLocation() throws Exception {
+        mockMvc.perform(get("/api/latest/all").param("user", "admin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3));
+        mockMvc.perform(get("/api/latest/all").param("city", "tulua").param("state", "valle").param("country", "colombia"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].variable").value("humedad"));
+        mockMvc.perform(get("/api/latest/all").param("city", "tulua"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static Device device(Long id, String clientId) {
+        Device device = new Device();
+        device.setId(id);
+        device.setClientId(clientId);
+        return device;
+    }
+
+    private static Measurement measurement(Long id, String name) {
+        Measurement measurement = new Measurement();
+        measurement.setId(id);
+        measurement.setName(name);
+        return measurement;
+    }
+}
@@ -0,0 +1,41 @@
+package com.denkitronik.receiveriot.api;
+
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class MeasurementControllerTests {
+
+    @Test
+    void testCatalogListsIdsAndNames() throws Exception {
+        MeasurementRepository measurementRepository = mock(MeasurementRepository.class);
+        when(measurementRepository.findAll(any(Sort.class))).thenReturn(List.of(measurement(1L, "temperatura"), measurement(2L, "humedad")));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new MeasurementController(measurementRepository)).build();
+
+        mockMvc.perform(get("/api/measurements"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].name").value("temperatura"))
+                .andExpect(jsonPath("$[1].id").value(2));
+    }
+
+    private static Measurement measurement(long id, String name) {
+        Measurement measurement = new Measurement();
+        measurement.setId(id);
+        measurement.setName(name);
+        measurement.setUnit("default_unit");
+        return measurement;
+    }
+}
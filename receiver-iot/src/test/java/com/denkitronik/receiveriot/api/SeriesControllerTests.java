@@ -0,0 +1,133 @@
+package com.denkitronik.receiveriot.api;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.repositories.DeviceRepository;
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import com.denkitronik.receiveriot.services.SeriesQueryService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class SeriesControllerTests {
+
+    private static final long FROM = 1727740800000L;  // 2024-10-01T00:00:00Z
+
+    private SeriesQueryService seriesQueryService;
+    private MeterRegistry meterRegistry;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        seriesQueryService = mock(SeriesQueryService.class);
+        DeviceRepository deviceRepository = mock(DeviceRepository.class);
+        MeasurementRepository measurementRepository = mock(MeasurementRepository.class);
+        Device device = new Device();
+        device.setId(7L);
+        Measurement measurement = new Measurement();
+        measurement.setId(3L);
+        when(deviceRepository.findByClientId("esp32-01")).thenReturn(Optional.of(device));
+        when(measurementRepository.findByName("temperatura")).thenReturn(Optional.of(measurement));
+
+        meterRegistry = new SimpleMeterRegistry();
+        ObjectProvider<MeterRegistry> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(meterRegistry);
+        SeriesController controller = new SeriesController(seriesQueryService, deviceRepository, measurementRepository,
+                100, 3600000, 500, provider);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void testBucketsAreStreamedAsJson() throws Exception {
+        doAnswer(invocation -> {
+            SeriesQueryService.BucketHandler handler = invocation.getArgument(5);
+            handler.bucket(FROM, 21.5, 20.0f, 23.0f, 60);
+            handler.bucket(FROM + 3600000, 22.0, 21.0f, 23.5f, 58);
+            return null;
+        }).when(seriesQueryService).streamBuckets(eq(7L), eq(3L), eq(FROM), eq(FROM + 86400000), eq(3600000L), any());
+
+        MvcResult result = mockMvc.perform(get("/api/series").param("device", "esp32-01").param("variable", "temperatura")
+                        .param("from", "2024-10-01T00:00:00Z").param("to", "2024-10-02T00:00:00Z").param("bucket", "1h"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bucket").value(3600000))
+                .andExpect(jsonPath("$.points.length()").value(2))
+                .andExpect(jsonPath("$.points[0].t").value(FROM))
+                .andExpect(jsonPath("$.points[0].avg").value(21.5))
+                .andExpect(jsonPath("$.points[1].count").value(58));
+
+        assertEquals(1, meterRegistry.get("api.series.latency").tag("mode", "bucket").timer().count());
+    }
+
+    @Test
+    void testRawPointsWithoutBucket() throws Exception {
+        doAnswer(invocation -> {
+            SeriesQueryService.PointHandler handler = invocation.getArgument(4);
+            handler.point(FROM + 1000, 24.25f);
+            return null;
+        }).when(seriesQueryService).streamRaw(eq(7L), eq(3L), eq(FROM), eq(FROM + 60000), any());
+
+        MvcResult result = mockMvc.perform(get("/api/series").param("device", "esp32-01").param("variable", "temperatura")
+                        .param("from", "2024-10-01T00:00:00Z").param("to", "2024-10-01T00:01:00Z"))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.points[0].t").value(FROM + 1000))
+                .andExpect(jsonPath("$.points[0].v").value(24.25));
+    }
+
+    @Test
+    void testInvalidRequestsAreRejected() throws Exception {
+        // Rango invertido, bucket inválido y demasiados intervalos
+        mockMvc.perform(get("/api/series").param("device", "esp32-01").param("variable", "temperatura")
+                        .param("from", "2024-10-02T00:00:00Z").param("to", "2024-10-01T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/series").param("device", "esp32-01").param("variable", "temperatura")
+                        .param("from", "2024-10-01T00:00:00Z").param("bucket", "una-hora"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/series").param("device", "esp32-01").param("variable", "temperatura")
+                        .param("from", "2024-10-01T00:00:00Z").param("to", "2024-10-02T00:00:00Z").param("bucket", "1m"))
+                .andExpect(status().isBadRequest());
+        // Rango sin agregar mayor que el permitido
+        mockMvc.perform(get("/api/series").param("device", "esp32-01").param("variable", "temperatura")
+                        .param("from", "2024-10-01T00:00:00Z").param("to", "2024-10-02T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+
+        verify(seriesQueryService, never()).streamBuckets(anyLong(), anyLong(), anyLong(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void testUnknownDeviceOrVariableIsNotFound() throws Exception {
+        mockMvc.perform(get("/api/series").param("device", "desconocido").param("variable", "temperatura")
+                        .param("from", "2024-10-01T00:00:00Z").param("to", "2024-10-02T00:00:00Z").param("bucket", "1h"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/series").param("device", "esp32-01").param("variable", "presion")
+                        .param("from", "2024-10-01T00:00:00Z").param("to", "2024-10-02T00:00:00Z").param("bucket", "1h"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,102 @@
+package com.denkitronik.receiveriot.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clase de pruebas para la caché de dimensiones
+ */
+class DimensionCacheTests {
+
+    @Test
+    void testHitAfterFirstLoad() {
+        DimensionCache<String, String> cache = new DimensionCache<>("test", 100, 0);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("VALOR", cache.get("valor", key -> { loads.incrementAndGet(); return key.toUpperCase(); }));
+        assertEquals("VALOR", cache.get("valor", key -> { loads.incrementAndGet(); return key.toUpperCase(); }));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void testSingleFlightLoad() throws InterruptedException {
+        DimensionCache<String, Integer> cache = new DimensionCache<>("test", 100, 0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                cache.get("dispositivo", key -> {
+                    loads.incrementAndGet();
+                    sleep(100);   // Simula la consulta e insercion en la base de datos
+                    return 42;
+                });
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        // Solo un hilo debe ejecutar la carga aunque todos pidan la clave a la vez
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() {
+        DimensionCache<String, String> cache = new DimensionCache<>("test", 100, 0);
+
+        assertThrows(IllegalStateException.class, () -> cache.get("x", key -> { throw new IllegalStateException("fallo"); }));
+        assertEquals("ok", cache.get("x", key -> "ok"));
+        assertEquals(1, cache.loadFailureCount());
+    }
+
+    @Test
+    void testExpiredEntryIsReloaded() {
+        DimensionCache<String, Integer> cache = new DimensionCache<>("test", 100, 20);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("x", key -> loads.incrementAndGet());
+        sleep(50);
+        cache.get("x", key -> loads.incrementAndGet());
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        DimensionCache<Integer, Integer> cache = new DimensionCache<>("test", 100, 0);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.get(i, key -> key);
+        }
+
+        assertTrue(cache.size() <= 100, "La cache no debe superar su tamano maximo");
+        assertTrue(cache.evictionCount() >= 900);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
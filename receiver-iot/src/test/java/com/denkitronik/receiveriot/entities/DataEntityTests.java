@@ -68,4 +68,21 @@ class DataEntityTests {
         assertEquals(10.5f, dataEntity.getVariableValue(), 0.001,
                 "El valor de la variable debería ser 10.5");
     }
+
+    @Test
+    void testCompositeId() {
+        Device device = new Device();
+        device.setId(7L);
+        Measurement measurement = new Measurement();
+        measurement.setId(3L);
+        dataEntity.setDevice(device);
+        dataEntity.setVariable(measurement);
+        dataEntity.setUnixTime(1000L);
+
+        // La clave incluye el tiempo, el dispositivo y la variable
+        assertEquals(new DataEntityId(1000L, 7L, 3L), dataEntity.getId());
+        assertNotEquals(new DataEntityId(1000L, 7L, 4L), dataEntity.getId());
+        // Una medicion nueva siempre se inserta, aunque ya tenga la clave asignada
+        assertTrue(dataEntity.isNew());
+    }
 }
@@ -0,0 +1,195 @@
+package com.denkitronik.receiveriot.export;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.repositories.DeviceRepository;
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import com.denkitronik.receiveriot.services.HyperTableService;
+import com.github.luben.zstd.ZstdInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pruebas de la exportación con una base de datos simulada: cada partición devuelve una fila cada diez segundos
+ * de su rango, así se puede comprobar que la salida sale completa y en orden.
+ */
+class ExportServiceTests {
+
+    private static final long HOUR = 3600000;
+
+    private JdbcTemplate jdbcTemplate;
+    private DeviceRepository deviceRepository;
+    private ExportService exportService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        deviceRepository = mock(DeviceRepository.class);
+        // Chunks de una hora
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            long from = invocation.getArgument(2);
+            long to = invocation.getArgument(3);
+            for (long start = from / HOUR * HOUR; start < to; start += HOUR) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong(1)).thenReturn(start);
+                when(rs.getLong(2)).thenReturn(start + HOUR);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), anyLong(), anyLong());
+        doAnswer(invocation -> {
+            PreparedStatementCreator creator = invocation.getArgument(0);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            long[] range = new long[2];
+            Connection connection = mock(Connection.class);
+            PreparedStatement statement = mock(PreparedStatement.class);
+            when(connection.prepareStatement(anyString())).thenReturn(statement);
+            doAnswer(set -> {
+                int index = set.getArgument(0);
+                if (index <= 2) {
+                    range[index - 1] = set.getArgument(1);
+                }
+                return null;
+            }).when(statement).setLong(anyInt(), anyLong());
+            creator.createPreparedStatement(connection);
+            ResultSet rs = mock(ResultSet.class);
+            long[] time = {range[0]};
+            when(rs.getLong(1)).thenAnswer(a -> time[0]);
+            when(rs.getString(2)).thenReturn("esp32-01");
+            when(rs.getString(3)).thenReturn("temperatura");
+            when(rs.getFloat(4)).thenReturn(21.5f);
+            for (; time[0] < range[1]; time[0] += 10000) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        HyperTableService hyperTableService = mock(HyperTableService.class);
+        when(hyperTableService.readSource()).thenReturn("data");
+        exportService = new ExportService(jdbcTemplate, mock(PlatformTransactionManager.class), hyperTableService,
+                deviceRepository, mock(MeasurementRepository.class), 3, 100, 4096, 2, 1, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        exportService.stop();
+    }
+
+    @Test
+    void testConcurrentExportsAreLimited() {
+        ExportService.Permit permit = exportService.acquire();
+        // Un solo turno: la segunda exportacion se rechaza hasta que termina la primera
+        assertThrows(IllegalStateException.class, () -> exportService.acquire());
+        permit.close();
+        permit.close();
+        exportService.acquire().close();
+
+        // Las particiones de las exportaciones permitidas no pueden ocupar mas de la mitad del pool
+        HyperTableService hyperTableService = mock(HyperTableService.class);
+        assertThrows(IllegalArgumentException.class, () -> new ExportService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                hyperTableService, deviceRepository, mock(MeasurementRepository.class), 4, 100, 4096, 2, 2, 10));
+    }
+
+    @Test
+    void testPartitionsFollowChunks() {
+        List<long[]> partitions = exportService.partitions(new ExportQuery(HOUR / 2, 3 * HOUR, null, null));
+
+        assertEquals(3, partitions.size());
+        assertArrayEquals(new long[]{HOUR / 2, HOUR}, partitions.get(0));
+        assertArrayEquals(new long[]{2 * HOUR, 3 * HOUR}, partitions.get(2));
+    }
+
+    @Test
+    void testOverlappingChunksAreMerged() {
+        // Chunks de 'data' de una hora y de 'data_wide' de dos horas, en orden de inicio
+        long[][] chunks = {{0, HOUR}, {0, 2 * HOUR}, {HOUR, 2 * HOUR}, {2 * HOUR, 3 * HOUR}};
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (long[] chunk : chunks) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong(1)).thenReturn(chunk[0]);
+                when(rs.getLong(2)).thenReturn(chunk[1]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), anyLong(), anyLong());
+
+        List<long[]> partitions = exportService.partitions(new ExportQuery(0, 3 * HOUR, null, null));
+
+        assertEquals(2, partitions.size());
+        assertArrayEquals(new long[]{0, 2 * HOUR}, partitions.get(0));
+        assertArrayEquals(new long[]{2 * HOUR, 3 * HOUR}, partitions.get(1));
+    }
+
+    @Test
+    void testGzipExportIsCompleteAndOrdered() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = exportService.export(new ExportQuery(0, 5 * HOUR, null, null), ExportCompression.GZIP, out);
+
+        assertEquals(5 * 360, rows);
+        List<String> lines = lines(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals("unix_time,device,variable,value", lines.get(0));
+        assertEquals(5 * 360 + 1, lines.size());
+        for (int i = 1; i < lines.size(); i++) {
+            assertEquals((i - 1) * 10000L + ",esp32-01,temperatura,21.5", lines.get(i));
+        }
+    }
+
+    @Test
+    void testZstdAndPlainExport() throws IOException {
+        ByteArrayOutputStream zstd = new ByteArrayOutputStream();
+        exportService.export(new ExportQuery(0, 2 * HOUR, null, null), ExportCompression.ZSTD, zstd);
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        exportService.export(new ExportQuery(0, 2 * HOUR, null, null), ExportCompression.NONE, plain);
+
+        List<String> decoded = lines(new ZstdInputStream(new ByteArrayInputStream(zstd.toByteArray())));
+        assertEquals(lines(new ByteArrayInputStream(plain.toByteArray())), decoded);
+        assertEquals(2 * 360 + 1, decoded.size());
+    }
+
+    @Test
+    void testUnknownDeviceIsRejected() {
+        Device device = new Device();
+        device.setId(9L);
+        when(deviceRepository.findByClientId(eq("esp32-01"))).thenReturn(Optional.of(device));
+        when(deviceRepository.findByClientId(eq("otro"))).thenReturn(Optional.empty());
+
+        assertEquals(9L, exportService.query(0, HOUR, "esp32-01", null).deviceId());
+        assertThrows(IllegalArgumentException.class, () -> exportService.query(0, HOUR, "otro", null));
+        assertThrows(IllegalArgumentException.class, () -> exportService.query(HOUR, 0, null, null));
+        assertThrows(IllegalArgumentException.class, () -> ExportCompression.parse("parquet"));
+    }
+
+    private static List<String> lines(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.denkitronik.receiveriot.geocoding;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.denkitronik.receiveriot.entities.Location;
+import com.denkitronik.receiveriot.repositories.LocationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clase de pruebas para la resolución asíncrona de coordenadas
+ */
+class GeocodingResolverTests {
+
+    @TempDir
+    Path dir;
+
+    private LocationRepository locationRepository;
+    private JdbcTemplate jdbcTemplate;
+    private GeocodingResolver resolver;
+
+    @BeforeEach
+    void setup() throws IOException {
+        locationRepository = mock(LocationRepository.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        Files.writeString(dir.resolve("gazetteer.tsv"), "# ciudad\testado\tpais\tlatitud\tlongitud\n"
+                + "Bogotá\tCundinamarca\tColombia\t4.711\t-74.0721\n");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (resolver != null) {
+            resolver.stop();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private GeocodingResolver resolver(GeocodingProvider provider) {
+        return new GeocodingResolver(locationRepository, jdbcTemplate, provider,
+                dir.resolve("gazetteer.tsv").toString(), dir.resolve("cache/coordinates.tsv").toString(),
+                0, 10, 20, 2, 10, mock(ObjectProvider.class));
+    }
+
+    private static Location location(long id, String city, String state, String country) {
+        Location location = new Location();
+        location.setId(id);
+        location.setCity(city);
+        location.setState(state);
+        location.setCountry(country);
+        return location;
+    }
+
+    private static void awaitIdle(GeocodingResolver resolver) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (resolver.pendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, resolver.pendingCount());
+    }
+
+    @Test
+    void testGazetteerAvoidsProvider() throws InterruptedException {
+        GeocodingProvider provider = mock(GeocodingProvider.class);
+        resolver = resolver(provider);
+        resolver.start();
+
+        // El gazetteer no distingue mayusculas ni espacios
+        Location location = location(1L, "bogotá ", "Cundinamarca", "COLOMBIA");
+        resolver.enqueue(location);
+        awaitIdle(resolver);
+
+        assertEquals(4.711, location.getLatitude());
+        assertEquals(-74.0721, location.getLongitude());
+        verifyNoInteractions(provider);
+    }
+
+    @Test
+    void testProviderResultIsPersisted() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        resolver = resolver((city, state, country) -> {
+            calls.incrementAndGet();
+            return Optional.of(new Coordinates(6.2442, -75.5812));
+        });
+        resolver.start();
+        Location location = location(2L, "Medellín", "Antioquia", "Colombia");
+        resolver.enqueue(location);
+        awaitIdle(resolver);
+        resolver.stop();
+
+        assertEquals(6.2442, location.getLatitude());
+        assertEquals(1, calls.get());
+
+        // Otra instancia encuentra las coordenadas en la cache persistente sin consultar al proveedor
+        GeocodingProvider provider = mock(GeocodingProvider.class);
+        resolver = resolver(provider);
+        resolver.start();
+        Location again = location(3L, "Medellín", "Antioquia", "Colombia");
+        resolver.enqueue(again);
+        awaitIdle(resolver);
+
+        assertEquals(-75.5812, again.getLongitude());
+        verifyNoInteractions(provider);
+    }
+
+    @Test
+    void testUnresolvedLocationIsRetriedThenGivenUp() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        resolver = resolver((city, state, country) -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Throttled");
+        });
+        resolver.start();
+        Location location = location(4L, "TestCity", "TestState", "TestCountry");
+        resolver.enqueue(location);
+        awaitIdle(resolver);
+
+        assertEquals(2, calls.get());
+        assertEquals(1, resolver.failureCount());
+        assertNull(location.getLatitude());
+    }
+
+    @Test
+    void testPendingLocationsAreLoadedAtStartup() throws InterruptedException {
+        Location location = location(5L, "Bogotá", "Cundinamarca", "Colombia");
+        when(locationRepository.findByLatitudeIsNullOrLongitudeIsNull()).thenReturn(List.of(location));
+        resolver = resolver(mock(GeocodingProvider.class));
+        resolver.start();
+        awaitIdle(resolver);
+
+        assertEquals(4.711, location.getLatitude());
+    }
+}
@@ -0,0 +1,120 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchControllerTests {
+
+    private static final long TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private SimpleMeterRegistry meterRegistry;
+    private BatchController controller;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ObjectProvider<MeterRegistry> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(meterRegistry);
+        // Lote 500 (50..5000), linger 200 ms (10..1000), 4 escritores (1..4)
+        controller = new BatchController(true, 100, 1000, 500, 50, 5000, 200, 10, 1000, 4, 1, provider);
+    }
+
+    @Test
+    void testSlowCommitsHalveBatchAndLengthenLinger() {
+        controller.adjust(10, TARGET_NANOS * 3 / 2, 0, 0);
+
+        assertEquals(250, controller.batchSize());
+        assertEquals(400, controller.lingerMs());
+        // Sobre el objetivo pero sin llegar al doble: la concurrencia se mantiene
+        assertEquals(4, controller.writers());
+
+        controller.adjust(10, TARGET_NANOS * 3, 0, 0);
+        assertEquals(125, controller.batchSize());
+        assertEquals(2, controller.writers());
+    }
+
+    @Test
+    void testErrorsHalveConcurrencyDownToMinimum() {
+        for (int i = 0; i < 10; i++) {
+            controller.adjust(0, 0, 3, 10000);
+        }
+
+        assertEquals(50, controller.batchSize());
+        assertEquals(1000, controller.lingerMs());
+        assertEquals(1, controller.writers());
+    }
+
+    @Test
+    void testBacklogGrowsBatchAdditivelyThenAddsWriters() {
+        controller.adjust(0, 0, 1, 0);
+        assertEquals(2, controller.writers());
+
+        // Con atraso y commits rápidos el lote crece de a un paso (5% del rango) hasta el máximo
+        controller.adjust(10, TARGET_NANOS / 4, 0, 100000);
+        assertEquals(250 + 247, controller.batchSize());
+        for (int i = 0; i < 30; i++) {
+            controller.adjust(10, TARGET_NANOS / 4, 0, 100000);
+        }
+        assertEquals(5000, controller.batchSize());
+        // Con el lote en el máximo se agregan escritores hasta los hilos de escritura
+        assertEquals(4, controller.writers());
+    }
+
+    @Test
+    void testLowLoadShortensLinger() {
+        controller.adjust(10, TARGET_NANOS / 10, 0, 0);
+        assertEquals(200 - 49, controller.lingerMs());
+        for (int i = 0; i < 10; i++) {
+            controller.adjust(10, TARGET_NANOS / 10, 0, 0);
+        }
+
+        assertEquals(10, controller.lingerMs());
+        assertEquals(500, controller.batchSize());
+    }
+
+    @Test
+    void testWriterTurnsLimitedBySetpoint() {
+        controller.adjust(0, 0, 1, 0);
+        controller.adjust(0, 0, 1, 0);
+        assertEquals(1, controller.writers());
+
+        assertTrue(controller.tryAcquireWriter());
+        assertFalse(controller.tryAcquireWriter());
+        controller.releaseWriter();
+        assertTrue(controller.tryAcquireWriter());
+    }
+
+    @Test
+    void testSetpointsPublishedAsMetrics() {
+        controller.adjust(10, TARGET_NANOS * 3, 0, 0);
+
+        assertEquals(250, meterRegistry.get("ingest.batch.setpoint").tag("parameter", "size").gauge().value());
+        assertEquals(400, meterRegistry.get("ingest.batch.setpoint").tag("parameter", "linger").gauge().value());
+        assertEquals(2, meterRegistry.get("ingest.batch.setpoint").tag("parameter", "writers").gauge().value());
+        assertEquals(300, meterRegistry.get("ingest.batch.commit.observed").gauge().value(), 0.01);
+        assertEquals(1, meterRegistry.get("ingest.batch.adjustments").tag("direction", "decrease").functionCounter().count());
+    }
+
+    @Test
+    void testFixedControllerNeverLimits() {
+        BatchController fixed = BatchController.fixed(100, 50, 2);
+        fixed.committed(TARGET_NANOS * 100, 100000);
+        fixed.failed(100000);
+
+        assertEquals(100, fixed.batchSize());
+        assertEquals(50, fixed.lingerMs());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(fixed.tryAcquireWriter());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.denkitronik.receiveriot.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CborReaderTests {
+
+    @Test
+    void testFormatIsDetectedByFirstByte() {
+        assertTrue(CborReader.isCbor(new CborTestWriter().map(1).uint(1).uint(2).bytes()));
+        assertTrue(CborReader.isCbor(new CborTestWriter().array(0).bytes()));
+        assertTrue(CborReader.isCbor(new CborTestWriter().raw(0xD9, 0xD9, 0xF7).map(0).bytes()));
+        assertFalse(CborReader.isCbor("{\"t\":1}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(CborReader.isCbor(" [{\"t\":1}]".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(CborReader.isCbor(new byte[0]));
+    }
+
+    @Test
+    void testNumbers() throws IOException {
+        CborReader reader = new CborReader(new CborTestWriter().uint(500).negative(-7).float32(24.5f)
+                .float64(-273.15).half(0x3C00).half(0xC500).uint(1717000000000L).bytes());
+        double[] expected = {500, -7, 24.5, -273.15, 1.0, -5.0, 1717000000000L};
+        for (double value : expected) {
+            reader.next();
+            assertTrue(reader.isNumber());
+            assertEquals(value, reader.number(), 1e-9);
+        }
+        assertEquals(65504f, CborReader.halfToFloat(0x7BFF));
+        assertEquals(0x1p-24f, CborReader.halfToFloat(0x0001));
+    }
+
+    @Test
+    void testSkipNestedAndIndefiniteItems() throws IOException {
+        // [ {"a": [1, 2]}, (_ 1, 2, 3), h'0102', 9 ]
+        CborReader reader = new CborReader(new CborTestWriter().array(4)
+                .map(1).text("a").array(2).uint(1).uint(2)
+                .raw(0x9F, 0x01, 0x02, 0x03, 0xFF)
+                .raw(0x42, 0x01, 0x02)
+                .uint(9).bytes());
+        reader.next();
+        assertEquals(CborReader.ARRAY, reader.major());
+        for (int i = 0; i < 3; i++) {
+            reader.next();
+            reader.skip();
+        }
+        reader.next();
+        assertEquals(9, reader.number());
+    }
+
+    @Test
+    void testDeeplyNestedPayloadThrowsInsteadOfOverflowing() throws IOException {
+        // 10 KB de arreglos de un elemento anidados (0x81 0x81 ... 0x00)
+        byte[] payload = new byte[10240];
+        Arrays.fill(payload, (byte) 0x81);
+        payload[payload.length - 1] = 0;
+        CborReader reader = new CborReader(payload);
+        reader.next();
+        assertThrows(IOException.class, reader::skip);
+
+        // Hasta MAX_DEPTH niveles se salta con normalidad
+        byte[] nested = new byte[CborReader.MAX_DEPTH + 1];
+        Arrays.fill(nested, (byte) 0x81);
+        nested[nested.length - 1] = 0;
+        CborReader shallow = new CborReader(nested);
+        shallow.next();
+        shallow.skip();
+    }
+
+    @Test
+    void testTruncatedPayloadThrows() {
+        CborReader reader = new CborReader(new CborTestWriter().raw(0xFA, 0x41).bytes());
+        assertThrows(IOException.class, reader::next);
+        CborReader text = new CborReader(new CborTestWriter().raw(0x65, 'a').bytes());
+        assertThrows(IOException.class, () -> {
+            text.next();
+            text.text();
+        });
+    }
+}
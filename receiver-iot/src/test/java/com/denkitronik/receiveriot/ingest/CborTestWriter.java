@@ -0,0 +1,90 @@
+package com.denkitronik.receiveriot.ingest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codificador CBOR mínimo para armar payloads de prueba
+ */
+final class CborTestWriter {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    CborTestWriter head(int major, long argument) {
+        int type = major << 5;
+        if (argument < 24) {
+            out.write(type | (int) argument);
+        } else if (argument < 0x100) {
+            out.write(type | 24);
+            out.write((int) argument);
+        } else if (argument < 0x10000) {
+            out.write(type | 25);
+            writeBytes(argument, 2);
+        } else if (argument < 0x100000000L) {
+            out.write(type | 26);
+            writeBytes(argument, 4);
+        } else {
+            out.write(type | 27);
+            writeBytes(argument, 8);
+        }
+        return this;
+    }
+
+    CborTestWriter map(int entries) {
+        return head(CborReader.MAP, entries);
+    }
+
+    CborTestWriter array(int items) {
+        return head(CborReader.ARRAY, items);
+    }
+
+    CborTestWriter uint(long value) {
+        return head(CborReader.UNSIGNED, value);
+    }
+
+    CborTestWriter negative(long value) {
+        return head(CborReader.NEGATIVE, -1 - value);
+    }
+
+    CborTestWriter text(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        head(CborReader.TEXT, bytes.length);
+        out.writeBytes(bytes);
+        return this;
+    }
+
+    CborTestWriter float32(float value) {
+        out.write(0xFA);
+        writeBytes(Float.floatToIntBits(value), 4);
+        return this;
+    }
+
+    CborTestWriter float64(double value) {
+        out.write(0xFB);
+        writeBytes(Double.doubleToLongBits(value), 8);
+        return this;
+    }
+
+    CborTestWriter half(int bits) {
+        out.write(0xF9);
+        writeBytes(bits, 2);
+        return this;
+    }
+
+    CborTestWriter raw(int... bytes) {
+        for (int b : bytes) {
+            out.write(b);
+        }
+        return this;
+    }
+
+    byte[] bytes() {
+        return out.toByteArray();
+    }
+
+    private void writeBytes(long value, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            out.write((int) (value >>> (8 * i)) & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IngestInstrumentationTests {
+
+    private SimpleMeterRegistry meterRegistry;
+    private IngestInstrumentation instrumentation;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ObjectProvider<MeterRegistry> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(meterRegistry);
+        instrumentation = new IngestInstrumentation(true, 60000, provider);
+    }
+
+    @Test
+    void testStageTimersAndCounters() {
+        instrumentation.recordDecode(2000);
+        instrumentation.recordResolve(5000);
+        instrumentation.recordWrite(3_000_000);
+        instrumentation.messageProcessed(3);
+        instrumentation.messageProcessed(2);
+        instrumentation.decodeFailed("a/b/c/d/e/out", new IOException("payload invalido"));
+
+        Timer decode = meterRegistry.get("ingest.stage.latency").tag("stage", "decode").timer();
+        assertEquals(1, decode.count());
+        assertEquals(2000, decode.totalTime(TimeUnit.NANOSECONDS));
+        assertEquals(1, meterRegistry.get("ingest.stage.latency").tag("stage", "write").timer().count());
+        assertEquals(5, meterRegistry.get("ingest.samples").tag("result", "decoded").functionCounter().count());
+        assertEquals(1, meterRegistry.get("ingest.decode.failures").functionCounter().count());
+        assertEquals(5, instrumentation.sampleCount());
+        assertEquals(1, instrumentation.failureCount());
+    }
+
+    @Test
+    void testReceiptsRecordLatencyOnlyWhenCommitted() {
+        IngestInstrumentation.Receipts receipts = instrumentation.newReceipts(1);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 40; i++) {
+            receipts.add(now - 100);
+        }
+        // Las mediciones sin instante de recepción (p. ej. recuperadas del spool) no se miden
+        receipts.add(0);
+        receipts.committed();
+
+        receipts.add(now);
+        receipts.clear();
+        receipts.committed();
+
+        Timer latency = meterRegistry.get("ingest.latency").timer();
+        assertEquals(40, latency.count());
+        assertTrue(latency.max(TimeUnit.MILLISECONDS) >= 100);
+    }
+
+    @Test
+    void testDetachedInstrumentationOnlyCounts() {
+        IngestInstrumentation detached = IngestInstrumentation.detached();
+        detached.recordDecode(1000);
+        detached.messageProcessed(4);
+        IngestInstrumentation.Receipts receipts = detached.newReceipts(4);
+        receipts.add(System.currentTimeMillis());
+        receipts.committed();
+
+        assertEquals(4, detached.sampleCount());
+    }
+}
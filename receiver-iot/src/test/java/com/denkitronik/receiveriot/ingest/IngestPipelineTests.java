@@ -0,0 +1,771 @@
+package com.denkitronik.receiveriot.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.denkitronik.receiveriot.entities.DataEntity;
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.repositories.DataRepository;
+import com.denkitronik.receiveriot.services.DataBatchWriter;
+import com.denkitronik.receiveriot.services.DataService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Clase de pruebas para el pipeline de ingesta por etapas
+ */
+class IngestPipelineTests {
+
+    @TempDir
+    Path tempDir;
+
+    private IngestPipeline pipeline;
+    private final DataService dataService = new DataService(mock(DataRepository.class));
+    private final DataBatchWriter dataBatchWriter = mock(DataBatchWriter.class);
+
+    @AfterEach
+    void tearDown() {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    void testMessagesFlowThroughAllStages() {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        // Cada mensaje produce una medicion
+        doAnswer(invocation -> {
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(1.0f, new Device(), new Measurement(), ZonedDateTime.now()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, null, 16, 16, 2, 2, 10, 50, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(pipeline.offer("Colombia/Valle/Tulua/device-1/user/out", payload()));
+        }
+        pipeline.stop();
+
+        // Al detenerse el pipeline vacia todas las colas y los lotes pendientes
+        assertEquals(100, pipeline.writtenCount());
+        assertTrue(pipeline.batchCount() >= 10, "Las mediciones deben escribirse en lotes de a lo sumo 10");
+        verify(dataBatchWriter, atLeast(10)).write(anyList());
+        pipeline = null;
+    }
+
+    @Test
+    void testSeriesFiltersSuppressRepeatedValues() {
+        Device device = new Device();
+        device.setId(1L);
+        Measurement temperatura = new Measurement();
+        temperatura.setId(1L);
+        temperatura.setName("temperatura");
+        ZonedDateTime start = ZonedDateTime.now();
+        AtomicInteger counter = new AtomicInteger();
+        MessageProcessor processor = mock(MessageProcessor.class);
+        doAnswer(invocation -> {
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(20.0f, device, temperatura, start.plusSeconds(counter.getAndIncrement())));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        @SuppressWarnings("unchecked")
+        SeriesFilters filters = new SeriesFilters("*=deadband:0.5:0", 0, 60000, 16,
+                mock(ObjectProvider.class));
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, filters, null, null, null, 16, 16, 1, 1, 10, 50, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(pipeline.offer("a/b/c/d/e/f", payload()));
+        }
+        pipeline.stop();
+
+        // Se escriben el primer punto y, al detenerse, el último punto retenido
+        assertEquals(2, pipeline.writtenCount());
+        assertEquals(2, filters.writtenCount());
+        assertEquals(98, filters.suppressedCount());
+        pipeline = null;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testLatencyAndWriteTimersRecorded() {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(1.0f, new Device(), new Measurement(), ZonedDateTime.now(), null, message.receivedAt()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObjectProvider<MeterRegistry> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(meterRegistry);
+        IngestInstrumentation instrumentation = new IngestInstrumentation(true, 60000, provider);
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, instrumentation, null, null, 16, 16, 1, 1, 10, 50, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        for (int i = 0; i < 30; i++) {
+            assertTrue(pipeline.offer("a/b/c/d/e/f", payload()));
+        }
+        pipeline.stop();
+
+        // Una latencia por medicion guardada y un tiempo de escritura por lote
+        assertEquals(30, meterRegistry.get("ingest.latency").timer().count());
+        assertEquals(pipeline.batchCount(), meterRegistry.get("ingest.stage.latency").tag("stage", "write").timer().count());
+        pipeline = null;
+    }
+
+    @Test
+    void testPartialBatchFlushedAfterLinger() throws InterruptedException {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        doAnswer(invocation -> {
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(1.0f, new Device(), new Measurement(), ZonedDateTime.now()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, null, 16, 16, 1, 1, 100, 50, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        AtomicInteger rowsWritten = new AtomicInteger();
+        doAnswer(invocation -> {
+            List<DataEntity> rows = invocation.getArgument(0);
+            return rowsWritten.addAndGet(rows.size());
+        }).when(dataBatchWriter).write(anyList());
+        pipeline.start();
+        pipeline.offer("a/b/c/d/e/f", payload());
+        pipeline.offer("a/b/c/d/e/f", payload());
+
+        // Un lote incompleto se escribe al cumplirse el tiempo de espera, sin detener el pipeline
+        long deadline = System.currentTimeMillis() + 2000;
+        while (rowsWritten.get() < 2 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(2, rowsWritten.get());
+    }
+
+    @Test
+    void testDropOldestWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        MessageProcessor processor = blockingProcessor(release);
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, null, 4, 4, 1, 1, 10, 50, BackpressurePolicy.DROP_OLDEST, tempDir.resolve("spill").toString());
+        pipeline.start();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(pipeline.offer("a/b/c/d/e/f", payload()));
+        }
+
+        // El hilo de decodificacion tiene a lo sumo un mensaje y la cola 4: el resto se descarta
+        assertTrue(pipeline.droppedCount() >= 20 - 4 - 1);
+        assertTrue(pipeline.queueDepth() <= 4);
+        release.countDown();
+    }
+
+    @Test
+    void testSpillWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        MessageProcessor processor = blockingProcessor(release);
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, null, 4, 4, 1, 1, 10, 50, BackpressurePolicy.SPILL, tempDir.resolve("spill/ingest.spill").toString());
+        pipeline.start();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(pipeline.offer("a/b/c/d/e/f", payload()));
+        }
+
+        // Nada se descarta: lo que no cabe en la cola queda en el archivo de desborde
+        assertEquals(0, pipeline.droppedCount());
+        assertTrue(pipeline.spilledCount() > 0);
+        release.countDown();
+
+        // Una vez liberada la etapa de decodificacion el archivo de desborde se vacia
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pipeline.spillDepth() > 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(0, pipeline.spillDepth());
+    }
+
+    @Test
+    void testDatabaseOutageIsSpooledAndDrained() throws Exception {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        Device device = new Device();
+        device.setId(1L);
+        Measurement variable = new Measurement();
+        variable.setId(2L);
+        AtomicInteger sequence = new AtomicInteger();
+        doAnswer(invocation -> {
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(sequence.incrementAndGet(), device, variable, ZonedDateTime.now()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+
+        // La base de datos rechaza las escrituras hasta que se "recupera"
+        AtomicBoolean databaseUp = new AtomicBoolean(false);
+        AtomicInteger rowsWritten = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (!databaseUp.get()) {
+                throw new IllegalStateException("Conexion rechazada");
+            }
+            List<DataEntity> rows = invocation.getArgument(0);
+            return rowsWritten.addAndGet(rows.size());
+        }).when(dataBatchWriter).write(anyList());
+        // Las filas del spool se escriben sin volver a preparar: conservan el base_time de cuando se aceptaron
+        AtomicLong latestBaseTime = new AtomicLong();
+        doAnswer(invocation -> {
+            List<DataEntity> rows = invocation.getArgument(0);
+            rows.forEach(row -> latestBaseTime.accumulateAndGet(row.getBaseTime().toInstant().toEpochMilli(), Math::max));
+            return dataBatchWriter.write(rows);
+        }).when(dataBatchWriter).writePrepared(anyList());
+
+        SampleSpool spool = new SampleSpool(true, tempDir.resolve("spool").toString(), 4096, 4, 10);
+        spool.open();
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, spool, null, null, null, null, null, 16, 16, 1, 1, 10, 20, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        for (int i = 0; i < 50; i++) {
+            assertTrue(pipeline.offer("a/b/c/d/e/f", payload()));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pipeline.spoolDepth() < 50 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(50, pipeline.spoolDepth());
+        assertEquals(0, pipeline.writeFailureCount());
+
+        long recoveredAt = System.currentTimeMillis();
+        databaseUp.set(true);
+        deadline = System.currentTimeMillis() + 10000;
+        while (pipeline.spoolDrainedCount() < 50 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(0, pipeline.spoolDepth());
+        assertEquals(50, rowsWritten.get());
+        assertTrue(latestBaseTime.get() > 0 && latestBaseTime.get() <= recoveredAt, "base_time no debe reasignarse al drenar el spool");
+        assertEquals(50, pipeline.spoolDrainedCount());
+        pipeline.stop();
+        spool.close();
+    }
+
+    @Test
+    void testRejectedRowsAreSeparatedFromTheBatch() throws Exception {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        Measurement variable = new Measurement();
+        variable.setId(2L);
+        AtomicInteger sequence = new AtomicInteger();
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            // El dispositivo 13 no existe: la base de datos rechaza sus filas por la llave foranea
+            Device device = new Device();
+            device.setId(sequence.incrementAndGet() == 5 ? 13L : 1L);
+            sink.accept(new Sample(sequence.get(), device, variable, ZonedDateTime.now(), message.ack()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        AtomicInteger rowsWritten = new AtomicInteger();
+        doAnswer(invocation -> {
+            List<DataEntity> rows = invocation.getArgument(0);
+            if (rows.stream().anyMatch(row -> row.getDevice().getId() == 13L)) {
+                throw new DataIntegrityViolationException("insert", new SQLException("violates foreign key constraint", "23503"));
+            }
+            return rowsWritten.addAndGet(rows.size());
+        }).when(dataBatchWriter).write(anyList());
+        // Las filas del spool y las que se separan se escriben sin volver a preparar: la base de datos responde igual
+        when(dataBatchWriter.writePrepared(anyList())).thenAnswer(invocation -> dataBatchWriter.write(invocation.getArgument(0)));
+
+        SampleSpool spool = new SampleSpool(true, tempDir.resolve("spool").toString(), 4096, 4, 10);
+        spool.open();
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, spool, null, null, null, null, null, 16, 16, 1, 1, 10, 10_000, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        AtomicInteger acked = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(acked::incrementAndGet)));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (acked.get() < 10 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        // Se guardan las otras 9 filas, la rechazada va al archivo de descartes y nada queda en el spool
+        assertEquals(10, acked.get());
+        assertEquals(9, rowsWritten.get());
+        assertEquals(1, pipeline.deadLetterCount());
+        assertEquals(0, pipeline.spoolDepth());
+        assertEquals(2, Files.readAllLines(spool.deadLetterPath()).size());
+        pipeline.stop();
+        spool.close();
+    }
+
+    @Test
+    void testBatchWithEveryRowRejectedIsSpooledNotDiscarded() throws Exception {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        Device device = new Device();
+        device.setId(13L);
+        Measurement variable = new Measurement();
+        variable.setId(2L);
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(1.0f, device, variable, ZonedDateTime.now(), message.ack()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        // La base de datos rechaza cada fila por separado: el problema no es de una fila sino del lote
+        doThrow(new DataIntegrityViolationException("insert", new SQLException("violates foreign key constraint", "23503")))
+                .when(dataBatchWriter).write(anyList());
+        when(dataBatchWriter.writePrepared(anyList())).thenAnswer(invocation -> dataBatchWriter.write(invocation.getArgument(0)));
+
+        SampleSpool spool = new SampleSpool(true, tempDir.resolve("spool").toString(), 4096, 4, 10);
+        spool.open();
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, spool, null, null, null, null, null, 16, 16, 1, 1, 10, 10_000, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        AtomicInteger acked = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(acked::incrementAndGet)));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (acked.get() < 10 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        // Ninguna fila va a descartes: el lote queda en el spool y se confirma desde alli
+        assertEquals(10, acked.get());
+        assertEquals(0, pipeline.deadLetterCount());
+        assertEquals(10, pipeline.spoolDepth());
+        assertFalse(Files.exists(spool.deadLetterPath()));
+        pipeline.stop();
+        spool.close();
+    }
+
+    @Test
+    void testSpoolHeadWithRejectedRowDoesNotBlockDrain() throws Exception {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        Measurement variable = new Measurement();
+        variable.setId(2L);
+        AtomicInteger sequence = new AtomicInteger();
+        doAnswer(invocation -> {
+            Consumer<Sample> sink = invocation.getArgument(1);
+            Device device = new Device();
+            device.setId(sequence.incrementAndGet() == 3 ? 13L : 1L);
+            sink.accept(new Sample(sequence.get(), device, variable, ZonedDateTime.now()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        // Primero la base de datos no responde (todo va al spool); al volver rechaza la fila del dispositivo 13
+        AtomicBoolean databaseUp = new AtomicBoolean(false);
+        AtomicInteger rowsWritten = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (!databaseUp.get()) {
+                throw new CannotGetJdbcConnectionException("Conexion rechazada");
+            }
+            List<DataEntity> rows = invocation.getArgument(0);
+            if (rows.stream().anyMatch(row -> row.getDevice().getId() == 13L)) {
+                throw new DataIntegrityViolationException("insert", new SQLException("violates foreign key constraint", "23503"));
+            }
+            return rowsWritten.addAndGet(rows.size());
+        }).when(dataBatchWriter).write(anyList());
+        // Las filas del spool y las que se separan se escriben sin volver a preparar: la base de datos responde igual
+        when(dataBatchWriter.writePrepared(anyList())).thenAnswer(invocation -> dataBatchWriter.write(invocation.getArgument(0)));
+
+        SampleSpool spool = new SampleSpool(true, tempDir.resolve("spool").toString(), 4096, 4, 10);
+        spool.open();
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, spool, null, null, null, null, null, 16, 16, 1, 1, 10, 20, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        for (int i = 0; i < 30; i++) {
+            assertTrue(pipeline.offer("a/b/c/d/e/f", payload()));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pipeline.spoolDepth() < 30 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(30, pipeline.spoolDepth());
+
+        databaseUp.set(true);
+        deadline = System.currentTimeMillis() + 10000;
+        while (pipeline.spoolDepth() > 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(0, pipeline.spoolDepth());
+        assertEquals(29, rowsWritten.get());
+        assertEquals(1, pipeline.deadLetterCount());
+        pipeline.stop();
+        spool.close();
+    }
+
+    @Test
+    void testManualAckReleasedAfterBatchCommit() throws Exception {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        // Cada mensaje produce dos mediciones que retienen su confirmacion
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(1.0f, new Device(), new Measurement(), ZonedDateTime.now(), message.ack()));
+            sink.accept(new Sample(2.0f, new Device(), new Measurement(), ZonedDateTime.now(), message.ack()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+
+        CountDownLatch commit = new CountDownLatch(1);
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            // El primer lote falla y el segundo espera a que la prueba lo deje confirmar
+            if (failNext.getAndSet(false)) {
+                throw new IllegalStateException("Conexion rechazada");
+            }
+            commit.await(5, TimeUnit.SECONDS);
+            return 2;
+        }).when(dataBatchWriter).write(anyList());
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, null, 16, 16, 1, 1, 2, 10_000, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        AtomicInteger lostAcks = new AtomicInteger();
+        AtomicInteger committedAcks = new AtomicInteger();
+        assertTrue(pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(lostAcks::incrementAndGet)));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pipeline.writeFailureCount() < 2 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertTrue(pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(committedAcks::incrementAndGet)));
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        // Sin lote guardado no hay confirmacion: el broker volvera a entregar el mensaje
+        assertEquals(0, lostAcks.get());
+        assertEquals(0, committedAcks.get());
+        commit.countDown();
+        deadline = System.currentTimeMillis() + 5000;
+        while (committedAcks.get() == 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(1, committedAcks.get());
+        assertEquals(0, lostAcks.get());
+    }
+
+    @Test
+    void testBatchFlushedWhenReceiveWindowIsFull() throws Exception {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(1.0f, new Device(), new Measurement(), ZonedDateTime.now(), message.ack()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        when(dataBatchWriter.write(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+
+        // Lote grande y linger largo: sin la ventana el broker simulado se detendria 10 s tras entregar 3 mensajes
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, null, 16, 16, 1, 1, 500, 10_000, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.setReceiveWindow(3);
+        pipeline.start();
+        // Como el broker: entrega un mensaje nuevo por cada confirmacion, hasta 10
+        AtomicInteger delivered = new AtomicInteger();
+        Runnable[] deliver = new Runnable[1];
+        deliver[0] = () -> {
+            if (delivered.incrementAndGet() <= 10) {
+                pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(deliver[0]));
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            deliver[0].run();
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.get() < 10 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertTrue(delivered.get() >= 10, "La ventana llena deberia forzar la escritura de los lotes");
+    }
+
+    @Test
+    void testFilteredSampleIsAckedOnlyWhenStoredOrSuppressed() throws Exception {
+        Device device = new Device();
+        device.setId(1L);
+        Measurement temperatura = new Measurement();
+        temperatura.setId(1L);
+        temperatura.setName("temperatura");
+        ZonedDateTime start = ZonedDateTime.now();
+        AtomicInteger counter = new AtomicInteger();
+        MessageProcessor processor = mock(MessageProcessor.class);
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(20.0f, device, temperatura, start.plusSeconds(counter.getAndIncrement()), message.ack()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        when(dataBatchWriter.write(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+        @SuppressWarnings("unchecked")
+        SeriesFilters filters = new SeriesFilters("*=deadband:0.5:0", 0, 60000, 16, mock(ObjectProvider.class));
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, filters, null, null, null, 16, 16, 1, 1, 10, 10, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        AtomicInteger[] acked = new AtomicInteger[3];
+        for (int i = 0; i < acked.length; i++) {
+            acked[i] = new AtomicInteger();
+            assertTrue(pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(acked[i]::incrementAndGet)));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((acked[0].get() == 0 || acked[1].get() == 0) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        // El primero se escribio y el segundo quedo suprimido por el tercero, que sigue retenido sin guardar
+        assertEquals(1, acked[0].get());
+        assertEquals(1, acked[1].get());
+        assertEquals(0, acked[2].get());
+        assertEquals(1, pipeline.pendingAckCount());
+
+        // Al detenerse se escribe el punto retenido y se confirma su mensaje
+        pipeline.stop();
+        assertEquals(1, acked[2].get());
+        assertEquals(2, pipeline.writtenCount());
+        pipeline = null;
+    }
+
+    @Test
+    void testHeldAcksFillingTheWindowAreFlushed() throws Exception {
+        Measurement temperatura = new Measurement();
+        temperatura.setId(1L);
+        temperatura.setName("temperatura");
+        ZonedDateTime start = ZonedDateTime.now();
+        AtomicInteger counter = new AtomicInteger();
+        MessageProcessor processor = mock(MessageProcessor.class);
+        // Dos mensajes por dispositivo con el mismo valor: el segundo siempre queda retenido por el filtro
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            int n = counter.getAndIncrement();
+            Device device = new Device();
+            device.setId(1L + n / 2);
+            sink.accept(new Sample(20.0f, device, temperatura, start.plusSeconds(n % 2), message.ack()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        when(dataBatchWriter.write(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+        @SuppressWarnings("unchecked")
+        SeriesFilters filters = new SeriesFilters("*=deadband:0.5:0", 600000, 60000, 16, mock(ObjectProvider.class));
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, filters, null, null, null, 16, 16, 1, 1, 500, 10, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.setReceiveWindow(3);
+        pipeline.start();
+        // Como el broker: entrega un mensaje nuevo por cada confirmacion, hasta 20
+        AtomicInteger delivered = new AtomicInteger();
+        Runnable[] deliver = new Runnable[1];
+        deliver[0] = () -> {
+            if (delivered.incrementAndGet() <= 20) {
+                pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(deliver[0]));
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            deliver[0].run();
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.get() < 20 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertTrue(delivered.get() >= 20, "Las confirmaciones retenidas por el filtro no deberian detener al broker");
+    }
+
+    @Test
+    void testLostBatchRequestsRedelivery() throws Exception {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(1.0f, new Device(), new Measurement(), ZonedDateTime.now(), message.ack()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        when(dataBatchWriter.write(anyList())).thenThrow(new IllegalStateException("Conexion rechazada"));
+
+        // Sin spool el lote se pierde: el mensaje se abandona y se pide su reentrega
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, null, 16, 16, 1, 1, 1, 10, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        CountDownLatch redelivery = new CountDownLatch(1);
+        pipeline.setRedeliveryHandler(redelivery::countDown);
+        pipeline.start();
+        AtomicInteger acked = new AtomicInteger();
+        assertTrue(pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(acked::incrementAndGet)));
+
+        assertTrue(redelivery.await(5, TimeUnit.SECONDS));
+        assertEquals(0, acked.get());
+        assertEquals(1, pipeline.abandonedCount());
+        assertEquals(0, pipeline.pendingAckCount());
+    }
+
+    @Test
+    void testOnlyRecoverableResolutionErrorsRequestRedelivery() throws Exception {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            if (message.topic().startsWith("caida")) {
+                throw new CannotGetJdbcConnectionException("Conexion rechazada");
+            }
+            // El client-id ya existe con otra ubicacion: la restriccion de unicidad falla en cada reentrega
+            throw new DataIntegrityViolationException("insert", new SQLException("duplicate key value violates unique constraint", "23505"));
+        }).when(processor).process(any(RawMessage.class), any());
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, null, 16, 16, 1, 1, 1, 10, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        CountDownLatch redelivery = new CountDownLatch(1);
+        pipeline.setRedeliveryHandler(redelivery::countDown);
+        pipeline.start();
+        AtomicInteger acked = new AtomicInteger();
+        assertTrue(pipeline.offer("Colombia/Valle/Cali/device-1/user/out", payload(), new DeliveryAck(acked::incrementAndGet)));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (acked.get() == 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        // El rechazo permanente se cuenta y se confirma sin pedir reentrega
+        assertEquals(1, acked.get());
+        assertEquals(1, pipeline.rejectedCount());
+        assertEquals(0, pipeline.abandonedCount());
+        assertEquals(1, redelivery.getCount());
+
+        // Con la base de datos caida el mensaje se abandona para que el broker lo vuelva a entregar
+        assertTrue(pipeline.offer("caida/Valle/Cali/device-1/user/out", payload(), new DeliveryAck(acked::incrementAndGet)));
+        assertTrue(redelivery.await(5, TimeUnit.SECONDS));
+        assertEquals(1, acked.get());
+        assertEquals(1, pipeline.abandonedCount());
+        assertEquals(0, pipeline.pendingAckCount());
+    }
+
+    @Test
+    void testStackOverflowInDecodeDoesNotStopTheLane() throws Exception {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new StackOverflowError();
+            }
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            sink.accept(new Sample(1.0f, new Device(), new Measurement(), ZonedDateTime.now(), message.ack()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, null, 16, 16, 1, 1, 1, 10, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        AtomicInteger redelivery = new AtomicInteger();
+        pipeline.setRedeliveryHandler(redelivery::incrementAndGet);
+        pipeline.start();
+        AtomicInteger acked = new AtomicInteger();
+        assertTrue(pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(acked::incrementAndGet)));
+        assertTrue(pipeline.offer("a/b/c/d/e/f", payload(), new DeliveryAck(acked::incrementAndGet)));
+
+        // El mensaje que desborda la pila se descarta sin reentrega y el hilo sigue con el siguiente
+        long deadline = System.currentTimeMillis() + 5000;
+        while (acked.get() < 2 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(2, acked.get());
+        assertEquals(1, pipeline.writtenCount());
+        assertEquals(0, redelivery.get());
+    }
+
+    @Test
+    void testSamplesOfEachDeviceWrittenInOrder() {
+        int devices = 8;
+        int messages = 300;
+        Device[] device = new Device[devices];
+        for (int d = 0; d < devices; d++) {
+            device[d] = new Device();
+            device[d].setId((long) d + 1);
+        }
+        MessageProcessor processor = mock(MessageProcessor.class);
+        // El payload es el numero de secuencia y el tópico termina en el índice del dispositivo
+        doAnswer(invocation -> {
+            RawMessage message = invocation.getArgument(0);
+            Consumer<Sample> sink = invocation.getArgument(1);
+            int index = Integer.parseInt(message.topic().substring(message.topic().lastIndexOf('-') + 1));
+            float sequence = Float.parseFloat(new String(message.payload(), StandardCharsets.UTF_8));
+            sink.accept(new Sample(sequence, device[index], new Measurement(), ZonedDateTime.now()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        List<DataEntity> rows = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            List<DataEntity> batch = invocation.getArgument(0);
+            rows.addAll(batch);
+            return batch.size();
+        }).when(dataBatchWriter).write(anyList());
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, new PipelineThreads(true), null,
+                64, 64, 4, 3, 10, 5, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        for (int i = 0; i < messages; i++) {
+            for (int d = 0; d < devices; d++) {
+                assertTrue(pipeline.offer("colombia/valle/tulua/dev/user/out-" + d, String.valueOf(i).getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        pipeline.stop();
+
+        // Varios hilos en cada etapa, pero las mediciones de cada dispositivo se escriben en el orden de publicación
+        assertEquals(devices * messages, rows.size());
+        float[] last = new float[devices];
+        Arrays.fill(last, -1);
+        for (DataEntity row : rows) {
+            int index = (int) (row.getDevice().getId() - 1);
+            assertTrue(row.getVariableValue() > last[index], "Medicion fuera de orden del dispositivo " + index);
+            last[index] = row.getVariableValue();
+        }
+        pipeline = null;
+    }
+
+    @Test
+    void testBatchControllerLimitsConcurrentWriters() {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        AtomicInteger sequence = new AtomicInteger();
+        doAnswer(invocation -> {
+            Consumer<Sample> sink = invocation.getArgument(1);
+            Device device = new Device();
+            device.setId((long) sequence.incrementAndGet());
+            sink.accept(new Sample(1.0f, device, new Measurement(), ZonedDateTime.now()));
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            TimeUnit.MILLISECONDS.sleep(2);
+            active.decrementAndGet();
+            return 0;
+        }).when(dataBatchWriter).write(anyList());
+        // Cuatro hilos de escritura, pero el controlador solo deja escribir a uno a la vez
+        BatchController controller = new BatchController(true, 100, 60000, 10, 10, 10, 5, 5, 5, 4, 1, null);
+        controller.adjust(0, 0, 1, 0);
+        controller.adjust(0, 0, 1, 0);
+        assertEquals(1, controller.writers());
+
+        pipeline = new IngestPipeline(processor, dataService, dataBatchWriter, null, null, null, null, null, controller,
+                64, 64, 2, 4, 10, 5, BackpressurePolicy.BLOCK, tempDir.resolve("spill").toString());
+        pipeline.start();
+        for (int i = 0; i < 400; i++) {
+            assertTrue(pipeline.offer("a/b/c/d/e/" + i, payload()));
+        }
+        pipeline.stop();
+
+        assertEquals(400, pipeline.writtenCount());
+        assertEquals(1, maxActive.get());
+        pipeline = null;
+    }
+
+    private static MessageProcessor blockingProcessor(CountDownLatch release) {
+        MessageProcessor processor = mock(MessageProcessor.class);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(processor).process(any(RawMessage.class), any());
+        return processor;
+    }
+
+    private static byte[] payload() {
+        return "{\"temperatura\": 24.5}".getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.services.HyperTableService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LatestValueSeederTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private HyperTableService hyperTableService;
+    private LatestValueStore store;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        hyperTableService = mock(HyperTableService.class);
+        when(hyperTableService.readSource()).thenReturn("data");
+        store = new LatestValueStore(64);
+    }
+
+    @Test
+    void testSeedLoadsLatestValueOfEachSeries() throws Exception {
+        long now = System.currentTimeMillis();
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(row(1, 1, now - 5000, 22.5f));
+            handler.processRow(row(1, 2, now - 1000, 60f));
+            return null;
+        }).when(jdbcTemplate).query(contains("DISTINCT ON (device_id, variable_id)"), any(RowCallbackHandler.class), anyLong());
+        // La ingesta ya registro una medicion mas reciente de la primera serie
+        store.update(1, 1, now, 23f);
+
+        LatestValueSeeder seeder = new LatestValueSeeder(jdbcTemplate, store, hyperTableService, 86400000);
+
+        assertEquals(2, seeder.seed());
+        assertEquals(23f, store.get(1, 1).value());
+        assertEquals(60f, store.get(1, 2).value());
+        verify(jdbcTemplate).query(contains("FROM data WHERE"), any(RowCallbackHandler.class),
+                longThat(since -> since >= now - 86400000 && since <= System.currentTimeMillis() - 86400000));
+    }
+
+    @Test
+    void testSeedFailureLeavesStoreEmpty() {
+        doThrow(new DataAccessResourceFailureException("sin conexion"))
+                .when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), anyLong());
+
+        assertEquals(0, new LatestValueSeeder(jdbcTemplate, store, hyperTableService, 86400000).seed());
+        assertEquals(0, new LatestValueSeeder(jdbcTemplate, store, hyperTableService, 0).seed());
+        assertEquals(0, store.size());
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), anyLong());
+    }
+
+    private static ResultSet row(long deviceId, long variableId, long time, float value) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(deviceId);
+        when(rs.getLong(2)).thenReturn(variableId);
+        when(rs.getLong(3)).thenReturn(time);
+        when(rs.getFloat(4)).thenReturn(value);
+        return rs;
+    }
+}
@@ -0,0 +1,89 @@
+package com.denkitronik.receiveriot.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatestValueStoreTests {
+
+    @Test
+    void testKeepsNewestValuePerSeries() {
+        LatestValueStore store = new LatestValueStore(16);
+
+        assertTrue(store.update(1, 1, 1000, 20.5f));
+        assertTrue(store.update(1, 2, 1000, 60f));
+        assertTrue(store.update(1, 1, 2000, 21.5f));
+        // Una medición atrasada no reemplaza a la más reciente
+        assertTrue(store.update(1, 1, 1500, 99f));
+
+        LatestValueStore.LatestValue value = store.get(1, 1);
+        assertEquals(2000, value.time());
+        assertEquals(21.5f, value.value());
+        assertEquals(60f, store.get(1, 2).value());
+        assertNull(store.get(2, 1));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void testFullTableRejectsNewSeries() {
+        LatestValueStore store = new LatestValueStore(8);
+
+        // 8 ranuras con factor de carga 0.75: caben 6 series
+        for (int device = 1; device <= 6; device++) {
+            assertTrue(store.update(device, 1, 1000, device));
+        }
+        assertFalse(store.update(7, 1, 1000, 7f));
+        // Las series existentes se siguen actualizando
+        assertTrue(store.update(3, 1, 2000, 33f));
+        assertEquals(33f, store.get(3, 1).value());
+        assertFalse(store.update(0, 1, 1000, 1f));
+        assertEquals(2, store.rejectedCount());
+    }
+
+    @Test
+    void testConcurrentWritersAndReaders() throws InterruptedException {
+        LatestValueStore store = new LatestValueStore(1 << 16);
+        int series = 10_000;
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger torn = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            threads.add(new Thread(() -> {
+                for (int round = 1; round <= 20; round++) {
+                    for (int device = 1; device <= series; device++) {
+                        // El valor siempre es igual a la marca de tiempo: una lectura rota se detecta
+                        store.update(device, 1, round, round);
+                    }
+                }
+            }));
+        }
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                for (int device = 1; device <= series; device += 7) {
+                    LatestValueStore.LatestValue value = store.get(device, 1);
+                    if (value != null && value.time() != (long) value.value()) {
+                        torn.incrementAndGet();
+                    }
+                }
+            }
+        });
+        reader.start();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        running.set(false);
+        reader.join();
+
+        assertEquals(0, torn.get());
+        assertEquals(series, store.size());
+        for (int device = 1; device <= series; device++) {
+            assertEquals(20, store.get(device, 1).time());
+        }
+    }
+}
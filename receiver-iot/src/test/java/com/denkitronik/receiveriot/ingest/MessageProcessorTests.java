@@ -0,0 +1,107 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Location;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.entities.User;
+import com.denkitronik.receiveriot.live.LiveFeed;
+import com.denkitronik.receiveriot.services.DeviceService;
+import com.denkitronik.receiveriot.services.LocationService;
+import com.denkitronik.receiveriot.services.MeasurementService;
+import com.denkitronik.receiveriot.services.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageProcessorTests {
+
+    private static final String TOPIC = "colombia/valle/tulua/ESP32-01/device1/out";
+
+    private final UserService userService = mock(UserService.class);
+    private final LocationService locationService = mock(LocationService.class);
+    private final MeasurementService measurementService = mock(MeasurementService.class);
+    private final DeviceService deviceService = mock(DeviceService.class);
+    private MessageProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        ObjectProvider<MeterRegistry> noRegistry = new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        TopicRouter router = new TopicRouter("{country}/{state}/{city}/{device}/{user}/{channel}", 1000, noRegistry);
+        PayloadDecoder decoder = new PayloadDecoder(false, "ts", 300000, 604800000L, true, 604800000L, noRegistry);
+        processor = new MessageProcessor(userService, locationService, measurementService, deviceService, decoder,
+                router, mock(LiveFeed.class), IngestInstrumentation.detached());
+        when(userService.getUser(anyString())).thenReturn(new User());
+        when(locationService.getOrCreateLocation(anyString(), anyString(), anyString())).thenReturn(new Location());
+        when(deviceService.getOrCreateDevice(anyString(), any(), any())).thenReturn(new Device());
+    }
+
+    @Test
+    void testEachVariableDeliveredToSink() {
+        when(measurementService.getOrCreateMeasurement(anyString())).thenAnswer(invocation -> {
+            Measurement measurement = new Measurement();
+            measurement.setName(invocation.getArgument(0));
+            return measurement;
+        });
+        List<Sample> samples = new ArrayList<>();
+
+        processor.process(message("{\"temperatura\": 24.5, \"humedad\": 61.0}"), samples::add);
+
+        assertEquals(2, samples.size());
+        assertEquals("temperatura", samples.get(0).variable().getName());
+        assertEquals(61.0f, samples.get(1).value());
+    }
+
+    @Test
+    void testInvalidPayloadIsDiscardedWithoutError() {
+        List<Sample> samples = new ArrayList<>();
+
+        assertDoesNotThrow(() -> processor.process(message("{\"temperatura\": "), samples::add));
+        assertTrue(samples.isEmpty());
+    }
+
+    @Test
+    void testResolutionFailurePropagatesSoMessageIsNotAcknowledged() {
+        when(measurementService.getOrCreateMeasurement("humedad"))
+                .thenThrow(new DataAccessResourceFailureException("Conexion rechazada"));
+        when(measurementService.getOrCreateMeasurement("temperatura")).thenReturn(new Measurement());
+        List<Sample> samples = new ArrayList<>();
+
+        // Si el error se tragara, el pipeline confirmaria el mensaje y la humedad se perderia
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> processor.process(message("{\"temperatura\": 24.5, \"humedad\": 61.0}"), samples::add));
+        assertEquals(1, samples.size());
+    }
+
+    @Test
+    void testDimensionsAreResolvedThroughTheCachesOnEveryMessage() {
+        when(measurementService.getOrCreateMeasurement(anyString())).thenReturn(new Measurement());
+        Device first = new Device();
+        Device reassigned = new Device();
+        when(deviceService.getOrCreateDevice(anyString(), any(), any())).thenReturn(first, reassigned);
+        List<Sample> samples = new ArrayList<>();
+
+        processor.process(message("{\"temperatura\": 24.5}"), samples::add);
+        processor.process(message("{\"temperatura\": 24.6}"), samples::add);
+
+        // La ruta no guarda el dispositivo: si la cache lo invalida el siguiente mensaje usa el nuevo
+        assertSame(first, samples.get(0).device());
+        assertSame(reassigned, samples.get(1).device());
+        verify(userService, times(2)).getUser("device1");
+        verify(locationService, times(2)).getOrCreateLocation("tulua", "valle", "colombia");
+    }
+
+    private static RawMessage message(String payload) {
+        return new RawMessage(TOPIC, payload.getBytes(StandardCharsets.UTF_8), System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,80 @@
+package com.denkitronik.receiveriot.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clase de pruebas para la cola acotada sin bloqueos MpmcArrayQueue
+ */
+class MpmcArrayQueueTests {
+
+    @Test
+    void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(8, new MpmcArrayQueue<Integer>(5).capacity());
+        assertEquals(8192, new MpmcArrayQueue<Integer>(8192).capacity());
+    }
+
+    @Test
+    void testFifoOrderAndFullQueue() {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        // La cola esta llena: no debe aceptar mas elementos
+        assertFalse(queue.offer(99));
+        assertEquals(4, queue.size());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testConcurrentProducersAndConsumers() throws InterruptedException {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(64);
+        int producers = 4;
+        int perProducer = 5000;
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger consumed = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!queue.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }));
+        }
+        for (int c = 0; c < 3; c++) {
+            threads.add(new Thread(() -> {
+                while (consumed.get() < producers * perProducer) {
+                    Integer value = queue.poll();
+                    if (value != null) {
+                        assertTrue(seen.add(value), "Ningun elemento debe consumirse dos veces");
+                        consumed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join(30000);
+        }
+
+        // Todos los elementos producidos deben consumirse exactamente una vez
+        assertEquals(producers * perProducer, seen.size());
+        assertTrue(queue.isEmpty());
+    }
+}
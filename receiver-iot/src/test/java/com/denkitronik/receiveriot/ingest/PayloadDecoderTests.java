@@ -0,0 +1,227 @@
+package com.denkitronik.receiveriot.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Clase de pruebas para el decodificador en streaming de payloads JSON
+ */
+class PayloadDecoderTests {
+
+    private static final long DAY = 86400000;
+
+    private PayloadDecoder decoder;
+    private SampleBuffer buffer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        decoder = new PayloadDecoder(true, "ts", 300000, DAY, true, 7 * DAY, mock(ObjectProvider.class));
+        buffer = new SampleBuffer(2);
+    }
+
+    @Test
+    void testDecodeFirmwarePayload() throws IOException {
+        // Payload tal como lo publica el firmware iot-mqtt-tls
+        int count = decoder.decode(bytes("{\"temperatura\": 24.5, \"humedad\": 61.0}"), buffer);
+
+        assertEquals(2, count);
+        assertEquals("temperatura", buffer.name(0));
+        assertEquals(24.5f, buffer.value(0));
+        assertEquals("humedad", buffer.name(1));
+        assertEquals(61.0f, buffer.value(1));
+    }
+
+    @Test
+    void testNumberFormatsMatchFloatParsing() throws IOException {
+        String[] numbers = {"0", "-0.5", "12", "-273.15", "0.000123", "3.14159265358979", "1e3", "-2.5E-4",
+                "123456789012345678", "16777217", "0.1", "99.99"};
+        for (String number : numbers) {
+            decoder.decode(bytes("{\"v\":" + number + "}"), buffer);
+            assertEquals(Float.parseFloat(number), buffer.value(0), "Valor " + number);
+        }
+    }
+
+    @Test
+    void testNonNumericFieldsAreSkipped() throws IOException {
+        int count = decoder.decode(bytes("{\"estado\":\"OK\",\"t\":1.5,\"meta\":{\"a\":1},\"lista\":[1,2],\"h\":2}"), buffer);
+
+        assertEquals(2, count);
+        assertEquals("t", buffer.name(0));
+        assertEquals("h", buffer.name(1));
+        assertEquals(3, decoder.skippedFieldCount());
+    }
+
+    @Test
+    void testBufferGrowsAndIsReused() throws IOException {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 32; i++) {
+            json.append(i == 0 ? "" : ",").append("\"v").append(i).append("\":").append(i);
+        }
+        decoder.decode(bytes(json.append("}").toString()), buffer);
+        assertEquals(32, buffer.size());
+
+        // El buffer se limpia al decodificar el siguiente mensaje
+        decoder.decode(bytes("{\"t\":1}"), buffer);
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    void testMalformedPayloadThrows() {
+        assertThrows(IOException.class, () -> decoder.decode(bytes("[1,2,3]"), buffer));
+        assertThrows(IOException.class, () -> decoder.decode(bytes("{\"t\": 1"), buffer));
+        assertThrows(IOException.class, () -> decoder.decode(bytes("no es json"), buffer));
+    }
+
+    @Test
+    void testDecodeTimestampedBatch() throws IOException {
+        long now = System.currentTimeMillis();
+        long seconds = now / 1000 - 60;
+        String iso = Instant.ofEpochMilli(now - 120000).toString();
+        int count = decoder.decode(bytes("[{\"ts\":" + (now - 1000) + ",\"temperatura\":24.5,\"humedad\":61},"
+                + "{\"temperatura\":24.7,\"ts\":" + seconds + "},"
+                + "{\"ts\":\"" + iso + "\",\"humedad\":60}]"), buffer);
+
+        assertEquals(4, count);
+        assertEquals(now - 1000, buffer.time(0));
+        assertEquals(now - 1000, buffer.time(1));
+        // El tiempo puede llegar despues de las variables y en segundos
+        assertEquals("temperatura", buffer.name(2));
+        assertEquals(seconds * 1000, buffer.time(2));
+        assertEquals(now - 120000, buffer.time(3));
+    }
+
+    @Test
+    void testSamplesFieldInheritsTopLevelTime() throws IOException {
+        long now = System.currentTimeMillis();
+        decoder.decode(bytes("{\"ts\":" + now + ",\"samples\":[{\"v\":1},{\"v\":2,\"ts\":" + (now - 5000) + "}]}"), buffer);
+
+        assertEquals(2, buffer.size());
+        assertEquals(now, buffer.time(0));
+        assertEquals(now - 5000, buffer.time(1));
+
+        // Sin tiempo del dispositivo se usa la hora de recepcion
+        decoder.decode(bytes("{\"v\":1}"), buffer);
+        assertEquals(SampleBuffer.NO_TIME, buffer.time(0));
+    }
+
+    @Test
+    void testOutOfWindowTimestampsAreRejected() throws IOException {
+        long now = System.currentTimeMillis();
+        // Reloj sin sincronizar (1970), del futuro, demasiado antiguo e ilegible: solo queda la lectura valida
+        int count = decoder.decode(bytes("[{\"ts\":5000,\"v\":1},{\"ts\":" + (now + DAY) + ",\"v\":2},"
+                + "{\"ts\":" + (now - 2 * DAY) + ",\"v\":3},{\"ts\":\"ayer\",\"v\":4},{\"ts\":" + now + ",\"v\":5}]"), buffer);
+
+        assertEquals(1, count);
+        assertEquals(5f, buffer.value(0));
+        assertEquals(4, decoder.rejectedSampleCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testMaxAgeIsClampedToCompressionAge() throws IOException {
+        assertEquals(7 * DAY, PayloadDecoder.lateWindow(30 * DAY, true, 7 * DAY));
+        assertEquals(7 * DAY, PayloadDecoder.lateWindow(0, true, 7 * DAY));
+        assertEquals(DAY, PayloadDecoder.lateWindow(DAY, true, 7 * DAY));
+        assertEquals(30 * DAY, PayloadDecoder.lateWindow(30 * DAY, false, 7 * DAY));
+
+        // Una lectura de 10 dias caeria en un chunk comprimido aunque max-age-ms la permita
+        PayloadDecoder clamped = new PayloadDecoder(false, "ts", 300000, 30 * DAY, true, 7 * DAY, mock(ObjectProvider.class));
+        long now = System.currentTimeMillis();
+        int count = clamped.decode(bytes("[{\"ts\":" + (now - 10 * DAY) + ",\"v\":1},{\"ts\":" + (now - DAY) + ",\"v\":2}]"), buffer);
+
+        assertEquals(1, count);
+        assertEquals(2f, buffer.value(0));
+        assertEquals(1, clamped.rejectedSampleCount());
+    }
+
+    @Test
+    void testDecodeCborWithNamesAndIds() throws IOException {
+        long now = System.currentTimeMillis();
+        // {"temperatura": 24.5, 2: 61.0, "estado": "OK", 0: now}
+        byte[] payload = new CborTestWriter().map(4).text("temperatura").float32(24.5f).uint(2).half(0x53A0)
+                .text("estado").text("OK").uint(0).uint(now).bytes();
+
+        assertEquals(2, decoder.decode(payload, buffer));
+        assertEquals("temperatura", buffer.name(0));
+        assertEquals(24.5f, buffer.value(0));
+        assertNull(buffer.name(1));
+        assertEquals(2, buffer.variableId(1));
+        assertEquals(61.0f, buffer.value(1));
+        assertEquals(now, buffer.time(0));
+        assertEquals(now, buffer.time(1));
+        assertEquals(1, decoder.skippedFieldCount());
+    }
+
+    @Test
+    void testDecodeCborBatchMatchesJson() throws IOException {
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        String json = "{\"samples\":[{\"ts\":" + (now - 1000) + ",\"t\":1.5},{\"ts\":" + now + ",\"t\":2.5,\"h\":-3}]}";
+        byte[] cbor = new CborTestWriter().raw(0xD9, 0xD9, 0xF7).map(1).text("samples")
+                .raw(0x9F)
+                .map(2).text("ts").uint(now - 1000).text("t").float32(1.5f)
+                .map(3).text("ts").uint(now / 1000).text("t").float64(2.5).text("h").negative(-3)
+                .raw(0xFF).bytes();
+
+        SampleBuffer expected = new SampleBuffer(2);
+        decoder.decode(bytes(json), expected);
+        decoder.decode(cbor, buffer);
+
+        assertEquals(3, buffer.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.name(i), buffer.name(i));
+            assertEquals(expected.value(i), buffer.value(i));
+            assertEquals(expected.time(i), buffer.time(i));
+        }
+    }
+
+    @Test
+    void testMalformedCborThrows() {
+        assertThrows(IOException.class, () -> decoder.decode(new CborTestWriter().map(2).uint(1).bytes(), buffer));
+        assertThrows(IOException.class, () -> decoder.decode(new CborTestWriter().array(1).uint(1).bytes(), buffer));
+
+        // Un campo con arreglos anidados muy profundos falla con IOException en lugar de desbordar la pila
+        byte[] nested = new byte[10240];
+        Arrays.fill(nested, (byte) 0x81);
+        nested[0] = (byte) 0xA1;
+        nested[1] = 0x61;
+        nested[2] = 'x';
+        nested[nested.length - 1] = 0;
+        assertThrows(IOException.class, () -> decoder.decode(nested, buffer));
+    }
+
+    @Test
+    void testCborPayloadIsSmallerThanJson() {
+        // Payload del firmware en JSON y el mismo en CBOR con ids de variables; el throughput de ambos se
+        // compara en IngestBenchmark (decodePayload y decodeCborPayload)
+        byte[] json = bytes("{\"temperatura\": 24.5, \"humedad\": 61.0}");
+        byte[] cbor = new CborTestWriter().map(2).uint(1).float32(24.5f).uint(2).float32(61.0f).bytes();
+
+        assertTrue(cbor.length * 2 < json.length, "CBOR deberia ocupar menos de la mitad: " + cbor.length);
+    }
+
+    @Test
+    void testAllocationPerMessageIsSmall() throws IOException {
+        byte[] payload = bytes("{\"temperatura\": 24.5, \"humedad\": 61.0}");
+        for (int i = 0; i < 20000; i++) {
+            decoder.decode(payload, buffer);
+        }
+
+        // Solo el parser de Jackson se crea por mensaje: no hay Map, Strings ni valores en caja
+        double perMessage = decoder.allocatedBytesPerMessage();
+        assertTrue(perMessage < 2048, "Bytes asignados por mensaje: " + perMessage);
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
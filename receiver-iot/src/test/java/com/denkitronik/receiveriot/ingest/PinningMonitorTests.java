@@ -0,0 +1,49 @@
+package com.denkitronik.receiveriot.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PinningMonitorTests {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPinnedSitesGroupedByFirstNonJdkFrame() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObjectProvider<MeterRegistry> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(meterRegistry);
+        PinningMonitor monitor = new PinningMonitor(PipelineThreads.platform(), 20, provider);
+
+        List<String> driver = List.of("java.lang.Object.wait:-1", "sun.nio.ch.NioSocketImpl.read:300",
+                "org.postgresql.core.VisibleBufferedInputStream.read:130", "org.postgresql.jdbc.PgStatement.executeBatch:900");
+        monitor.pinned(Duration.ofMillis(45), driver);
+        monitor.pinned(Duration.ofMillis(30), driver);
+        monitor.pinned(Duration.ofMillis(25), List.of("com.zaxxer.hikari.pool.HikariPool.getConnection:180"));
+
+        Map<String, Long> sites = monitor.pinnedSites();
+        assertEquals(2, sites.get("org.postgresql.core.VisibleBufferedInputStream.read:130"));
+        assertEquals(1, sites.get("com.zaxxer.hikari.pool.HikariPool.getConnection:180"));
+        assertEquals(3, monitor.pinnedCount());
+        assertEquals(3, meterRegistry.get("ingest.virtual.pinned").functionCounter().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testInactiveWithPlatformThreads() {
+        PinningMonitor monitor = new PinningMonitor(PipelineThreads.platform(), 20, mock(ObjectProvider.class));
+        monitor.start();
+        monitor.stop();
+
+        assertEquals(0, monitor.pinnedCount());
+        assertTrue(monitor.pinnedSites().isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package com.denkitronik.receiveriot.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineThreadsTests {
+
+    @Test
+    void testPlatformThreadsAreDaemon() throws Exception {
+        CompletableFuture<String> name = new CompletableFuture<>();
+        Thread thread = PipelineThreads.platform().start("ingest-prueba", () -> name.complete(Thread.currentThread().getName()));
+
+        assertEquals("ingest-prueba", name.get(5, TimeUnit.SECONDS));
+        assertTrue(thread.isDaemon());
+        assertFalse(PipelineThreads.platform().isVirtual());
+    }
+
+    @Test
+    void testVirtualThreadsWhenSupportedOtherwisePlatform() throws Exception {
+        PipelineThreads threads = new PipelineThreads(true);
+        CompletableFuture<String> name = new CompletableFuture<>();
+        Thread thread = threads.start("ingest-virtual", () -> name.complete(Thread.currentThread().getName()));
+
+        // Con Java 21+ son hilos virtuales; con versiones anteriores se usan hilos de plataforma
+        assertEquals(Runtime.version().feature() >= 21, threads.isVirtual());
+        assertEquals("ingest-virtual", name.get(5, TimeUnit.SECONDS));
+        assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    void testLoopFailingWithErrorIsRestarted() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        PipelineThreads.platform().start("ingest-error", () -> {
+            if (runs.incrementAndGet() == 1) {
+                throw new StackOverflowError();
+            }
+            done.complete(runs.get());
+        });
+
+        // El Error no mata el hilo: el bucle se vuelve a ejecutar
+        assertEquals(2, done.get(5, TimeUnit.SECONDS));
+    }
+}
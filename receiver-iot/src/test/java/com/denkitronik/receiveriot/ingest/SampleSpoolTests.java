@@ -0,0 +1,155 @@
+package com.denkitronik.receiveriot.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.denkitronik.receiveriot.entities.DataEntity;
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Clase de pruebas para el spool de escritura anticipada mapeado en memoria
+ */
+class SampleSpoolTests {
+
+    // Segmentos pequenos para forzar la rotacion: 10 registros por segmento
+    private static final int SEGMENT_BYTES = Long.BYTES + Integer.BYTES + 10 * SampleSpool.RECORD_BYTES;
+
+    @TempDir
+    Path dir;
+
+    private SampleSpool spool;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    private SampleSpool open(int maxSegments) throws IOException {
+        SampleSpool opened = new SampleSpool(true, dir.toString(), SEGMENT_BYTES, maxSegments, 10);
+        opened.open();
+        return opened;
+    }
+
+    private static List<DataEntity> rows(int from, int count) {
+        List<DataEntity> rows = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            Device device = new Device();
+            device.setId(7L);
+            Measurement variable = new Measurement();
+            variable.setId(3L);
+            DataEntity row = new DataEntity();
+            row.setUnixTime(1_700_000_000_000L + i);
+            row.setVariableValue(i * 0.5f);
+            row.setBaseTime(ZonedDateTime.now());
+            row.setDevice(device);
+            row.setVariable(variable);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    void testAppendPeekCommit() throws IOException {
+        spool = open(4);
+        assertTrue(spool.append(rows(0, 25)));
+        assertEquals(25, spool.pending());
+        assertEquals(3, spool.segmentCount());
+
+        List<DataEntity> head = spool.peek(12);
+        assertEquals(12, head.size());
+        assertEquals(1_700_000_000_000L, head.get(0).getUnixTime());
+        assertEquals(5.5f, head.get(11).getVariableValue());
+        assertEquals(7L, head.get(11).getDevice().getId());
+        assertEquals(3L, head.get(11).getVariable().getId());
+
+        spool.commit(12);
+        assertEquals(13, spool.pending());
+        assertEquals(2, spool.segmentCount());
+        assertEquals(1_700_000_000_012L, spool.peek(1).get(0).getUnixTime());
+    }
+
+    @Test
+    void testDiskUsageIsBounded() throws IOException {
+        spool = open(2);
+        assertTrue(spool.append(rows(0, 15)));
+        // No cabe el lote completo: se rechaza sin escribir nada
+        assertFalse(spool.append(rows(15, 6)));
+        assertEquals(15, spool.pending());
+        assertTrue(spool.append(rows(15, 5)));
+        assertEquals(2L * SEGMENT_BYTES, spool.usedBytes());
+    }
+
+    @Test
+    void testSegmentsAreRecycled() throws IOException {
+        spool = open(3);
+        for (int round = 0; round < 20; round++) {
+            assertTrue(spool.append(rows(round * 10, 10)));
+            spool.commit(spool.peek(10).size());
+        }
+        assertTrue(spool.isEmpty());
+        // Solo quedan los segmentos reciclables, no uno por cada ronda
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.count() <= 3);
+        }
+    }
+
+    @Test
+    void testRecoveryAfterRestart() throws IOException {
+        spool = open(4);
+        spool.append(rows(0, 15));
+        spool.commit(10);
+        spool.close();
+
+        spool = open(4);
+        assertEquals(5, spool.pending());
+        List<DataEntity> recovered = spool.peek(100);
+        assertEquals(1_700_000_000_010L, recovered.get(0).getUnixTime());
+        assertEquals(1_700_000_000_014L, recovered.get(4).getUnixTime());
+
+        // Se sigue escribiendo a continuacion de lo recuperado
+        assertTrue(spool.append(rows(15, 3)));
+        assertEquals(8, spool.pending());
+        assertEquals(1_700_000_000_017L, spool.peek(100).get(7).getUnixTime());
+    }
+
+    @Test
+    void testRecoveredSegmentsAreKeptBeyondLimit() throws IOException {
+        spool = open(4);
+        assertTrue(spool.append(rows(0, 35)));
+        spool.close();
+
+        // Con un limite menor no se recicla ningun segmento con registros: se rechazan los lotes nuevos
+        spool = open(2);
+        assertEquals(35, spool.pending());
+        assertEquals(4, spool.segmentCount());
+        assertFalse(spool.append(rows(35, 1)));
+        assertEquals(1_700_000_000_034L, spool.peek(100).get(34).getUnixTime());
+    }
+
+    @Test
+    void testDeadLetterAppendsRows() throws IOException {
+        spool = open(2);
+        spool.deadLetter(rows(0, 2), "llave foranea \"device\" violada");
+        spool.deadLetter(rows(2, 1), "valor fuera de rango");
+
+        List<String> lines = Files.readAllLines(spool.deadLetterPath());
+        assertEquals(4, lines.size());
+        assertEquals("unix_time,device_id,variable_id,value,base_time,error", lines.get(0));
+        assertTrue(lines.get(1).startsWith("1700000000000,7,3,0.0,"));
+        assertTrue(lines.get(1).endsWith(",\"llave foranea \"\"device\"\" violada\""));
+        assertTrue(lines.get(3).startsWith("1700000000002,7,3,1.0,"));
+    }
+}
@@ -0,0 +1,223 @@
+package com.denkitronik.receiveriot.ingest;
+
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class SeriesFilterTests {
+
+    @Test
+    void testDeadbandWritesOnlyChanges() {
+        SeriesFilters filters = filters("temperatura=deadband:0.5:0");
+        SeriesFilter filter = filters.newFilter();
+        Measurement temperatura = measurement(1, "temperatura");
+
+        assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(1), temperatura, 1000, 20f)));
+        assertEquals(0, filter.offer(sample(device(1), temperatura, 2000, 20.3f)));
+        assertEquals(0, filter.offer(sample(device(1), temperatura, 3000, 19.6f)));
+        assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(1), temperatura, 4000, 20.6f)));
+        // La banda se mide desde el último punto escrito
+        assertEquals(0, filter.offer(sample(device(1), temperatura, 5000, 20.2f)));
+
+        assertEquals(2, filters.writtenCount());
+        // La última medición sigue retenida: aún no cuenta como suprimida
+        assertEquals(2, filters.suppressedCount());
+    }
+
+    @Test
+    void testPercentBandAndUnfilteredVariables() {
+        SeriesFilters filters = filters("humedad=percent:10:0");
+        SeriesFilter filter = filters.newFilter();
+        Measurement humedad = measurement(1, "humedad");
+        Measurement presion = measurement(2, "presion");
+
+        assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(1), humedad, 1000, 50f)));
+        assertEquals(0, filter.offer(sample(device(1), humedad, 2000, 54.9f)));
+        assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(1), humedad, 3000, 55.1f)));
+        // Sin regla propia ni regla "*" la variable no se filtra
+        assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(1), presion, 4000, 1000f)));
+        assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(1), presion, 5000, 1000f)));
+        assertNull(filters.ruleFor("presion"));
+    }
+
+    @Test
+    void testSwingingDoorReconstructsWithinTolerance() {
+        double tolerance = 0.05;
+        SeriesFilters filters = filters("temperatura=sdt:" + tolerance + ":0");
+        SeriesFilter filter = filters.newFilter();
+        Device device = device(1);
+        Measurement temperatura = measurement(1, "temperatura");
+        Random random = new Random(42);
+        int count = 3600;
+        long[] times = new long[count];
+        float[] values = new float[count];
+        List<long[]> written = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            times[i] = 1000L * i;
+            values[i] = (float) (20 + 2 * Math.sin(i / 300.0) + random.nextGaussian() * 0.005);
+            int decision = filter.offer(sample(device, temperatura, times[i], values[i]));
+            if ((decision & SeriesFilter.WRITE_PREVIOUS) != 0) {
+                written.add(point(filter.previousTime(), filter.previousValue()));
+            }
+            if ((decision & SeriesFilter.WRITE) != 0) {
+                written.add(point(times[i], values[i]));
+            }
+        }
+        filter.expire(Long.MAX_VALUE, (d, v, time, value) -> written.add(point(time, value)));
+
+        assertTrue(written.size() < count / 10, "Puntos escritos: " + written.size());
+        assertEquals(times[0], written.get(0)[0]);
+        assertEquals(times[count - 1], written.get(written.size() - 1)[0]);
+        // Interpolación lineal entre los puntos escritos
+        int segment = 0;
+        for (int i = 0; i < count; i++) {
+            while (written.get(segment + 1)[0] < times[i]) {
+                segment++;
+            }
+            long[] a = written.get(segment);
+            long[] b = written.get(segment + 1);
+            float va = Float.intBitsToFloat((int) a[1]);
+            float vb = Float.intBitsToFloat((int) b[1]);
+            double interpolated = va + (vb - va) * (double) (times[i] - a[0]) / (b[0] - a[0]);
+            assertEquals(values[i], interpolated, tolerance + 1e-4, "t=" + times[i]);
+        }
+        assertEquals(written.size(), filters.writtenCount());
+        assertEquals(count - written.size(), filters.suppressedCount());
+    }
+
+    @Test
+    void testHeartbeatAndOutOfOrderSamples() {
+        SeriesFilters filters = filters("*=deadband:1:10s");
+        SeriesFilter filter = filters.newFilter();
+        Measurement temperatura = measurement(1, "temperatura");
+
+        assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(1), temperatura, 0, 20f)));
+        assertEquals(0, filter.offer(sample(device(1), temperatura, 5000, 20f)));
+        // Latido: diez segundos sin escribir
+        assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(1), temperatura, 10000, 20f)));
+        // Lectura atrasada: se escribe tal cual
+        assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(1), temperatura, 7000, 20f)));
+        assertEquals(0, filter.offer(sample(device(1), temperatura, 15000, 20f)));
+    }
+
+    @Test
+    void testExpireWritesIdleSeriesOnce() {
+        SeriesFilters filters = filters("*=deadband:1:0");
+        SeriesFilter filter = filters.newFilter();
+        Measurement temperatura = measurement(1, "temperatura");
+        filter.offer(sample(device(1), temperatura, 1000, 20f));
+        filter.offer(sample(device(1), temperatura, 2000, 20.5f));
+        filter.offer(sample(device(2), temperatura, 1000, 20f));
+        filter.offer(sample(device(2), temperatura, 9000, 20.5f));
+
+        List<long[]> points = new ArrayList<>();
+        assertEquals(1, filter.expire(5000, (d, v, time, value) -> points.add(new long[]{d.getId(), time})));
+        assertArrayEquals(new long[]{1, 2000}, points.get(0));
+        assertEquals(1, filter.expire(Long.MAX_VALUE, (d, v, time, value) -> points.add(new long[]{d.getId(), time})));
+        assertEquals(0, filter.expire(Long.MAX_VALUE, (d, v, time, value) -> points.add(new long[]{d.getId(), time})));
+        assertEquals(4, filters.writtenCount());
+    }
+
+    @Test
+    void testTableGrowsWithSeries() {
+        SeriesFilters filters = filters("*=deadband:1:0");
+        SeriesFilter filter = filters.newFilter();
+        Measurement temperatura = measurement(1, "temperatura");
+        for (int device = 1; device <= 1000; device++) {
+            assertEquals(SeriesFilter.WRITE, filter.offer(sample(device(device), temperatura, 1000, device)));
+        }
+        for (int device = 1; device <= 1000; device++) {
+            assertEquals(0, filter.offer(sample(device(device), temperatura, 2000, device + 0.5f)));
+        }
+        assertEquals(1000, filter.size());
+    }
+
+    @Test
+    void testPendingPointKeepsItsAck() {
+        SeriesFilter deadband = filters("temperatura=deadband:0.5:0").newFilter();
+        Measurement temperatura = measurement(1, "temperatura");
+        AtomicInteger[] acked = new AtomicInteger[4];
+        DeliveryAck[] acks = new DeliveryAck[4];
+        for (int i = 0; i < acks.length; i++) {
+            acked[i] = new AtomicInteger();
+            acks[i] = new DeliveryAck(acked[i]::incrementAndGet);
+        }
+
+        assertEquals(SeriesFilter.WRITE, deadband.offer(sample(device(1), temperatura, 1000, 20f, acks[0])));
+        assertEquals(0, deadband.offer(sample(device(1), temperatura, 2000, 20.3f, acks[1])));
+        // El punto retenido conserva la confirmacion hasta que otro lo reemplaza
+        assertEquals(0, acked[1].get());
+        assertEquals(1, deadband.heldAcks());
+        assertEquals(0, deadband.offer(sample(device(1), temperatura, 3000, 19.6f, acks[2])));
+        assertEquals(1, acked[1].get());
+        assertEquals(0, acked[2].get());
+        // Al escribir el punto retenido su confirmacion se entrega con el
+        List<DeliveryAck> expired = new ArrayList<>();
+        assertEquals(1, deadband.expire(Long.MAX_VALUE, (d, v, time, value) -> { }, expired::add));
+        assertEquals(List.of(acks[2]), expired);
+        assertEquals(0, deadband.heldAcks());
+        assertEquals(0, acked[2].get());
+
+        // Con swinging door el vertice escrito lleva la confirmacion de su mensaje
+        SeriesFilter sdt = filters("temperatura=sdt:0.5:0").newFilter();
+        assertEquals(SeriesFilter.WRITE, sdt.offer(sample(device(1), temperatura, 0, 20f, null)));
+        assertEquals(0, sdt.offer(sample(device(1), temperatura, 1000, 20.1f, acks[3])));
+        assertEquals(SeriesFilter.WRITE_PREVIOUS, sdt.offer(sample(device(1), temperatura, 2000, 25f, null)));
+        assertSame(acks[3], sdt.previousAck());
+        assertEquals(0, acked[3].get());
+    }
+
+    @Test
+    void testInvalidRules() {
+        assertTrue(FilterRule.parse("", 0).isEmpty());
+        FilterRule rule = FilterRule.parse("humedad=percent:1:10m", 0).get("humedad");
+        assertEquals(FilterKind.PERCENT, rule.kind());
+        assertEquals(600000, rule.maxIntervalMs());
+        assertThrows(IllegalArgumentException.class, () -> FilterRule.parse("temperatura", 0));
+        assertThrows(IllegalArgumentException.class, () -> FilterRule.parse("temperatura=lineal:1", 0));
+        assertThrows(IllegalArgumentException.class, () -> FilterRule.parse("temperatura=sdt:-1", 0));
+        assertThrows(IllegalArgumentException.class, () -> FilterRule.parse("a=sdt:1,a=deadband:1", 0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SeriesFilters filters(String rules) {
+        return new SeriesFilters(rules, 600000, 60000, 16, mock(ObjectProvider.class));
+    }
+
+    private static Sample sample(Device device, Measurement variable, long time, float value) {
+        return new Sample(value, device, variable, ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC));
+    }
+
+    private static Sample sample(Device device, Measurement variable, long time, float value, DeliveryAck ack) {
+        return new Sample(value, device, variable, ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC), ack);
+    }
+
+    private static long[] point(long time, float value) {
+        return new long[]{time, Float.floatToRawIntBits(value)};
+    }
+
+    private static Device device(long id) {
+        Device device = new Device();
+        device.setId(id);
+        return device;
+    }
+
+    private static Measurement measurement(long id, String name) {
+        Measurement measurement = new Measurement();
+        measurement.setId(id);
+        measurement.setName(name);
+        return measurement;
+    }
+}
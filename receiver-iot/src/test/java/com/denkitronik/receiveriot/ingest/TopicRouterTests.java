@@ -0,0 +1,87 @@
+package com.denkitronik.receiveriot.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Clase de pruebas para el enrutador de tópicos compilado
+ */
+class TopicRouterTests {
+
+    private static final String DEFAULT_SCHEMA = "{country}/{state}/{city}/{device}/{user}/{channel}";
+
+    @SuppressWarnings("unchecked")
+    private static TopicRouter router(String schema) {
+        return new TopicRouter(schema, 100, mock(ObjectProvider.class));
+    }
+
+    @Test
+    void testRouteFirmwareTopic() {
+        TopicRouter router = router(DEFAULT_SCHEMA);
+
+        // Tópico tal como lo publica el firmware iot-mqtt-tls
+        TopicRoute route = router.route("colombia/valle/tulua/esp32-01/admin/out");
+
+        assertNotNull(route);
+        assertEquals("colombia", route.getCountry());
+        assertEquals("valle", route.getState());
+        assertEquals("tulua", route.getCity());
+        assertEquals("esp32-01", route.getDevice());
+        assertEquals("admin", route.getUser());
+        assertEquals("out", route.getChannel());
+    }
+
+    @Test
+    void testRepeatedTopicReusesRoute() {
+        TopicRouter router = router(DEFAULT_SCHEMA);
+        TopicRoute first = router.route("colombia/valle/tulua/esp32-01/admin/out");
+        TopicRoute second = router.route(new String("colombia/valle/tulua/esp32-01/admin/out"));
+
+        assertSame(first, second);
+        assertEquals(1, router.routeCount());
+    }
+
+    @Test
+    void testSegmentsAreInterned() {
+        TopicRouter router = router(DEFAULT_SCHEMA);
+        TopicRoute first = router.route("colombia/valle/tulua/esp32-01/admin/out");
+        TopicRoute second = router.route("colombia/valle/buga/esp32-02/admin/out");
+
+        assertSame(first.getCountry(), second.getCountry());
+        assertSame(first.getUser(), second.getUser());
+    }
+
+    @Test
+    void testMismatchedTopicsAreCounted() {
+        TopicRouter router = router(DEFAULT_SCHEMA);
+
+        assertNull(router.route("colombia/valle/tulua/esp32-01/admin"));         // Faltan segmentos
+        assertNull(router.route("colombia/valle/tulua/esp32-01/admin/out/x"));   // Sobran segmentos
+        assertNull(router.route("colombia//tulua/esp32-01/admin/out"));          // Segmento vacio
+        assertNull(router.route(""));
+
+        assertEquals(4, router.mismatchCount());
+        assertEquals(0, router.routeCount());
+    }
+
+    @Test
+    void testLiteralSegments() {
+        TopicRouter router = router("{country}/{state}/{city}/{device}/{user}/out");
+
+        assertNotNull(router.route("colombia/valle/tulua/esp32-01/admin/out"));
+        assertNull(router.route("colombia/valle/tulua/esp32-01/admin/in"));
+        assertNull(router.route("colombia/valle/tulua/esp32-01/admin/outx"));
+        assertEquals(2, router.mismatchCount());
+    }
+
+    @Test
+    void testInvalidSchema() {
+        assertThrows(IllegalArgumentException.class, () -> router("{country}/{state}/{city}/{device}"));
+        assertThrows(IllegalArgumentException.class, () -> router("{country}/{state}/{city}/{device}/{user}/{zone}"));
+        assertThrows(IllegalArgumentException.class, () -> router("{country}/{state}/{city}/{device}/{user}/{user}"));
+        assertThrows(IllegalArgumentException.class, () -> router("{country}/{state}/{city}/{device}/{user}/#"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.denkitronik.receiveriot.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PermissionDeniedDataAccessException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.UncategorizedSQLException;
+
+import java.sql.SQLException;
+
+/**
+ * Clase de pruebas para la clasificación de los errores de escritura
+ */
+class WriteFailureTests {
+
+    @Test
+    void testClassifiesBySqlState() {
+        assertEquals(WriteFailure.UNAVAILABLE, WriteFailure.ofSqlState("08006"));   // Conexion perdida
+        assertEquals(WriteFailure.UNAVAILABLE, WriteFailure.ofSqlState("53100"));   // Disco lleno
+        assertEquals(WriteFailure.UNAVAILABLE, WriteFailure.ofSqlState("57P01"));   // Apagado del servidor
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.ofSqlState("40P01"));     // Deadlock
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.ofSqlState("57014"));     // Consulta cancelada
+        assertEquals(WriteFailure.PERMANENT, WriteFailure.ofSqlState("23503"));     // Llave foranea
+        assertEquals(WriteFailure.PERMANENT, WriteFailure.ofSqlState("22003"));     // Valor fuera de rango
+        // Los errores de esquema o permisos afectan a todo el lote: no se descartan sus filas
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.ofSqlState("42P01"));     // Tabla inexistente
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.ofSqlState("42501"));     // Permisos insuficientes
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.ofSqlState("42703"));     // Columna inexistente
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.ofSqlState("0A000"));     // No soportado
+    }
+
+    @Test
+    void testUsesSqlStateOfCause() {
+        SQLException foreignKey = new SQLException("insert or update on table \"data\" violates foreign key constraint", "23503");
+        assertEquals(WriteFailure.PERMANENT, WriteFailure.classify(new DataIntegrityViolationException("insert", foreignKey)));
+        SQLException deadlock = new SQLException("deadlock detected", "40P01");
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.classify(new UncategorizedSQLException("insert", "INSERT", deadlock)));
+        SQLException privilege = new SQLException("permission denied for table data", "42501");
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.classify(new PermissionDeniedDataAccessException("insert", privilege)));
+        SQLException table = new SQLException("relation \"data\" does not exist", "42P01");
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.classify(new BadSqlGrammarException("insert", "INSERT", table)));
+    }
+
+    @Test
+    void testFallsBackToExceptionType() {
+        assertEquals(WriteFailure.UNAVAILABLE, WriteFailure.classify(new CannotGetJdbcConnectionException("Conexion rechazada")));
+        assertEquals(WriteFailure.PERMANENT, WriteFailure.classify(new DataIntegrityViolationException("duplicado")));
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.classify(new CannotAcquireLockException("bloqueo")));
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.classify(new PermissionDeniedDataAccessException("permisos", null)));
+        assertEquals(WriteFailure.TRANSIENT, WriteFailure.classify(new IllegalStateException("desconocido")));
+    }
+}
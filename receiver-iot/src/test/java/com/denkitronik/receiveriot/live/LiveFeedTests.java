@@ -0,0 +1,122 @@
+package com.denkitronik.receiveriot.live;
+
+import com.denkitronik.receiveriot.ingest.TopicRoute;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class LiveFeedTests {
+
+    private final TopicRoute tulua = new TopicRoute("colombia", "valle", "tulua", "esp32-01", "admin", "out");
+    private final TopicRoute medellin = new TopicRoute("colombia", "antioquia", "medellin", "esp32-02", "admin", "out");
+    private LiveFeed liveFeed;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // Envío cada hora: las pruebas revisan los buffers sin que el hilo programado los vacíe
+        liveFeed = new LiveFeed(2, 3, 3600000, 1, 60000, 3600000, mock(ObjectProvider.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        liveFeed.stop();
+    }
+
+    @Test
+    void testPatternParsingAndMatching() {
+        assertTrue(LivePattern.parse("colombia/valle/+/+/temperatura").matches(tulua, "temperatura"));
+        assertFalse(LivePattern.parse("colombia/valle/+/+/temperatura").matches(tulua, "humedad"));
+        assertTrue(LivePattern.parse("colombia/#").matches(medellin, "humedad"));
+        assertFalse(LivePattern.parse("colombia/valle/#").matches(medellin, "humedad"));
+        assertTrue(LivePattern.parse("+/+/+/esp32-01/+").matches(tulua, "humedad"));
+
+        assertThrows(IllegalArgumentException.class, () -> LivePattern.parse("colombia/valle"));
+        assertThrows(IllegalArgumentException.class, () -> LivePattern.parse("colombia/#/tulua"));
+        assertThrows(IllegalArgumentException.class, () -> LivePattern.parse("a/b/c/d/e/f"));
+        assertThrows(IllegalArgumentException.class, () -> LivePattern.parse("colombia//+/+/+"));
+    }
+
+    @Test
+    void testPublishReachesOnlyMatchingSubscribers() {
+        LiveSubscriber valle = liveFeed.subscribe(List.of("colombia/valle/#"), LivePolicy.DROP_OLDEST, null);
+        LiveSubscriber humidity = liveFeed.subscribe(List.of("+/+/+/+/humedad"), LivePolicy.DROP_OLDEST, null);
+
+        liveFeed.publish(tulua, "temperatura", 1000, 21.5f);
+        liveFeed.publish(medellin, "humedad", 1000, 70f);
+        liveFeed.publish(medellin, "temperatura", 1000, 25f);
+
+        List<LiveSample> valleSamples = valle.drain();
+        assertEquals(1, valleSamples.size());
+        assertEquals(new LiveSample("colombia", "valle", "tulua", "esp32-01", "temperatura", 1000, 21.5f), valleSamples.get(0));
+        assertEquals(List.of(70f), humidity.drain().stream().map(LiveSample::v).toList());
+        assertEquals(2, liveFeed.publishedCount());
+    }
+
+    @Test
+    void testFeedIsActiveWhileAnySubscriberRemains() {
+        LiveSubscriber first = liveFeed.subscribe(List.of("colombia/#"), LivePolicy.DROP_OLDEST, null);
+        LiveSubscriber second = liveFeed.subscribe(List.of("colombia/#"), LivePolicy.DROP_OLDEST, null);
+        liveFeed.remove(first);
+        liveFeed.publish(tulua, "temperatura", 1000, 20f);
+        assertEquals(1, second.drain().size());
+
+        // Sin suscriptores no se publica nada; con uno nuevo se vuelve a entregar
+        liveFeed.remove(second);
+        liveFeed.publish(tulua, "temperatura", 2000, 21f);
+        assertEquals(1, liveFeed.publishedCount());
+        LiveSubscriber third = liveFeed.subscribe(List.of("colombia/#"), LivePolicy.DROP_OLDEST, null);
+        liveFeed.publish(tulua, "temperatura", 3000, 22f);
+        assertEquals(List.of(22f), third.drain().stream().map(LiveSample::v).toList());
+    }
+
+    @Test
+    void testConflationKeepsLatestPerSeries() {
+        LiveSubscriber subscriber = liveFeed.subscribe(List.of("colombia/#"), LivePolicy.CONFLATE, null);
+
+        for (int i = 0; i < 100; i++) {
+            liveFeed.publish(tulua, "temperatura", i, i);
+        }
+        liveFeed.publish(tulua, "humedad", 100, 60f);
+
+        List<LiveSample> pending = subscriber.drain();
+        assertEquals(2, pending.size());
+        assertEquals(99f, pending.get(0).v());
+        assertEquals(0, subscriber.droppedCount());
+    }
+
+    @Test
+    void testBoundedBufferDropsOldest() {
+        LiveSubscriber subscriber = liveFeed.subscribe(List.of("colombia/#"), LivePolicy.DROP_OLDEST, null);
+
+        for (int i = 0; i < 10; i++) {
+            liveFeed.publish(tulua, "temperatura", i, i);
+        }
+
+        // Buffer de 3: solo quedan las más recientes y publicar nunca bloqueó
+        assertEquals(List.of(7f, 8f, 9f), subscriber.drain().stream().map(LiveSample::v).toList());
+        assertEquals(7, subscriber.droppedCount());
+    }
+
+    @Test
+    void testSubscriberLimitAndRemoval() {
+        LiveSubscriber first = liveFeed.subscribe(List.of("colombia/#"), LivePolicy.CONFLATE, null);
+        liveFeed.subscribe(List.of("colombia/#"), LivePolicy.CONFLATE, null);
+
+        assertThrows(IllegalStateException.class, () -> liveFeed.subscribe(List.of("colombia/#"), LivePolicy.CONFLATE, null));
+        assertThrows(IllegalArgumentException.class, () -> liveFeed.subscribe(List.of(), LivePolicy.CONFLATE, null));
+
+        liveFeed.publish(tulua, "temperatura", 1, 1f);
+        liveFeed.remove(first);
+        liveFeed.publish(tulua, "temperatura", 2, 2f);
+
+        assertEquals(1, liveFeed.subscriberCount());
+        assertEquals(List.of(1f), first.drain().stream().map(LiveSample::v).toList());
+    }
+}
@@ -0,0 +1,184 @@
+package com.denkitronik.receiveriot.load;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generador de carga: simula N dispositivos que publican con QoS 1 a una tasa fija por dispositivo en el
+ * tópico de seis niveles (pais/estado/ciudad/dispositivo/usuario/out). Cada payload lleva en "ts" el instante
+ * de publicación, que el receptor guarda como unix_time; así la latencia de publicación a guardado se mide
+ * con las filas escritas. Los dispositivos se reparten entre varias conexiones, cada una con su hilo.
+ */
+final class LoadGenerator implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final String[] VARIABLES = {"temperatura", "humedad", "presion", "luminosidad"};
+    private static final int MAX_INFLIGHT = 10000;
+
+    private final String brokerUrl;
+    private final int devices;
+    private final long periodNanos;
+    private final int variables;
+    private final int connections;
+
+    private final List<MqttAsyncClient> clients = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder inflightWaits = new LongAdder();
+    private volatile boolean running;
+
+    /**
+     * @param brokerUrl     URL del broker (tcp://host:puerto)
+     * @param devices       Dispositivos simulados
+     * @param ratePerDevice Mensajes por segundo de cada dispositivo
+     * @param variables     Variables por mensaje
+     * @param connections   Conexiones MQTT entre las que se reparten los dispositivos
+     */
+    LoadGenerator(String brokerUrl, int devices, double ratePerDevice, int variables, int connections) {
+        if (devices <= 0 || ratePerDevice <= 0 || variables <= 0 || connections <= 0) {
+            throw new IllegalArgumentException("Parametros de carga invalidos");
+        }
+        this.brokerUrl = brokerUrl;
+        this.devices = devices;
+        this.periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerDevice);
+        this.variables = variables;
+        this.connections = Math.min(connections, devices);
+    }
+
+    void start() throws MqttException {
+        running = true;
+        for (int i = 0; i < connections; i++) {
+            MqttAsyncClient client = new MqttAsyncClient(brokerUrl, "load-generator-" + i + "-" + System.nanoTime(), new MemoryPersistence());
+            MqttConnectOptions options = new MqttConnectOptions();
+            options.setCleanSession(true);
+            options.setMaxInflight(MAX_INFLIGHT);
+            client.connect(options).waitForCompletion(10000);
+            clients.add(client);
+            int slice = i;
+            Thread thread = new Thread(() -> publishLoop(client, slice), "load-publisher-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        threads.forEach(Thread::start);
+    }
+
+    /**
+     * Publica los mensajes de los dispositivos de una conexión según su calendario
+     */
+    private void publishLoop(MqttAsyncClient client, int slice) {
+        List<Integer> owned = new ArrayList<>();
+        for (int device = slice; device < devices; device += connections) {
+            owned.add(device);
+        }
+        long start = System.nanoTime();
+        long[] next = new long[owned.size()];
+        long[] lastTs = new long[owned.size()];
+        String[] topics = new String[owned.size()];
+        for (int k = 0; k < next.length; k++) {
+            int device = owned.get(k);
+            // Los dispositivos se escalonan dentro del periodo para no publicar todos a la vez
+            next[k] = start + periodNanos * device / devices;
+            topics[k] = String.format(Locale.ROOT, "colombia/valle/tulua/load-%05d/loadtest/out", device);
+        }
+        StringBuilder payload = new StringBuilder(64 + variables * 24);
+        while (running) {
+            long now = System.nanoTime();
+            long earliest = Long.MAX_VALUE;
+            for (int k = 0; k < next.length && running; k++) {
+                if (next[k] <= now) {
+                    long ts = Math.max(System.currentTimeMillis(), lastTs[k] + 1);
+                    lastTs[k] = ts;
+                    publish(client, topics[k], payload(payload, ts, k));
+                    next[k] += periodNanos;
+                    if (next[k] < now - TimeUnit.SECONDS.toNanos(1)) {
+                        // Más de un segundo de atraso: se reanuda desde ahora en lugar de recuperar en ráfaga
+                        next[k] = now;
+                    }
+                }
+                earliest = Math.min(earliest, next[k]);
+            }
+            long wait = earliest - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(5)));
+            }
+        }
+    }
+
+    private byte[] payload(StringBuilder payload, long ts, int seed) {
+        payload.setLength(0);
+        payload.append("{\"ts\": ").append(ts);
+        for (int i = 0; i < variables; i++) {
+            String name = i < VARIABLES.length ? VARIABLES[i] : "sensor" + i;
+            float value = 20 + ((ts / 1000 + seed + i * 7) % 100) / 10f;
+            payload.append(", \"").append(name).append("\": ").append(value);
+        }
+        return payload.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void publish(MqttAsyncClient client, String topic, byte[] payload) {
+        while (running) {
+            try {
+                client.publish(topic, payload, 1, false);
+                published.increment();
+                return;
+            } catch (MqttException e) {
+                if (e.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT) {
+                    failures.increment();
+                    logger.warn("Error al publicar en {}: {}", topic, e.getMessage());
+                    return;
+                }
+                // Ventana de mensajes en vuelo llena: el broker no da abasto, se espera
+                inflightWaits.increment();
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+            }
+        }
+    }
+
+    long publishedCount() {
+        return published.sum();
+    }
+
+    long failureCount() {
+        return failures.sum();
+    }
+
+    long inflightWaitCount() {
+        return inflightWaits.sum();
+    }
+
+    /**
+     * Detiene la publicación y espera a que el broker confirme los mensajes pendientes
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        long deadline = System.currentTimeMillis() + 30000;
+        for (MqttAsyncClient client : clients) {
+            while (client.getPendingDeliveryTokens().length > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            try {
+                client.disconnect().waitForCompletion(5000);
+                client.close();
+            } catch (MqttException e) {
+                logger.warn("Error al desconectar el generador de carga: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.denkitronik.receiveriot.load;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Reporte de una prueba de carga: throughput sostenido, latencia de publicación a guardado (p50, p99, p999),
+ * pérdida de mediciones y comportamiento del heap y del GC. Las latencias se acumulan en un Timer de
+ * Micrometer con histograma; cada llamada a {@link #sample()} agrega una línea con el intervalo transcurrido.
+ */
+final class LoadReport {
+
+    private static final double MB = 1024 * 1024;
+
+    private final Timer latency;
+    private final LongSupplier published;
+    private final List<String> lines = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private long lastNanos = startNanos;
+    private long lastPublished;
+    private long lastCommitted;
+    private double maxLiveHeapMb;
+
+    /**
+     * @param published Mensajes publicados hasta el momento por el generador
+     */
+    LoadReport(LongSupplier published) {
+        this.published = published;
+        this.latency = Timer.builder("load.latency")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .percentilePrecision(2)
+                // Los percentiles cubren toda la prueba y no solo los últimos minutos
+                .distributionStatisticExpiry(Duration.ofDays(7))
+                .distributionStatisticBufferLength(1)
+                .register(new SimpleMeterRegistry());
+    }
+
+    /**
+     * Registra la latencia de una medición guardada a partir de la marca de tiempo de publicación
+     */
+    void committed(long publishedAtMillis, long committedAtMillis) {
+        latency.record(Math.max(0, committedAtMillis - publishedAtMillis), TimeUnit.MILLISECONDS);
+    }
+
+    long committedCount() {
+        return latency.count();
+    }
+
+    /**
+     * Agrega una línea con el throughput del intervalo, los percentiles acumulados, el heap y el GC
+     */
+    String sample() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastNanos) / 1e9);
+        long publishedNow = published.getAsLong();
+        long committedNow = latency.count();
+        String line = String.format(Locale.ROOT,
+                "t=%6ds publicados/s=%9.1f guardados/s=%9.1f %s heap=%7.1fMB vivo=%7.1fMB %s",
+                TimeUnit.NANOSECONDS.toSeconds(now - startNanos),
+                (publishedNow - lastPublished) / seconds, (committedNow - lastCommitted) / seconds,
+                percentiles(), usedHeapMb(), liveHeapMb(), gc());
+        lastNanos = now;
+        lastPublished = publishedNow;
+        lastCommitted = committedNow;
+        lines.add(line);
+        return line;
+    }
+
+    /**
+     * Resumen final de la prueba
+     *
+     * @param expected Mediciones publicadas (mensajes por variables por mensaje)
+     * @param stored   Mediciones guardadas en la base de datos
+     */
+    String summary(long expected, long stored) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        StringBuilder report = new StringBuilder();
+        lines.forEach(line -> report.append(line).append('\n'));
+        report.append(String.format(Locale.ROOT,
+                "Resumen: duracion=%.0fs mensajes publicados=%d mediciones esperadas=%d guardadas=%d perdidas=%d "
+                        + "throughput sostenido=%.1f mediciones/s %s heap vivo maximo=%.1fMB %s%n",
+                seconds, published.getAsLong(), expected, stored, expected - stored, stored / Math.max(1e-9, seconds),
+                percentiles(), maxLiveHeapMb, gc()));
+        return report.toString();
+    }
+
+    private String percentiles() {
+        HistogramSnapshot snapshot = latency.takeSnapshot();
+        StringBuilder text = new StringBuilder();
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            text.append(String.format(Locale.ROOT, "p%s=%.0fms ",
+                    stripZeros(value.percentile() * 100), value.value(TimeUnit.MILLISECONDS)));
+        }
+        return text.append(String.format(Locale.ROOT, "max=%.0fms", snapshot.max(TimeUnit.MILLISECONDS))).toString();
+    }
+
+    private static String stripZeros(double percentile) {
+        String text = String.format(Locale.ROOT, "%.1f", percentile);
+        return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text.replace(".", "");
+    }
+
+    private static double usedHeapMb() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / MB;
+    }
+
+    /**
+     * Heap ocupado tras la última recolección de cada pool: una tendencia creciente indica una fuga
+     */
+    private double liveHeapMb() {
+        long live = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                live += usage.getUsed();
+            }
+        }
+        maxLiveHeapMb = Math.max(maxLiveHeapMb, live / MB);
+        return live / MB;
+    }
+
+    private static String gc() {
+        StringBuilder text = new StringBuilder();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            text.append(String.format(Locale.ROOT, "gc[%s]=%d/%dms ",
+                    collector.getName(), collector.getCollectionCount(), collector.getCollectionTime()));
+        }
+        return text.toString().trim();
+    }
+}
@@ -0,0 +1,40 @@
+package com.denkitronik.receiveriot.load;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadReportTests {
+
+    @Test
+    void testSampleReportsThroughputAndPercentiles() {
+        AtomicLong published = new AtomicLong();
+        LoadReport report = new LoadReport(published::get);
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= 1000; i++) {
+            report.committed(now - i, now);
+        }
+        published.set(500);
+
+        String line = report.sample();
+        assertEquals(1000, report.committedCount());
+        assertTrue(line.contains("p50="), line);
+        assertTrue(line.contains("p99="), line);
+        assertTrue(line.contains("p999="), line);
+        assertTrue(line.contains("heap="), line);
+        assertTrue(line.contains("gc["), line);
+    }
+
+    @Test
+    void testSummaryReportsLoss() {
+        AtomicLong published = new AtomicLong(10);
+        LoadReport report = new LoadReport(published::get);
+        report.sample();
+
+        String summary = report.summary(20, 18);
+        assertTrue(summary.contains("mediciones esperadas=20 guardadas=18 perdidas=2"), summary);
+        assertEquals(2, summary.lines().count());
+    }
+}
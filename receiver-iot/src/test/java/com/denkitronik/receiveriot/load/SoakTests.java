@@ -0,0 +1,169 @@
+package com.denkitronik.receiveriot.load;
+
+import com.denkitronik.receiveriot.ReceiverIotApplication;
+import com.denkitronik.receiveriot.entities.DataEntity;
+import com.denkitronik.receiveriot.services.BatchMode;
+import com.denkitronik.receiveriot.services.DataBatchWriter;
+import com.denkitronik.receiveriot.services.StorageMode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba de carga de extremo a extremo: un broker mosquitto y TimescaleDB locales, la aplicación completa y
+ * {@link LoadGenerator} simulando dispositivos sobre el tópico de seis niveles. Reporta el throughput sostenido,
+ * la latencia de publicación a guardado (p50, p99, p999), la pérdida y el heap y el GC en
+ * target/soak-report.txt. No corre con el resto de las pruebas; se ejecuta con el perfil soak:
+ * {@code mvn -Psoak test -Dsoak.devices=1000 -Dsoak.rate=1 -Dsoak.duration=PT4H}
+ */
+@Tag("soak")
+@SpringBootTest(classes = ReceiverIotApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class SoakTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoakTests.class);
+
+    private static final int DEVICES = Integer.getInteger("soak.devices", 100);
+    private static final double RATE = Double.parseDouble(System.getProperty("soak.rate", "1"));
+    private static final int VARIABLES = Integer.getInteger("soak.variables", 2);
+    private static final int CONNECTIONS = Integer.getInteger("soak.connections", 4);
+    private static final Duration DURATION = Duration.parse(System.getProperty("soak.duration", "PT2M"));
+    private static final Duration REPORT_INTERVAL = Duration.parse(System.getProperty("soak.report-interval", "PT10S"));
+    private static final Duration DRAIN_TIMEOUT = Duration.ofMinutes(2);
+
+    private static final LoadReport report = new LoadReport(SoakTests::published);
+    private static LoadGenerator generator;
+
+    // Ventana de mensajes sin confirmar por defecto (max_inflight_messages 20, igual a mqtt.receive-window); solo se
+    // agranda la cola para que el broker no descarte los mensajes que esperan la ventana
+    private static final GenericContainer<?> mosquitto = new GenericContainer<>(DockerImageName.parse("eclipse-mosquitto:2"))
+            .withCopyToContainer(Transferable.of("listener 1883 0.0.0.0\nallow_anonymous true\n"
+                    + "max_queued_messages 1000000\n"), "/mosquitto/config/mosquitto.conf")
+            .withExposedPorts(1883);
+
+    private static final PostgreSQLContainer<?> timescaleDB = new PostgreSQLContainer<>(
+            DockerImageName.parse("timescale/timescaledb:latest-pg14")
+                    .asCompatibleSubstituteFor("postgres")
+    );
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void startContainers() {
+        mosquitto.start();
+        timescaleDB.start();
+    }
+
+    @AfterAll
+    static void stopContainers() {
+        mosquitto.stop();
+        timescaleDB.stop();
+    }
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) throws IOException {
+        registry.add("spring.datasource.url", timescaleDB::getJdbcUrl);
+        registry.add("spring.datasource.username", timescaleDB::getUsername);
+        registry.add("spring.datasource.password", timescaleDB::getPassword);
+        registry.add("mqtt.broker.url", SoakTests::brokerUrl);
+        registry.add("mqtt.qos", () -> "1");
+        registry.add("mqtt.manual-acks", () -> "true");
+        registry.add("mqtt.persistence.path", () -> "");
+        registry.add("mqtt.client.unique-suffix", () -> "true");
+        Path spool = Files.createTempDirectory("soak-spool");
+        registry.add("ingest.spool.path", spool::toString);
+    }
+
+    private static String brokerUrl() {
+        return "tcp://" + mosquitto.getHost() + ":" + mosquitto.getMappedPort(1883);
+    }
+
+    private static long published() {
+        return generator == null ? 0 : generator.publishedCount();
+    }
+
+    @Test
+    void testSustainedLoad() throws Exception {
+        logger.info("Prueba de carga: {} dispositivos a {} msg/s con {} variables durante {}", DEVICES, RATE, VARIABLES, DURATION);
+        generator = new LoadGenerator(brokerUrl(), DEVICES, RATE, VARIABLES, CONNECTIONS);
+        generator.start();
+        long end = System.nanoTime() + DURATION.toNanos();
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(REPORT_INTERVAL.toMillis(), Math.max(1, (end - System.nanoTime()) / 1_000_000)));
+            logger.info(report.sample());
+        }
+        generator.close();
+
+        // Se espera a que el pipeline guarde lo que quedó en las colas
+        long expected = generator.publishedCount() * VARIABLES;
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        long stored = countStored();
+        while (stored < expected && System.nanoTime() < deadline) {
+            Thread.sleep(500);
+            stored = countStored();
+        }
+        String summary = report.summary(expected, stored);
+        logger.info("Reporte de la prueba de carga:\n{}", summary);
+        Files.writeString(Path.of("target", "soak-report.txt"), summary);
+
+        assertTrue(generator.publishedCount() > 0, "El generador deberia haber publicado mensajes");
+        assertEquals(0, generator.failureCount(), "No deberia haber errores de publicacion");
+        assertEquals(expected, stored, "Todas las mediciones publicadas deberian quedar guardadas");
+    }
+
+    private long countStored() {
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM data", Long.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Escritor que mide la latencia de publicación a guardado de cada fila una vez confirmada la transacción
+     */
+    @TestConfiguration
+    static class MeasuringWriterConfiguration {
+
+        @Bean
+        @Primary
+        DataBatchWriter measuringDataBatchWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                                 @Value("${ingest.batch.mode:INSERT}") BatchMode mode,
+                                                 @Value("${ingest.storage.mode:NARROW}") StorageMode storageMode) {
+            return new DataBatchWriter(jdbcTemplate, transactionManager, mode, storageMode) {
+                @Override
+                public int writePrepared(List<DataEntity> rows) {
+                    // write() termina aqui, igual que el drenado del spool
+                    int written = super.writePrepared(rows);
+                    long now = System.currentTimeMillis();
+                    for (DataEntity row : rows) {
+                        report.committed(row.getUnixTime(), now);
+                    }
+                    return written;
+                }
+            };
+        }
+    }
+}
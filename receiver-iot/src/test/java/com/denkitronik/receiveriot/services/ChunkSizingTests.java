@@ -0,0 +1,31 @@
+package com.denkitronik.receiveriot.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkSizingTests {
+
+    private static final long HOUR = 3600000;
+    private static final long DAY = 24 * HOUR;
+
+    @Test
+    void testIntervalFollowsIngestRate() {
+        // 10 millones de filas por dia con un objetivo de 5 millones por chunk: chunks de 12 horas
+        assertEquals(12 * HOUR, ChunkSizing.interval(10_000_000, DAY, 5_000_000, HOUR, 7 * DAY));
+        // Se redondea a horas completas
+        assertEquals(17 * HOUR, ChunkSizing.interval(7_000_000, DAY, 5_000_000, HOUR, 7 * DAY));
+    }
+
+    @Test
+    void testIntervalIsClamped() {
+        assertEquals(7 * DAY, ChunkSizing.interval(1_000, DAY, 5_000_000, HOUR, 7 * DAY));
+        assertEquals(HOUR, ChunkSizing.interval(1_000_000_000, DAY, 5_000_000, HOUR, 7 * DAY));
+        assertEquals(15 * 60000, ChunkSizing.interval(1_000_000_000, DAY, 5_000_000, 15 * 60000, DAY));
+    }
+
+    @Test
+    void testNoDataKeepsCurrentInterval() {
+        assertEquals(-1, ChunkSizing.interval(0, DAY, 5_000_000, HOUR, 7 * DAY));
+    }
+}
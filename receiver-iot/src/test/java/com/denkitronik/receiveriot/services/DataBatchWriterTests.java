@@ -0,0 +1,226 @@
+package com.denkitronik.receiveriot.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.denkitronik.receiveriot.entities.DataEntity;
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Location;
+import com.denkitronik.receiveriot.entities.Measurement;
+import com.denkitronik.receiveriot.entities.User;
+import com.denkitronik.receiveriot.repositories.DeviceRepository;
+import com.denkitronik.receiveriot.repositories.LocationRepository;
+import com.denkitronik.receiveriot.repositories.MeasurementRepository;
+import com.denkitronik.receiveriot.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pruebas del escritor por lotes contra TimescaleDB usando Testcontainers
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class DataBatchWriterTests {
+
+    private static final PostgreSQLContainer<?> timescaleDB = new PostgreSQLContainer<>(
+            DockerImageName.parse("timescale/timescaledb:latest-pg14")
+                    .asCompatibleSubstituteFor("postgres")
+    );
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LocationRepository locationRepository;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private MeasurementRepository measurementRepository;
+
+    private Device device;
+    private Measurement measurement;
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", timescaleDB::getJdbcUrl);
+        registry.add("spring.datasource.username", timescaleDB::getUsername);
+        registry.add("spring.datasource.password", timescaleDB::getPassword);
+    }
+
+    @BeforeAll
+    static void startContainer() {
+        timescaleDB.start();
+    }
+
+    @BeforeEach
+    void setupTest() {
+        jdbcTemplate.execute("DELETE FROM data");
+
+        User user = new User();
+        user.setUsername("batch-user");
+        user = userRepository.save(user);
+
+        Location location = new Location();
+        location.setCity("Tulua");
+        location.setState("Valle");
+        location.setCountry("Colombia");
+        location = locationRepository.save(location);
+
+        device = new Device();
+        device.setClientId("batch-device-" + System.nanoTime());
+        device.setUser(user);
+        device.setLocation(location);
+        device = deviceRepository.save(device);
+
+        measurement = new Measurement();
+        measurement.setName("temperatura");
+        measurement = measurementRepository.save(measurement);
+    }
+
+    @Test
+    void testInsertMode_WritesWholeBatch() {
+        DataBatchWriter writer = new DataBatchWriter(jdbcTemplate, transactionManager, BatchMode.INSERT, StorageMode.NARROW);
+
+        int inserted = writer.write(rows(2500));
+
+        // Mas filas que el limite por sentencia: se escriben en varias sentencias multi-fila
+        assertEquals(2500, inserted);
+        assertEquals(2500, countRows());
+    }
+
+    @Test
+    void testCopyMode_WritesWholeBatch() {
+        DataBatchWriter writer = new DataBatchWriter(jdbcTemplate, transactionManager, BatchMode.COPY, StorageMode.NARROW);
+
+        int copied = writer.write(rows(1000));
+
+        assertEquals(1000, copied);
+        assertEquals(1000, countRows());
+        Float value = jdbcTemplate.queryForObject("SELECT variable_value FROM data WHERE unix_time = 1000", Float.class);
+        assertEquals(1000 * 0.5f, value);
+    }
+
+    @Test
+    void testInsertMode_SameMillisecondDifferentVariables() {
+        DataBatchWriter writer = new DataBatchWriter(jdbcTemplate, transactionManager, BatchMode.INSERT, StorageMode.NARROW);
+        Measurement humidity = new Measurement();
+        humidity.setName("humedad");
+        humidity = measurementRepository.save(humidity);
+
+        // Un payload multi-variable produce varias filas en el mismo milisegundo: no deben colisionar
+        List<DataEntity> rows = rows(1);
+        DataEntity second = rows(1).get(0);
+        second.setVariable(humidity);
+        rows.add(second);
+
+        assertEquals(2, writer.write(rows));
+        assertEquals(2, countRows());
+    }
+
+    @Test
+    void testReplayedBatchIsIdempotent() {
+        for (BatchMode mode : BatchMode.values()) {
+            jdbcTemplate.execute("DELETE FROM data");
+            DataBatchWriter writer = new DataBatchWriter(jdbcTemplate, transactionManager, mode, StorageMode.NARROW);
+
+            assertEquals(100, writer.write(rows(100)));
+            // Reescribir el mismo lote (p. ej. tras una reentrega) no duplica filas ni falla
+            assertEquals(0, writer.write(rows(100)));
+            assertEquals(100, countRows(), "Modo " + mode);
+        }
+    }
+
+    @Test
+    void testWideMode_OneRowPerMessage() {
+        jdbcTemplate.execute("DELETE FROM data_wide");
+        DataBatchWriter writer = new DataBatchWriter(jdbcTemplate, transactionManager, BatchMode.INSERT, StorageMode.WIDE);
+        Measurement humidity = new Measurement();
+        humidity.setName("humedad");
+        humidity = measurementRepository.save(humidity);
+
+        // Dos variables en cada milisegundo: una fila ancha por milisegundo con ambas
+        List<DataEntity> rows = rows(50);
+        for (DataEntity row : rows(50)) {
+            row.setVariable(humidity);
+            rows.add(row);
+        }
+
+        assertEquals(50, writer.write(rows));
+        assertEquals(0, countRows());
+        assertEquals(50, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM data_wide", Integer.class));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT cardinality(variable_ids) FROM data_wide WHERE unix_time = 7", Integer.class));
+        // Reescribir el mismo lote tampoco duplica filas anchas
+        assertEquals(0, writer.write(rows(50)));
+    }
+
+    @Test
+    void testWideMode_MergesVariablesWrittenInAnotherBatch() {
+        jdbcTemplate.execute("DELETE FROM data_wide");
+        DataBatchWriter writer = new DataBatchWriter(jdbcTemplate, transactionManager, BatchMode.INSERT, StorageMode.WIDE);
+        Measurement humidity = new Measurement();
+        humidity.setName("humedad");
+        humidity = measurementRepository.save(humidity);
+
+        // Las variables del mismo milisegundo llegan en lotes distintos (otro topico o un mensaje partido)
+        assertEquals(10, writer.write(rows(10)));
+        List<DataEntity> humidityRows = rows(10);
+        for (DataEntity row : humidityRows) {
+            row.setVariable(humidity);
+            row.setVariableValue(99f);
+        }
+        assertEquals(10, writer.write(humidityRows));
+
+        assertEquals(10, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM data_wide", Integer.class));
+        assertEquals(List.of(measurement.getId(), humidity.getId()), jdbcTemplate.queryForList(
+                "SELECT unnest(variable_ids) FROM data_wide WHERE unix_time = 7", Long.class));
+        assertEquals(List.of(3.5f, 99f), jdbcTemplate.queryForList(
+                "SELECT unnest(variable_values) FROM data_wide WHERE unix_time = 7", Float.class));
+        // Una variable ya guardada conserva su valor y reescribir no modifica las filas
+        List<DataEntity> changed = rows(10);
+        changed.forEach(row -> row.setVariableValue(-1f));
+        assertEquals(0, writer.write(changed));
+        assertEquals(3.5f, jdbcTemplate.queryForObject(
+                "SELECT variable_values[1] FROM data_wide WHERE unix_time = 7", Float.class));
+    }
+
+    private List<DataEntity> rows(int count) {
+        List<DataEntity> rows = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            DataEntity row = new DataEntity();
+            row.setUnixTime((long) i);
+            row.setVariableValue(i * 0.5f);
+            row.setDevice(device);
+            row.setVariable(measurement);
+            row.setBaseTime(ZonedDateTime.now());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private int countRows() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM data", Integer.class);
+        return count == null ? 0 : count;
+    }
+}
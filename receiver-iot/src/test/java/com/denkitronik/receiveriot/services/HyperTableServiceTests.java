@@ -47,8 +47,8 @@ class HyperTableServiceTests {
 
     @BeforeEach
     void setupDatabase() {
-        // Crear la tabla "data" antes de cada prueba
-        jdbcTemplate.execute("DROP TABLE IF EXISTS data;");
+        // Crear la tabla "data" antes de cada prueba (CASCADE elimina tambien sus agregados continuos)
+        jdbcTemplate.execute("DROP TABLE IF EXISTS data CASCADE;");
         jdbcTemplate.execute("""
                 CREATE TABLE data (
                     unix_time BIGINT NOT NULL,
@@ -90,4 +90,84 @@ class HyperTableServiceTests {
         );
         assertEquals(1, count, "Debe existir una única hypertable 'data'");
     }
+
+    @Test
+    void testCreateRollups_MaterializesHierarchy() {
+        hyperTableService.createHypertableIfNotExists();
+        // Dos horas de mediciones, una por minuto
+        long start = 1727740800000L;
+        for (int i = 0; i < 120; i++) {
+            jdbcTemplate.update("INSERT INTO data (unix_time, variable_value, device_id, variable_id) VALUES (?, ?, 1, 1)",
+                    start + i * 60000L, (float) i);
+        }
+        jdbcTemplate.execute("CALL refresh_continuous_aggregate('data_1m', NULL, NULL)");
+        jdbcTemplate.execute("CALL refresh_continuous_aggregate('data_1h', NULL, NULL)");
+
+        assertEquals(3, hyperTableService.rollups().size());
+        assertEquals("data_1h", hyperTableService.rollupFor(7200000).view());
+        assertEquals("data_1m", hyperTableService.rollupFor(300000).view());
+        assertNull(hyperTableService.rollupFor(30000));
+
+        // El nivel horario se calcula desde el de minutos y conserva sumas y conteos exactos
+        Long count = jdbcTemplate.queryForObject("SELECT sum(value_count) FROM data_1h WHERE device_id = 1", Long.class);
+        Double sum = jdbcTemplate.queryForObject("SELECT sum(value_sum) FROM data_1h WHERE device_id = 1", Double.class);
+        assertEquals(120, count);
+        assertEquals(7140.0, sum, 0.001);
+        Integer policies = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM timescaledb_information.jobs WHERE proc_name = 'policy_refresh_continuous_aggregate'",
+                Integer.class);
+        assertEquals(3, policies);
+    }
+
+    @Test
+    void testCreateRollups_BackfillsHistoryInBackground() throws InterruptedException {
+        hyperTableService.createHypertableIfNotExists();
+        // Mediciones de hace 20 dias, fuera de la ventana que refresca la politica
+        long start = System.currentTimeMillis() - 20 * 86400000L;
+        for (int i = 0; i < 60; i++) {
+            jdbcTemplate.update("INSERT INTO data (unix_time, variable_value, device_id, variable_id) VALUES (?, ?, 1, 1)",
+                    start + i * 60000L, (float) i);
+        }
+        jdbcTemplate.execute("DROP MATERIALIZED VIEW data_1d");
+        jdbcTemplate.execute("DROP MATERIALIZED VIEW data_1h");
+        jdbcTemplate.execute("DROP MATERIALIZED VIEW data_1m");
+
+        // Crear los niveles no espera a materializar el historico; solo se cuenta lo ya materializado
+        hyperTableService.createRollups();
+        jdbcTemplate.execute("ALTER MATERIALIZED VIEW data_1h SET (timescaledb.materialized_only = true)");
+
+        long deadline = System.currentTimeMillis() + 30000;
+        Long count = 0L;
+        while (System.currentTimeMillis() < deadline) {
+            count = jdbcTemplate.queryForObject("SELECT coalesce(sum(value_count), 0) FROM data_1h", Long.class);
+            if (count == 60) {
+                break;
+            }
+            Thread.sleep(200);
+        }
+        assertEquals(60, count);
+    }
+
+    @Test
+    void testApplyStoragePolicies_CompressionSegmentedBySeries() {
+        hyperTableService.createHypertableIfNotExists();
+        // Aplicar de nuevo no debe fallar ni duplicar las politicas
+        assertDoesNotThrow(() -> hyperTableService.applyStoragePolicies());
+
+        Boolean compressed = jdbcTemplate.queryForObject(
+                "SELECT compression_enabled FROM timescaledb_information.hypertables WHERE hypertable_name = 'data'", Boolean.class);
+        assertTrue(compressed);
+        Integer segmentBy = jdbcTemplate.queryForObject("SELECT count(*) FROM timescaledb_information.compression_settings"
+                + " WHERE hypertable_name = 'data' AND segmentby_column_index IS NOT NULL", Integer.class);
+        assertEquals(2, segmentBy);
+        Integer policies = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM timescaledb_information.jobs WHERE proc_name = 'policy_compression' AND hypertable_name = 'data'",
+                Integer.class);
+        assertEquals(1, policies);
+
+        var stats = hyperTableService.storageStats();
+        assertTrue(stats.containsKey("chunks"));
+        assertTrue(stats.containsKey("compressionRatio"));
+        assertEquals(86400000L, stats.get("chunkIntervalMs"));
+    }
 }
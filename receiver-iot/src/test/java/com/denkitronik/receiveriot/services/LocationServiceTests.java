@@ -4,6 +4,8 @@ import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.denkitronik.receiveriot.entities.Location;
+import com.denkitronik.receiveriot.geocoding.GeocodingProvider;
+import com.denkitronik.receiveriot.geocoding.GeocodingResolver;
 import com.denkitronik.receiveriot.repositories.LocationRepository;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,16 +13,12 @@ import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
-import org.springframework.web.client.RestTemplate;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.utility.DockerImageName;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Optional;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
@@ -33,8 +31,11 @@ class LocationServiceTests {
     @Autowired
     private LocationService locationService;
 
-    @SpyBean
-    private RestTemplate restTemplate;
+    @MockBean
+    private GeocodingResolver geocodingResolver;
+
+    @MockBean
+    private GeocodingProvider geocodingProvider;
 
     private Location location;
 
@@ -93,22 +94,15 @@ class LocationServiceTests {
 
 
     @Test
-    void testGetCoordinatesFromApi_NullLatitudeLongitude() {
-        // Simula la respuesta de la API con valores null en las claves "latt" y "longt"
-        Map<String, Object> apiResponse = new HashMap<>();
-        apiResponse.put("latt", null);
-        apiResponse.put("longt", null);
-
-        doReturn(apiResponse)
-                .when(restTemplate)
-                .getForObject(anyString(), eq(Map.class));
-
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-            locationService.getOrCreateLocation("TestCity", "TestState", "TestCountry");
-        });
-
-        assertFalse(exception.getMessage().contains("No se pudo obtener las coordenadas para la ciudad"),
-                "El mensaje de la excepción debe indicar que no se pudo obtener las coordenadas");
+    void testGetOrCreateLocation_PendingCoordinates() {
+        // La ubicacion nueva se crea de inmediato sin coordenadas y se encola para resolverlas en segundo plano
+        Location result = locationService.getOrCreateLocation("TestCity", "TestState", "TestCountry");
+
+        assertNotNull(result);
+        assertNull(result.getLatitude());
+        assertNull(result.getLongitude());
+        verify(geocodingResolver).enqueue(result);
+        verifyNoInteractions(geocodingProvider);
     }
 
 }
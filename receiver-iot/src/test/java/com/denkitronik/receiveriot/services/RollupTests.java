@@ -0,0 +1,76 @@
+package com.denkitronik.receiveriot.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollupTests {
+
+    @Test
+    void testParseHierarchy() {
+        List<Rollup> rollups = Rollup.parse("1m, 1h ,1d");
+
+        assertEquals(List.of("data_1m", "data_1h", "data_1d"), rollups.stream().map(Rollup::view).toList());
+        assertEquals(3600000, rollups.get(1).bucketMs());
+        assertNull(rollups.get(0).source());
+        assertSame(rollups.get(1), rollups.get(2).source());
+        assertTrue(Rollup.parse("").isEmpty());
+        assertEquals("data_15m", Rollup.parse("PT15M").get(0).view());
+    }
+
+    @Test
+    void testInvalidHierarchyIsRejected() {
+        // Niveles desordenados, no multiplos del anterior o menores de un segundo
+        assertThrows(IllegalArgumentException.class, () -> Rollup.parse("1h,1m"));
+        assertThrows(IllegalArgumentException.class, () -> Rollup.parse("1m,90s"));
+        assertThrows(IllegalArgumentException.class, () -> Rollup.parse("500ms"));
+        assertThrows(IllegalArgumentException.class, () -> Rollup.parse("una-hora"));
+    }
+
+    @Test
+    void testCoarsestRollupForBucket() {
+        List<Rollup> rollups = Rollup.parse("1m,1h,1d");
+
+        assertEquals("data_1d", Rollup.coarsestFor(rollups, 7 * 86400000L).view());
+        assertEquals("data_1h", Rollup.coarsestFor(rollups, 6 * 3600000L).view());
+        assertEquals("data_1m", Rollup.coarsestFor(rollups, 90 * 60000L).view());
+        // Un intervalo menor que el nivel mas fino o que no lo divide se resuelve con los datos crudos
+        assertNull(Rollup.coarsestFor(rollups, 30000));
+        assertNull(Rollup.coarsestFor(rollups, 90000));
+    }
+
+    @Test
+    void testUpperLevelIsBuiltFromLowerLevel() {
+        List<Rollup> rollups = Rollup.parse("1m,1h");
+
+        String base = HyperTableService.createViewSql(rollups.get(0));
+        String upper = HyperTableService.createViewSql(rollups.get(1));
+
+        assertTrue(base.contains("FROM data GROUP BY"));
+        assertTrue(upper.contains("FROM data_1m GROUP BY"));
+        assertTrue(upper.contains("sum(value_sum)"));
+        assertTrue(upper.contains("timescaledb.continuous"));
+    }
+
+    @Test
+    void testBackfillWindowsAreBoundedAndAligned() {
+        long hour = 3600000L;
+        long day = 24 * hour;
+        List<long[]> windows = HyperTableService.backfillWindows(10 * day + 30 * 60000, 13 * day + 5 * hour, hour, day);
+
+        // Alineadas a la hora, contiguas y de a lo sumo un dia
+        assertEquals(4, windows.size());
+        assertEquals(10 * day, windows.get(0)[0]);
+        assertEquals(13 * day + 5 * hour, windows.get(3)[1]);
+        for (int i = 1; i < windows.size(); i++) {
+            assertEquals(windows.get(i - 1)[1], windows.get(i)[0]);
+            assertTrue(windows.get(i)[1] - windows.get(i)[0] <= day);
+        }
+        // Una ventana menor que dos intervalos del nivel se agranda
+        long[] single = HyperTableService.backfillWindows(0, day, day, hour).get(0);
+        assertEquals(2 * day, single[1] - single[0]);
+        assertTrue(HyperTableService.backfillWindows(day, day, hour, day).isEmpty());
+    }
+}
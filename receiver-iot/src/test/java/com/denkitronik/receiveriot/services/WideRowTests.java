@@ -0,0 +1,64 @@
+package com.denkitronik.receiveriot.services;
+
+import com.denkitronik.receiveriot.entities.DataEntity;
+import com.denkitronik.receiveriot.entities.Device;
+import com.denkitronik.receiveriot.entities.Measurement;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WideRowTests {
+
+    @Test
+    void testGroupsByDeviceAndMillisecond() {
+        Device first = device(1);
+        Device second = device(2);
+        List<WideRow> rows = WideRow.group(List.of(
+                row(1000, first, 10, 21.5f),
+                row(1000, first, 11, 60f),
+                row(1000, second, 10, 19f),
+                row(1001, first, 10, 21.6f)));
+
+        assertEquals(3, rows.size());
+        assertEquals(1000, rows.get(0).unixTime());
+        assertEquals(1, rows.get(0).deviceId());
+        assertArrayEquals(new long[]{10, 11}, rows.get(0).variableIds());
+        assertArrayEquals(new float[]{21.5f, 60f}, rows.get(0).variableValues());
+        assertEquals(2, rows.get(1).deviceId());
+        assertEquals(1001, rows.get(2).unixTime());
+    }
+
+    @Test
+    void testRepeatedVariableKeepsFirstValue() {
+        Device device = device(1);
+        List<WideRow> rows = WideRow.group(List.of(
+                row(1000, device, 10, 1f),
+                row(1000, device, 10, 2f),
+                row(1000, device, 12, 3f)));
+
+        assertEquals(1, rows.size());
+        assertArrayEquals(new long[]{10, 12}, rows.get(0).variableIds());
+        assertArrayEquals(new float[]{1f, 3f}, rows.get(0).variableValues());
+    }
+
+    private static Device device(long id) {
+        Device device = new Device();
+        device.setId(id);
+        return device;
+    }
+
+    private static DataEntity row(long time, Device device, long variableId, float value) {
+        Measurement variable = new Measurement();
+        variable.setId(variableId);
+        DataEntity row = new DataEntity();
+        row.setUnixTime(time);
+        row.setDevice(device);
+        row.setVariable(variable);
+        row.setVariableValue(value);
+        row.setBaseTime(ZonedDateTime.now());
+        return row;
+    }
+}